@@ -0,0 +1,655 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.componenttree;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.componenttree.pixellist.PixelListComponentTree;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Build the component tree of an image. This is a drop-in alternative to
+ * {@link ComponentTree} that runs the same algorithm (D. Nister and H.
+ * Stewenius, "Linear Time Maximally Stable Extremal Regions", ECCV 2008) and
+ * emits the same components to the {@link Component.Handler}, but does not
+ * allocate objects per pixel.
+ *
+ * Pixels are addressed by their flat index into the input interval. The
+ * visited flags are kept in a bit set and the boundary pixels are kept as
+ * packed <code>long</code> entries (pixel index and next neighbor to visit).
+ * For {@link IntegerType} inputs with at most {@link #MAX_BUCKETS} distinct
+ * values and the default {@link ComponentTree.DarkToBright} or
+ * {@link ComponentTree.BrightToDark} ordering, the boundary pixels are kept in
+ * a bucket queue with one bucket per grey-level. Other {@link RealType}
+ * inputs use a binary heap on primitive <code>double</code> keys. Any other
+ * input type falls back to a binary heap ordered by the given
+ * {@link Comparator}.
+ *
+ * Components at the same threshold may be emitted in a different order than
+ * by {@link ComponentTree}, but the set of emitted components (and the
+ * parent-child relations built up from them) is the same.
+ *
+ * <p>
+ * <strong>TODO</strong> Add support for non-zero-min RandomAccessibleIntervals.
+ * (Currently, we assume that the input image is a <em>zero-min</em> interval.)
+ * </p>
+ *
+ * @param <T>
+ *            value type of the input image.
+ * @param <C>
+ *            component type.
+ */
+public final class FlatIndexComponentTree< T extends Type< T >, C extends Component< T > >
+{
+	/**
+	 * Maximum number of grey-levels for which a bucket queue is used.
+	 */
+	public static final int MAX_BUCKETS = 1 << 16;
+
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link Component.Handler} which is responsible for building up the
+	 * tree structure. An implementations of {@link Component.Handler} is
+	 * provided for example by {@link PixelListComponentTree}.
+	 *
+	 * @param input
+	 *            input image.
+	 * @param componentGenerator
+	 *            provides new {@link Component} instances.
+	 * @param componentHandler
+	 *            receives completed {@link Component}s.
+	 * @param comparator
+	 *            determines ordering of threshold values.
+	 */
+	public static < T extends Type< T >, C extends Component< T > > void buildComponentTree( final RandomAccessibleInterval< T > input, final Component.Generator< T, C > componentGenerator, final Component.Handler< C > componentHandler, final Comparator< T > comparator )
+	{
+		new FlatIndexComponentTree< T, C >( input, componentGenerator, componentHandler, comparator );
+	}
+
+	/**
+	 * Run the algorithm. Completed components are emitted to the
+	 * {@link Component.Handler} which is responsible for building up the tree
+	 * structure. An implementations of {@link Component.Handler} is provided
+	 * for example by {@link PixelListComponentTree}.
+	 *
+	 * @param input
+	 *            input image of a comparable value type.
+	 * @param componentGenerator
+	 *            provides new {@link Component} instances.
+	 * @param componentHandler
+	 *            receives completed {@link Component}s.
+	 * @param darkToBright
+	 *            determines ordering of threshold values. If it is true, then
+	 *            thresholds are applied from low to high values. Note that the
+	 *            {@link Component.Generator#createMaxComponent()} needs to
+	 *            match this ordering.
+	 */
+	public static < T extends Type< T > & Comparable< T >, C extends Component< T > > void buildComponentTree( final RandomAccessibleInterval< T > input, final Component.Generator< T, C > componentGenerator, final Component.Handler< C > componentHandler, final boolean darkToBright )
+	{
+		new FlatIndexComponentTree< T, C >( input, componentGenerator, componentHandler, darkToBright ? new ComponentTree.DarkToBright< T >() : new ComponentTree.BrightToDark< T >() );
+	}
+
+	/**
+	 * Priority queue of boundary pixels. Entries are packed pixel indices and
+	 * next neighbor indices, see {@link FlatIndexComponentTree#entry(long, int)}.
+	 */
+	private static abstract class BoundaryQueue< T >
+	{
+		/**
+		 * Add an entry for a pixel with the given value.
+		 */
+		public abstract void add( final long entry, final T value );
+
+		/**
+		 * Remove and return the entry with the lowest value.
+		 */
+		public abstract long poll();
+
+		public abstract boolean isEmpty();
+	}
+
+	/**
+	 * Bucket queue for integer values. There is one stack of entries per
+	 * grey-level. The lowest non-empty bucket is found by scanning upwards from
+	 * the lowest key that was added since the last scan.
+	 */
+	private static final class BucketQueue< T > extends BoundaryQueue< T >
+	{
+		private final long[][] buckets;
+
+		private final int[] sizes;
+
+		/**
+		 * key = sign * value - offset
+		 */
+		private final long offset;
+
+		private final long sign;
+
+		private int minKey;
+
+		private long size;
+
+		public BucketQueue( final long minValue, final long maxValue, final boolean ascending )
+		{
+			final int numBuckets = ( int ) ( maxValue - minValue + 1 );
+			buckets = new long[ numBuckets ][];
+			sizes = new int[ numBuckets ];
+			sign = ascending ? 1 : -1;
+			offset = ascending ? minValue : -maxValue;
+			minKey = numBuckets;
+			size = 0;
+		}
+
+		@Override
+		public void add( final long entry, final T value )
+		{
+			final int key = ( int ) ( sign * ( ( IntegerType< ? > ) value ).getIntegerLong() - offset );
+			long[] bucket = buckets[ key ];
+			final int s = sizes[ key ];
+			if ( bucket == null )
+				buckets[ key ] = bucket = new long[ 16 ];
+			else if ( s == bucket.length )
+			{
+				final long[] grown = new long[ 2 * s ];
+				System.arraycopy( bucket, 0, grown, 0, s );
+				buckets[ key ] = bucket = grown;
+			}
+			bucket[ s ] = entry;
+			sizes[ key ] = s + 1;
+			if ( key < minKey )
+				minKey = key;
+			++size;
+		}
+
+		@Override
+		public long poll()
+		{
+			while ( sizes[ minKey ] == 0 )
+				++minKey;
+			--size;
+			return buckets[ minKey ][ --sizes[ minKey ] ];
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+	}
+
+	/**
+	 * Binary min-heap of entries. Subclasses define the ordering.
+	 */
+	private static abstract class Heap< T > extends BoundaryQueue< T >
+	{
+		protected long[] entries = new long[ 64 ];
+
+		protected int size = 0;
+
+		/**
+		 * Is the entry at heap position i less than the one at position j?
+		 */
+		protected abstract boolean less( final int i, final int j );
+
+		/**
+		 * Swap entries (and associated keys) at heap positions i and j.
+		 */
+		protected void swap( final int i, final int j )
+		{
+			final long tmp = entries[ i ];
+			entries[ i ] = entries[ j ];
+			entries[ j ] = tmp;
+		}
+
+		/**
+		 * Make room for one more entry.
+		 */
+		protected void grow()
+		{
+			final long[] grown = new long[ 2 * entries.length ];
+			System.arraycopy( entries, 0, grown, 0, size );
+			entries = grown;
+		}
+
+		protected void siftUp( int i )
+		{
+			while ( i > 0 )
+			{
+				final int parent = ( i - 1 ) >> 1;
+				if ( !less( i, parent ) )
+					break;
+				swap( i, parent );
+				i = parent;
+			}
+		}
+
+		@Override
+		public long poll()
+		{
+			final long top = entries[ 0 ];
+			--size;
+			if ( size > 0 )
+			{
+				swap( 0, size );
+				int i = 0;
+				while ( true )
+				{
+					final int l = 2 * i + 1;
+					if ( l >= size )
+						break;
+					final int r = l + 1;
+					final int c = ( r < size && less( r, l ) ) ? r : l;
+					if ( !less( c, i ) )
+						break;
+					swap( i, c );
+					i = c;
+				}
+			}
+			return top;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return size == 0;
+		}
+	}
+
+	/**
+	 * Heap ordered by <code>double</code> keys obtained from {@link RealType}
+	 * values.
+	 */
+	private static final class RealHeap< T > extends Heap< T >
+	{
+		private double[] keys = new double[ 64 ];
+
+		private final double sign;
+
+		public RealHeap( final boolean ascending )
+		{
+			sign = ascending ? 1 : -1;
+		}
+
+		@Override
+		protected boolean less( final int i, final int j )
+		{
+			return keys[ i ] < keys[ j ];
+		}
+
+		@Override
+		protected void swap( final int i, final int j )
+		{
+			super.swap( i, j );
+			final double tmp = keys[ i ];
+			keys[ i ] = keys[ j ];
+			keys[ j ] = tmp;
+		}
+
+		@Override
+		protected void grow()
+		{
+			super.grow();
+			final double[] grown = new double[ entries.length ];
+			System.arraycopy( keys, 0, grown, 0, size );
+			keys = grown;
+		}
+
+		@Override
+		public void add( final long entry, final T value )
+		{
+			if ( size == entries.length )
+				grow();
+			entries[ size ] = entry;
+			keys[ size ] = sign * ( ( RealType< ? > ) value ).getRealDouble();
+			siftUp( size++ );
+		}
+	}
+
+	/**
+	 * Heap ordered by a {@link Comparator} on the input values. The values of
+	 * compared entries are looked up in the input image.
+	 */
+	private final class ComparatorHeap extends Heap< T >
+	{
+		private final RandomAccess< T > a1;
+
+		private final RandomAccess< T > a2;
+
+		private final long[] tmp;
+
+		public ComparatorHeap( final RandomAccessibleInterval< T > input )
+		{
+			a1 = input.randomAccess();
+			a2 = input.randomAccess();
+			tmp = new long[ input.numDimensions() ];
+		}
+
+		@Override
+		protected boolean less( final int i, final int j )
+		{
+			IntervalIndexer.indexToPosition( entries[ i ] >>> neighborBits, dimensions, tmp );
+			a1.setPosition( tmp );
+			IntervalIndexer.indexToPosition( entries[ j ] >>> neighborBits, dimensions, tmp );
+			a2.setPosition( tmp );
+			return comparator.compare( a1.get(), a2.get() ) < 0;
+		}
+
+		@Override
+		public void add( final long entry, final T value )
+		{
+			if ( size == entries.length )
+				grow();
+			entries[ size ] = entry;
+			siftUp( size++ );
+		}
+	}
+
+	private final Component.Generator< T, C > componentGenerator;
+
+	private final Component.Handler< C > componentOutput;
+
+	private final long[] dimensions;
+
+	/**
+	 * strides[ d ] is the flat index offset between neighbors in dimension d.
+	 */
+	private final long[] strides;
+
+	/**
+	 * One bit per pixel, set if the pixel was visited.
+	 */
+	private final long[] visited;
+
+	/**
+	 * Number of low bits of a boundary entry used for the next neighbor index.
+	 */
+	private final int neighborBits;
+
+	private final BoundaryQueue< T > boundaryPixels;
+
+	private final Deque< C > componentStack;
+
+	private final Comparator< T > comparator;
+
+	/**
+	 * Set up data structures and run the algorithm. Completed components are
+	 * emitted to the provided {@link Component.Handler}.
+	 *
+	 * @param input
+	 *            input image.
+	 * @param componentGenerator
+	 *            provides new {@link Component} instances.
+	 * @param componentOutput
+	 *            receives completed {@link Component}s.
+	 * @param comparator
+	 *            determines ordering of threshold values.
+	 */
+	private FlatIndexComponentTree( final RandomAccessibleInterval< T > input, final Component.Generator< T, C > componentGenerator, final Component.Handler< C > componentOutput, final Comparator< T > comparator )
+	{
+		this.componentGenerator = componentGenerator;
+		this.componentOutput = componentOutput;
+		this.comparator = comparator;
+
+		final int n = input.numDimensions();
+		dimensions = new long[ n ];
+		input.dimensions( dimensions );
+		strides = new long[ n ];
+		long numPixels = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			strides[ d ] = numPixels;
+			numPixels *= dimensions[ d ];
+		}
+		neighborBits = 32 - Integer.numberOfLeadingZeros( 2 * n );
+		if ( numPixels > ( Long.MAX_VALUE >>> neighborBits ) )
+			throw new IllegalArgumentException( "image too large for " + FlatIndexComponentTree.class.getSimpleName() );
+		visited = new long[ ( int ) ( ( numPixels + 63 ) >>> 6 ) ];
+
+		boundaryPixels = createQueue( input );
+
+		componentStack = new ArrayDeque< C >();
+		componentStack.push( componentGenerator.createMaxComponent() );
+
+		run( input );
+	}
+
+	/**
+	 * Choose the boundary pixel queue implementation for the input type and
+	 * comparator.
+	 */
+	private BoundaryQueue< T > createQueue( final RandomAccessibleInterval< T > input )
+	{
+		final boolean ascending = comparator instanceof ComponentTree.DarkToBright;
+		if ( ascending || comparator instanceof ComponentTree.BrightToDark )
+		{
+			final RandomAccess< T > a = input.randomAccess();
+			input.min( a );
+			final T type = a.get();
+			if ( type instanceof IntegerType && type instanceof RealType && !( type instanceof LongType ) )
+			{
+				final RealType< ? > t = ( RealType< ? > ) type;
+				final long min = ( long ) t.getMinValue();
+				final long max = ( long ) t.getMaxValue();
+				if ( max - min < MAX_BUCKETS )
+					return new BucketQueue< T >( min, max, ascending );
+			}
+			// LongType values are not exactly representable as double
+			if ( type instanceof RealType && !( type instanceof LongType ) )
+				return new RealHeap< T >( ascending );
+		}
+		return new ComparatorHeap( input );
+	}
+
+	/**
+	 * Pack pixel index and next neighbor index into a boundary entry.
+	 */
+	private long entry( final long index, final int nextNeighborIndex )
+	{
+		return ( index << neighborBits ) | nextNeighborIndex;
+	}
+
+	/**
+	 * Mark the pixel with the given index as visited.
+	 *
+	 * @return whether the pixel was visited before.
+	 */
+	private boolean visit( final long index )
+	{
+		final int w = ( int ) ( index >>> 6 );
+		final long bit = 1l << ( index & 63 );
+		final long word = visited[ w ];
+		visited[ w ] = word | bit;
+		return ( word & bit ) != 0;
+	}
+
+	/**
+	 * Main loop of the algorithm. This follows the steps of
+	 * {@link ComponentTree}, using flat pixel indices instead of positions.
+	 *
+	 * @param input
+	 *            the input image.
+	 */
+	private void run( final RandomAccessibleInterval< T > input )
+	{
+		final int n = dimensions.length;
+		final int numNeighbors = 2 * n;
+		final long neighborMask = ( 1l << neighborBits ) - 1;
+
+		final RandomAccess< T > current = input.randomAccess();
+		final RandomAccess< T > neighbor = input.randomAccess();
+		input.min( current );
+		input.min( neighbor );
+		final T currentLevel = current.get().createVariable();
+		final T neighborLevel = current.get().createVariable();
+		final long[] position = new long[ n ];
+		long currentIndex = 0;
+		int nextNeighbor = 0;
+
+		// Note that step numbers in the comments below refer to steps in the
+		// Nister & Stewenius paper.
+
+		// step 2
+		visit( currentIndex );
+		currentLevel.set( current.get() );
+
+		// step 3
+		componentStack.push( componentGenerator.createComponent( currentLevel ) );
+
+		// step 4
+		while ( true )
+		{
+			// neighbor is at the position of current here
+			while ( nextNeighbor < numNeighbors )
+			{
+				final int d = nextNeighbor >> 1;
+				final int step;
+				final long neighborIndex;
+				if ( ( nextNeighbor & 1 ) == 0 )
+				{
+					++nextNeighbor;
+					if ( position[ d ] == 0 )
+						continue;
+					step = -1;
+					neighborIndex = currentIndex - strides[ d ];
+				}
+				else
+				{
+					++nextNeighbor;
+					if ( position[ d ] + 1 >= dimensions[ d ] )
+						continue;
+					step = 1;
+					neighborIndex = currentIndex + strides[ d ];
+				}
+				if ( visit( neighborIndex ) )
+					continue;
+				neighbor.move( step, d );
+				neighborLevel.set( neighbor.get() );
+				if ( comparator.compare( neighborLevel, currentLevel ) >= 0 )
+				{
+					boundaryPixels.add( entry( neighborIndex, 0 ), neighborLevel );
+					neighbor.move( -step, d );
+				}
+				else
+				{
+					boundaryPixels.add( entry( currentIndex, nextNeighbor ), currentLevel );
+					current.move( step, d );
+					position[ d ] += step;
+					currentIndex = neighborIndex;
+					currentLevel.set( neighborLevel );
+
+					// go to 3, i.e.:
+					componentStack.push( componentGenerator.createComponent( currentLevel ) );
+					nextNeighbor = 0;
+				}
+			}
+
+			// step 5
+			final C component = componentStack.peek();
+			component.addPosition( current );
+
+			// step 6
+			if ( boundaryPixels.isEmpty() )
+			{
+				processStack( currentLevel );
+				return;
+			}
+
+			final long p = boundaryPixels.poll();
+			currentIndex = p >>> neighborBits;
+			nextNeighbor = ( int ) ( p & neighborMask );
+			IntervalIndexer.indexToPosition( currentIndex, dimensions, position );
+			current.setPosition( position );
+			neighbor.setPosition( position );
+			neighborLevel.set( current.get() );
+			if ( comparator.compare( neighborLevel, currentLevel ) != 0 )
+			{
+				// step 7
+				processStack( neighborLevel );
+			}
+			currentLevel.set( neighborLevel );
+		}
+	}
+
+	/**
+	 * This is called whenever the current value is raised.
+	 *
+	 * @param value
+	 */
+	private void processStack( final T value )
+	{
+		while ( true )
+		{
+			// process component on top of stack
+			final C component = componentStack.pop();
+			componentOutput.emit( component );
+
+			// get level of second component on stack
+			final C secondComponent = componentStack.peek();
+			try
+			{
+				final int c = comparator.compare( value, secondComponent.getValue() );
+				if ( c < 0 )
+				{
+					component.setValue( value );
+					componentStack.push( component );
+				}
+				else
+				{
+					secondComponent.merge( component );
+					if ( c > 0 )
+						continue;
+				}
+				return;
+			}
+			catch ( final NullPointerException e )
+			{
+				componentStack.push( component );
+				return;
+			}
+		}
+	}
+}
@@ -45,6 +45,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.componenttree.Component;
 import net.imglib2.algorithm.componenttree.ComponentTree;
+import net.imglib2.algorithm.componenttree.FlatIndexComponentTree;
 import net.imglib2.algorithm.componenttree.pixellist.PixelList;
 import net.imglib2.algorithm.componenttree.pixellist.PixelListComponent;
 import net.imglib2.img.ImgFactory;
@@ -192,7 +193,7 @@ public final class MserTree< T extends Type< T > > implements Component.Handler<
 		final Comparator< T > comparator = darkToBright ? new ComponentTree.DarkToBright< T >() : new ComponentTree.BrightToDark< T >();
 		final ComputeDelta< T > computeDelta = darkToBright ? new ComputeDeltaDarkToBright< T >( delta ) : new ComputeDeltaBrightToDark< T >( delta ); 
 		final MserTree< T > tree = new MserTree< T >( comparator, computeDelta, minSize, maxSize, maxVar, minDiversity );
-		ComponentTree.buildComponentTree( input, generator, tree, comparator );
+		FlatIndexComponentTree.buildComponentTree( input, generator, tree, comparator );
 		tree.pruneDuplicates();
 		return tree;
 	}
@@ -264,7 +265,7 @@ public final class MserTree< T extends Type< T > > implements Component.Handler<
 	{
 		final MserComponentGenerator< T > generator = new MserComponentGenerator< T >( maxValue, input, imgFactory );
 		final MserTree< T > tree = new MserTree< T >( comparator, computeDelta, minSize, maxSize, maxVar, minDiversity );
-		ComponentTree.buildComponentTree( input, generator, tree, comparator );
+		FlatIndexComponentTree.buildComponentTree( input, generator, tree, comparator );
 		tree.pruneDuplicates();
 		return tree;
 	}
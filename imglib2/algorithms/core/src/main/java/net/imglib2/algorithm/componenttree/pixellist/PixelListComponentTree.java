@@ -43,6 +43,7 @@ import java.util.Iterator;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.componenttree.Component;
 import net.imglib2.algorithm.componenttree.ComponentTree;
+import net.imglib2.algorithm.componenttree.FlatIndexComponentTree;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.cell.CellImgFactory;
@@ -117,7 +118,7 @@ public final class PixelListComponentTree< T extends Type< T > > implements Comp
 		max.setReal( darkToBright ? type.getMaxValue() : type.getMinValue() );
 		final PixelListComponentGenerator< T > generator = new PixelListComponentGenerator< T >( max, input, imgFactory );
 		final PixelListComponentTree< T > tree = new PixelListComponentTree< T >();
-		ComponentTree.buildComponentTree( input, generator, tree, darkToBright );
+		FlatIndexComponentTree.buildComponentTree( input, generator, tree, darkToBright );
 		return tree;
 	}
 
@@ -168,7 +169,7 @@ public final class PixelListComponentTree< T extends Type< T > > implements Comp
 	{
 		final PixelListComponentGenerator< T > generator = new PixelListComponentGenerator< T >( maxValue, input, imgFactory );
 		final PixelListComponentTree< T > tree = new PixelListComponentTree< T >();
-		ComponentTree.buildComponentTree( input, generator, tree, comparator );
+		FlatIndexComponentTree.buildComponentTree( input, generator, tree, comparator );
 		return tree;
 	}
 
@@ -36,8 +36,6 @@
 
 package net.imglib2.algorithm.gauss;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
@@ -50,10 +48,11 @@ import net.imglib2.Sampler;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
-import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
-import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 
@@ -82,7 +81,7 @@ public abstract class AbstractGauss< T extends NumericType< T > >
 				  final RandomAccessible<T> output, final Localizable outputOffset, 
 				  final ImgFactory<T> factory, final T type )
 	{
-		this.numThreads = Runtime.getRuntime().availableProcessors();
+		this.numThreads = TaskExecutor.getInstance().getNumThreads();
 		this.numDimensions = sigma.length;
 		this.input = input;
 		this.output = output;
@@ -675,73 +674,67 @@ public abstract class AbstractGauss< T extends NumericType< T > >
 				final int dim = d;
 				final int numThreads = getNumThreads();
 				
-				final AtomicInteger ai = new AtomicInteger();
-				final Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
-				
-				for (int ithread = 0; ithread < threads.length; ++ithread)
-					threads[ithread] = new Thread(new Runnable()
+				final Interval range = getRange( dim );
+
+				/**
+				 * Here we use a virtual interval over all dimensions except the one we are computing in,
+				 * every point of it is the start of one line that is convolved
+				 */
+				final long[] fakeSize = new long[ numDimensions - 1 ];
+
+				// get all dimensions except the one we are currently doing the gauss on
+				int countDim = 0;
+				long numLines = 1;
+				for ( int e = 0; e < numDimensions; ++e )
+					if ( e != dim )
+					{
+						fakeSize[ countDim ] = range.dimension( e );
+						numLines *= fakeSize[ countDim++ ];
+					}
+
+				// distribute the lines in chunks over the shared pool of threads
+				TaskExecutor.getInstance().forEachChunk( numLines, numThreads, new ChunkTask()
+				{
+					@Override
+					public void run( final long startPosition, final long loopSize )
 					{
-						public void run()
+						final long[] linePosition = new long[ numDimensions - 1 ];
+						final long[] tmp = new long[ numDimensions ];
+
+						// create the iterator in the input image for the current dimension
+						final SamplingLineIterator< T > inputLineIterator = createInputLineSampler( dim, range );
+						final Localizable offsetInput = inputLineIterator.getOffset();
+
+						// get the iterator in the output image for the current dimension position
+						final WritableLineIterator< T > outputLineIterator = createOutputLineWriter( dim, range, inputLineIterator );
+						final Localizable offsetOutput = outputLineIterator.getOffset();
+
+						// iterate over all lines of this chunk
+						for ( long line = startPosition; line < startPosition + loopSize; ++line )
 						{
-							final int myNumber = ai.getAndIncrement();
-
-							final Interval range = getRange( dim );
-											
-							/**
-							 * Here create a virtual LocalizingZeroMinIntervalIterator to iterate through all dimensions except the one we are computing in 
-							 */	
-							final long[] fakeSize = new long[ numDimensions - 1 ];
-							final long[] tmp = new long[ numDimensions ];
-							
-							// get all dimensions except the one we are currently doing the gauss on
-							int countDim = 0;						
+							// update all positions except for the one we are currrently doing the gauss on
+							IntervalIndexer.indexToPosition( line, fakeSize, linePosition );
+
+							tmp[ dim ] = 0;
+							int countDim = 0;
 							for ( int d = 0; d < numDimensions; ++d )
 								if ( d != dim )
-									fakeSize[ countDim++ ] = range.dimension( d );
-				
-							// create the iterator in the input image for the current dimension
-							final SamplingLineIterator< T > inputLineIterator = createInputLineSampler( dim, range );
-							final Localizable offsetInput = inputLineIterator.getOffset();
-			
-							// get the iterator in the output image for the current dimension position
-							final WritableLineIterator< T > outputLineIterator = createOutputLineWriter( dim, range, inputLineIterator );
-							final Localizable offsetOutput = outputLineIterator.getOffset();
-			
-							final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
-							
-							// iterate over all dimensions except the one we are computing in
-							while( cursorDim.hasNext() )
-							{
-								cursorDim.fwd();							
-								
-								if ( numThreads == 1 || cursorDim.getIntPosition( 0 ) % numThreads == myNumber )
-								{
-									// update all positions except for the one we are currrently doing the gauss on
-									cursorDim.localize( fakeSize );
-					
-									tmp[ dim ] = 0;								
-									countDim = 0;						
-									for ( int d = 0; d < numDimensions; ++d )
-										if ( d != dim )
-											tmp[ d ] = fakeSize[ countDim++ ];
-									
-									// update the iterator in the input image for the current dimension position
-									updateInputLineSampler( inputLineIterator, range, tmp, offsetInput );
-									
-									// compute the current line
-									processLine( inputLineIterator, kernel[ dim ] );
-					
-									// update the iterator in the input image for the current dimension position
-									updateOutputLineWriter( outputLineIterator, range, tmp, offsetOutput );
-					
-									// and write it back to the output/temp image
-									writeLine( outputLineIterator, inputLineIterator );
-								}
-							}
+									tmp[ d ] = linePosition[ countDim++ ];
+
+							// update the iterator in the input image for the current dimension position
+							updateInputLineSampler( inputLineIterator, range, tmp, offsetInput );
+
+							// compute the current line
+							processLine( inputLineIterator, kernel[ dim ] );
+
+							// update the iterator in the input image for the current dimension position
+							updateOutputLineWriter( outputLineIterator, range, tmp, offsetOutput );
+
+							// and write it back to the output/temp image
+							writeLine( outputLineIterator, inputLineIterator );
+						}
 					}
-				});
-				
-				SimpleMultiThreading.startAndJoin( threads );
+				} );
 			}
 		}
 		else
@@ -37,11 +37,13 @@
 package net.imglib2.algorithm.integral;
 
 import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.NumericType;
 
@@ -56,29 +58,46 @@ import net.imglib2.type.numeric.NumericType;
  * Sums are done with the precision of {@param <T>} and then set to the integral image type,
  * which may crop the values according to the type's capabilities.
  *
+ * The lines of each dimension are independent and are integrated
+ * concurrently on the shared {@link TaskExecutor}, so the {@link Converter}
+ * must be thread safe (or {@link #setNumThreads(int)} be set to 1).
+ *
+ * For streaming data, e.g. a video buffer that is filled frame by frame,
+ * {@link #update(long, long)} integrates only newly appended hyperplanes of
+ * the last dimension.
+ *
  * @param <R> The type of the input image.
  * @param <T> The type of the integral image.
  *
  * @author Stephan Preibisch
  * @author Albert Cardona
  */
-public class IntegralImg< R extends NumericType< R >, T extends NumericType< T > & NativeType< T > > implements OutputAlgorithm< Img< T > >
+public class IntegralImg< R extends NumericType< R >, T extends NumericType< T > & NativeType< T > > implements OutputAlgorithm< Img< T > >, MultiThreaded
 {
 	protected final Img< R > img;
 	protected final T type;
 	protected Img< T > integral;
 	protected final Converter< R, T > converter;
+	protected int numThreads;
 
 	public IntegralImg( final Img< R > img, final T type, final Converter< R, T > converter )
 	{
 		this.img = img;
 		this.type = type;
 		this.converter = converter;
+		this.numThreads = TaskExecutor.getInstance().getNumThreads();
 	}
 
-	@Override
-	public boolean process()
+	/**
+	 * Allocate the integral image (filled with zeros) if it does not exist yet.
+	 *
+	 * @return false if it could not be created
+	 */
+	protected boolean createIntegral()
 	{
+		if ( integral != null )
+			return true;
+
 		final int numDimensions = img.numDimensions();
 		final long[] integralSize = new long[ numDimensions ];
 
@@ -94,168 +113,199 @@ public class IntegralImg< R extends NumericType< R >, T extends NumericType< T >
 		else
 			this.integral = integral;
 
-		if ( numDimensions > 1 )
-		{
-			/**
-			 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the integral image in
-			 */
-			final long[] fakeSize = new long[ numDimensions - 1 ];
-
-			// location for the input location
-			final long[] tmpIn = new long[ numDimensions ];
-
-			// location for the integral location
-			final long[] tmpOut = new long[ numDimensions ];
-
-			// the size of dimension 0
-			final long size = integralSize[ 0 ];
-
-			for ( int d = 1; d < numDimensions; ++d )
-				fakeSize[ d - 1 ] = integralSize[ d ];
+		return true;
+	}
 
-			final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
+	@Override
+	public boolean process()
+	{
+		integral = null;
+		if ( !createIntegral() )
+			return false;
 
-			final RandomAccess< R > cursorIn = img.randomAccess();
-			final RandomAccess< T > cursorOut = integral.randomAccess();
+		final int numDimensions = img.numDimensions();
+		final long[] min = new long[ numDimensions ];
+		final long[] max = new long[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			min[ d ] = 1;
+			max[ d ] = integral.dimension( d ) - 1;
+		}
 
-			final T tmpVar = type.createVariable();
-			final T sum = type.createVariable();
+		integrateDim0( min, max );
+		for ( int d = 1; d < numDimensions; ++d )
+			integrate( d, min, max );
 
-			// iterate over all dimensions except the one we are computing the integral in, which is dim=0 here
-main:		while( cursorDim.hasNext() )
-			{
-				cursorDim.fwd();
+		return true;
+	}
 
-				// get all dimensions except the one we are currently doing the integral on
-				cursorDim.localize( fakeSize );
+	/**
+	 * Update the integral image after the hyperplanes min to max (inclusive)
+	 * of the last dimension of the input image have been written, e.g. when
+	 * frames are appended to a video buffer. The integral image must be
+	 * correct for all input hyperplanes before min; hyperplanes after max are
+	 * not updated, so they have to be appended in order. If the integral
+	 * image has not been computed yet, it is created filled with zeros, so a
+	 * stream can be integrated by calling this method for every new slab.
+	 *
+	 * @param min - first updated position of the last dimension
+	 * @param max - last updated position of the last dimension
+	 * @return false if the integral image could not be created
+	 */
+	public boolean update( final long min, final long max )
+	{
+		if ( !createIntegral() )
+			return false;
 
-				tmpIn[ 0 ] = 0;
-				tmpOut[ 0 ] = 1;
+		final int numDimensions = img.numDimensions();
+		final int last = numDimensions - 1;
+		final long[] boxMin = new long[ numDimensions ];
+		final long[] boxMax = new long[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			boxMin[ d ] = 1;
+			boxMax[ d ] = integral.dimension( d ) - 1;
+		}
 
-				for ( int d = 1; d < numDimensions; ++d )
-				{
-					tmpIn[ d ] = fakeSize[ d - 1 ] - 1;
-					tmpOut[ d ] = fakeSize[ d - 1 ];
+		if ( numDimensions == 1 )
+		{
+			// a line cannot be continued from its middle
+			integrateDim0( boxMin, boxMax );
+			return true;
+		}
 
-					// all entries of position 0 are 0
-					if ( tmpOut[ d ] == 0 )
-						continue main;
-				}
+		// integrate the new hyperplanes within themselves ...
+		boxMin[ last ] = min + 1;
+		boxMax[ last ] = max + 1;
+		integrateDim0( boxMin, boxMax );
+		for ( int d = 1; d < last; ++d )
+			integrate( d, boxMin, boxMax );
 
-				// set the cursor to the beginning of the correct line
-				cursorIn.setPosition( tmpIn );
+		// ... and add them up along the last dimension, starting from the
+		// (correct) hyperplane before them
+		boxMin[ last ] = min;
+		integrate( last, boxMin, boxMax );
 
-				// set the cursor in the integral image to the right position
-				cursorOut.setPosition( tmpOut );
-				
-				// integrate over the line
-				integrateLineDim0( converter, cursorIn, cursorOut, sum, tmpVar, size );
-				/*
-				// compute the first pixel
-				converter.convert( cursorIn.getType(), sum );
-				cursorOut.getType().set( sum );
+		return true;
+	}
 
-				for ( int i = 2; i < size; ++i )
-				{
-					cursorIn.fwd( 0 );
-					cursorOut.fwd( 0 );
+	/**
+	 * Integrate the lines along dimension 0 of the input image into the
+	 * integral image for all lines whose integral positions in the other
+	 * dimensions lie within [min, max].
+	 */
+	protected void integrateDim0( final long[] min, final long[] max )
+	{
+		final int numDimensions = min.length;
+		final long size = integral.dimension( 0 );
 
-					converter.convert( cursorIn.getType(), tmpVar );
-					sum.add( tmpVar );
-					cursorOut.getType().set( sum );
-				}
-				*/
-			}
-		}
-		else
+		TaskExecutor.getInstance().forEachChunk( numLines( 0, min, max ), numThreads, new ChunkTask()
 		{
-			final T tmpVar = type.createVariable();
-			final T sum = type.createVariable();
+			@Override
+			public void run( final long start, final long loopSize )
+			{
+				final long[] tmpIn = new long[ numDimensions ];
+				final long[] tmpOut = new long[ numDimensions ];
 
-			// the size of dimension 0
-			final long size = integralSize[ 0 ];
+				final RandomAccess< R > cursorIn = img.randomAccess();
+				final RandomAccess< T > cursorOut = integral.randomAccess();
 
-			final RandomAccess< R > cursorIn = img.randomAccess();
-			final RandomAccess< T > cursorOut = integral.randomAccess();
+				final T tmpVar = type.createVariable();
+				final T sum = type.createVariable();
 
-			cursorIn.setPosition( 0, 0 );
-			cursorOut.setPosition( 1, 0 );
+				for ( long line = start; line < start + loopSize; ++line )
+				{
+					linePosition( 0, line, min, max, tmpOut );
+					tmpOut[ 0 ] = 1;
+					for ( int d = 0; d < numDimensions; ++d )
+						tmpIn[ d ] = tmpOut[ d ] - 1;
 
-			// compute the first pixel
-			converter.convert( cursorIn.get(), sum );
-			cursorOut.get().set( sum );
+					// set the cursor to the beginning of the correct line
+					cursorIn.setPosition( tmpIn );
 
-			for ( int i = 2; i < size; ++i )
-			{
-				cursorIn.fwd( 0 );
-				cursorOut.fwd( 0 );
+					// set the cursor in the integral image to the right position
+					cursorOut.setPosition( tmpOut );
 
-				converter.convert( cursorIn.get(), tmpVar );
-				sum.add( tmpVar );
-				cursorOut.get().set( sum );
+					// integrate over the line
+					integrateLineDim0( converter, cursorIn, cursorOut, sum, tmpVar, size );
+				}
 			}
+		} );
+	}
 
-			return true;
-		}
+	/**
+	 * Sum up the integral image along dimension d for all lines whose
+	 * positions in the other dimensions lie within [min, max]. Each line
+	 * starts at min[ d ], which is taken as is, and ends at max[ d ].
+	 */
+	protected void integrate( final int d, final long[] min, final long[] max )
+	{
+		final int numDimensions = min.length;
+		final long size = max[ d ] - min[ d ] + 2;
 
-		for ( int d = 1; d < numDimensions; ++d )
+		TaskExecutor.getInstance().forEachChunk( numLines( d, min, max ), numThreads, new ChunkTask()
 		{
-			/**
-			 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the fft in
-			 */
-			final long[] fakeSize = new long[ numDimensions - 1 ];
-			final long[] tmp = new long[ numDimensions ];
+			@Override
+			public void run( final long start, final long loopSize )
+			{
+				final long[] tmp = new long[ numDimensions ];
+				final RandomAccess< T > cursor = integral.randomAccess();
+				final T sum = type.createVariable();
 
-			// the size of dimension d
-			final long size = integralSize[ d ];
+				for ( long line = start; line < start + loopSize; ++line )
+				{
+					linePosition( d, line, min, max, tmp );
+					tmp[ d ] = min[ d ];
 
-			// get all dimensions except the one we are currently doing the integral on
-			int countDim = 0;
-			for ( int e = 0; e < numDimensions; ++e )
-				if ( e != d )
-					fakeSize[ countDim++ ] = integralSize[ e ];
+					// update the cursor to the start of the line
+					cursor.setPosition( tmp );
 
-			final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
+					// sum up line
+					integrateLine( d, cursor, sum, size );
+				}
+			}
+		} );
+	}
 
-			final RandomAccess< T > cursor = integral.randomAccess();
-			final T sum = type.createVariable();
+	/**
+	 * @return the number of lines along dimension d within [min, max]
+	 */
+	private static long numLines( final int d, final long[] min, final long[] max )
+	{
+		long numLines = 1;
+		for ( int e = 0; e < min.length; ++e )
+			if ( e != d )
+				numLines *= max[ e ] - min[ e ] + 1;
+		return numLines;
+	}
 
-			while( cursorDim.hasNext() )
+	/**
+	 * Set the position of the given line along dimension d within [min, max]
+	 * in all other dimensions.
+	 */
+	private static void linePosition( final int d, final long line, final long[] min, final long[] max, final long[] position )
+	{
+		long index = line;
+		for ( int e = 0; e < min.length; ++e )
+		{
+			if ( e != d )
 			{
-				cursorDim.fwd();
-
-				// get all dimensions except the one we are currently doing the integral on
-				cursorDim.localize( fakeSize );
-
-				tmp[ d ] = 1;
-				countDim = 0;
-				for ( int e = 0; e < numDimensions; ++e )
-					if ( e != d )
-						tmp[ e ] = fakeSize[ countDim++ ];
-
-				// update the cursor in the input image to the current dimension position
-				cursor.setPosition( tmp );
+				final long size = max[ e ] - min[ e ] + 1;
+				position[ e ] = min[ e ] + index % size;
+				index /= size;
+			}
+		}
+	}
 
-				// sum up line
-				integrateLine( d, cursor, sum, size );
-				/*
-				// init sum on first pixel that is not zero
-				sum.set( cursor.getType() );
+	@Override
+	public void setNumThreads() { this.numThreads = TaskExecutor.getInstance().getNumThreads(); }
 
-				for ( int i = 2; i < size; ++i )
-				{
-					cursor.fwd( d );
+	@Override
+	public void setNumThreads( final int numThreads ) { this.numThreads = numThreads; }
 
-					sum.add( cursor.getType() );
-					cursor.getType().set( sum );
-				}
-				*/
-			}
-		}
+	@Override
+	public int getNumThreads() { return numThreads; }
 
-		return true;
-	}
-	
 	protected void integrateLineDim0( final Converter< R, T > converter, final RandomAccess< R > cursorIn, final RandomAccess< T > cursorOut, final T sum, final T tmpVar, final long size )
 	{
 		// compute the first pixel
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.integral;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Constant-time sums over boxes of the input image, read from an integral
+ * image as computed by {@link IntegralImg}. The sum over a box is assembled
+ * from the integral values at its 2^n corners.
+ *
+ * If the integral image is an {@link ArrayImg} of {@link LongArray} or
+ * {@link DoubleArray} storage (as created by {@link IntegralImgLong} and
+ * {@link IntegralImgDouble}), the corners are read directly from the
+ * primitive array and the queries may be issued concurrently. Otherwise they
+ * are read through a {@link RandomAccess}, and each thread needs its own
+ * instance.
+ *
+ * @param <T> The type of the integral image.
+ */
+public class IntegralSum< T extends RealType< T > >
+{
+	protected final int n;
+
+	/**
+	 * flat index stride of each dimension of the integral image
+	 */
+	protected final long[] strides;
+
+	protected final long[] longData;
+
+	protected final double[] doubleData;
+
+	protected final RandomAccess< T > randomAccess;
+
+	/**
+	 * @param integral - the integral image, one pixel larger than the input
+	 *            in every dimension
+	 */
+	public IntegralSum( final Img< T > integral )
+	{
+		n = integral.numDimensions();
+		strides = new long[ n ];
+		long stride = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			strides[ d ] = stride;
+			stride *= integral.dimension( d );
+		}
+
+		final Object access = integral instanceof ArrayImg ? ( ( ArrayImg< ?, ? > ) integral ).update( null ) : null;
+		longData = access instanceof LongArray ? ( ( LongArray ) access ).getCurrentStorageArray() : null;
+		doubleData = access instanceof DoubleArray ? ( ( DoubleArray ) access ).getCurrentStorageArray() : null;
+		randomAccess = ( longData == null && doubleData == null ) ? integral.randomAccess() : null;
+	}
+
+	/**
+	 * Returns the sum of the input image over the box [min, max] (inclusive,
+	 * in input image coordinates).
+	 *
+	 * @param min - the minimum of the box
+	 * @param max - the maximum of the box
+	 * @return the sum of all pixels in the box
+	 */
+	public double sum( final long[] min, final long[] max )
+	{
+		if ( longData != null )
+			return sumLong( min, max );
+
+		double sum = 0;
+		for ( int corner = 0; corner < 1 << n; ++corner )
+		{
+			final double value;
+			if ( doubleData != null )
+				value = doubleData[ ( int ) cornerIndex( corner, min, max ) ];
+			else
+			{
+				for ( int d = 0; d < n; ++d )
+					randomAccess.setPosition( ( corner & 1 << d ) == 0 ? min[ d ] : max[ d ] + 1, d );
+				value = randomAccess.get().getRealDouble();
+			}
+			if ( isPositive( corner ) )
+				sum += value;
+			else
+				sum -= value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the sum of the input image over the box [min, max] (inclusive,
+	 * in input image coordinates) exactly if the integral image stores longs.
+	 *
+	 * @param min - the minimum of the box
+	 * @param max - the maximum of the box
+	 * @return the sum of all pixels in the box
+	 */
+	public long sumLong( final long[] min, final long[] max )
+	{
+		if ( longData == null )
+			return ( long ) sum( min, max );
+
+		long sum = 0;
+		for ( int corner = 0; corner < 1 << n; ++corner )
+		{
+			final long value = longData[ ( int ) cornerIndex( corner, min, max ) ];
+			if ( isPositive( corner ) )
+				sum += value;
+			else
+				sum -= value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the sum of a 2d input image over the rectangle [x0, x1] x [y0,
+	 * y1] (inclusive).
+	 */
+	public double sum( final long x0, final long y0, final long x1, final long y1 )
+	{
+		if ( longData != null )
+		{
+			final long sx = strides[ 1 ];
+			return longData[ ( int ) ( ( x1 + 1 ) + ( y1 + 1 ) * sx ) ] - longData[ ( int ) ( x0 + ( y1 + 1 ) * sx ) ] - longData[ ( int ) ( ( x1 + 1 ) + y0 * sx ) ] + longData[ ( int ) ( x0 + y0 * sx ) ];
+		}
+		else if ( doubleData != null )
+		{
+			final long sx = strides[ 1 ];
+			return doubleData[ ( int ) ( ( x1 + 1 ) + ( y1 + 1 ) * sx ) ] - doubleData[ ( int ) ( x0 + ( y1 + 1 ) * sx ) ] - doubleData[ ( int ) ( ( x1 + 1 ) + y0 * sx ) ] + doubleData[ ( int ) ( x0 + y0 * sx ) ];
+		}
+		else
+			return sum( new long[] { x0, y0 }, new long[] { x1, y1 } );
+	}
+
+	/**
+	 * A corner is the maximum corner (max + 1) in the dimensions whose bit is
+	 * set and the minimum corner in all others.
+	 */
+	protected long cornerIndex( final int corner, final long[] min, final long[] max )
+	{
+		long index = 0;
+		for ( int d = 0; d < n; ++d )
+			index += ( ( corner & 1 << d ) == 0 ? min[ d ] : max[ d ] + 1 ) * strides[ d ];
+		return index;
+	}
+
+	/**
+	 * The corner is added if the number of minimum coordinates is even and
+	 * subtracted otherwise.
+	 */
+	protected boolean isPositive( final int corner )
+	{
+		return ( ( n - Integer.bitCount( corner ) ) & 1 ) == 0;
+	}
+}
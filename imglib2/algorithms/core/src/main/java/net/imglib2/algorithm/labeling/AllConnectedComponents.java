@@ -47,6 +47,8 @@ import net.imglib2.img.Img;
 import net.imglib2.labeling.Labeling;
 import net.imglib2.labeling.LabelingOutOfBoundsRandomAccessFactory;
 import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.outofbounds.OutOfBoundsFactory;
 import net.imglib2.type.logic.BitType;
@@ -123,6 +125,10 @@ public class AllConnectedComponents
 	 * Label all connected components in the given image using an arbitrary
 	 * structuring element.
 	 * 
+	 * If the labeling is a {@link NativeImgLabeling} and the structuring
+	 * element is symmetric, this is done in parallel by
+	 * {@link ParallelConnectedComponents}, with the same result.
+	 * 
 	 * @param <T>
 	 *            the type of the labels to apply
 	 * @param labeling
@@ -140,6 +146,11 @@ public class AllConnectedComponents
 	 */
 	public static < T extends Comparable< T >> void labelAllConnectedComponents( Labeling< T > labeling, Img< BitType > img, Iterator< T > names, long[][] structuringElement ) throws NoSuchElementException
 	{
+		if ( labeling instanceof NativeImgLabeling && ParallelConnectedComponents.canLabel( img, structuringElement ) )
+		{
+			ParallelConnectedComponents.labelAllConnectedComponents( ( NativeImgLabeling< T, ? > ) labeling, img, names, structuringElement, TaskExecutor.getInstance().getNumThreads() );
+			return;
+		}
 		Cursor< BitType > c = img.localizingCursor();
 		RandomAccess< BitType > raSrc = img.randomAccess();
 		OutOfBoundsFactory< LabelingType< T >, Labeling< T >> factory = new LabelingOutOfBoundsRandomAccessFactory< T, Labeling< T >>();
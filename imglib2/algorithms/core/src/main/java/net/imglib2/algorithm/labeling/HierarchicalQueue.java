@@ -0,0 +1,318 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.labeling;
+
+/**
+ * A priority queue of pixels, stored as flat long indices in primitive arrays.
+ * Pixels are removed in order of increasing intensity, and pixels of equal
+ * intensity in the order in which they were added - the same order as a
+ * {@link java.util.PriorityQueue} of (intensity, age) pairs.
+ * 
+ * The queue is organized in levels of quantized intensity. If the intensities
+ * are integer and the range fits into the number of levels, every level
+ * holds exactly one intensity and is a FIFO queue. Otherwise every level is a
+ * binary heap ordered by (intensity, age).
+ */
+public class HierarchicalQueue
+{
+	/**
+	 * default maximal number of levels
+	 */
+	public static final int DEFAULT_NUM_LEVELS = 1 << 16;
+
+	final static int INITIAL_CAPACITY = 16;
+
+	final double min;
+
+	final double scale;
+
+	final int numLevels;
+
+	/**
+	 * whether every level holds exactly one intensity (and is a FIFO queue)
+	 */
+	final boolean exact;
+
+	final long[][] indices;
+
+	// only used if !exact
+	final double[][] intensities;
+
+	final long[][] ages;
+
+	// FIFO: indices[ level ][ head[ level ] ... tail[ level ] - 1 ]
+	// heap: indices[ level ][ 0 ... tail[ level ] - 1 ]
+	final int[] head;
+
+	final int[] tail;
+
+	/**
+	 * the lowest level that may be non-empty
+	 */
+	int lowest;
+
+	long size = 0;
+
+	long age = 0;
+
+	/**
+	 * Create a queue for intensities in the range [min, max]. Intensities
+	 * outside this range (and NaN) are allowed, but they end up in the lowest
+	 * or highest level.
+	 * 
+	 * @param min
+	 *            the minimal intensity
+	 * @param max
+	 *            the maximal intensity
+	 * @param maxNumLevels
+	 *            the maximal number of levels
+	 * @param integerIntensities
+	 *            whether all intensities are integer values
+	 */
+	public HierarchicalQueue( final double min, final double max, final int maxNumLevels, final boolean integerIntensities )
+	{
+		final double range = max - min;
+		this.min = min;
+		exact = integerIntensities && range + 1 <= maxNumLevels;
+		if ( exact )
+		{
+			numLevels = ( int ) range + 1;
+			scale = 1;
+		}
+		else
+		{
+			numLevels = Math.max( 1, maxNumLevels );
+			scale = range > 0 && !Double.isInfinite( range ) ? ( numLevels - 1 ) / range : 0;
+		}
+
+		indices = new long[ numLevels ][];
+		intensities = exact ? null : new double[ numLevels ][];
+		ages = exact ? null : new long[ numLevels ][];
+		head = new int[ numLevels ];
+		tail = new int[ numLevels ];
+		lowest = numLevels;
+	}
+
+	public HierarchicalQueue( final double min, final double max, final boolean integerIntensities )
+	{
+		this( min, max, DEFAULT_NUM_LEVELS, integerIntensities );
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Add a pixel.
+	 * 
+	 * @param index
+	 *            flat index of the pixel
+	 * @param intensity
+	 *            intensity of the pixel
+	 */
+	public void add( final long index, final double intensity )
+	{
+		final int level = level( intensity );
+		if ( exact )
+			addLast( level, index );
+		else
+			addToHeap( level, index, intensity, age );
+
+		++age;
+		++size;
+		if ( level < lowest )
+			lowest = level;
+	}
+
+	/**
+	 * Remove the pixel with the lowest intensity that was added first.
+	 * 
+	 * @return flat index of the pixel
+	 */
+	public long remove()
+	{
+		if ( size == 0 )
+			throw new IllegalStateException( "HierarchicalQueue is empty." );
+
+		while ( head[ lowest ] == tail[ lowest ] )
+			++lowest;
+
+		--size;
+		return exact ? removeFirst( lowest ) : removeFromHeap( lowest );
+	}
+
+	int level( final double intensity )
+	{
+		if ( exact )
+			return Math.max( 0, Math.min( numLevels - 1, ( int ) ( intensity - min ) ) );
+
+		// NaN is sorted after all other values by Double.compare()
+		if ( Double.isNaN( intensity ) )
+			return numLevels - 1;
+
+		final double l = ( intensity - min ) * scale;
+		if ( l <= 0 )
+			return 0;
+		else if ( l >= numLevels - 1 )
+			return numLevels - 1;
+		else
+			return ( int ) l;
+	}
+
+	private void addLast( final int level, final long index )
+	{
+		long[] a = indices[ level ];
+		if ( a == null )
+		{
+			a = new long[ INITIAL_CAPACITY ];
+			indices[ level ] = a;
+		}
+		else if ( tail[ level ] == a.length )
+		{
+			final int n = tail[ level ] - head[ level ];
+			// compact if at least half of the array is unused, grow otherwise
+			final long[] b = n <= a.length / 2 ? a : new long[ 2 * a.length ];
+			System.arraycopy( a, head[ level ], b, 0, n );
+			head[ level ] = 0;
+			tail[ level ] = n;
+			a = b;
+			indices[ level ] = a;
+		}
+		a[ tail[ level ]++ ] = index;
+	}
+
+	private long removeFirst( final int level )
+	{
+		final long index = indices[ level ][ head[ level ]++ ];
+		if ( head[ level ] == tail[ level ] )
+			head[ level ] = tail[ level ] = 0;
+		return index;
+	}
+
+	private static boolean less( final double i1, final long a1, final double i2, final long a2 )
+	{
+		final int c = Double.compare( i1, i2 );
+		return c < 0 || ( c == 0 && a1 < a2 );
+	}
+
+	private void addToHeap( final int level, final long index, final double intensity, final long a )
+	{
+		if ( indices[ level ] == null )
+		{
+			indices[ level ] = new long[ INITIAL_CAPACITY ];
+			intensities[ level ] = new double[ INITIAL_CAPACITY ];
+			ages[ level ] = new long[ INITIAL_CAPACITY ];
+		}
+		else if ( tail[ level ] == indices[ level ].length )
+		{
+			final int n = 2 * tail[ level ];
+			final long[] ni = new long[ n ];
+			final double[] nt = new double[ n ];
+			final long[] na = new long[ n ];
+			System.arraycopy( indices[ level ], 0, ni, 0, tail[ level ] );
+			System.arraycopy( intensities[ level ], 0, nt, 0, tail[ level ] );
+			System.arraycopy( ages[ level ], 0, na, 0, tail[ level ] );
+			indices[ level ] = ni;
+			intensities[ level ] = nt;
+			ages[ level ] = na;
+		}
+
+		final long[] hi = indices[ level ];
+		final double[] ht = intensities[ level ];
+		final long[] ha = ages[ level ];
+
+		// sift up
+		int i = tail[ level ]++;
+		while ( i > 0 )
+		{
+			final int parent = ( i - 1 ) >> 1;
+			if ( !less( intensity, a, ht[ parent ], ha[ parent ] ) )
+				break;
+			hi[ i ] = hi[ parent ];
+			ht[ i ] = ht[ parent ];
+			ha[ i ] = ha[ parent ];
+			i = parent;
+		}
+		hi[ i ] = index;
+		ht[ i ] = intensity;
+		ha[ i ] = a;
+	}
+
+	private long removeFromHeap( final int level )
+	{
+		final long[] hi = indices[ level ];
+		final double[] ht = intensities[ level ];
+		final long[] ha = ages[ level ];
+
+		final long index = hi[ 0 ];
+		final int n = --tail[ level ];
+		if ( n == 0 )
+			return index;
+
+		final long lastIndex = hi[ n ];
+		final double lastIntensity = ht[ n ];
+		final long lastAge = ha[ n ];
+
+		// sift down
+		int i = 0;
+		while ( true )
+		{
+			int child = 2 * i + 1;
+			if ( child >= n )
+				break;
+			if ( child + 1 < n && less( ht[ child + 1 ], ha[ child + 1 ], ht[ child ], ha[ child ] ) )
+				++child;
+			if ( !less( ht[ child ], ha[ child ], lastIntensity, lastAge ) )
+				break;
+			hi[ i ] = hi[ child ];
+			ht[ i ] = ht[ child ];
+			ha[ i ] = ha[ child ];
+			i = child;
+		}
+		hi[ i ] = lastIndex;
+		ht[ i ] = lastIntensity;
+		ha[ i ] = lastAge;
+
+		return index;
+	}
+}
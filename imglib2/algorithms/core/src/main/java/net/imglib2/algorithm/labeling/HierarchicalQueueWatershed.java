@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.labeling;
+
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Seeded watershed that produces the same labeling as {@link Watershed}, but
+ * keeps the pixels to be processed in a {@link HierarchicalQueue} of flat
+ * indices instead of a {@link java.util.PriorityQueue} of objects. This avoids
+ * allocating an object for every pixel, which makes it suitable for large
+ * images.
+ * 
+ * The queue has one level per intensity if the intensity image is of an
+ * {@link IntegerType} and the range of intensities is at most the number of
+ * levels (see {@link #setNumLevels(int)}), otherwise the intensities are
+ * quantized into the levels.
+ */
+public class HierarchicalQueueWatershed< T extends RealType< T >, L extends Comparable< L >> extends Watershed< T, L >
+{
+	protected int numLevels = HierarchicalQueue.DEFAULT_NUM_LEVELS;
+
+	/**
+	 * Set the maximal number of levels of the hierarchical queue.
+	 * 
+	 * @param numLevels
+	 *            the maximal number of quantized intensity levels
+	 */
+	public void setNumLevels( final int numLevels )
+	{
+		this.numLevels = numLevels;
+	}
+
+	@Override
+	public boolean process()
+	{
+		if ( !checkInput() )
+			return false;
+
+		setDefaults();
+
+		final int n = image.numDimensions();
+
+		long[] dimensions = new long[ n ];
+		output.dimensions( dimensions );
+		long[] position = new long[ n ];
+		long[] neighbor = new long[ n ];
+
+		/*
+		 * Pixels are only queued if they are inside both the output and the
+		 * image, which the Watershed ensures by out-of-bounds checks.
+		 */
+		long[] bounds = new long[ n ];
+		for ( int d = 0; d < n; d++ )
+			bounds[ d ] = Math.min( dimensions[ d ], image.dimension( d ) );
+		RandomAccess< LabelingType< L >> outputRandomAccess = output.randomAccess();
+		RandomAccess< T > imageRandomAccess = image.randomAccess();
+
+		/*
+		 * Find the range of intensities for the levels of the queue.
+		 */
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for ( final T t : image )
+		{
+			final double v = t.getRealDouble();
+			if ( v < min )
+				min = v;
+			if ( v > max )
+				max = v;
+		}
+		if ( min > max )
+			min = max = 0;
+		final HierarchicalQueue queue = new HierarchicalQueue( min, max, numLevels, image.firstElement() instanceof IntegerType );
+
+		/*
+		 * Start by loading up the queue with the seeded pixels
+		 */
+		Cursor< LabelingType< L >> c = seeds.localizingCursor();
+		long[] noOffset = new long[ n ];
+
+		while ( c.hasNext() )
+		{
+			LabelingType< L > tSrc = c.next();
+			List< L > l = tSrc.getLabeling();
+			if ( l.isEmpty() )
+				continue;
+
+			c.localize( position );
+			if ( !getNeighbor( position, noOffset, bounds, neighbor ) )
+				continue;
+			outputRandomAccess.setPosition( position );
+			LabelingType< L > tDest = outputRandomAccess.get();
+			l = tDest.intern( l );
+			tDest.setLabeling( l );
+			imageRandomAccess.setPosition( position );
+			queue.add( IntervalIndexer.positionToIndex( position, dimensions ), imageRandomAccess.get().getRealDouble() );
+		}
+
+		/*
+		 * The flat index offsets of the structuring element, valid for
+		 * neighbors inside the output.
+		 */
+		long[] strelIndexOffsets = new long[ structuringElement.length ];
+		for ( int i = 0; i < structuringElement.length; i++ )
+		{
+			long step = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				strelIndexOffsets[ i ] += structuringElement[ i ][ d ] * step;
+				step *= dimensions[ d ];
+			}
+		}
+
+		/*
+		 * Pop the head of the queue, label and push all unlabeled connected
+		 * pixels. The label of a queued pixel was set in the output when it was
+		 * pushed.
+		 */
+		while ( !queue.isEmpty() )
+		{
+			final long index = queue.remove();
+			IntervalIndexer.indexToPosition( index, dimensions, position );
+			outputRandomAccess.setPosition( position );
+			List< L > l = outputRandomAccess.get().getLabeling();
+			for ( int i = 0; i < structuringElement.length; i++ )
+			{
+				if ( !getNeighbor( position, structuringElement[ i ], bounds, neighbor ) )
+					continue;
+				outputRandomAccess.setPosition( neighbor );
+				LabelingType< L > outputLabelingType = outputRandomAccess.get();
+				if ( !outputLabelingType.getLabeling().isEmpty() )
+					continue;
+				outputLabelingType.setLabeling( l );
+				imageRandomAccess.setPosition( neighbor );
+				queue.add( index + strelIndexOffsets[ i ], imageRandomAccess.get().getRealDouble() );
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compute the position of a neighbor.
+	 * 
+	 * @return false if the neighbor is outside of the bounds
+	 */
+	private static boolean getNeighbor( final long[] position, final long[] offset, final long[] bounds, final long[] neighbor )
+	{
+		for ( int d = 0; d < position.length; d++ )
+		{
+			final long p = position[ d ] + offset[ d ];
+			if ( p < 0 || p >= bounds[ d ] )
+				return false;
+			neighbor[ d ] = p;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,628 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.imglib2.Cursor;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.labeling.LabelingMapping;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.type.numeric.integer.LongType;
+
+/**
+ * Connected components labeling of a binary image into a
+ * {@link NativeImgLabeling}, using a two-pass union-find scheme on slabs of
+ * the image that are processed in parallel.
+ * 
+ * The image is cut into slabs along its last dimension. In the first pass,
+ * every slab is scanned in raster order by its own thread. A foreground pixel
+ * takes the smallest provisional label of its already visited neighbors
+ * within the slab (or a new one), and the provisional labels of all these
+ * neighbors are recorded as equivalent in a union-find table. Then the
+ * equivalences across slab boundaries are added, and every equivalence class
+ * is named. In the second pass, the slabs write the names to the labeling in
+ * parallel.
+ * 
+ * The result is identical to the flood fill of
+ * {@link AllConnectedComponents}: components are named in the order in which
+ * their first pixel is visited by a cursor of the image, and pixels that are
+ * already labeled are left untouched and do not connect components. This
+ * requires a symmetric structuring element (see {@link #isSymmetric(long[][])}),
+ * as the flood fill is directed otherwise.
+ */
+public class ParallelConnectedComponents
+{
+	/**
+	 * Check whether, for every offset of the structuring element, the
+	 * opposite offset is part of it, too.
+	 * 
+	 * @param structuringElement
+	 *            offsets to connected pixels
+	 * @return true if the structuring element is symmetric
+	 */
+	public static boolean isSymmetric( final long[][] structuringElement )
+	{
+		final long[] opposite = new long[ structuringElement.length == 0 ? 0 : structuringElement[ 0 ].length ];
+		for ( final long[] offset : structuringElement )
+		{
+			for ( int d = 0; d < offset.length; ++d )
+				opposite[ d ] = -offset[ d ];
+			boolean found = false;
+			for ( final long[] other : structuringElement )
+			{
+				if ( Arrays.equals( opposite, other ) )
+				{
+					found = true;
+					break;
+				}
+			}
+			if ( !found )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Label all connected components in the given image using the 8-connected
+	 * structuring element (or its N-dimensional analog) and
+	 * {@link TaskExecutor#getNumThreads()} threads.
+	 * 
+	 * @see #labelAllConnectedComponents(NativeImgLabeling, Img, Iterator,
+	 *      long[][], int)
+	 */
+	public static < T extends Comparable< T >, I extends IntegerType< I >> void labelAllConnectedComponents( final NativeImgLabeling< T, I > labeling, final Img< BitType > img, final Iterator< T > names ) throws NoSuchElementException
+	{
+		labelAllConnectedComponents( labeling, img, names, AllConnectedComponents.getStructuringElement( img.numDimensions() ), TaskExecutor.getInstance().getNumThreads() );
+	}
+
+	/**
+	 * Label all connected components in the given image using an arbitrary
+	 * symmetric structuring element.
+	 * 
+	 * @param <T>
+	 *            the type of the labels to apply
+	 * @param labeling
+	 *            Assign labels to this labeling space
+	 * @param img
+	 *            a binary image where true indicates parts of components
+	 * @param names
+	 *            supplies names for the different components as needed
+	 * @param structuringElement
+	 *            an array of offsets to a pixel of the pixels which are
+	 *            considered connected, see
+	 *            {@link AllConnectedComponents#labelAllConnectedComponents(net.imglib2.labeling.Labeling, Img, Iterator, long[][])}
+	 * @param numThreads
+	 *            the number of threads to use
+	 * @throws NoSuchElementException
+	 *             if there are not enough names
+	 * @throws IllegalArgumentException
+	 *             if the structuring element is not symmetric, or a
+	 *             hyperplane of the image has more than
+	 *             {@link Integer#MAX_VALUE} pixels
+	 */
+	public static < T extends Comparable< T >, I extends IntegerType< I >> void labelAllConnectedComponents( final NativeImgLabeling< T, I > labeling, final Img< BitType > img, final Iterator< T > names, final long[][] structuringElement, final int numThreads ) throws NoSuchElementException
+	{
+		if ( !isSymmetric( structuringElement ) )
+			throw new IllegalArgumentException( "the structuring element must be symmetric" );
+		new ParallelConnectedComponents( labeling.getStorageImg(), img, structuringElement, numThreads ).run( labeling, names );
+	}
+
+	/**
+	 * Check whether
+	 * {@link #labelAllConnectedComponents(NativeImgLabeling, Img, Iterator, long[][], int)}
+	 * can handle the given image.
+	 */
+	static boolean canLabel( final Img< BitType > img, final long[][] structuringElement )
+	{
+		long planeSize = 1;
+		for ( int d = 0; d < img.numDimensions() - 1; ++d )
+			planeSize *= img.dimension( d );
+		return planeSize <= MAX_SLAB_SIZE && isSymmetric( structuringElement );
+	}
+
+	private static final int MAX_SLAB_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * One slab of the image, planes start to start + numPlanes - 1 along the
+	 * last dimension.
+	 */
+	private static final class Slab
+	{
+		final long start;
+
+		final long numPlanes;
+
+		/**
+		 * the provisional label of every pixel of the slab in raster order: 0
+		 * for background, otherwise 1 + the index of the label in the slab.
+		 */
+		final int[] labels;
+
+		/**
+		 * union-find table of the labels of the slab, parent[ l ] <= l.
+		 */
+		int[] parent = new int[ 1024 ];
+
+		int numLabels = 0;
+
+		/**
+		 * the global label of the first label of this slab is base + 1.
+		 */
+		int base;
+
+		Slab( final long start, final long numPlanes, final long planeSize )
+		{
+			this.start = start;
+			this.numPlanes = numPlanes;
+			this.labels = new int[ ( int ) ( numPlanes * planeSize ) ];
+		}
+
+		int newLabel()
+		{
+			final int label = ++numLabels;
+			if ( label == parent.length )
+				parent = Arrays.copyOf( parent, 2 * parent.length );
+			parent[ label ] = label;
+			return label;
+		}
+	}
+
+	private final Img< ? extends IntegerType< ? > > storage;
+
+	private final Img< BitType > img;
+
+	private final int n;
+
+	/**
+	 * the size of the processed region, which is the intersection of the
+	 * labeling and the image.
+	 */
+	private final long[] dimensions;
+
+	private final long planeSize;
+
+	/**
+	 * offsets to the neighbors that precede a pixel in raster order.
+	 */
+	private final long[][] backward;
+
+	/**
+	 * flat index differences of the backward offsets.
+	 */
+	private final long[] backwardSteps;
+
+	/**
+	 * maximal absolute offset per dimension.
+	 */
+	private final long[] reach;
+
+	private final Slab[] slabs;
+
+	private final int numThreads;
+
+	private ParallelConnectedComponents( final Img< ? extends IntegerType< ? > > storage, final Img< BitType > img, final long[][] structuringElement, final int numThreads )
+	{
+		this.storage = storage;
+		this.img = img;
+		this.numThreads = Math.max( 1, numThreads );
+		n = img.numDimensions();
+		dimensions = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			dimensions[ d ] = Math.min( img.dimension( d ), storage.dimension( d ) );
+
+		long size = 1;
+		for ( int d = 0; d < n - 1; ++d )
+			size *= dimensions[ d ];
+		planeSize = size;
+		if ( planeSize > MAX_SLAB_SIZE )
+			throw new IllegalArgumentException( "hyperplanes of " + planeSize + " pixels are too large" );
+
+		reach = new long[ n ];
+		final ArrayList< long[] > offsets = new ArrayList< long[] >();
+		for ( final long[] offset : structuringElement )
+		{
+			long step = 0;
+			for ( int d = n - 1; d >= 0; --d )
+			{
+				step = step * dimensions[ d ] + offset[ d ];
+				reach[ d ] = Math.max( reach[ d ], Math.abs( offset[ d ] ) );
+			}
+			if ( step < 0 )
+				offsets.add( offset );
+		}
+		backward = offsets.toArray( new long[ offsets.size() ][] );
+		backwardSteps = new long[ backward.length ];
+		for ( int i = 0; i < backward.length; ++i )
+			for ( int d = n - 1; d >= 0; --d )
+				backwardSteps[ i ] = backwardSteps[ i ] * dimensions[ d ] + backward[ i ][ d ];
+
+		// slabs along the last dimension, a few per thread for load balancing
+		final long numPlanes = dimensions[ n - 1 ];
+		final long maxPlanesPerSlab = Math.max( 1, MAX_SLAB_SIZE / Math.max( 1, planeSize ) );
+		long numSlabs = ( this.numThreads == 1 || n == 1 ) ? 1 : ( long ) this.numThreads * TaskExecutor.CHUNKS_PER_THREAD;
+		if ( n > 1 )
+			numSlabs = Math.max( numSlabs, ( numPlanes + maxPlanesPerSlab - 1 ) / maxPlanesPerSlab );
+		numSlabs = Math.max( 1, Math.min( numSlabs, numPlanes ) );
+		slabs = new Slab[ ( int ) numSlabs ];
+		for ( int s = 0; s < numSlabs; ++s )
+		{
+			final long start = s * numPlanes / numSlabs;
+			final long end = ( s + 1 ) * numPlanes / numSlabs;
+			slabs[ s ] = new Slab( start, end - start, planeSize );
+		}
+	}
+
+	private < T extends Comparable< T > > void run( final NativeImgLabeling< T, ? > labeling, final Iterator< T > names )
+	{
+		for ( final long d : dimensions )
+			if ( d <= 0 )
+				return;
+
+		final LabelingMapping< T > mapping = labeling.getMapping();
+		final int emptyIndex = mapping.indexOf( mapping.emptyList() );
+
+		// first pass: provisional labels per slab
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >( slabs.length );
+		for ( final Slab slab : slabs )
+		{
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					labelSlab( slab, emptyIndex );
+				}
+			} );
+		}
+		TaskExecutor.getInstance().run( tasks, numThreads );
+
+		// global union-find table
+		long numLabels = 0;
+		for ( final Slab slab : slabs )
+		{
+			slab.base = ( int ) numLabels;
+			numLabels += slab.numLabels;
+			if ( numLabels > MAX_SLAB_SIZE )
+				throw new IllegalArgumentException( "too many provisional labels" );
+		}
+		final int[] parent = new int[ ( int ) numLabels + 1 ];
+		for ( final Slab slab : slabs )
+		{
+			for ( int l = 1; l <= slab.numLabels; ++l )
+				parent[ slab.base + l ] = slab.base + slab.parent[ slab.parent[ l ] ];
+			slab.parent = null;
+		}
+		for ( int s = 1; s < slabs.length; ++s )
+			mergeSlab( s, parent );
+		for ( int l = 1; l < parent.length; ++l )
+			parent[ l ] = parent[ parent[ l ] ];
+
+		// name the components: the mapping index of every provisional label
+		final int[] index = parent;
+		if ( img.iterationOrder() instanceof FlatIterationOrder )
+		{
+			// provisional labels are numbered in raster order, so the root
+			// is the first pixel of the component
+			for ( int l = 1; l < index.length; ++l )
+				index[ l ] = parent[ l ] == l ? intern( mapping, names.next() ) : index[ parent[ l ] ];
+		}
+		else
+		{
+			final int[] root = parent.clone();
+			Arrays.fill( index, -1 );
+			final Cursor< BitType > c = img.localizingCursor();
+			final long[] position = new long[ n ];
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				c.localize( position );
+				final int label = globalLabel( position );
+				if ( label > 0 && index[ root[ label ] ] < 0 )
+					index[ root[ label ] ] = intern( mapping, names.next() );
+			}
+			for ( int l = 1; l < index.length; ++l )
+				index[ l ] = index[ root[ l ] ];
+		}
+
+		// second pass: write the labeling
+		tasks.clear();
+		for ( final Slab slab : slabs )
+		{
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					writeSlab( slab, index );
+				}
+			} );
+		}
+		TaskExecutor.getInstance().run( tasks, canWriteConcurrently( storage ) ? numThreads : 1 );
+
+		// the storage was modified behind the back of the labeling types, so
+		// let caches of the labeling know it changed
+		final RandomAccess< LabelingType< T > > ra = labeling.randomAccess();
+		final LabelingType< T > t = ra.get();
+		t.setLabeling( t.getLabeling() );
+	}
+
+	/**
+	 * Can distinct pixels of the storage be written by different threads?
+	 * This is not the case for types that pack several pixels into one
+	 * primitive, or containers that may restructure on write.
+	 */
+	private static boolean canWriteConcurrently( final Img< ? extends IntegerType< ? > > storage )
+	{
+		if ( !( storage instanceof ArrayImg || storage instanceof PlanarImg || storage instanceof CellImg ) )
+			return false;
+		final Object t = storage.firstElement();
+		return t instanceof GenericByteType || t instanceof GenericShortType || t instanceof GenericIntType || t instanceof LongType;
+	}
+
+	private static < T extends Comparable< T > > int intern( final LabelingMapping< T > mapping, final T name )
+	{
+		final List< T > labeling = new ArrayList< T >( 1 );
+		labeling.add( name );
+		return mapping.indexOf( mapping.intern( labeling ) );
+	}
+
+	/**
+	 * @return the global provisional label at position, or 0 for background
+	 *         and positions outside the processed region.
+	 */
+	private int globalLabel( final long[] position )
+	{
+		long i = 0;
+		for ( int d = n - 1; d >= 0; --d )
+		{
+			if ( position[ d ] < 0 || position[ d ] >= dimensions[ d ] )
+				return 0;
+			if ( d < n - 1 )
+				i = i * dimensions[ d ] + position[ d ];
+		}
+		final Slab slab = slabOf( position[ n - 1 ] );
+		final int label = slab.labels[ ( int ) ( ( position[ n - 1 ] - slab.start ) * planeSize + i ) ];
+		return label == 0 ? 0 : slab.base + label;
+	}
+
+	private Slab slabOf( final long plane )
+	{
+		int lo = 0, hi = slabs.length - 1;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi + 1 ) >>> 1;
+			if ( slabs[ mid ].start <= plane )
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return slabs[ lo ];
+	}
+
+	private static int find( final int[] parent, int l )
+	{
+		while ( parent[ l ] != l )
+		{
+			parent[ l ] = parent[ parent[ l ] ];
+			l = parent[ l ];
+		}
+		return l;
+	}
+
+	/**
+	 * Make the classes of a and b equivalent, keeping the smaller label as
+	 * root.
+	 * 
+	 * @return the root of the joined class
+	 */
+	private static int union( final int[] parent, final int a, final int b )
+	{
+		final int ra = find( parent, a );
+		final int rb = find( parent, b );
+		if ( ra < rb )
+		{
+			parent[ rb ] = ra;
+			return ra;
+		}
+		parent[ ra ] = rb;
+		return rb;
+	}
+
+	/**
+	 * Is position + offset within the processed region and, along the last
+	 * dimension, not before plane minLast?
+	 */
+	private boolean inside( final long[] position, final long[] offset, final long minLast )
+	{
+		for ( int d = 0; d < n; ++d )
+		{
+			final long p = position[ d ] + offset[ d ];
+			if ( p < 0 || p >= dimensions[ d ] )
+				return false;
+		}
+		return position[ n - 1 ] + offset[ n - 1 ] >= minLast;
+	}
+
+	/**
+	 * Is every neighbor of all pixels of the line at position (apart from the
+	 * first and last reach[ 0 ] pixels) inside the region and the slab?
+	 */
+	private boolean lineInside( final long[] position, final long minLast )
+	{
+		for ( int d = 1; d < n; ++d )
+			if ( position[ d ] < reach[ d ] || position[ d ] + reach[ d ] >= dimensions[ d ] )
+				return false;
+		return position[ n - 1 ] - reach[ n - 1 ] >= minLast;
+	}
+
+	private void labelSlab( final Slab slab, final int emptyIndex )
+	{
+		final RandomAccess< BitType > imgAccess = img.randomAccess();
+		final RandomAccess< ? extends IntegerType< ? > > storageAccess = storage.randomAccess();
+		final int[] labels = slab.labels;
+		final int numBackward = backward.length;
+		final int[] steps = new int[ numBackward ];
+		for ( int k = 0; k < numBackward; ++k )
+			steps[ k ] = ( int ) backwardSteps[ k ];
+
+		final long width = dimensions[ 0 ];
+		final long[] position = new long[ n ];
+		position[ n - 1 ] = slab.start;
+		final int numLines = ( int ) ( labels.length / width );
+		int i = 0;
+		for ( int line = 0; line < numLines; ++line )
+		{
+			position[ 0 ] = 0;
+			imgAccess.setPosition( position );
+			storageAccess.setPosition( position );
+			final boolean lineInside = lineInside( position, slab.start );
+			for ( long x = 0; x < width; ++x, ++i )
+			{
+				if ( imgAccess.get().get() && storageAccess.get().getInteger() == emptyIndex )
+				{
+					position[ 0 ] = x;
+					final boolean inside = lineInside && x >= reach[ 0 ] && x + reach[ 0 ] < width;
+					int label = 0;
+					for ( int k = 0; k < numBackward; ++k )
+					{
+						if ( !inside && !inside( position, backward[ k ], slab.start ) )
+							continue;
+						final int neighbor = labels[ i + steps[ k ] ];
+						if ( neighbor == 0 )
+							continue;
+						label = label == 0 ? find( slab.parent, neighbor ) : union( slab.parent, label, neighbor );
+					}
+					labels[ i ] = label == 0 ? slab.newLabel() : label;
+				}
+				imgAccess.fwd( 0 );
+				storageAccess.fwd( 0 );
+			}
+			nextLine( position );
+		}
+	}
+
+	/**
+	 * Move position to the start of the next line in raster order.
+	 */
+	private void nextLine( final long[] position )
+	{
+		position[ 0 ] = 0;
+		for ( int d = 1; d < n; ++d )
+		{
+			if ( ++position[ d ] < dimensions[ d ] || d == n - 1 )
+				break;
+			position[ d ] = 0;
+		}
+	}
+
+	/**
+	 * Add the equivalences between the labels of the first planes of slab s
+	 * and the labels of the preceding slabs.
+	 */
+	private void mergeSlab( final int s, final int[] parent )
+	{
+		final Slab slab = slabs[ s ];
+		final long planes = Math.min( reach[ n - 1 ], slab.numPlanes );
+		final long[] position = new long[ n ];
+		final long[] neighborPosition = new long[ n ];
+		position[ n - 1 ] = slab.start;
+		final long width = dimensions[ 0 ];
+		final int numLines = ( int ) ( planes * planeSize / width );
+		int i = 0;
+		for ( int line = 0; line < numLines; ++line )
+		{
+			for ( long x = 0; x < width; ++x, ++i )
+			{
+				if ( slab.labels[ i ] == 0 )
+					continue;
+				position[ 0 ] = x;
+				for ( final long[] offset : backward )
+				{
+					// only neighbors in preceding slabs
+					if ( offset[ n - 1 ] >= 0 || !inside( position, offset, 0 ) || position[ n - 1 ] + offset[ n - 1 ] >= slab.start )
+						continue;
+					for ( int d = 0; d < n; ++d )
+						neighborPosition[ d ] = position[ d ] + offset[ d ];
+					final int neighbor = globalLabel( neighborPosition );
+					if ( neighbor != 0 )
+						union( parent, slab.base + slab.labels[ i ], neighbor );
+				}
+			}
+			nextLine( position );
+		}
+	}
+
+	private void writeSlab( final Slab slab, final int[] index )
+	{
+		final RandomAccess< ? extends IntegerType< ? > > storageAccess = storage.randomAccess();
+		final int[] labels = slab.labels;
+		final long width = dimensions[ 0 ];
+		final long[] position = new long[ n ];
+		position[ n - 1 ] = slab.start;
+		final int numLines = ( int ) ( labels.length / width );
+		int i = 0;
+		for ( int line = 0; line < numLines; ++line )
+		{
+			storageAccess.setPosition( position );
+			for ( long x = 0; x < width; ++x, ++i )
+			{
+				if ( labels[ i ] != 0 )
+					storageAccess.get().setInteger( index[ slab.base + labels[ i ] ] );
+				storageAccess.fwd( 0 );
+			}
+			nextLine( position );
+		}
+	}
+}
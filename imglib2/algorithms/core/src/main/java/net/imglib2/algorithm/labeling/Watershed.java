@@ -202,15 +202,7 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		if ( !checkInput() )
 			return false;
 
-		if ( structuringElement == null )
-			structuringElement = AllConnectedComponents.getStructuringElement( image.numDimensions() );
-		if ( output == null )
-		{
-			long[] dimensions = new long[ seeds.numDimensions() ];
-			seeds.dimensions( dimensions );
-			NativeImgLabeling< L, IntType > o = new NativeImgLabeling< L, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
-			output = o;
-		}
+		setDefaults();
 		/*
 		 * Make an OutOfBounds for the labels that returns empty labels if out
 		 * of bounds. Make an OutOfBounds for the intensities that returns the
@@ -257,24 +249,7 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 			double intensity = imageAccess.get().getRealDouble();
 			pq.add( new PixelIntensity< L >( position, dimensions, intensity, age++, l ) );
 		}
-		/*
-		 * Rework the structuring element into a series of consecutive offsets
-		 * so we can use Positionable.move to scan the image array.
-		 */
-		long[][] strelMoves = new long[ structuringElement.length ][];
-		long[] currentOffset = new long[ image.numDimensions() ];
-		for ( int i = 0; i < structuringElement.length; i++ )
-		{
-			strelMoves[ i ] = new long[ image.numDimensions() ];
-			for ( int j = 0; j < image.numDimensions(); j++ )
-			{
-				strelMoves[ i ][ j ] = structuringElement[ i ][ j ] - currentOffset[ j ];
-				if ( i > 0 )
-					currentOffset[ j ] += structuringElement[ i ][ j ] - structuringElement[ i - 1 ][ j ];
-				else
-					currentOffset[ j ] += structuringElement[ i ][ j ];
-			}
-		}
+		long[][] strelMoves = getStructuringElementMoves();
 		/*
 		 * Pop the head of the priority queue, label and push all unlabeled
 		 * connected pixels.
@@ -306,6 +281,46 @@ public class Watershed< T extends RealType< T >, L extends Comparable< L >> impl
 		return true;
 	}
 
+	/**
+	 * Use an 8-connected (or N-dimensional equivalent) structuring element if
+	 * none was set and create the output labeling if none was supplied.
+	 */
+	protected void setDefaults()
+	{
+		if ( structuringElement == null )
+			structuringElement = AllConnectedComponents.getStructuringElement( image.numDimensions() );
+		if ( output == null )
+		{
+			long[] dimensions = new long[ seeds.numDimensions() ];
+			seeds.dimensions( dimensions );
+			NativeImgLabeling< L, IntType > o = new NativeImgLabeling< L, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+			output = o;
+		}
+	}
+
+	/**
+	 * Rework the structuring element into a series of consecutive offsets so
+	 * we can use Positionable.move to scan the image array.
+	 */
+	protected long[][] getStructuringElementMoves()
+	{
+		long[][] strelMoves = new long[ structuringElement.length ][];
+		long[] currentOffset = new long[ image.numDimensions() ];
+		for ( int i = 0; i < structuringElement.length; i++ )
+		{
+			strelMoves[ i ] = new long[ image.numDimensions() ];
+			for ( int j = 0; j < image.numDimensions(); j++ )
+			{
+				strelMoves[ i ][ j ] = structuringElement[ i ][ j ] - currentOffset[ j ];
+				if ( i > 0 )
+					currentOffset[ j ] += structuringElement[ i ][ j ] - structuringElement[ i - 1 ][ j ];
+				else
+					currentOffset[ j ] += structuringElement[ i ][ j ];
+			}
+		}
+		return strelMoves;
+	}
+
 	@Override
 	public boolean checkInput()
 	{
@@ -0,0 +1,657 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.localextrema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Finds the local maxima or minima of an n-dimensional image. A pixel is a
+ * local maximum if none of its 3^n - 1 neighbours (within the image) is
+ * larger, and if it is at least {@link #getThreshold() threshold} (local
+ * minima are defined accordingly).
+ * 
+ * The image is processed as lines along dimension 0. The lines are split into
+ * slabs that are scanned in parallel. Each thread copies the lines it needs
+ * into line buffers, which are kept while they are needed by the following
+ * lines, so that every pixel is compared with its neighbours by array access
+ * instead of {@link RandomAccess} moves.
+ * 
+ * Pixels that have a neighbour of the same value lie on a plateau, which is
+ * handled according to {@link Plateau}. The peaks are collected in a
+ * {@link PeakBuffer}, in raster order of the image.
+ * 
+ * @param <T>
+ *            the pixel type
+ */
+public class LocalExtremaFinder< T extends RealType< T > > extends MultiThreadedBenchmarkAlgorithm
+{
+	/**
+	 * Whether to find maxima or minima.
+	 */
+	public static enum Extremum
+	{
+		MAXIMA, MINIMA
+	}
+
+	/**
+	 * How pixels are treated that have a neighbour of the same value.
+	 */
+	public static enum Plateau
+	{
+		/**
+		 * Only pixels that are strictly larger (smaller) than all their
+		 * neighbours are peaks.
+		 */
+		STRICT,
+		/**
+		 * Every pixel that is not smaller (larger) than any neighbour is a
+		 * peak, so a flat maximum yields all of its pixels.
+		 */
+		ALL,
+		/**
+		 * A connected plateau of equal pixels yields a single peak, its first
+		 * pixel in raster order, if no neighbour of the plateau is larger
+		 * (smaller). This is the regional maximum (minimum).
+		 */
+		ONE_PER_PLATEAU
+	}
+
+	private final RandomAccessibleInterval< T > source;
+
+	private final Extremum extremum;
+
+	private double threshold;
+
+	private Plateau plateau = Plateau.STRICT;
+
+	private final PeakBuffer peaks;
+
+	private final int n;
+
+	private final long[] min;
+
+	private final long[] dimensions;
+
+	/**
+	 * dimensions of the grid of lines, i.e. dimensions 1 to n - 1
+	 */
+	private final long[] lineDimensions;
+
+	/**
+	 * offsets of the neighbouring lines of a line (excluding the line itself),
+	 * in dimensions 1 to n - 1
+	 */
+	private final int[][] lineOffsets;
+
+	/**
+	 * Find extrema without a threshold.
+	 * 
+	 * @param source
+	 *            the image
+	 * @param extremum
+	 *            whether to find maxima or minima
+	 */
+	public LocalExtremaFinder( final RandomAccessibleInterval< T > source, final Extremum extremum )
+	{
+		this( source, extremum, extremum == Extremum.MAXIMA ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY );
+	}
+
+	/**
+	 * Find extrema that are at least (maxima) or at most (minima) threshold.
+	 * 
+	 * @param source
+	 *            the image
+	 * @param extremum
+	 *            whether to find maxima or minima
+	 * @param threshold
+	 *            the minimal value of maxima or maximal value of minima
+	 */
+	public LocalExtremaFinder( final RandomAccessibleInterval< T > source, final Extremum extremum, final double threshold )
+	{
+		this.source = source;
+		this.extremum = extremum;
+		this.threshold = threshold;
+
+		n = source.numDimensions();
+		min = new long[ n ];
+		dimensions = new long[ n ];
+		source.min( min );
+		source.dimensions( dimensions );
+		lineDimensions = new long[ Math.max( 0, n - 1 ) ];
+		for ( int d = 1; d < n; ++d )
+			lineDimensions[ d - 1 ] = dimensions[ d ];
+		lineOffsets = neighbourOffsets( n - 1 );
+
+		peaks = new PeakBuffer( n );
+		numThreads = TaskExecutor.getInstance().getNumThreads();
+	}
+
+	public void setThreshold( final double threshold )
+	{
+		this.threshold = threshold;
+	}
+
+	public double getThreshold()
+	{
+		return threshold;
+	}
+
+	public void setPlateau( final Plateau plateau )
+	{
+		this.plateau = plateau;
+	}
+
+	public Plateau getPlateau()
+	{
+		return plateau;
+	}
+
+	public Extremum getExtremum()
+	{
+		return extremum;
+	}
+
+	/**
+	 * @return the peaks found by the last {@link #process()}, in raster order
+	 */
+	public PeakBuffer getPeaks()
+	{
+		return peaks;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( n < 1 )
+		{
+			errorMessage = "LocalExtremaFinder: the image must have at least one dimension.";
+			return false;
+		}
+		if ( dimensions[ 0 ] > Integer.MAX_VALUE )
+		{
+			errorMessage = "LocalExtremaFinder: dimension 0 of the image is too large.";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		if ( !checkInput() )
+			return false;
+
+		final long startTime = System.currentTimeMillis();
+
+		peaks.clear();
+
+		long numLines = 1;
+		for ( final long l : lineDimensions )
+			numLines *= l;
+
+		// the results of every slab, sorted by its first line
+		final TreeMap< Long, PeakBuffer[] > slabs = new TreeMap< Long, PeakBuffer[] >();
+		TaskExecutor.getInstance().forEachChunk( numLines, numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long start, final long loopSize )
+			{
+				final PeakBuffer[] result = scan( start, loopSize );
+				synchronized ( slabs )
+				{
+					slabs.put( start, result );
+				}
+			}
+		} );
+
+		final PeakBuffer candidates = new PeakBuffer( n );
+		for ( final PeakBuffer[] result : slabs.values() )
+		{
+			peaks.addAll( result[ 0 ] );
+			candidates.addAll( result[ 1 ] );
+		}
+
+		if ( candidates.size() > 0 )
+			mergeSorted( peaks, resolvePlateaus( candidates ) );
+
+		processingTime = System.currentTimeMillis() - startTime;
+		return true;
+	}
+
+	/**
+	 * Scan the lines [start, start + loopSize).
+	 * 
+	 * @return the peaks, and the plateau pixels that are candidates for
+	 *         {@link Plateau#ONE_PER_PLATEAU}
+	 */
+	private PeakBuffer[] scan( final long start, final long loopSize )
+	{
+		final PeakBuffer found = new PeakBuffer( n );
+		final PeakBuffer candidates = new PeakBuffer( n );
+
+		final int width = ( int ) dimensions[ 0 ];
+		final double sign = extremum == Extremum.MAXIMA ? 1 : -1;
+		final double t = sign * threshold;
+		final LineCache cache = new LineCache( source.randomAccess(), width, lineCacheCapacity(), sign );
+
+		final long[] linePosition = new long[ n - 1 ];
+		final long[] neighbourPosition = new long[ n - 1 ];
+		final long[] position = new long[ n ];
+		final double[][] neighbours = new double[ lineOffsets.length ][];
+
+		for ( long line = start; line < start + loopSize; ++line )
+		{
+			if ( n > 1 )
+				IntervalIndexer.indexToPosition( line, lineDimensions, linePosition );
+			final double[] center = cache.get( line, linePosition );
+
+			// the neighbouring lines within the image (excluding the center)
+			int numNeighbours = 0;
+			A: for ( final int[] offset : lineOffsets )
+			{
+				for ( int d = 0; d < n - 1; ++d )
+				{
+					neighbourPosition[ d ] = linePosition[ d ] + offset[ d ];
+					if ( neighbourPosition[ d ] < 0 || neighbourPosition[ d ] >= lineDimensions[ d ] )
+						continue A;
+				}
+				neighbours[ numNeighbours++ ] = cache.get( IntervalIndexer.positionToIndex( neighbourPosition, lineDimensions ), neighbourPosition );
+			}
+
+			X: for ( int x = 0; x < width; ++x )
+			{
+				final double v = center[ x ];
+				if ( !( v >= t ) )
+					continue;
+
+				final int x0 = Math.max( 0, x - 1 );
+				final int x1 = Math.min( width - 1, x + 1 );
+				boolean equal = false;
+
+				if ( x > 0 )
+				{
+					final double u = center[ x - 1 ];
+					if ( u > v )
+						continue;
+					equal |= u == v;
+				}
+				if ( x < width - 1 )
+				{
+					final double u = center[ x + 1 ];
+					if ( u > v )
+						continue;
+					equal |= u == v;
+				}
+				for ( int j = 0; j < numNeighbours; ++j )
+				{
+					final double[] l = neighbours[ j ];
+					for ( int xx = x0; xx <= x1; ++xx )
+					{
+						final double u = l[ xx ];
+						if ( u > v )
+							continue X;
+						equal |= u == v;
+					}
+				}
+
+				if ( equal && plateau == Plateau.STRICT )
+					continue;
+
+				position[ 0 ] = min[ 0 ] + x;
+				for ( int d = 1; d < n; ++d )
+					position[ d ] = min[ d ] + linePosition[ d - 1 ];
+
+				if ( equal && plateau == Plateau.ONE_PER_PLATEAU )
+					candidates.add( position, sign * v );
+				else
+					found.add( position, sign * v );
+			}
+		}
+
+		return new PeakBuffer[] { found, candidates };
+	}
+
+	/**
+	 * The number of lines a {@link LineCache} holds: the lines of the 3^(n-2)
+	 * planes (spanned by dimensions 0 and 1) around the current line, and one
+	 * more line per plane. With this, every line is read once for n &le; 3, no
+	 * matter how large the planes are. For n &gt; 3 a line is evicted before the next
+	 * hyperplane along dimensions 3 and above needs it again, so it is read
+	 * up to 3^(n-3) times.
+	 */
+	private int lineCacheCapacity()
+	{
+		if ( n < 3 )
+			return 3;
+		long capacity = lineDimensions[ 0 ] + 1;
+		for ( int d = 2; d < n; ++d )
+			capacity *= 3;
+		return ( int ) Math.min( capacity, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Flood fill the plateaus of the candidates (in raster order) and return
+	 * the first pixel of every plateau that has no larger neighbour. A flood
+	 * stops as soon as it finds a larger neighbour, or a pixel of an earlier
+	 * flood that stopped, so every pixel of a plateau is visited at most once.
+	 */
+	private PeakBuffer resolvePlateaus( final PeakBuffer candidates )
+	{
+		final PeakBuffer result = new PeakBuffer( n );
+		final double sign = extremum == Extremum.MAXIMA ? 1 : -1;
+		final int[][] offsets = neighbourOffsets( n );
+		final RandomAccess< T > access = source.randomAccess();
+
+		// the candidate whose flood visited a pixel, by raster index
+		final FloodLabels visited = new FloodLabels();
+
+		final long[] seed = new long[ n ];
+		final long[] p = new long[ n ];
+		final long[] q = new long[ n ];
+		long[] queue = new long[ 16 ];
+
+		for ( int i = 0; i < candidates.size(); ++i )
+		{
+			candidates.localize( i, seed );
+			for ( int d = 0; d < n; ++d )
+				seed[ d ] -= min[ d ];
+			final long seedIndex = IntervalIndexer.positionToIndex( seed, dimensions );
+			if ( visited.putIfAbsent( seedIndex, i ) >= 0 )
+				continue;
+
+			final double v = sign * candidates.getValue( i );
+			boolean regional = true;
+			int head = 0, tail = 0;
+			queue[ tail++ ] = seedIndex;
+			flood: while ( head < tail )
+			{
+				IntervalIndexer.indexToPosition( queue[ head++ ], dimensions, p );
+				A: for ( final int[] offset : offsets )
+				{
+					for ( int d = 0; d < n; ++d )
+					{
+						q[ d ] = p[ d ] + offset[ d ];
+						if ( q[ d ] < 0 || q[ d ] >= dimensions[ d ] )
+							continue A;
+					}
+					for ( int d = 0; d < n; ++d )
+						access.setPosition( min[ d ] + q[ d ], d );
+					final double u = sign * access.get().getRealDouble();
+					if ( u > v )
+					{
+						regional = false;
+						break flood;
+					}
+					else if ( u == v )
+					{
+						final long index = IntervalIndexer.positionToIndex( q, dimensions );
+						final int label = visited.putIfAbsent( index, i );
+						if ( label < 0 )
+						{
+							if ( tail == queue.length )
+								queue = Arrays.copyOf( queue, 2 * tail );
+							queue[ tail++ ] = index;
+						}
+						else if ( label != i )
+						{
+							// an earlier flood of this plateau stopped at a
+							// larger neighbour, otherwise it would have
+							// visited the seed
+							regional = false;
+							break flood;
+						}
+					}
+				}
+			}
+
+			if ( regional )
+				result.add( candidates, i );
+		}
+		return result;
+	}
+
+	/**
+	 * Merge the peaks of other into peaks, both sorted in raster order.
+	 */
+	private void mergeSorted( final PeakBuffer peaks, final PeakBuffer other )
+	{
+		final PeakBuffer a = new PeakBuffer( n, peaks.size() );
+		a.addAll( peaks );
+		peaks.clear();
+
+		final long[] position = new long[ n ];
+		int i = 0, j = 0;
+		while ( i < a.size() && j < other.size() )
+		{
+			if ( rasterIndex( a, i, position ) < rasterIndex( other, j, position ) )
+				peaks.add( a, i++ );
+			else
+				peaks.add( other, j++ );
+		}
+		while ( i < a.size() )
+			peaks.add( a, i++ );
+		while ( j < other.size() )
+			peaks.add( other, j++ );
+	}
+
+	private long rasterIndex( final PeakBuffer buffer, final int i, final long[] position )
+	{
+		buffer.localize( i, position );
+		for ( int d = 0; d < n; ++d )
+			position[ d ] -= min[ d ];
+		return IntervalIndexer.positionToIndex( position, dimensions );
+	}
+
+	/**
+	 * @return all offsets in {-1, 0, 1}^n except the zero offset
+	 */
+	private static int[][] neighbourOffsets( final int n )
+	{
+		final List< int[] > offsets = new ArrayList< int[] >();
+		int count = 1;
+		for ( int d = 0; d < n; ++d )
+			count *= 3;
+		for ( int i = 0; i < count; ++i )
+		{
+			final int[] offset = new int[ n ];
+			boolean zero = true;
+			for ( int d = 0, r = i; d < n; ++d, r /= 3 )
+			{
+				offset[ d ] = r % 3 - 1;
+				zero &= offset[ d ] == 0;
+			}
+			if ( !zero )
+				offsets.add( offset );
+		}
+		return offsets.toArray( new int[ offsets.size() ][] );
+	}
+
+	/**
+	 * Maps raster indices of pixels to non-negative labels, an open addressing
+	 * hash table of primitives that only grows with the number of pixels on
+	 * plateaus.
+	 */
+	private static class FloodLabels
+	{
+		private static final long FREE = -1;
+
+		private long[] keys;
+
+		private int[] labels;
+
+		private int size = 0;
+
+		public FloodLabels()
+		{
+			keys = new long[ 64 ];
+			labels = new int[ 64 ];
+			Arrays.fill( keys, FREE );
+		}
+
+		/**
+		 * Set the label of a pixel if it has none yet.
+		 * 
+		 * @return the previous label of the pixel, or -1 if the label was set
+		 */
+		public int putIfAbsent( final long key, final int label )
+		{
+			final int mask = keys.length - 1;
+			int slot = hash( key ) & mask;
+			while ( keys[ slot ] != FREE )
+			{
+				if ( keys[ slot ] == key )
+					return labels[ slot ];
+				slot = ( slot + 1 ) & mask;
+			}
+			keys[ slot ] = key;
+			labels[ slot ] = label;
+			if ( 2 * ++size > keys.length )
+				grow();
+			return -1;
+		}
+
+		private void grow()
+		{
+			final long[] oldKeys = keys;
+			final int[] oldLabels = labels;
+			keys = new long[ 2 * oldKeys.length ];
+			labels = new int[ 2 * oldKeys.length ];
+			Arrays.fill( keys, FREE );
+			final int mask = keys.length - 1;
+			for ( int i = 0; i < oldKeys.length; ++i )
+			{
+				if ( oldKeys[ i ] == FREE )
+					continue;
+				int slot = hash( oldKeys[ i ] ) & mask;
+				while ( keys[ slot ] != FREE )
+					slot = ( slot + 1 ) & mask;
+				keys[ slot ] = oldKeys[ i ];
+				labels[ slot ] = oldLabels[ i ];
+			}
+		}
+
+		private static int hash( final long key )
+		{
+			final long h = key * 0x9e3779b97f4a7c15l;
+			return ( int ) ( h ^ ( h >>> 32 ) );
+		}
+	}
+
+	/**
+	 * Buffers of the most recently used lines of one thread. Values are
+	 * multiplied by sign, so that minima can be found as maxima.
+	 */
+	private class LineCache
+	{
+		private final RandomAccess< T > access;
+
+		private final int width;
+
+		private final double sign;
+
+		private final LinkedHashMap< Long, double[] > lines;
+
+		private double[] recycled = null;
+
+		public LineCache( final RandomAccess< T > access, final int width, final int capacity, final double sign )
+		{
+			this.access = access;
+			this.width = width;
+			this.sign = sign;
+			lines = new LinkedHashMap< Long, double[] >( 2 * capacity, 0.75f, true )
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry( final Map.Entry< Long, double[] > eldest )
+				{
+					if ( size() > capacity )
+					{
+						recycled = eldest.getValue();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		/**
+		 * @return the buffer of the line with the given index and position
+		 *         in the grid of lines
+		 */
+		public double[] get( final long index, final long[] linePosition )
+		{
+			double[] line = lines.get( index );
+			if ( line != null )
+				return line;
+
+			if ( recycled != null )
+			{
+				line = recycled;
+				recycled = null;
+			}
+			else
+				line = new double[ width ];
+
+			access.setPosition( min[ 0 ], 0 );
+			for ( int d = 1; d < n; ++d )
+				access.setPosition( min[ d ] + linePosition[ d - 1 ], d );
+			for ( int x = 0; x < width; ++x )
+			{
+				line[ x ] = sign * access.get().getRealDouble();
+				access.fwd( 0 );
+			}
+
+			lines.put( index, line );
+			return line;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.localextrema;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.Point;
+
+/**
+ * A growable list of peaks that stores the coordinates of all peaks in one
+ * primitive long[] (numDimensions coordinates per peak) and their values in a
+ * double[], so that millions of peaks can be collected without creating an
+ * object per peak.
+ */
+public class PeakBuffer
+{
+	private final int n;
+
+	private long[] coordinates;
+
+	private double[] values;
+
+	private int size;
+
+	public PeakBuffer( final int numDimensions )
+	{
+		this( numDimensions, 16 );
+	}
+
+	public PeakBuffer( final int numDimensions, final int initialCapacity )
+	{
+		n = numDimensions;
+		final int capacity = Math.max( 1, initialCapacity );
+		coordinates = new long[ capacity * n ];
+		values = new double[ capacity ];
+		size = 0;
+	}
+
+	/**
+	 * Append a peak.
+	 */
+	public void add( final long[] position, final double value )
+	{
+		ensureCapacity( size + 1 );
+		System.arraycopy( position, 0, coordinates, size * n, n );
+		values[ size++ ] = value;
+	}
+
+	/**
+	 * Append peak i of another buffer.
+	 */
+	public void add( final PeakBuffer other, final int i )
+	{
+		ensureCapacity( size + 1 );
+		System.arraycopy( other.coordinates, i * n, coordinates, size * n, n );
+		values[ size++ ] = other.values[ i ];
+	}
+
+	/**
+	 * Append all peaks of another buffer.
+	 */
+	public void addAll( final PeakBuffer other )
+	{
+		ensureCapacity( size + other.size );
+		System.arraycopy( other.coordinates, 0, coordinates, size * n, other.size * n );
+		System.arraycopy( other.values, 0, values, size, other.size );
+		size += other.size;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	 * @return the number of peaks
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Write the position of peak i into position.
+	 */
+	public void localize( final int i, final long[] position )
+	{
+		System.arraycopy( coordinates, i * n, position, 0, n );
+	}
+
+	/**
+	 * @return coordinate d of peak i
+	 */
+	public long getCoordinate( final int i, final int d )
+	{
+		return coordinates[ i * n + d ];
+	}
+
+	/**
+	 * @return the value of peak i
+	 */
+	public double getValue( final int i )
+	{
+		return values[ i ];
+	}
+
+	/**
+	 * @return a copy of the coordinates of all peaks, numDimensions()
+	 *         coordinates per peak
+	 */
+	public long[] getCoordinates()
+	{
+		return Arrays.copyOf( coordinates, size * n );
+	}
+
+	/**
+	 * @return a copy of the values of all peaks
+	 */
+	public double[] getValues()
+	{
+		return Arrays.copyOf( values, size );
+	}
+
+	/**
+	 * @return the positions of all peaks as {@link Point}s
+	 */
+	public List< Point > toPoints()
+	{
+		final ArrayList< Point > points = new ArrayList< Point >( size );
+		final long[] position = new long[ n ];
+		for ( int i = 0; i < size; ++i )
+		{
+			localize( i, position );
+			points.add( new Point( position ) );
+		}
+		return points;
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > values.length )
+		{
+			final int newCapacity = Math.max( capacity, values.length + ( values.length >> 1 ) + 1 );
+			coordinates = Arrays.copyOf( coordinates, newCapacity * n );
+			values = Arrays.copyOf( values, newCapacity );
+		}
+	}
+}
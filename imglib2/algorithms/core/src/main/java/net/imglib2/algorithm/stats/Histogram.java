@@ -40,6 +40,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 
+import net.imglib2.IterableInterval;
 import net.imglib2.RealCursor;
 import net.imglib2.algorithm.Algorithm;
 import net.imglib2.algorithm.Benchmark;
@@ -75,6 +76,17 @@ public class Histogram <T> implements Algorithm, Benchmark
 	 */
 	private final HistogramBinMapper<T> binMapper;	
 
+	/**
+	 * The image from which the histogram is calculated, if known. Then the
+	 * histogram is calculated in parallel by a {@link ParallelHistogram}.
+	 */
+	private final IterableInterval<T> image;
+
+	/**
+	 * Whether the image has been counted since the last reset.
+	 */
+	private boolean processed = false;
+
 	/**
 	 * Create a Histogram using the given mapper, calculating from the given
 	 * Cursor.
@@ -87,8 +99,15 @@ public class Histogram <T> implements Algorithm, Benchmark
 	public Histogram(final HistogramBinMapper<T> mapper,
 			final RealCursor<T> c)
 	{		
+		this(mapper, c, null);
+	}
+
+	private Histogram(final HistogramBinMapper<T> mapper,
+			final RealCursor<T> c, final IterableInterval<T> image)
+	{
 		cursor = c;
 		binMapper = mapper;
+		this.image = image;
 		histogram = new int[binMapper.getNumBins()];
 	}
 	
@@ -103,7 +122,22 @@ public class Histogram <T> implements Algorithm, Benchmark
 	public Histogram(final HistogramBinMapper<T> mapper,
 			final Img<T> image)
 	{
-		this(mapper, image.cursor());
+		this(mapper, (IterableInterval<T>) image);
+	}
+
+	/**
+	 * Create a Histogram using the given mapper, calculating from the given
+	 * IterableInterval. For an {@link IntBinMapper} or {@link RealBinMapper},
+	 * the histogram is calculated in parallel.
+	 * @param mapper the HistogramBinMapper used to map Type values to 
+	 * histogram bin indices. 
+	 * @param image an IterableInterval from which the Histogram will be
+	 * calculated
+	 */
+	public Histogram(final HistogramBinMapper<T> mapper,
+			final IterableInterval<T> image)
+	{
+		this(mapper, image.cursor(), image);
 	}
 	
 	/**
@@ -113,6 +147,7 @@ public class Histogram <T> implements Algorithm, Benchmark
 	{
 		Arrays.fill(histogram, 0);
 		cursor.reset();
+		processed = false;
 	}
 	
 	/**
@@ -205,6 +240,26 @@ public class Histogram <T> implements Algorithm, Benchmark
 	public boolean process() {
 		long startTime = System.currentTimeMillis();
 		int index;
+
+		// the bin mappers of this package can be used concurrently
+		if (image != null && (binMapper instanceof IntBinMapper ||
+				binMapper instanceof RealBinMapper))
+		{
+			if (!processed)
+			{
+				final ParallelHistogram<T> counter =
+					new ParallelHistogram<T>(binMapper, image);
+				counter.process();
+				final long[] counts = counter.getHistogram();
+				for (int i = 0; i < histogram.length; ++i)
+				{
+					histogram[i] += (int) counts[i];
+				}
+				processed = true;
+			}
+			pTime = System.currentTimeMillis() - startTime;
+			return true;
+		}
 		
 		while (cursor.hasNext())
 		{			
@@ -0,0 +1,462 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Computes a histogram, or a joint histogram of several images, in parallel.
+ * 
+ * The images are split into chunks of their iteration order that are counted
+ * by separate threads into private bins, which are added up at the end. For
+ * {@link UnsignedByteType} and {@link UnsignedShortType} images that are
+ * {@link ArrayImg}s or {@link PlanarImg}s, the pixels are read directly from
+ * the primitive arrays and mapped to bins through a lookup table that is
+ * filled once using the {@link HistogramBinMapper}. All other images are read
+ * through a {@link Cursor}.
+ * 
+ * A joint histogram of d images has one dimension per image. The bin of a
+ * pixel is (i_0, ..., i_{d-1}) where i_k is the bin of the pixel in image k,
+ * and it is stored at index i_0 + n_0 * (i_1 + n_1 * (i_2 + ...)) of
+ * {@link #getHistogram()}, n_k being the number of bins of image k. Pixels
+ * that fall outside the bins of any image are not counted. All images must
+ * have the same iteration order.
+ * 
+ * The {@link HistogramBinMapper}s are called concurrently and must therefore
+ * be thread safe, which is the case for {@link IntBinMapper} and
+ * {@link RealBinMapper}.
+ * 
+ * @param <T>
+ *            the pixel type
+ */
+public class ParallelHistogram< T > extends MultiThreadedBenchmarkAlgorithm
+{
+	/**
+	 * number of pixels whose bins are computed at once
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private final List< HistogramBinMapper< T > > mappers;
+
+	private final List< IterableInterval< T > > images;
+
+	private final int[] numBins;
+
+	private final long[] histogram;
+
+	/**
+	 * Create a histogram of one image.
+	 * 
+	 * @param mapper
+	 *            maps pixel values to bins
+	 * @param image
+	 *            the image
+	 */
+	public ParallelHistogram( final HistogramBinMapper< T > mapper, final IterableInterval< T > image )
+	{
+		this( Collections.singletonList( mapper ), Collections.singletonList( image ) );
+	}
+
+	/**
+	 * Create a joint histogram of several images.
+	 * 
+	 * @param mappers
+	 *            maps the pixel values of each image to its bins
+	 * @param images
+	 *            the images, which must have the same iteration order
+	 */
+	public ParallelHistogram( final List< ? extends HistogramBinMapper< T > > mappers, final List< ? extends IterableInterval< T > > images )
+	{
+		if ( mappers.size() != images.size() || images.isEmpty() )
+			throw new IllegalArgumentException( "ParallelHistogram: need one HistogramBinMapper for each of at least one image." );
+		this.mappers = new ArrayList< HistogramBinMapper< T > >( mappers );
+		this.images = new ArrayList< IterableInterval< T > >( images );
+		numBins = new int[ mappers.size() ];
+		long totalBins = 1;
+		for ( int d = 0; d < numBins.length; ++d )
+		{
+			numBins[ d ] = mappers.get( d ).getNumBins();
+			totalBins *= numBins[ d ];
+		}
+		if ( totalBins > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "ParallelHistogram: too many bins (" + totalBins + ")." );
+		histogram = new long[ ( int ) totalBins ];
+		numThreads = TaskExecutor.getInstance().getNumThreads();
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		final IterableInterval< T > first = images.get( 0 );
+		for ( final IterableInterval< T > image : images )
+		{
+			if ( image.size() != first.size() || !image.iterationOrder().equals( first.iterationOrder() ) )
+			{
+				errorMessage = "ParallelHistogram: all images must have the same iteration order.";
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Count the pixels of the images into the histogram, adding to the
+	 * counts of previous calls. Use {@link #reset()} to clear the histogram.
+	 */
+	@Override
+	public boolean process()
+	{
+		if ( !checkInput() )
+			return false;
+
+		final long startTime = System.currentTimeMillis();
+
+		TaskExecutor.getInstance().forEachChunk( images.get( 0 ).size(), numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long start, final long loopSize )
+			{
+				count( start, loopSize );
+			}
+		} );
+
+		processingTime = System.currentTimeMillis() - startTime;
+		return true;
+	}
+
+	/**
+	 * Count the pixels [start, start + loopSize) of the iteration order into
+	 * private bins and add them to the histogram.
+	 */
+	private void count( final long start, final long loopSize )
+	{
+		final int d = images.size();
+		final BinReader[] readers = new BinReader[ d ];
+		for ( int k = 0; k < d; ++k )
+			readers[ k ] = createReader( images.get( k ), mappers.get( k ), start );
+
+		final int[] bins = new int[ histogram.length ];
+		final int[] index = new int[ BLOCK_SIZE ];
+		final int[] block = new int[ BLOCK_SIZE ];
+
+		// flush the private bins before an int can overflow
+		long counted = 0;
+		for ( long done = 0; done < loopSize; )
+		{
+			final int n = ( int ) Math.min( BLOCK_SIZE, loopSize - done );
+			readers[ d - 1 ].read( index, n );
+			for ( int k = d - 2; k >= 0; --k )
+			{
+				readers[ k ].read( block, n );
+				final int nk = numBins[ k ];
+				for ( int i = 0; i < n; ++i )
+					index[ i ] = ( index[ i ] < 0 || block[ i ] < 0 ) ? -1 : index[ i ] * nk + block[ i ];
+			}
+			for ( int i = 0; i < n; ++i )
+				if ( index[ i ] >= 0 )
+					++bins[ index[ i ] ];
+
+			done += n;
+			counted += n;
+			if ( counted > Integer.MAX_VALUE - BLOCK_SIZE )
+			{
+				merge( bins );
+				Arrays.fill( bins, 0 );
+				counted = 0;
+			}
+		}
+		merge( bins );
+	}
+
+	private void merge( final int[] bins )
+	{
+		synchronized ( histogram )
+		{
+			for ( int i = 0; i < bins.length; ++i )
+				histogram[ i ] += bins[ i ];
+		}
+	}
+
+	/**
+	 * Clear the histogram.
+	 */
+	public void reset()
+	{
+		Arrays.fill( histogram, 0 );
+	}
+
+	/**
+	 * Returns the histogram. For a joint histogram, the bin (i_0, ...,
+	 * i_{d-1}) is at index i_0 + n_0 * (i_1 + n_1 * (i_2 + ...)).
+	 * 
+	 * @return the bin counts
+	 */
+	public long[] getHistogram()
+	{
+		return histogram;
+	}
+
+	/**
+	 * Returns the count of a bin.
+	 * 
+	 * @param indices
+	 *            the bin index for each image
+	 * @return the bin count
+	 */
+	public long getBin( final int... indices )
+	{
+		int index = 0;
+		for ( int k = numBins.length - 1; k >= 0; --k )
+			index = index * numBins[ k ] + indices[ k ];
+		return histogram[ index ];
+	}
+
+	/**
+	 * @return the number of images, i.e., the dimensionality of the
+	 *         histogram.
+	 */
+	public int numDimensions()
+	{
+		return numBins.length;
+	}
+
+	/**
+	 * @return the number of bins of image k.
+	 */
+	public int getNumBins( final int k )
+	{
+		return numBins[ k ];
+	}
+
+	/**
+	 * @return the {@link HistogramBinMapper} of image k.
+	 */
+	public HistogramBinMapper< T > getBinMapper( final int k )
+	{
+		return mappers.get( k );
+	}
+
+	/**
+	 * Computes the bin indices of successive pixels of one image, -1 for
+	 * pixels outside the bins.
+	 */
+	private static interface BinReader
+	{
+		public void read( int[] bins, int n );
+	}
+
+	private static < T > BinReader createReader( final IterableInterval< T > image, final HistogramBinMapper< T > mapper, final long start )
+	{
+		final T type = image.firstElement();
+		if ( type instanceof UnsignedByteType || type instanceof UnsignedShortType )
+		{
+			final Object[] planes = primitivePlanes( image );
+			if ( planes != null )
+				return new PrimitiveBinReader( planes, createLookupTable( type, mapper ), start );
+		}
+		return new CursorBinReader< T >( image, mapper, start );
+	}
+
+	/**
+	 * Returns the byte[] or short[] arrays that hold the pixels of an
+	 * {@link ArrayImg} or {@link PlanarImg} in iteration order, or null if
+	 * the image is of a different kind.
+	 */
+	private static Object[] primitivePlanes( final IterableInterval< ? > image )
+	{
+		final List< Object > storage = new ArrayList< Object >();
+		if ( image instanceof ArrayImg )
+		{
+			storage.add( ( ( ArrayImg< ?, ? > ) image ).update( null ) );
+		}
+		else if ( image instanceof PlanarImg )
+		{
+			final PlanarImg< ?, ? > planar = ( PlanarImg< ?, ? > ) image;
+			for ( int i = 0; i < planar.numSlices(); ++i )
+				storage.add( planar.getPlane( i ) );
+		}
+		else
+			return null;
+
+		final Object[] planes = new Object[ storage.size() ];
+		for ( int i = 0; i < planes.length; ++i )
+		{
+			final Object access = storage.get( i );
+			if ( access instanceof ByteArray )
+				planes[ i ] = ( ( ByteArray ) access ).getCurrentStorageArray();
+			else if ( access instanceof ShortArray )
+				planes[ i ] = ( ( ShortArray ) access ).getCurrentStorageArray();
+			else
+				return null;
+		}
+		return planes;
+	}
+
+	/**
+	 * Map every possible unsigned byte or short value to its bin.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < T > int[] createLookupTable( final T type, final HistogramBinMapper< T > mapper )
+	{
+		final int numBins = mapper.getNumBins();
+		final int[] lut;
+		if ( type instanceof UnsignedByteType )
+		{
+			lut = new int[ 1 << 8 ];
+			final UnsignedByteType value = new UnsignedByteType();
+			for ( int i = 0; i < lut.length; ++i )
+			{
+				value.set( i );
+				lut[ i ] = mapper.map( ( T ) value );
+			}
+		}
+		else
+		{
+			lut = new int[ 1 << 16 ];
+			final UnsignedShortType value = new UnsignedShortType();
+			for ( int i = 0; i < lut.length; ++i )
+			{
+				value.set( i );
+				lut[ i ] = mapper.map( ( T ) value );
+			}
+		}
+		for ( int i = 0; i < lut.length; ++i )
+			if ( lut[ i ] < 0 || lut[ i ] >= numBins )
+				lut[ i ] = -1;
+		return lut;
+	}
+
+	private static final class PrimitiveBinReader implements BinReader
+	{
+		private final Object[] planes;
+
+		private final int[] lut;
+
+		private int plane;
+
+		private int offset;
+
+		PrimitiveBinReader( final Object[] planes, final int[] lut, final long start )
+		{
+			this.planes = planes;
+			this.lut = lut;
+			long s = start;
+			plane = 0;
+			while ( plane < planes.length - 1 && s >= length( planes[ plane ] ) )
+				s -= length( planes[ plane++ ] );
+			offset = ( int ) s;
+		}
+
+		private static int length( final Object array )
+		{
+			return array instanceof byte[] ? ( ( byte[] ) array ).length : ( ( short[] ) array ).length;
+		}
+
+		@Override
+		public void read( final int[] bins, final int n )
+		{
+			for ( int i = 0; i < n; )
+			{
+				if ( offset == length( planes[ plane ] ) )
+				{
+					++plane;
+					offset = 0;
+				}
+				final Object array = planes[ plane ];
+				final int m = Math.min( n - i, length( array ) - offset );
+				if ( array instanceof byte[] )
+				{
+					final byte[] data = ( byte[] ) array;
+					for ( int j = 0; j < m; ++j )
+						bins[ i + j ] = lut[ data[ offset + j ] & 0xff ];
+				}
+				else
+				{
+					final short[] data = ( short[] ) array;
+					for ( int j = 0; j < m; ++j )
+						bins[ i + j ] = lut[ data[ offset + j ] & 0xffff ];
+				}
+				offset += m;
+				i += m;
+			}
+		}
+	}
+
+	private static final class CursorBinReader< T > implements BinReader
+	{
+		private final Cursor< T > cursor;
+
+		private final HistogramBinMapper< T > mapper;
+
+		private final int numBins;
+
+		CursorBinReader( final IterableInterval< T > image, final HistogramBinMapper< T > mapper, final long start )
+		{
+			this.mapper = mapper;
+			numBins = mapper.getNumBins();
+			cursor = image.cursor();
+			cursor.jumpFwd( start );
+		}
+
+		@Override
+		public void read( final int[] bins, final int n )
+		{
+			for ( int i = 0; i < n; ++i )
+			{
+				cursor.fwd();
+				final int bin = mapper.map( cursor.get() );
+				bins[ i ] = ( bin >= 0 && bin < numBins ) ? bin : -1;
+			}
+		}
+	}
+}
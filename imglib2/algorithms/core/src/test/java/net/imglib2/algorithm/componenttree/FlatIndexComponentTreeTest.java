@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.componenttree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+
+import org.junit.Test;
+
+/**
+ * Check that {@link FlatIndexComponentTree} emits the same components as
+ * {@link ComponentTree}.
+ */
+public class FlatIndexComponentTreeTest
+{
+	/**
+	 * Component recording the flat indices of its pixels.
+	 */
+	static class IndexComponent< T extends Type< T > > implements Component< T >
+	{
+		final T value;
+
+		final long[] dimensions;
+
+		final TreeSet< Long > indices = new TreeSet< Long >();
+
+		final long[] tmp;
+
+		IndexComponent( final T value, final long[] dimensions )
+		{
+			this.value = value.copy();
+			this.dimensions = dimensions;
+			tmp = new long[ dimensions.length ];
+		}
+
+		@Override
+		public void setValue( final T value )
+		{
+			this.value.set( value );
+		}
+
+		@Override
+		public T getValue()
+		{
+			return value;
+		}
+
+		@Override
+		public void addPosition( final Localizable position )
+		{
+			position.localize( tmp );
+			indices.add( IntervalIndexer.positionToIndex( tmp, dimensions ) );
+		}
+
+		@Override
+		public void merge( final Component< T > component )
+		{
+			indices.addAll( ( ( IndexComponent< T > ) component ).indices );
+		}
+	}
+
+	static class Recorder< T extends Type< T > > implements Component.Generator< T, IndexComponent< T > >, Component.Handler< IndexComponent< T > >
+	{
+		final T maxValue;
+
+		final long[] dimensions;
+
+		final ArrayList< String > emitted = new ArrayList< String >();
+
+		Recorder( final T maxValue, final long[] dimensions )
+		{
+			this.maxValue = maxValue;
+			this.dimensions = dimensions;
+		}
+
+		@Override
+		public IndexComponent< T > createComponent( final T value )
+		{
+			return new IndexComponent< T >( value, dimensions );
+		}
+
+		@Override
+		public IndexComponent< T > createMaxComponent()
+		{
+			return new IndexComponent< T >( maxValue, dimensions );
+		}
+
+		@Override
+		public void emit( final IndexComponent< T > component )
+		{
+			emitted.add( component.value.toString() + " " + component.indices.toString() );
+		}
+
+		ArrayList< String > sorted()
+		{
+			Collections.sort( emitted );
+			return emitted;
+		}
+	}
+
+	private static < T extends Type< T > > void assertSameComponents( final RandomAccessibleInterval< T > img, final T maxValue, final Comparator< T > comparator )
+	{
+		final long[] dimensions = new long[ img.numDimensions() ];
+		img.dimensions( dimensions );
+		final Recorder< T > expected = new Recorder< T >( maxValue, dimensions );
+		ComponentTree.buildComponentTree( img, expected, expected, comparator );
+		final Recorder< T > actual = new Recorder< T >( maxValue, dimensions );
+		FlatIndexComponentTree.buildComponentTree( img, actual, actual, comparator );
+		assertEquals( expected.sorted(), actual.sorted() );
+	}
+
+	@Test
+	public void testBucketQueue()
+	{
+		final Random random = new Random( 42 );
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 37, 23 );
+		for ( final UnsignedShortType t : img )
+			t.set( random.nextInt( 20 ) );
+		assertSameComponents( img, new UnsignedShortType( 65535 ), new ComponentTree.DarkToBright< UnsignedShortType >() );
+		assertSameComponents( img, new UnsignedShortType( 0 ), new ComponentTree.BrightToDark< UnsignedShortType >() );
+	}
+
+	@Test
+	public void testRealHeap()
+	{
+		final Random random = new Random( 43 );
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( 11, 9, 7 );
+		for ( final FloatType t : img )
+			t.set( random.nextInt( 10 ) * 0.5f );
+		assertSameComponents( img, new FloatType( Float.MAX_VALUE ), new ComponentTree.DarkToBright< FloatType >() );
+		assertSameComponents( img, new FloatType( -Float.MAX_VALUE ), new ComponentTree.BrightToDark< FloatType >() );
+	}
+
+	@Test
+	public void testComparatorHeap()
+	{
+		final Random random = new Random( 44 );
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 29, 31 );
+		for ( final UnsignedShortType t : img )
+			t.set( random.nextInt( 1000 ) );
+		// not one of the default comparators, so that no queue specialization applies
+		final Comparator< UnsignedShortType > comparator = new Comparator< UnsignedShortType >()
+		{
+			@Override
+			public int compare( final UnsignedShortType o1, final UnsignedShortType o2 )
+			{
+				return o2.get() - o1.get();
+			}
+		};
+		assertSameComponents( img, new UnsignedShortType( 0 ), comparator );
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.integral;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class IntegralImgTest {
+
+	private static final long[] dimensions = { 13, 7, 5 };
+
+	private static final Converter<UnsignedByteType, LongType> toLong = new Converter<UnsignedByteType, LongType>() {
+		@Override
+		public void convert(final UnsignedByteType input, final LongType output) {
+			output.set(input.get());
+		}
+	};
+
+	private static final Converter<UnsignedByteType, DoubleType> toDouble = new Converter<UnsignedByteType, DoubleType>() {
+		@Override
+		public void convert(final UnsignedByteType input, final DoubleType output) {
+			output.set(input.get());
+		}
+	};
+
+	private static Img<UnsignedByteType> randomImg(final long seed) {
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		final Random random = new Random(seed);
+		for (final UnsignedByteType t : img)
+			t.set(random.nextInt(256));
+		return img;
+	}
+
+	private static long bruteForceSum(final Img<UnsignedByteType> img, final long[] min, final long[] max) {
+		long sum = 0;
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		A: while (c.hasNext()) {
+			c.fwd();
+			for (int d = 0; d < min.length; ++d)
+				if (c.getLongPosition(d) < min[d] || c.getLongPosition(d) > max[d])
+					continue A;
+			sum += c.get().get();
+		}
+		return sum;
+	}
+
+	private static void checkIntegral(final Img<UnsignedByteType> img, final Img<? extends RealType<?>> integral) {
+		final RandomAccess<? extends RealType<?>> ra = integral.randomAccess();
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		final long[] pos = new long[img.numDimensions()];
+		final long[] min = new long[img.numDimensions()];
+		while (c.hasNext()) {
+			c.fwd();
+			c.localize(pos);
+			for (int d = 0; d < pos.length; ++d)
+				ra.setPosition(pos[d] + 1, d);
+			assertEquals(bruteForceSum(img, min, pos), ra.get().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testParallelIntegral() {
+		final Img<UnsignedByteType> img = randomImg(1);
+		for (final int numThreads : new int[] { 1, 4 }) {
+			final IntegralImgLong<UnsignedByteType> integral = new IntegralImgLong<UnsignedByteType>(img, new LongType(), toLong);
+			integral.setNumThreads(numThreads);
+			assertTrue(integral.process());
+			checkIntegral(img, integral.getResult());
+
+			final IntegralImg<UnsignedByteType, DoubleType> generic = new IntegralImg<UnsignedByteType, DoubleType>(img, new DoubleType(), toDouble);
+			generic.setNumThreads(numThreads);
+			assertTrue(generic.process());
+			checkIntegral(img, generic.getResult());
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		final Img<UnsignedByteType> source = randomImg(2);
+		final Img<UnsignedByteType> stream = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		final IntegralImgDouble<UnsignedByteType> integral = new IntegralImgDouble<UnsignedByteType>(stream, new DoubleType(), toDouble);
+		integral.setNumThreads(3);
+
+		// append the frames of the source one (or two) at a time
+		final RandomAccess<UnsignedByteType> in = source.randomAccess();
+		final Cursor<UnsignedByteType> out = stream.localizingCursor();
+		long frame = 0;
+		while (frame < dimensions[2]) {
+			final long last = Math.min(frame + frame % 2, dimensions[2] - 1);
+			out.reset();
+			while (out.hasNext()) {
+				out.fwd();
+				final long z = out.getLongPosition(2);
+				if (z >= frame && z <= last) {
+					in.setPosition(out);
+					out.get().set(in.get());
+				}
+			}
+			assertTrue(integral.update(frame, last));
+			frame = last + 1;
+		}
+		checkIntegral(source, integral.getResult());
+	}
+
+	@Test
+	public void testBoxSums() {
+		final Img<UnsignedByteType> img = randomImg(3);
+		final IntegralImgLong<UnsignedByteType> longIntegral = new IntegralImgLong<UnsignedByteType>(img, new LongType(), toLong);
+		longIntegral.process();
+		final IntegralImgDouble<UnsignedByteType> doubleIntegral = new IntegralImgDouble<UnsignedByteType>(img, new DoubleType(), toDouble);
+		doubleIntegral.process();
+		final IntegralSum<LongType> longSum = new IntegralSum<LongType>(longIntegral.getResult());
+		final IntegralSum<DoubleType> doubleSum = new IntegralSum<DoubleType>(doubleIntegral.getResult());
+
+		final Random random = new Random(4);
+		final long[] min = new long[3];
+		final long[] max = new long[3];
+		for (int i = 0; i < 50; ++i) {
+			for (int d = 0; d < 3; ++d) {
+				final long a = random.nextInt((int) dimensions[d]);
+				final long b = random.nextInt((int) dimensions[d]);
+				min[d] = Math.min(a, b);
+				max[d] = Math.max(a, b);
+			}
+			final long expected = bruteForceSum(img, min, max);
+			assertEquals(expected, longSum.sumLong(min, max));
+			assertEquals(expected, doubleSum.sum(min, max), 0);
+		}
+	}
+
+	@Test
+	public void testBoxSums2D() {
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(new long[] { 9, 6 }, new UnsignedByteType());
+		int v = 0;
+		for (final UnsignedByteType t : img)
+			t.set(v++ % 7);
+		final IntegralImgLong<UnsignedByteType> integral = new IntegralImgLong<UnsignedByteType>(img, new LongType(), toLong);
+		integral.process();
+		final IntegralSum<LongType> sum = new IntegralSum<LongType>(integral.getResult());
+		assertEquals(bruteForceSum(img, new long[] { 2, 1 }, new long[] { 6, 4 }), sum.sum(2, 1, 6, 4), 0);
+		assertEquals(bruteForceSum(img, new long[] { 0, 0 }, new long[] { 8, 5 }), sum.sum(0, 0, 8, 5), 0);
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.localextrema;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.localextrema.LocalExtremaFinder.Extremum;
+import net.imglib2.algorithm.localextrema.LocalExtremaFinder.Plateau;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LocalExtremaFinderTest {
+
+	private static Img<UnsignedByteType> randomImg(final long[] dimensions, final int range, final long seed) {
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		final Random random = new Random(seed);
+		for (final UnsignedByteType t : img)
+			t.set(random.nextInt(range));
+		return img;
+	}
+
+	private static boolean inside(final long[] p, final RandomAccessibleInterval<?> img) {
+		for (int d = 0; d < p.length; ++d)
+			if (p[d] < img.min(d) || p[d] > img.max(d))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Compares every pixel with all its neighbours through a RandomAccess.
+	 * Plateau pixels are returned in plateaus.
+	 */
+	private static long[] bruteForce(final RandomAccessibleInterval<UnsignedByteType> img, final Extremum extremum, final double threshold, final boolean strict) {
+		final int n = img.numDimensions();
+		final double sign = extremum == Extremum.MAXIMA ? 1 : -1;
+		final ArrayList<Long> result = new ArrayList<Long>();
+		final Cursor<UnsignedByteType> c = Views.iterable(img).localizingCursor();
+		final RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		final long[] p = new long[n];
+		final long[] q = new long[n];
+		int count = 1;
+		for (int d = 0; d < n; ++d)
+			count *= 3;
+		A: while (c.hasNext()) {
+			c.fwd();
+			c.localize(p);
+			final double v = sign * c.get().get();
+			if (v < sign * threshold)
+				continue;
+			for (int i = 0; i < count; ++i) {
+				boolean zero = true;
+				for (int d = 0, r = i; d < n; ++d, r /= 3) {
+					q[d] = p[d] + r % 3 - 1;
+					zero &= q[d] == p[d];
+				}
+				if (zero || !inside(q, img))
+					continue;
+				ra.setPosition(q);
+				final double u = sign * ra.get().get();
+				if (u > v || (strict && u == v))
+					continue A;
+			}
+			for (final long x : p)
+				result.add(x);
+		}
+		final long[] coordinates = new long[result.size()];
+		for (int i = 0; i < coordinates.length; ++i)
+			coordinates[i] = result.get(i);
+		return coordinates;
+	}
+
+	/**
+	 * Labels every plateau (including single pixels) with a complete flood
+	 * fill and returns the first pixel of each plateau without a larger
+	 * neighbour, in raster order.
+	 */
+	private static long[] bruteForceRegional(final Img<UnsignedByteType> img, final Extremum extremum) {
+		final int n = img.numDimensions();
+		final long[] dims = new long[n];
+		img.dimensions(dims);
+		final double sign = extremum == Extremum.MAXIMA ? 1 : -1;
+		final boolean[] visited = new boolean[(int) img.size()];
+		final ArrayList<Long> result = new ArrayList<Long>();
+		final RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		final long[] p = new long[n];
+		final long[] q = new long[n];
+		int count = 1;
+		for (int d = 0; d < n; ++d)
+			count *= 3;
+		for (int seed = 0; seed < visited.length; ++seed) {
+			if (visited[seed])
+				continue;
+			IntervalIndexer.indexToPosition(seed, dims, p);
+			ra.setPosition(p);
+			final double v = sign * ra.get().get();
+			boolean regional = true;
+			final ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+			visited[seed] = true;
+			queue.add(seed);
+			while (!queue.isEmpty()) {
+				IntervalIndexer.indexToPosition(queue.poll(), dims, p);
+				for (int i = 0; i < count; ++i) {
+					for (int d = 0, r = i; d < n; ++d, r /= 3)
+						q[d] = p[d] + r % 3 - 1;
+					if (!inside(q, img))
+						continue;
+					ra.setPosition(q);
+					final double u = sign * ra.get().get();
+					final int index = (int) IntervalIndexer.positionToIndex(q, dims);
+					if (u > v)
+						regional = false;
+					else if (u == v && !visited[index]) {
+						visited[index] = true;
+						queue.add(index);
+					}
+				}
+			}
+			if (regional) {
+				IntervalIndexer.indexToPosition(seed, dims, p);
+				for (final long x : p)
+					result.add(x);
+			}
+		}
+		final long[] coordinates = new long[result.size()];
+		for (int i = 0; i < coordinates.length; ++i)
+			coordinates[i] = result.get(i);
+		return coordinates;
+	}
+
+	private static long[] find(final RandomAccessibleInterval<UnsignedByteType> img, final Extremum extremum, final double threshold, final Plateau plateau, final int numThreads) {
+		final LocalExtremaFinder<UnsignedByteType> finder = new LocalExtremaFinder<UnsignedByteType>(img, extremum, threshold);
+		finder.setPlateau(plateau);
+		finder.setNumThreads(numThreads);
+		assertTrue(finder.process());
+		return finder.getPeaks().getCoordinates();
+	}
+
+	@Test
+	public void testStrictAndAll() {
+		final long[][] dimensions = { { 50 }, { 31, 27 }, { 13, 11, 9 }, { 6, 5, 4, 3 } };
+		for (final long[] dims : dimensions) {
+			final Img<UnsignedByteType> img = randomImg(dims, 256, dims.length);
+			for (final Extremum extremum : Extremum.values()) {
+				final double threshold = extremum == Extremum.MAXIMA ? 100 : 150;
+				for (final int numThreads : new int[] { 1, 4 }) {
+					assertArrayEquals(bruteForce(img, extremum, threshold, true), find(img, extremum, threshold, Plateau.STRICT, numThreads));
+					assertArrayEquals(bruteForce(img, extremum, threshold, false), find(img, extremum, threshold, Plateau.ALL, numThreads));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testView() {
+		final Img<UnsignedByteType> img = randomImg(new long[] { 40, 30 }, 256, 7);
+		final RandomAccessibleInterval<UnsignedByteType> view = Views.interval(img, new long[] { 5, 3 }, new long[] { 34, 25 });
+		assertArrayEquals(bruteForce(view, Extremum.MAXIMA, 0, true), find(view, Extremum.MAXIMA, 0, Plateau.STRICT, 3));
+	}
+
+	@Test
+	public void testOnePerPlateau() {
+		// a plateau of 3 pixels, a plateau next to a larger pixel, and a
+		// single maximum
+		final int[][] values = {
+				{ 0, 0, 0, 0, 0, 0, 0 },
+				{ 0, 5, 5, 0, 0, 0, 0 },
+				{ 0, 5, 0, 0, 4, 4, 6 },
+				{ 0, 0, 0, 0, 0, 0, 0 },
+				{ 0, 0, 3, 0, 0, 0, 1 } };
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(new long[] { 7, 5 }, new UnsignedByteType());
+		final RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		for (int y = 0; y < 5; ++y)
+			for (int x = 0; x < 7; ++x) {
+				ra.setPosition(new long[] { x, y });
+				ra.get().set(values[y][x]);
+			}
+
+		final LocalExtremaFinder<UnsignedByteType> finder = new LocalExtremaFinder<UnsignedByteType>(img, Extremum.MAXIMA, 1);
+		finder.setPlateau(Plateau.ONE_PER_PLATEAU);
+		assertTrue(finder.process());
+		assertArrayEquals(new long[] { 1, 1, 6, 2, 2, 4, 6, 4 }, finder.getPeaks().getCoordinates());
+		assertEquals(5, finder.getPeaks().getValue(0), 0);
+		assertEquals(1, finder.getPeaks().getValue(3), 0);
+
+		// the background is one large regional minimum
+		final LocalExtremaFinder<UnsignedByteType> minima = new LocalExtremaFinder<UnsignedByteType>(img, Extremum.MINIMA);
+		minima.setPlateau(Plateau.ONE_PER_PLATEAU);
+		assertTrue(minima.process());
+		assertArrayEquals(new long[] { 0, 0 }, minima.getPeaks().getCoordinates());
+	}
+
+	@Test
+	public void testOnePerPlateauStoppedFlood() {
+		// the flood from (2, 1) stops at the larger pixel next to (1, 1), the
+		// flood from (4, 1) must not report the rest of the plateau
+		final int[][] values = {
+				{ 0, 0, 0, 0, 0, 0, 0 },
+				{ 6, 5, 5, 5, 5, 5, 0 },
+				{ 0, 0, 0, 0, 0, 0, 0 } };
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(new long[] { 7, 3 }, new UnsignedByteType());
+		final RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		for (int y = 0; y < 3; ++y)
+			for (int x = 0; x < 7; ++x) {
+				ra.setPosition(new long[] { x, y });
+				ra.get().set(values[y][x]);
+			}
+		assertArrayEquals(new long[] { 0, 1 }, find(img, Extremum.MAXIMA, 1, Plateau.ONE_PER_PLATEAU, 1));
+	}
+
+	@Test
+	public void testOnePerPlateauRandom() {
+		// with few grey values there are many plateaus, each regional maximum
+		// must contain exactly one peak and every peak must be a non-strict
+		// local maximum
+		final Img<UnsignedByteType> img = randomImg(new long[] { 40, 35, 6 }, 3, 11);
+		final long[] all = bruteForce(img, Extremum.MAXIMA, 0, false);
+		for (final int numThreads : new int[] { 1, 4 }) {
+			final long[] peaks = find(img, Extremum.MAXIMA, 0, Plateau.ONE_PER_PLATEAU, numThreads);
+			assertTrue(peaks.length > 0);
+			assertArrayEquals(peaks, find(img, Extremum.MAXIMA, 0, Plateau.ONE_PER_PLATEAU, 1));
+			int j = 0;
+			for (int i = 0; i < peaks.length; i += 3) {
+				while (j < all.length && !(all[j] == peaks[i] && all[j + 1] == peaks[i + 1] && all[j + 2] == peaks[i + 2]))
+					j += 3;
+				assertTrue(j < all.length);
+			}
+		}
+	}
+
+	@Test
+	public void testOnePerPlateauRegional() {
+		// plateaus next to larger pixels are found by several floods, the
+		// later ones must stop at the pixels of the earlier ones
+		final long[][] dimensions = { { 60 }, { 31, 27 }, { 13, 11, 9 }, { 6, 5, 4, 3 } };
+		for (final long[] dims : dimensions) {
+			for (final int range : new int[] { 2, 3 }) {
+				final Img<UnsignedByteType> img = randomImg(dims, range, 5 * dims.length + range);
+				for (final Extremum extremum : Extremum.values()) {
+					final double threshold = extremum == Extremum.MAXIMA ? 0 : 255;
+					for (final int numThreads : new int[] { 1, 4 })
+						assertArrayEquals(bruteForceRegional(img, extremum), find(img, extremum, threshold, Plateau.ONE_PER_PLATEAU, numThreads));
+				}
+			}
+		}
+	}
+}
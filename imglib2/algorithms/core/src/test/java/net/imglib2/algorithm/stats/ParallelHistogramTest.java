@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class ParallelHistogramTest {
+
+	private static final long[] dimensions = { 37, 21, 5 };
+
+	private static <T extends RealType<T>> void fill(final Img<T> img, final long seed, final int max) {
+		final Random random = new Random(seed);
+		for (final T t : img)
+			t.setReal(random.nextInt(max));
+	}
+
+	private static <T> long[] bruteForce(final HistogramBinMapper<T> mapper, final IterableInterval<T> img) {
+		final long[] expected = new long[mapper.getNumBins()];
+		final Cursor<T> c = img.cursor();
+		while (c.hasNext()) {
+			final int bin = mapper.map(c.next());
+			if (bin >= 0 && bin < expected.length)
+				++expected[bin];
+		}
+		return expected;
+	}
+
+	private static <T> void check(final HistogramBinMapper<T> mapper, final Img<T> img) {
+		for (final int numThreads : new int[] { 1, 3 }) {
+			final ParallelHistogram<T> histogram = new ParallelHistogram<T>(mapper, img);
+			histogram.setNumThreads(numThreads);
+			assertTrue(histogram.process());
+			assertArrayEquals(bruteForce(mapper, img), histogram.getHistogram());
+		}
+	}
+
+	@Test
+	public void testUnsignedByteArrayImg() {
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		fill(img, 1, 256);
+		check(new IntBinMapper<UnsignedByteType>(new UnsignedByteType()), img);
+		check(new IntBinMapper<UnsignedByteType>(new UnsignedByteType(10), new UnsignedByteType(100)), img);
+	}
+
+	@Test
+	public void testUnsignedShortPlanarImg() {
+		final Img<UnsignedShortType> img = new PlanarImgFactory<UnsignedShortType>().create(dimensions, new UnsignedShortType());
+		fill(img, 2, 65536);
+		check(new IntBinMapper<UnsignedShortType>(new UnsignedShortType()), img);
+		check(new RealBinMapper<UnsignedShortType>(new UnsignedShortType(0), new UnsignedShortType(65535), 100), img);
+	}
+
+	@Test
+	public void testGenericImg() {
+		final Img<FloatType> img = new CellImgFactory<FloatType>(8).create(dimensions, new FloatType());
+		fill(img, 3, 50);
+		check(new RealBinMapper<FloatType>(new FloatType(0), new FloatType(49), 10), img);
+	}
+
+	@Test
+	public void testJointHistogram() {
+		final Img<UnsignedByteType> a = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		final Img<UnsignedByteType> b = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		fill(a, 4, 8);
+		fill(b, 5, 5);
+		final HistogramBinMapper<UnsignedByteType> ma = new IntBinMapper<UnsignedByteType>(new UnsignedByteType(0), new UnsignedByteType(7));
+		final HistogramBinMapper<UnsignedByteType> mb = new IntBinMapper<UnsignedByteType>(new UnsignedByteType(1), new UnsignedByteType(4));
+		final List<HistogramBinMapper<UnsignedByteType>> mappers = Arrays.asList(ma, mb);
+		final List<Img<UnsignedByteType>> images = Arrays.asList(a, b);
+		final ParallelHistogram<UnsignedByteType> histogram = new ParallelHistogram<UnsignedByteType>(mappers, images);
+		histogram.setNumThreads(3);
+		assertTrue(histogram.process());
+		assertEquals(2, histogram.numDimensions());
+
+		final long[][] expected = new long[8][4];
+		final Cursor<UnsignedByteType> ca = a.cursor();
+		final Cursor<UnsignedByteType> cb = b.cursor();
+		long total = 0;
+		while (ca.hasNext()) {
+			final int i = ma.map(ca.next());
+			final int j = mb.map(cb.next());
+			if (j >= 0 && j < 4) {
+				++expected[i][j];
+				++total;
+			}
+		}
+		long sum = 0;
+		for (int i = 0; i < 8; ++i)
+			for (int j = 0; j < 4; ++j) {
+				assertEquals(expected[i][j], histogram.getBin(i, j));
+				sum += histogram.getBin(i, j);
+			}
+		assertEquals(total, sum);
+	}
+
+	@Test
+	public void testHistogramUsesParallelCount() {
+		final Img<UnsignedByteType> img = new ArrayImgFactory<UnsignedByteType>().create(dimensions, new UnsignedByteType());
+		fill(img, 6, 256);
+		final IntBinMapper<UnsignedByteType> mapper = new IntBinMapper<UnsignedByteType>(new UnsignedByteType());
+		final Histogram<UnsignedByteType> histogram = new Histogram<UnsignedByteType>(mapper, img);
+		assertTrue(histogram.process());
+		// processing twice without reset does not count twice
+		assertTrue(histogram.process());
+		final long[] expected = bruteForce(mapper, img);
+		for (int i = 0; i < expected.length; ++i)
+			assertEquals(expected[i], histogram.getBin(i));
+		histogram.reset();
+		assertEquals(0, histogram.getBin(5));
+	}
+}
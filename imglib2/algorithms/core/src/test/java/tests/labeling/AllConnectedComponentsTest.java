@@ -37,16 +37,23 @@
 package tests.labeling;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
+import net.imglib2.algorithm.labeling.ParallelConnectedComponents;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.type.logic.BitType;
@@ -206,4 +213,115 @@ public class AllConnectedComponentsTest
 		test2D( input, expected, strel, 1, 0 );
 
 	}
+
+	/**
+	 * Label a random 3D mask with {@link ParallelConnectedComponents} and
+	 * compare to components found by a breadth-first search, named in the
+	 * order of the image cursor.
+	 */
+	private void testRandom3D( final ImgFactory< BitType > imgFactory, final long[][] structuringElement, final int numThreads )
+	{
+		final long[] dimensions = new long[] { 37, 23, 29 };
+		final Img< BitType > image = imgFactory.create( dimensions, new BitType() );
+		final Random random = new Random( 17 );
+		for ( final BitType t : image )
+			t.set( random.nextDouble() < 0.3 );
+
+		// reference components
+		final int w = ( int ) dimensions[ 0 ], h = ( int ) dimensions[ 1 ], d = ( int ) dimensions[ 2 ];
+		final boolean[] mask = new boolean[ w * h * d ];
+		final RandomAccess< BitType > ra = image.randomAccess();
+		final long[] position = new long[ 3 ];
+		for ( int i = 0; i < mask.length; ++i )
+		{
+			position[ 0 ] = i % w;
+			position[ 1 ] = ( i / w ) % h;
+			position[ 2 ] = i / w / h;
+			ra.setPosition( position );
+			mask[ i ] = ra.get().get();
+		}
+		final int[] component = new int[ mask.length ];
+		Arrays.fill( component, -1 );
+		final int[] queue = new int[ mask.length ];
+		int numComponents = 0;
+		for ( int i = 0; i < mask.length; ++i )
+		{
+			if ( !mask[ i ] || component[ i ] >= 0 )
+				continue;
+			int head = 0, tail = 0;
+			queue[ tail++ ] = i;
+			component[ i ] = numComponents;
+			while ( head < tail )
+			{
+				final int j = queue[ head++ ];
+				final int x = j % w, y = ( j / w ) % h, z = j / w / h;
+				for ( final long[] offset : structuringElement )
+				{
+					final int nx = x + ( int ) offset[ 0 ], ny = y + ( int ) offset[ 1 ], nz = z + ( int ) offset[ 2 ];
+					if ( nx < 0 || ny < 0 || nz < 0 || nx >= w || ny >= h || nz >= d )
+						continue;
+					final int k = nx + w * ( ny + h * nz );
+					if ( mask[ k ] && component[ k ] < 0 )
+					{
+						component[ k ] = numComponents;
+						queue[ tail++ ] = k;
+					}
+				}
+			}
+			++numComponents;
+		}
+		final int[] names = new int[ numComponents ];
+		Arrays.fill( names, -1 );
+		int nextName = 1;
+		final Cursor< BitType > c = image.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( position );
+			final int k = ( int ) ( position[ 0 ] + w * ( position[ 1 ] + h * position[ 2 ] ) );
+			if ( mask[ k ] && names[ component[ k ] ] < 0 )
+				names[ component[ k ] ] = nextName++;
+		}
+		assertTrue( numComponents > 1 );
+
+		final NativeImgLabeling< Integer, IntType > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		ParallelConnectedComponents.labelAllConnectedComponents( labeling, image, AllConnectedComponents.getIntegerNames( 1 ), structuringElement, numThreads );
+
+		final Cursor< LabelingType< Integer > > lc = labeling.localizingCursor();
+		while ( lc.hasNext() )
+		{
+			final List< Integer > labels = lc.next().getLabeling();
+			lc.localize( position );
+			final int k = ( int ) ( position[ 0 ] + w * ( position[ 1 ] + h * position[ 2 ] ) );
+			if ( mask[ k ] )
+			{
+				assertEquals( 1, labels.size() );
+				assertEquals( names[ component[ k ] ], labels.get( 0 ).intValue() );
+			}
+			else
+				assertEquals( 0, labels.size() );
+		}
+	}
+
+	@Test
+	public void testParallel()
+	{
+		final long[][] strel = AllConnectedComponents.getStructuringElement( 3 );
+		for ( final int numThreads : new int[] { 1, 3, 8 } )
+			testRandom3D( new ArrayImgFactory< BitType >(), strel, numThreads );
+	}
+
+	@Test
+	public void testParallelCustomStrel()
+	{
+		final long[][] strel = { { -1, 0, 0 }, { 1, 0, 0 }, { 0, -1, 0 }, { 0, 1, 0 }, { 0, 0, -2 }, { 0, 0, 2 } };
+		for ( final int numThreads : new int[] { 1, 3, 8 } )
+			testRandom3D( new ArrayImgFactory< BitType >(), strel, numThreads );
+	}
+
+	@Test
+	public void testParallelCellImg()
+	{
+		testRandom3D( new CellImgFactory< BitType >( 8 ), AllConnectedComponents.getStructuringElement( 3 ), 3 );
+	}
 }
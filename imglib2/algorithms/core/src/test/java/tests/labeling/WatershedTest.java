@@ -40,17 +40,23 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import net.imglib2.Cursor;
 import net.imglib2.algorithm.labeling.AllConnectedComponents;
+import net.imglib2.algorithm.labeling.HierarchicalQueue;
+import net.imglib2.algorithm.labeling.HierarchicalQueueWatershed;
 import net.imglib2.algorithm.labeling.Watershed;
+import net.imglib2.img.Img;
 import net.imglib2.img.NativeImg;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.img.basictypeaccess.IntAccess;
 import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
 
 import org.junit.Test;
 
@@ -62,6 +68,12 @@ import org.junit.Test;
 public class WatershedTest
 {
 	private void testSeededCase2D( int[][] image, int[][] seeds, int[][] expected, long[][] structuringElement, int background )
+	{
+		testSeededCase2D( new Watershed< IntType, Integer >(), image, seeds, expected, structuringElement, background );
+		testSeededCase2D( new HierarchicalQueueWatershed< IntType, Integer >(), image, seeds, expected, structuringElement, background );
+	}
+
+	private void testSeededCase2D( Watershed< IntType, Integer > watershed, int[][] image, int[][] seeds, int[][] expected, long[][] structuringElement, int background )
 	{
 		long[] imageDimensions = new long[] { image.length, image[ 0 ].length };
 		long[] seedDimensions = new long[] { seeds.length, seeds[ 0 ].length };
@@ -101,7 +113,6 @@ public class WatershedTest
 		/*
 		 * Run the seeded watershed algorithm
 		 */
-		Watershed< IntType, Integer > watershed = new Watershed< IntType, Integer >();
 		watershed.setSeeds( seedLabeling );
 		watershed.setIntensityImage( imageImage );
 		watershed.setStructuringElement( structuringElement );
@@ -167,4 +178,65 @@ public class WatershedTest
 		}
 		testSeededCase2D( image, seeds, expected, null, 0 );
 	}
+
+	private < T extends RealType< T >> NativeImgLabeling< Integer, IntType > runWatershed( Watershed< T, Integer > watershed, Img< T > image, NativeImgLabeling< Integer, IntType > seeds )
+	{
+		long[] dimensions = new long[ image.numDimensions() ];
+		image.dimensions( dimensions );
+		NativeImgLabeling< Integer, IntType > output = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		watershed.setSeeds( seeds );
+		watershed.setIntensityImage( image );
+		watershed.setStructuringElement( AllConnectedComponents.getStructuringElement( image.numDimensions() ) );
+		watershed.setOutputLabeling( output );
+		assertTrue( watershed.process() );
+		return output;
+	}
+
+	private < T extends RealType< T >> void compareWithWatershed( Img< T > image, int numLevels )
+	{
+		long[] dimensions = new long[ image.numDimensions() ];
+		image.dimensions( dimensions );
+		NativeImgLabeling< Integer, IntType > seeds = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		Random random = new Random( 1 );
+		Cursor< LabelingType< Integer >> sc = seeds.cursor();
+		while ( sc.hasNext() )
+		{
+			LabelingType< Integer > t = sc.next();
+			if ( random.nextInt( 50 ) == 0 )
+				t.setLabel( random.nextInt( 5 ) );
+		}
+
+		NativeImgLabeling< Integer, IntType > expected = runWatershed( new Watershed< T, Integer >(), image, seeds );
+		HierarchicalQueueWatershed< T, Integer > watershed = new HierarchicalQueueWatershed< T, Integer >();
+		watershed.setNumLevels( numLevels );
+		NativeImgLabeling< Integer, IntType > actual = runWatershed( watershed, image, seeds );
+
+		Cursor< LabelingType< Integer >> ec = expected.cursor();
+		Cursor< LabelingType< Integer >> ac = actual.cursor();
+		while ( ec.hasNext() )
+			assertEquals( ec.next().getLabeling(), ac.next().getLabeling() );
+	}
+
+	@Test
+	public final void testHierarchicalQueueMatchesInteger()
+	{
+		Img< IntType > image = new ArrayImgFactory< IntType >().create( new long[] { 31, 27, 5 }, new IntType() );
+		Random random = new Random( 0 );
+		for ( IntType t : image )
+			t.set( random.nextInt( 20 ) - 5 );
+		// one level per intensity
+		compareWithWatershed( image, HierarchicalQueue.DEFAULT_NUM_LEVELS );
+		// quantized levels
+		compareWithWatershed( image, 4 );
+	}
+
+	@Test
+	public final void testHierarchicalQueueMatchesFloat()
+	{
+		Img< FloatType > image = new ArrayImgFactory< FloatType >().create( new long[] { 43, 37 }, new FloatType() );
+		Random random = new Random( 0 );
+		for ( FloatType t : image )
+			t.set( random.nextInt( 3 ) == 0 ? 0.5f : random.nextFloat() );
+		compareWithWatershed( image, 16 );
+	}
 }
@@ -0,0 +1,572 @@
+package net.imglib2.algorithm.fft2;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.cell.AbstractCell;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.DiskCellImgFactory;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+/**
+ * Compute the FFT transforms of {@link FFTMethods} on complex-valued data stored in a {@link CellImg}, e.g. one created by
+ * a {@link DiskCellImgFactory} for volumes that do not fit into memory.
+ * 
+ * Instead of transforming one line at a time through a RandomAccess, which visits the cells in the order of the lines and
+ * needs all cells along a line in memory at once, the image is processed column by column: a column is one cell in all
+ * dimensions except the one that is transformed, and the whole image in that dimension. All cells of a column are copied
+ * (transposed) into a buffer in which every line is contiguous, each cell being touched only once, then all lines of the
+ * column are transformed, and the buffer is copied back cell by cell. Memory is therefore bounded by one column buffer per
+ * thread, i.e. (cell size / cell size in dim) * image size in dim complex values.
+ * 
+ * {@link FFT} and {@link FFTPlan} use these methods automatically if the complex-valued image is a {@link CellImg}.
+ * 
+ * The methods return false if the image is not a {@link CellImg} or its dimensions are not supported, and
+ * {@link #getErrorMessage()} tells why.
+ */
+public class BlockedFFTMethods
+{
+	final private static ThreadLocal< String > errorMessage = new ThreadLocal< String >()
+	{
+		@Override
+		protected String initialValue()
+		{
+			return "";
+		}
+	};
+
+	/**
+	 * @return - why the last call of one of the transforms on the current thread returned false, or an empty String
+	 * if it succeeded
+	 */
+	public static String getErrorMessage()
+	{
+		return errorMessage.get();
+	}
+
+	private static boolean fail( final String message )
+	{
+		errorMessage.set( "BlockedFFTMethods: " + message );
+		return false;
+	}
+
+	/**
+	 * @return - the {@link CellImg}, or null if img is not one
+	 */
+	private static CellImg< ?, ?, ? > cellImg( final RandomAccessibleInterval< ? > img )
+	{
+		errorMessage.set( "" );
+		return img instanceof CellImg ? ( CellImg< ?, ?, ? > ) img : null;
+	}
+	/**
+	 * Computes a complex-to-complex forward or inverse FFT transform of a {@link CellImg} in a certain dimension.
+	 * 
+	 * @param data - the complex-valued dataset (FFT performed in-place), a {@link CellImg}
+	 * @param dim - the dimension to compute the FFT in
+	 * @param forward - true means forward FFT transform, false means inverse FFT transform
+	 * @param scale - define if each pixel is divided by the sum of all pixels in the image
+	 * @param numThreads - the number of threads used for the computation
+	 * @return - true if successful, false if data is not a {@link CellImg} or its dimensionality is not supported by the edu_mines_jtk 1d fft
+	 */
+	final public static < C extends ComplexType< C > > boolean complexToComplex( final RandomAccessibleInterval< C > data, final int dim, final boolean forward, final boolean scale, final int numThreads )
+	{
+		final CellImg< ?, ?, ? > cells = cellImg( data );
+		if ( cells == null )
+			return fail( "The complex-valued dataset is not a CellImg" );
+
+		final int size = (int)data.dimension( dim );
+
+		// test if those are valid sizes in case of complex to complex
+		if ( !FFTMethods.verifyComplexToComplexfftDimensions( size, size ) )
+			return fail( "Unsupported combination of dimensionality of input and output" );
+
+		final int numColumns = new Column< C >( data, cells, dim ).numColumns;
+
+		TaskExecutor.getInstance().forEachChunk( numColumns, numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				final FFTPlan.Line line = FFTPlan.line( null, FFTPlan.COMPLEX_TO_COMPLEX, size );
+				final Column< C > column = new Column< C >( data, cells, dim );
+				final float[] buffer = column.buffer;
+				final int size2 = size * 2;
+
+				for ( long c = startPosition; c < startPosition + loopSize; ++c )
+				{
+					column.setColumn( (int)c );
+					column.read();
+
+					for ( int l = 0; l < column.numLines; ++l )
+					{
+						final int offset = l * size2;
+
+						System.arraycopy( buffer, offset, line.tempIn, 0, size2 );
+
+						if ( forward )
+							line.fftComplex.complexToComplex( -1, line.tempIn, line.tempOut );
+						else
+							line.fftComplex.complexToComplex( 1, line.tempIn, line.tempOut );
+
+						if ( scale )
+							for ( int i = 0; i < size2; ++i )
+								buffer[ offset + i ] = line.tempOut[ i ] / size;
+						else
+							System.arraycopy( line.tempOut, 0, buffer, offset, size2 );
+					}
+
+					column.write();
+				}
+			}
+		} );
+
+		return true;
+	}
+
+	/**
+	 * Computes a real-to-complex forward FFT transform in dimension 0 into a {@link CellImg}.
+	 * 
+	 * @param input - the real-valued input dataset
+	 * @param output - the complex-valued output dataset, a {@link CellImg}
+	 * @param scale - define if each pixel is divided by the sum of all pixels in the image
+	 * @param numThreads - the number of threads used for the computation
+	 * @return - true if successful, false if output is not a {@link CellImg} or the dimensions of input and output are not compatible, i.e. not supported by the edu_mines_jtk 1d fft
+	 */
+	final public static < R extends RealType< R >, C extends ComplexType< C > > boolean realToComplex( final RandomAccessibleInterval< R > input, final RandomAccessibleInterval< C > output, final boolean scale, final int numThreads )
+	{
+		final CellImg< ?, ?, ? > cells = cellImg( output );
+		if ( cells == null )
+			return fail( "The complex-valued output is not a CellImg" );
+
+		final int numDimensions = input.numDimensions();
+		final int realSize = (int)input.dimension( 0 );
+		final int complexSize = (int)output.dimension( 0 );
+
+		// test if those are valid sizes in case of real to complex
+		if ( !FFTMethods.verifyRealToComplexfftDimensions( realSize, complexSize ) )
+			return fail( "Unsupported combination of dimensionality of input and output" );
+
+		final int numColumns = new Column< C >( output, cells, 0 ).numColumns;
+
+		TaskExecutor.getInstance().forEachChunk( numColumns, numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				final FFTPlan.Line line = FFTPlan.line( null, FFTPlan.REAL_TO_COMPLEX, realSize );
+				final Column< C > column = new Column< C >( output, cells, 0 );
+				final float[] buffer = column.buffer;
+				final int complexSize2 = complexSize * 2;
+
+				final RandomAccess< R > randomAccessIn = input.randomAccess();
+				final long[] position = new long[ numDimensions ];
+
+				for ( long c = startPosition; c < startPosition + loopSize; ++c )
+				{
+					column.setColumn( (int)c );
+
+					for ( int l = 0; l < column.numLines; ++l )
+					{
+						// the first pixel of the line in the input
+						column.linePosition( l, position );
+						for ( int d = 0; d < numDimensions; ++d )
+							position[ d ] += input.min( d );
+						randomAccessIn.setPosition( position );
+
+						for ( int i = 0; i < realSize - 1; ++i )
+						{
+							line.tempIn[ i ] = randomAccessIn.get().getRealFloat();
+							randomAccessIn.fwd( 0 );
+						}
+						line.tempIn[ realSize - 1 ] = randomAccessIn.get().getRealFloat();
+
+						line.fftReal.realToComplex( -1, line.tempIn, line.tempOut );
+
+						final int offset = l * complexSize2;
+
+						if ( scale )
+							for ( int i = 0; i < complexSize2; ++i )
+								buffer[ offset + i ] = line.tempOut[ i ] / realSize;
+						else
+							System.arraycopy( line.tempOut, 0, buffer, offset, complexSize2 );
+					}
+
+					column.write();
+				}
+			}
+		} );
+
+		return true;
+	}
+
+	/**
+	 * Computes a complex-to-real inverse FFT transform of a {@link CellImg} in dimension 0.
+	 * 
+	 * @param input - the complex-valued input dataset, a {@link CellImg}
+	 * @param output - the real-valued output dataset
+	 * @param interval - if just a subset of the real-values output is required it can be defined here (otherwise it can just be equal to output)
+	 * @param scale - define if each pixel is divided by the sum of all pixels in the image
+	 * @param numThreads - the number of threads used for the computation
+	 * @return - true if successful, false if input is not a {@link CellImg} or the dimensions of input and output are not compatible, i.e. not supported by the edu_mines_jtk 1d fft
+	 */
+	final public static < C extends ComplexType< C >, R extends RealType< R > > boolean complexToReal( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output, final Interval interval, final boolean scale, final int numThreads )
+	{
+		final CellImg< ?, ?, ? > cells = cellImg( input );
+		if ( cells == null )
+			return fail( "The complex-valued input is not a CellImg" );
+
+		final int numDimensions = input.numDimensions();
+		final int complexSize = (int)input.dimension( 0 );
+		final int realSize = ( complexSize - 1 ) * 2;
+
+		// test if those are valid sizes in case of complex to real
+		if ( !FFTMethods.verifyRealToComplexfftDimensions( realSize, complexSize ) )
+			return fail( "Unsupported combination of dimensionality of input and output" );
+
+		final int numColumns = new Column< C >( input, cells, 0 ).numColumns;
+
+		TaskExecutor.getInstance().forEachChunk( numColumns, numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				final FFTPlan.Line line = FFTPlan.line( null, FFTPlan.COMPLEX_TO_REAL, realSize );
+				final Column< C > column = new Column< C >( input, cells, 0 );
+				final float[] buffer = column.buffer;
+				final int complexSize2 = complexSize * 2;
+
+				final RandomAccess< R > randomAccessOut = output.randomAccess();
+				final long[] position = new long[ numDimensions ];
+
+				final int min = (int)interval.min( 0 );
+				final int max = (int)interval.max( 0 );
+
+				for ( long c = startPosition; c < startPosition + loopSize; ++c )
+				{
+					column.setColumn( (int)c );
+
+					// skip columns that are completely outside of the interval
+					if ( !column.intersects( interval ) )
+						continue;
+
+					column.read();
+
+A:					for ( int l = 0; l < column.numLines; ++l )
+					{
+						column.linePosition( l, position );
+
+						// check that we are not out of the cropped image's bounds defined by interval,
+						// then we do not have to compute the inverse fft here
+						for ( int d = 1; d < numDimensions; ++d )
+						{
+							if ( position[ d ] < interval.min( d ) || position[ d ] > interval.max( d ) )
+								continue A;
+
+							position[ d ] += output.min( d ) - interval.min( d );
+						}
+						position[ 0 ] = output.min( 0 );
+
+						System.arraycopy( buffer, l * complexSize2, line.tempIn, 0, complexSize2 );
+
+						line.fftReal.complexToReal( 1, line.tempIn, line.tempOut );
+
+						randomAccessOut.setPosition( position );
+
+						if ( scale )
+						{
+							for ( int x = min; x < max; ++x )
+							{
+								randomAccessOut.get().setReal( line.tempOut[ x ] / realSize );
+								randomAccessOut.fwd( 0 );
+							}
+							randomAccessOut.get().setReal( line.tempOut[ max ] / realSize );
+						}
+						else
+						{
+							for ( int x = min; x < max; ++x )
+							{
+								randomAccessOut.get().setReal( line.tempOut[ x ] );
+								randomAccessOut.fwd( 0 );
+							}
+							randomAccessOut.get().setReal( line.tempOut[ max ] );
+						}
+					}
+				}
+			}
+		} );
+
+		return true;
+	}
+
+	/**
+	 * The cells of a {@link CellImg} that cover one cell in all dimensions except dim, and the whole image in dim,
+	 * and a buffer holding them as contiguous lines of complex values (interleaved real and imaginary part).
+	 */
+	final private static class Column< C extends ComplexType< C > >
+	{
+		final RandomAccessibleInterval< C > img;
+		final int dim, n;
+
+		/**
+		 * the size of the image in dim, i.e. the length of the lines
+		 */
+		final int length;
+
+		final long[] dimensions;
+		final int[] cellDimensions;
+
+		/**
+		 * the size of the cell grid, and of the cell grid without dim (every position is one column)
+		 */
+		final int[] numCells, numColumnCells;
+		final int numColumns;
+
+		final RandomAccess< ? extends AbstractCell< ? > > cells;
+		final boolean isComplexFloat;
+
+		/**
+		 * the current column: the position in the cell grid (gridPosition[ dim ] is the current cell),
+		 * the minimum of the column and the size of the column in all dimensions (size in dim is 1),
+		 * and the number of lines in the column
+		 */
+		final int[] gridPosition;
+		final long[] columnMin;
+		final int[] columnSize;
+		int numLines;
+
+		final float[] buffer;
+
+		// temporary variables
+		final int[] cellSize, columnCellPosition;
+		final long[] cellMin, cellMax;
+
+		/**
+		 * @param img - the image
+		 * @param cellImg - the same image, as a {@link CellImg}
+		 */
+		Column( final RandomAccessibleInterval< C > img, final CellImg< ?, ?, ? > cellImg, final int dim )
+		{
+			this.img = img;
+			this.dim = dim;
+			this.n = img.numDimensions();
+
+			dimensions = new long[ n ];
+			img.dimensions( dimensions );
+			length = (int)dimensions[ dim ];
+
+			cellDimensions = new int[ n ];
+			cellImg.getCells().cellDimensions( cellDimensions );
+
+			numCells = new int[ n ];
+			numColumnCells = new int[ Math.max( 1, n - 1 ) ];
+			numColumnCells[ 0 ] = 1;
+
+			long maxLines = 1;
+			int columns = 1;
+
+			for ( int d = 0, e = 0; d < n; ++d )
+			{
+				numCells[ d ] = (int)( ( dimensions[ d ] + cellDimensions[ d ] - 1 ) / cellDimensions[ d ] );
+
+				if ( d != dim )
+				{
+					numColumnCells[ e++ ] = numCells[ d ];
+					columns *= numCells[ d ];
+					maxLines *= Math.min( cellDimensions[ d ], dimensions[ d ] );
+				}
+			}
+
+			numColumns = columns;
+
+			if ( maxLines * length * 2 > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "The cells are too large for a blocked FFT in dimension " + dim );
+
+			buffer = new float[ (int)( maxLines * length * 2 ) ];
+
+			cells = cellImg.getCells().randomAccess();
+			isComplexFloat = cellImg.firstElement() instanceof ComplexFloatType;
+
+			gridPosition = new int[ n ];
+			columnMin = new long[ n ];
+			columnSize = new int[ n ];
+			cellSize = new int[ n ];
+			columnCellPosition = new int[ numColumnCells.length ];
+			cellMin = new long[ n ];
+			cellMax = new long[ n ];
+		}
+
+		/**
+		 * Select the column with the given index.
+		 */
+		void setColumn( final int index )
+		{
+			IntervalIndexer.indexToPosition( index, numColumnCells, columnCellPosition );
+
+			numLines = 1;
+
+			for ( int d = 0, e = 0; d < n; ++d )
+			{
+				if ( d == dim )
+				{
+					gridPosition[ d ] = 0;
+					columnMin[ d ] = 0;
+					columnSize[ d ] = 1;
+				}
+				else
+				{
+					gridPosition[ d ] = columnCellPosition[ e++ ];
+					columnMin[ d ] = (long)gridPosition[ d ] * cellDimensions[ d ];
+					columnSize[ d ] = (int)Math.min( cellDimensions[ d ], dimensions[ d ] - columnMin[ d ] );
+					numLines *= columnSize[ d ];
+				}
+			}
+		}
+
+		/**
+		 * Does the current column overlap with the interval in all dimensions except dim?
+		 */
+		boolean intersects( final Interval interval )
+		{
+			for ( int d = 0; d < n; ++d )
+				if ( d != dim && ( columnMin[ d ] > interval.max( d ) || columnMin[ d ] + columnSize[ d ] - 1 < interval.min( d ) ) )
+					return false;
+
+			return true;
+		}
+
+		/**
+		 * Get the position of the first pixel of a line of the current column in the image.
+		 */
+		void linePosition( final int line, final long[] position )
+		{
+			IntervalIndexer.indexToPosition( line, columnSize, position );
+
+			for ( int d = 0; d < n; ++d )
+				position[ d ] += columnMin[ d ];
+		}
+
+		/**
+		 * Copy all cells of the current column into the buffer.
+		 */
+		void read()
+		{
+			for ( int c = 0; c < numCells[ dim ]; ++c )
+				copyCell( c, true );
+		}
+
+		/**
+		 * Copy the buffer into all cells of the current column.
+		 */
+		void write()
+		{
+			for ( int c = 0; c < numCells[ dim ]; ++c )
+				copyCell( c, false );
+		}
+
+		private void copyCell( final int c, final boolean toBuffer )
+		{
+			gridPosition[ dim ] = c;
+			cells.setPosition( gridPosition );
+			final AbstractCell< ? > cell = cells.get();
+			cell.dimensions( cellSize );
+
+			int numPixels = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				cellMin[ d ] = cell.min( d );
+				cellMax[ d ] = cellMin[ d ] + cellSize[ d ] - 1;
+				numPixels *= cellSize[ d ];
+			}
+
+			// the pixels of a cell are stored with dimension 0 varying fastest, as are the lines in the column.
+			// In the buffer, each line (pixels along dim) is contiguous.
+			final int lineStep = length * 2;
+			final int dimStep = 2;
+
+			// step in the buffer when going forward by one in each dimension of the cell
+			final int[] steps = new int[ n ];
+			int step = lineStep;
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( d == dim )
+					steps[ d ] = dimStep;
+				else
+				{
+					steps[ d ] = step;
+					step *= columnSize[ d ];
+				}
+			}
+
+			final int[] position = new int[ n ];
+			int offset = (int)cellMin[ dim ] * dimStep;
+
+			final Object data = cell.getData();
+
+			if ( isComplexFloat && data instanceof FloatArray )
+			{
+				final float[] array = ( ( FloatArray ) data ).getCurrentStorageArray();
+
+				for ( int i = 0; i < numPixels; ++i )
+				{
+					if ( toBuffer )
+					{
+						buffer[ offset ] = array[ 2 * i ];
+						buffer[ offset + 1 ] = array[ 2 * i + 1 ];
+					}
+					else
+					{
+						array[ 2 * i ] = buffer[ offset ];
+						array[ 2 * i + 1 ] = buffer[ offset + 1 ];
+					}
+					offset = next( position, offset, steps );
+				}
+			}
+			else
+			{
+				final Cursor< C > cursor = Views.flatIterable( Views.interval( img, new FinalInterval( cellMin, cellMax ) ) ).cursor();
+
+				for ( int i = 0; i < numPixels; ++i )
+				{
+					final C t = cursor.next();
+
+					if ( toBuffer )
+					{
+						buffer[ offset ] = t.getRealFloat();
+						buffer[ offset + 1 ] = t.getImaginaryFloat();
+					}
+					else
+						t.setComplexNumber( buffer[ offset ], buffer[ offset + 1 ] );
+
+					offset = next( position, offset, steps );
+				}
+			}
+		}
+
+		/**
+		 * Move to the next position in the cell (dimension 0 varying fastest) and return the new offset in the buffer.
+		 */
+		private int next( final int[] position, int offset, final int[] steps )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				offset += steps[ d ];
+				if ( ++position[ d ] < cellSize[ d ] )
+					return offset;
+
+				offset -= steps[ d ] * cellSize[ d ];
+				position[ d ] = 0;
+			}
+
+			return offset;
+		}
+	}
+}
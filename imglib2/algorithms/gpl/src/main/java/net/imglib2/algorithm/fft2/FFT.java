@@ -7,6 +7,8 @@ import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.outofbounds.OutOfBoundsFactory;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ComplexType;
@@ -119,6 +121,18 @@ public class FFT
 
 	final public static < R extends RealType< R >, C extends ComplexType< C > > void realToComplex( final RandomAccessibleInterval< R > input, final RandomAccessibleInterval< C > output )
 	{
+		if ( output instanceof CellImg )
+		{
+			final int numThreads = TaskExecutor.getInstance().getNumThreads();
+
+			checkBlocked( BlockedFFTMethods.realToComplex( input, output, false, numThreads ) );
+
+			for ( int d = 1; d < input.numDimensions(); ++d )
+				checkBlocked( BlockedFFTMethods.complexToComplex( output, d, true, false, numThreads ) );
+
+			return;
+		}
+
 		FFTMethods.realToComplex( input, output, 0 );
 		
 		for ( int d = 1; d < input.numDimensions(); ++d )
@@ -127,18 +141,40 @@ public class FFT
 
 	final public static < C extends ComplexType< C > > void complexToComplexForward( final RandomAccessibleInterval< C > data )
 	{
+		if ( data instanceof CellImg )
+		{
+			for ( int d = 0; d < data.numDimensions(); ++d )
+				checkBlocked( BlockedFFTMethods.complexToComplex( data, d, true, false, TaskExecutor.getInstance().getNumThreads() ) );
+
+			return;
+		}
+
 		for ( int d = 0; d < data.numDimensions(); ++d )
 			FFTMethods.complexToComplex( data, d, true );
 	}
 
 	final public static < C extends ComplexType< C > > void complexToComplexInverse( final RandomAccessibleInterval< C > data )
 	{
+		if ( data instanceof CellImg )
+		{
+			for ( int d = 0; d < data.numDimensions(); ++d )
+				checkBlocked( BlockedFFTMethods.complexToComplex( data, d, false, true, TaskExecutor.getInstance().getNumThreads() ) );
+
+			return;
+		}
+
 		for ( int d = 0; d < data.numDimensions(); ++d )
 			FFTMethods.complexToComplex( data, d, false );
 	}
 
 	final public static < C extends ComplexType< C >, R extends RealType< R > > void complexToReal( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output )
 	{
+		if ( input instanceof CellImg )
+		{
+			complexToRealBlocked( input, output, output );
+			return;
+		}
+
 		for ( int d = 1; d < input.numDimensions(); ++d )
 			FFTMethods.complexToComplex( input, d, false );
 		
@@ -147,9 +183,37 @@ public class FFT
 
 	final public static < C extends ComplexType< C >, R extends RealType< R > > void complexToRealUnpad( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output )
 	{
+		if ( input instanceof CellImg )
+		{
+			complexToRealBlocked( input, output, FFTMethods.unpaddingIntervalCentered( input, output ) );
+			return;
+		}
+
 		for ( int d = 1; d < input.numDimensions(); ++d )
 			FFTMethods.complexToComplex( input, d, false );
 		
 		FFTMethods.complexToReal( input, output, FFTMethods.unpaddingIntervalCentered( input, output ), 0 );
 	}
+
+	/**
+	 * Inverse transform of a {@link CellImg} using {@link BlockedFFTMethods}.
+	 */
+	final protected static < C extends ComplexType< C >, R extends RealType< R > > void complexToRealBlocked( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output, final Interval interval )
+	{
+		final int numThreads = TaskExecutor.getInstance().getNumThreads();
+
+		for ( int d = 1; d < input.numDimensions(); ++d )
+			checkBlocked( BlockedFFTMethods.complexToComplex( input, d, false, true, numThreads ) );
+
+		checkBlocked( BlockedFFTMethods.complexToReal( input, output, interval, true, numThreads ) );
+	}
+
+	/**
+	 * Throws an {@link IllegalArgumentException} telling why a {@link BlockedFFTMethods} transform failed.
+	 */
+	final static void checkBlocked( final boolean success )
+	{
+		if ( !success )
+			throw new IllegalArgumentException( BlockedFFTMethods.getErrorMessage() );
+	}
 }
@@ -32,6 +32,9 @@ import net.imglib2.view.Views;
  * NOTE: There is no checking if the sizes are compatible. If the new input has smaller or larger dimensions, it will simply fail. It is up to you to look for that.
  * NOTE: This is not influenced by whether the computation is performed in-place or not, just the FFT of the kernel is kept.
  * 
+ * To convolve a whole stream of equally sized images with the same kernel, use a {@link FFTConvolutionPlan} instead, which also
+ * keeps the padded size, the line buffers of the 1d FFTs and the complex-valued work image.
+ * 
  * @author Stephan Preibisch
  */
 public class FFTConvolution < R extends RealType< R > > implements Runnable
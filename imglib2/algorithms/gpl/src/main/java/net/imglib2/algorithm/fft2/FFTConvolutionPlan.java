@@ -0,0 +1,143 @@
+package net.imglib2.algorithm.fft2;
+
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * A precomputed Fourier space based convolution with a fixed kernel for a stream of images of the same size, e.g. the frames
+ * of a time series that are all convolved (or deconvolved) with the same PSF. The plan computes the padded size, the FFT of the kernel
+ * and the per-thread line buffers (see {@link FFTPlan}) once, and reuses them and one complex-valued work image for every
+ * {@link #convolve(RandomAccessibleInterval, RandomAccessibleInterval)} call. The result is identical to {@link FFTConvolution}.
+ * 
+ * NOTE: Since the work image is shared, the convolve methods must not be called concurrently on the same plan.
+ */
+public class FFTConvolutionPlan< R extends RealType< R > >
+{
+	final long[] imgDimensions;
+	final Interval kernelInterval;
+
+	final FFTPlan fftPlan;
+	final Img< ComplexFloatType > fftKernel, fftWork;
+
+	/**
+	 * Plan the convolution of images of the given size with a kernel. The kernel will be zero-padded.
+	 * 
+	 * @param imgDimensions - the size of the images that will be convolved
+	 * @param kernel - the convolution kernel
+	 * @param factory - the {@link ImgFactory} to create the fourier transforms
+	 */
+	public FFTConvolutionPlan( final Dimensions imgDimensions, final RandomAccessibleInterval< R > kernel, final ImgFactory< ComplexFloatType > factory )
+	{
+		//this( imgDimensions, Views.extendValue( kernel, Util.getTypeFromInterval( kernel ).createVariable() ), kernel, factory );
+		// HACK: Javac bug workaround:
+		this( imgDimensions, Views.extendValue( kernel, ((R)(Object)Util.getTypeFromInterval( kernel )).createVariable() ), kernel, factory );
+	}
+
+	/**
+	 * Plan the convolution of images of the given size with a kernel. The kernel needs to be extended or infinite already.
+	 * 
+	 * @param imgDimensions - the size of the images that will be convolved
+	 * @param kernel - the kernel
+	 * @param kernelInterval - the kernel interval
+	 * @param factory - the {@link ImgFactory} to create the fourier transforms
+	 */
+	public FFTConvolutionPlan( final Dimensions imgDimensions, final RandomAccessible< R > kernel, final Interval kernelInterval, final ImgFactory< ComplexFloatType > factory )
+	{
+		final int numDimensions = imgDimensions.numDimensions();
+
+		this.imgDimensions = new long[ numDimensions ];
+		imgDimensions.dimensions( this.imgDimensions );
+		this.kernelInterval = new FinalInterval( kernelInterval );
+
+		// the image has to be extended at least by kernelDimensions/2-1 in each dimension so that
+		// the pixels outside of the interval are used for the convolution.
+		final long[] newDimensions = new long[ numDimensions ];
+
+		for ( int d = 0; d < numDimensions; ++d )
+			newDimensions[ d ] = (int)imgDimensions.dimension( d ) + (int)kernelInterval.dimension( d ) - 1;
+
+		// compute the size of the complex-valued output and the required padding
+		// based on the prior extended input image
+		final long[] paddedDimensions = new long[ numDimensions ];
+		final long[] fftDimensions = new long[ numDimensions ];
+
+		FFTMethods.dimensionsRealToComplexFast( FinalDimensions.wrap( newDimensions ), paddedDimensions, fftDimensions );
+
+		fftPlan = new FFTPlan( FinalDimensions.wrap( paddedDimensions ) );
+
+		// compute the new interval for the kernel image
+		final Interval kernelConvolutionInterval = FFTMethods.paddingIntervalCentered( kernelInterval, FinalDimensions.wrap( paddedDimensions ) );
+
+		// compute where to place the final Interval for the kernel so that the coordinate in the center
+		// of the kernel is at position (0,0)
+		final long[] min = new long[ numDimensions ];
+		final long[] max = new long[ numDimensions ];
+
+		for ( int d = 0; d < numDimensions; ++d )
+		{
+			min[ d ] = kernelInterval.min( d ) + kernelInterval.dimension( d ) / 2;
+			max[ d ] = min[ d ] + kernelConvolutionInterval.dimension( d ) - 1;
+		}
+
+		// assemble the correct kernel (size of the input + extended periodic + top left at center of input kernel)
+		// HACK: workaround for Javac bug:
+		final RandomAccessibleInterval< R > kernelInput = (RandomAccessibleInterval)((Object)Views.interval( Views.extendPeriodic( Views.interval( kernel, kernelConvolutionInterval ) ), new FinalInterval( min, max ) ));
+
+		fftKernel = fftPlan.createFFTImg( factory, new ComplexFloatType() );
+		fftPlan.realToComplex( kernelInput, fftKernel );
+
+		fftWork = fftPlan.createFFTImg( factory, new ComplexFloatType() );
+	}
+
+	/**
+	 * Convolve an image with the kernel. The image will be extended by mirroring with single boundary.
+	 * 
+	 * @param img - the image, its dimensions have to match the ones the plan was created for
+	 * @param output - the result of the convolution (may be the same as img)
+	 */
+	public void convolve( final RandomAccessibleInterval< R > img, final RandomAccessibleInterval< R > output )
+	{
+		convolve( Views.extendMirrorSingle( img ), img, output );
+	}
+
+	/**
+	 * Convolve an image with the kernel. The input needs to be extended or infinite already as the {@link Interval} required
+	 * to perform the Fourier convolution is significantly bigger than the {@link Interval} provided here.
+	 * 
+	 * @param img - the input
+	 * @param imgInterval - the input interval (i.e. the area to be convolved), its dimensions have to match the ones the plan was created for
+	 * @param output - the output data+interval
+	 */
+	public void convolve( final RandomAccessible< R > img, final Interval imgInterval, final RandomAccessibleInterval< R > output )
+	{
+		for ( int d = 0; d < imgDimensions.length; ++d )
+			if ( imgInterval.dimension( d ) != imgDimensions[ d ] )
+				throw new IllegalArgumentException( "Image dimension " + d + " is " + imgInterval.dimension( d ) + " but the plan was created for " + imgDimensions[ d ] );
+
+		// compute the new interval for the input image
+		final Interval imgConvolutionInterval = FFTMethods.paddingIntervalCentered( imgInterval, fftPlan.paddedDimensions() );
+
+		fftPlan.realToComplex( Views.interval( img, imgConvolutionInterval ), fftWork );
+
+		// multiply in place
+		FFTConvolution.multiplyComplex( fftWork, fftKernel );
+
+		// inverse FFT in place
+		fftPlan.complexToRealUnpad( fftWork, output );
+	}
+
+	public FFTPlan fftPlan() { return fftPlan; }
+	public Img< ComplexFloatType > kernelFFT() { return fftKernel; }
+	public Interval kernelInterval() { return kernelInterval; }
+	public Dimensions imgDimensions() { return FinalDimensions.wrap( imgDimensions.clone() ); }
+}
@@ -24,17 +24,16 @@
  */
 package net.imglib2.algorithm.fft2;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import net.imglib2.Dimensions;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
-import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.type.numeric.ComplexType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
 import edu.mines.jtk.dsp.FftComplex;
 import edu.mines.jtk.dsp.FftReal;
 
@@ -135,6 +134,15 @@ public class FFTMethods
 	 * @return - true if successful, false if the dimensions of input and output are not compatible, i.e. not supported by the edu_mines_jtk 1d fft
 	 */
 	final public static < C extends ComplexType< C >, R extends RealType< R > > boolean complexToReal( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output, final Interval interval, final int dim, final boolean scale, final int numThreads )
+	{
+		return complexToReal( input, output, interval, dim, scale, numThreads, null );
+	}
+
+	/**
+	 * Same as the method above, but takes the 1d FFTs and line buffers from the
+	 * given {@link FFTPlan} (if it is not null) instead of allocating new ones.
+	 */
+	final static < C extends ComplexType< C >, R extends RealType< R > > boolean complexToReal( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output, final Interval interval, final int dim, final boolean scale, final int numThreads, final FFTPlan plan )
 	{
 		final int numDimensions = input.numDimensions();
 		
@@ -157,95 +165,91 @@ public class FFTMethods
 		// perform the complex-to-real fft in a dimension multithreaded if more than one dimension exisits	
 		if ( numDimensions > 1  )
 		{
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+			/**
+			 * Here we use a virtual interval over all dimensions except the one we are computing the inverse fft in,
+			 * every point of it is the start of one line that is transformed
+			 */
+			final int[] fakeSize = new int[ numDimensions - 1 ];
 			
-			for ( int ithread = 0; ithread < threads.length; ++ithread )
-				threads[ithread] = new Thread(new Runnable()
+			// get all dimensions except the one we are doing the complex-to-real fft on
+			long numLines = 1;
+			int countDim = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( d != dim )
 				{
-					public void run()
+					fakeSize[ countDim ] = inputSize[ d ];
+					numLines *= fakeSize[ countDim++ ];
+				}
+
+			// distribute the lines in chunks over the shared pool of threads
+			TaskExecutor.getInstance().forEachChunk( numLines, numThreads, new ChunkTask()
+			{
+				@Override
+				public void run( final long startPosition, final long loopSize )
+				{
+					// the temporary 1-d arrays for the inverse fft
+					final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.COMPLEX_TO_REAL, realSize );
+					final float[] tempIn = buffers.tempIn;
+					final float[] tempOut = buffers.tempOut;
+					
+					final FftReal fft = buffers.fftReal;
+					
+					final RandomAccess< C > randomAccessIn = input.randomAccess();
+					final RandomAccess< R > randomAccessOut = output.randomAccess(); 
+					
+					final int[] linePosition = new int[ numDimensions - 1 ];
+					final int[] cursorInPosition = new int[ numDimensions ];
+					final int[] cursorOutPosition = new int[ numDimensions ];
+					
+					// iterate over all lines of this chunk
+A:					for ( long line = startPosition; line < startPosition + loopSize; ++line )
 					{
-						final int myNumber = ai.getAndIncrement();
-						
-						// the temporary 1-d arrays for the inverse fft
-						final float[] tempIn = new float[ complexSize * 2 ];				
-						final float[] tempOut = new float[ realSize ];
-						
-						final FftReal fft = new FftReal( realSize );
-						
-						final RandomAccess< C > randomAccessIn = input.randomAccess();
-						final RandomAccess< R > randomAccessOut = output.randomAccess(); 
+						// get all dimensions except the one we are currently doing the fft on
+						IntervalIndexer.indexToPosition( ( int ) line, fakeSize, linePosition );
 						
-						/**
-						 * Here we use a LocalizingZeroMinIntervalIterator to iterate through all dimensions except the one we are computing the inverse fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] cursorInPosition = new int[ numDimensions ];
-						final int[] cursorOutPosition = new int[ numDimensions ];
+						// the location on the one-dimensional vector of which we compute the fft
+						// is simply the first pixel
+						cursorInPosition[ dim ] = (int)input.min( dim );
+						cursorOutPosition[ dim ] = (int)output.min( dim );
 						
-						// get all dimensions except the one we are doing the real-to-complex fft on
+						// get the position in all dimensions except the on we compute the fft in
+						// which we get from the iterator that iterates n-1 dimensions
 						int countDim = 0;						
 						for ( int d = 0; d < numDimensions; ++d )
-							if ( d != dim )
-								fakeSize[ countDim++ ] = inputSize[ d ];
-						
-						final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );						
-						
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-A:						while ( cursorDim.hasNext() )
 						{
-							cursorDim.fwd();							
-	
-							if ( cursorDim.getIntPosition( 0 ) % numThreads == myNumber )
-							{							
-								// get all dimensions except the one we are currently doing the fft on
-								cursorDim.localize( fakeSize );
-								
-								// the location on the one-dimensional vector of which we compute the fft
-								// is simply the first pixel
-								cursorInPosition[ dim ] = (int)input.min( dim );
-								cursorOutPosition[ dim ] = (int)output.min( dim );
-								
-								// get the position in all dimensions except the on we compute the fft in
-								// which we get from the iterator that iterates n-1 dimensions
-								countDim = 0;						
-								for ( int d = 0; d < numDimensions; ++d )
-								{
-									if ( d != dim )
-									{
-										// check that we are not out of the cropped image's bounds defined by interval, 
-										// then we do not have to compute the inverse fft here
-										if ( fakeSize[ countDim ] < interval.min( d ) || fakeSize [ countDim ] > interval.max( d ) )
-											continue A;
-										
-										cursorInPosition[ d ] = fakeSize[ countDim ] + (int)input.min( d );
-										cursorOutPosition[ d ] = fakeSize[ countDim ] + (int)output.min( d ) - (int)interval.min( d );
-										++countDim;
-									}
-								}
-	
-								// set the cursor to the beginning of the correct line
-								randomAccessIn.setPosition( cursorInPosition );
-								
-								// set the cursor in the fft output image to the right line
-								randomAccessOut.setPosition( cursorOutPosition );
+							if ( d != dim )
+							{
+								// check that we are not out of the cropped image's bounds defined by interval, 
+								// then we do not have to compute the inverse fft here
+								if ( linePosition[ countDim ] < interval.min( d ) || linePosition[ countDim ] > interval.max( d ) )
+									continue A;
 								
-								// compute the FFT along the 1d vector and write it into the output
-								computeComplexToReal1dFFT( fft, randomAccessIn, randomAccessOut, interval, dim, tempIn, tempOut, scale );
+								cursorInPosition[ d ] = linePosition[ countDim ] + (int)input.min( d );
+								cursorOutPosition[ d ] = linePosition[ countDim ] + (int)output.min( d ) - (int)interval.min( d );
+								++countDim;
 							}
-						}				
+						}
+
+						// set the cursor to the beginning of the correct line
+						randomAccessIn.setPosition( cursorInPosition );
+						
+						// set the cursor in the fft output image to the right line
+						randomAccessOut.setPosition( cursorOutPosition );
+						
+						// compute the FFT along the 1d vector and write it into the output
+						computeComplexToReal1dFFT( fft, randomAccessIn, randomAccessOut, interval, dim, tempIn, tempOut, scale );
 					}
-				});
-			
-			SimpleMultiThreading.startAndJoin(threads);			
+				}
+			} );
 		}
 		else
 		{
 			// the temporary 1-d arrays for the fft
-			final float[] tempIn = new float[ complexSize * 2 ];				
-			final float[] tempOut = new float[ realSize ];
+			final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.COMPLEX_TO_REAL, realSize );
+			final float[] tempIn = buffers.tempIn;
+			final float[] tempOut = buffers.tempOut;
 			
-			final FftReal fft = new FftReal( realSize );
+			final FftReal fft = buffers.fftReal;
 			
 			final RandomAccess< C > randomAccessIn = input.randomAccess();
 			final RandomAccess< R > randomAccessOut = output.randomAccess(); 
@@ -352,6 +356,15 @@ A:						while ( cursorDim.hasNext() )
 	 * @return - true if successful, false if the dimensions of input and output are not compatible, i.e. not supported by the edu_mines_jtk 1d fft
 	 */
 	final public static < R extends RealType< R >, C extends ComplexType< C > > boolean realToComplex( final RandomAccessibleInterval< R > input, final RandomAccessibleInterval< C > output, final Interval interval, final int dim, final boolean scale, final int numThreads )
+	{
+		return realToComplex( input, output, interval, dim, scale, numThreads, null );
+	}
+
+	/**
+	 * Same as the method above, but takes the 1d FFTs and line buffers from the
+	 * given {@link FFTPlan} (if it is not null) instead of allocating new ones.
+	 */
+	final static < R extends RealType< R >, C extends ComplexType< C > > boolean realToComplex( final RandomAccessibleInterval< R > input, final RandomAccessibleInterval< C > output, final Interval interval, final int dim, final boolean scale, final int numThreads, final FFTPlan plan )
 	{
 		final int numDimensions = input.numDimensions();
 		
@@ -374,97 +387,93 @@ A:						while ( cursorDim.hasNext() )
 		// perform the real-to-complex fft in a dimension multithreaded if more than one dimension exisits
 		if ( numDimensions > 1 )
 		{		
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+			/**
+			 * Here we use a virtual interval over all dimensions except the one we are computing the fft in,
+			 * every point of it is the start of one line that is transformed
+			 */
+			final int[] fakeSize = new int[ numDimensions - 1 ];
 			
-			for ( int ithread = 0; ithread < threads.length; ++ithread )
-				threads[ithread] = new Thread(new Runnable()
+			// get all dimensions except the one we are doing the real-to-complex fft on
+			long numLines = 1;
+			int countDim = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( d != dim )
 				{
-					public void run()
+					fakeSize[ countDim ] = inputSize[ d ];
+					numLines *= fakeSize[ countDim++ ];
+				}
+
+			// distribute the lines in chunks over the shared pool of threads
+			TaskExecutor.getInstance().forEachChunk( numLines, numThreads, new ChunkTask()
+			{
+				@Override
+				public void run( final long startPosition, final long loopSize )
+				{
+					// the temporary 1-d arrays for the fft
+					final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.REAL_TO_COMPLEX, realSize );
+					final float[] tempIn = buffers.tempIn;
+					final float[] tempOut = buffers.tempOut;
+					
+					final FftReal fft = buffers.fftReal;
+					
+					final RandomAccess< R > randomAccessIn = input.randomAccess();
+					final RandomAccess< C > randomAccessOut = output.randomAccess(); 
+					
+					final int[] linePosition = new int[ numDimensions - 1 ];
+					final int[] cursorInPosition = new int[ numDimensions ];
+					final int[] cursorOutPosition = new int[ numDimensions ];
+					
+					// iterate over all lines of this chunk
+A:					for ( long line = startPosition; line < startPosition + loopSize; ++line )
 					{
-						final int myNumber = ai.getAndIncrement();
-						
-						// the temporary 1-d arrays for the fft
-						final float[] tempIn = new float[ realSize ];				
-						final float[] tempOut = new float[ complexSize * 2 ];
-						
-						final FftReal fft = new FftReal( realSize );
-						
-						final RandomAccess< R > randomAccessIn = input.randomAccess();
-						final RandomAccess< C > randomAccessOut = output.randomAccess(); 
+						// get all dimensions except the one we are currently doing the fft on
+						IntervalIndexer.indexToPosition( ( int ) line, fakeSize, linePosition );
 						
-						/**
-						 * Here we use a LocalizingZeroMinIntervalIterator to iterate through all dimensions except the one we are computing the inverse fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] cursorInPosition = new int[ numDimensions ];
-						final int[] cursorOutPosition = new int[ numDimensions ];
+						// the location on the one-dimensional vector of which we compute the fft
+						// is simply the first pixel
+						cursorInPosition[ dim ] = (int)input.min( dim );
+						cursorOutPosition[ dim ] = (int)output.min( dim );
 						
-						// get all dimensions except the one we are doing the real-to-complex fft on
+						// get the position in all dimensions except the on we compute the fft in
+						// which we get from the iterator that iterates n-1 dimensions
 						int countDim = 0;						
 						for ( int d = 0; d < numDimensions; ++d )
-							if ( d != dim )
-								fakeSize[ countDim++ ] = inputSize[ d ];
-						
-						final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );						
-						
-						// iterate over all dimensions except the one we are computing the fft in, which is dim=0 here
-A:						while ( cursorDim.hasNext() )
 						{
-							cursorDim.fwd();							
-	
-							if ( cursorDim.getIntPosition( 0 ) % numThreads == myNumber )
-							{							
-								// get all dimensions except the one we are currently doing the fft on
-								cursorDim.localize( fakeSize );
-								
-								// the location on the one-dimensional vector of which we compute the fft
-								// is simply the first pixel
-								cursorInPosition[ dim ] = (int)input.min( dim );
-								cursorOutPosition[ dim ] = (int)output.min( dim );
-								
-								// get the position in all dimensions except the on we compute the fft in
-								// which we get from the iterator that iterates n-1 dimensions
-								countDim = 0;						
-								for ( int d = 0; d < numDimensions; ++d )
-								{
-									if ( d != dim )
-									{
-										// check that we are not out of the cropped image's bounds defined by interval, 
-										// then we do not have to compute the fft here
-										if ( fakeSize[ countDim ] < interval.min( d ) || fakeSize [ countDim ] > interval.max( d ) )
-											continue A;
-
-										cursorInPosition[ d ] = fakeSize[ countDim ] + (int)input.min( d );
-										cursorOutPosition[ d ] = fakeSize[ countDim ] + (int)output.min( d ) - (int)interval.min( d );
-										++countDim;
-									}
-								}
-	
-								// set the cursor to the beginning of the correct line
-								randomAccessIn.setPosition( cursorInPosition );
-								
-								// set the cursor in the fft output image to the right line
-								randomAccessOut.setPosition( cursorOutPosition );
+							if ( d != dim )
+							{
+								// check that we are not out of the cropped image's bounds defined by interval, 
+								// then we do not have to compute the fft here
+								if ( linePosition[ countDim ] < interval.min( d ) || linePosition[ countDim ] > interval.max( d ) )
+									continue A;
 								
-								// compute the FFT along the 1d vector and write it into the output
-								computeRealToComplex1dFFT( fft, randomAccessIn, randomAccessOut, interval, dim, tempIn, tempOut, scale );
+								cursorInPosition[ d ] = linePosition[ countDim ] + (int)input.min( d );
+								cursorOutPosition[ d ] = linePosition[ countDim ] + (int)output.min( d ) - (int)interval.min( d );
+								++countDim;
 							}
-						}				
+						}
+
+						// set the cursor to the beginning of the correct line
+						randomAccessIn.setPosition( cursorInPosition );
+						
+						// set the cursor in the fft output image to the right line
+						randomAccessOut.setPosition( cursorOutPosition );
+						
+						// compute the FFT along the 1d vector and write it into the output
+						computeRealToComplex1dFFT( fft, randomAccessIn, randomAccessOut, interval, dim, tempIn, tempOut, scale );
 					}
-				});
-			
-			SimpleMultiThreading.startAndJoin(threads);
+				}
+			} );
 		}
 		else
 		{
 			// if only one dimension exists, multithreading makes no sense here
 			
 			// the temporary 1-d arrays for the fft
-			final float[] tempIn = new float[ realSize ];				
-			final float[] tempOut = new float[ complexSize * 2 ];
+			final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.REAL_TO_COMPLEX, realSize );
+			final float[] tempIn = buffers.tempIn;
+			final float[] tempOut = buffers.tempOut;
 			
-			final FftReal fft = new FftReal( realSize );
+			final FftReal fft = buffers.fftReal;
 			
 			final RandomAccess< R > randomAccessIn = input.randomAccess();
 			final RandomAccess< C > randomAccessOut = output.randomAccess(); 
@@ -526,6 +535,15 @@ A:						while ( cursorDim.hasNext() )
 	 * @return - true if successful, false if the dimensionality of the dataset is not supported by the edu_mines_jtk 1d fft
 	 */
 	final public static < C extends ComplexType< C > > boolean complexToComplex( final RandomAccessibleInterval< C > data, final int dim, final boolean forward, final boolean scale, final int numThreads )
+	{
+		return complexToComplex( data, dim, forward, scale, numThreads, null );
+	}
+
+	/**
+	 * Same as the method above, but takes the 1d FFTs and line buffers from the
+	 * given {@link FFTPlan} (if it is not null) instead of allocating new ones.
+	 */
+	final static < C extends ComplexType< C > > boolean complexToComplex( final RandomAccessibleInterval< C > data, final int dim, final boolean forward, final boolean scale, final int numThreads, final FFTPlan plan )
 	{
 		final int numDimensions = data.numDimensions();
 		
@@ -547,80 +565,76 @@ A:						while ( cursorDim.hasNext() )
 
 		if ( numDimensions > 1 )
 		{		
-			final AtomicInteger ai = new AtomicInteger( 0 );
-			Thread[] threads = SimpleMultiThreading.newThreads( numThreads );
+			/**
+			 * Here we use a virtual interval over all dimensions except the one we are computing the fft in,
+			 * every point of it is the start of one line that is transformed
+			 */
+			final int[] fakeSize = new int[ numDimensions - 1 ];
 			
-			for ( int ithread = 0; ithread < threads.length; ++ithread )
-				threads[ithread] = new Thread(new Runnable()
+			// get all dimensions except the one we are currently doing the fft on
+			long numLines = 1;
+			int countDim = 0;
+			for ( int d = 0; d < numDimensions; ++d )
+				if ( d != dim )
+				{
+					fakeSize[ countDim ] = dataSize[ d ];
+					numLines *= fakeSize[ countDim++ ];
+				}
+
+			// distribute the lines in chunks over the shared pool of threads
+			TaskExecutor.getInstance().forEachChunk( numLines, numThreads, new ChunkTask()
+			{
+				@Override
+				public void run( final long startPosition, final long loopSize )
 				{
-					public void run()
+					// the temporary 1-d arrays for the fft
+					final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.COMPLEX_TO_COMPLEX, size );
+					final float[] tempIn = buffers.tempIn;
+					final float[] tempOut = buffers.tempOut;
+					
+					final FftComplex fft = buffers.fftComplex;
+					
+					final RandomAccess< C > randomAccess = data.randomAccess();
+					
+					final int[] linePosition = new int[ numDimensions - 1 ];
+					final int[] randomAccessPosition = new int[ numDimensions ];
+					
+					// iterate over all lines of this chunk
+					for ( long line = startPosition; line < startPosition + loopSize; ++line )
 					{
-						final int myNumber = ai.getAndIncrement();
-						
-						// the temporary 1-d arrays for the fft
-						final float[] tempIn = new float[ size * 2 ];				
-						final float[] tempOut = new float[ size * 2 ];
-						
-						final FftComplex fft = new FftComplex( size );
-						
-						final RandomAccess< C > randomAccess = data.randomAccess();
+						// get all dimensions except the one we are currently doing the fft on
+						IntervalIndexer.indexToPosition( ( int ) line, fakeSize, linePosition );
 						
-						/**
-						 * Here we use a LocalizingZeroMinIntervalIterator to iterate through all dimensions except the one we are computing the inverse fft in 
-						 */	
-						final int[] fakeSize = new int[ numDimensions - 1 ];
-						final int[] randomAccessPosition = new int[ numDimensions ];
+						// the location on the one-dimensional vector of which we compute the fft
+						// is simply the first pixel
+						randomAccessPosition[ dim ] = (int)data.min( dim );
 						
-						// get all dimensions except the one we are currently doing the fft on
+						// get the position in all dimensions except the on we compute the fft in
+						// which we get from the iterator that iterates n-1 dimensions
 						int countDim = 0;						
 						for ( int d = 0; d < numDimensions; ++d )
 							if ( d != dim )
-								fakeSize[ countDim++ ] = dataSize[ d ];
+								randomAccessPosition[ d ] = linePosition[ countDim++ ] + (int)data.min( d );
 
-						final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );						
+						// set the cursor to the beginning of the correct line
+						randomAccess.setPosition( randomAccessPosition );
 						
-						// iterate over all dimensions except the one we are computing the fft in
-						while ( cursorDim.hasNext() )
-						{
-							cursorDim.fwd();							
-	
-							if ( cursorDim.getIntPosition( 0 ) % numThreads == myNumber )
-							{							
-								// get all dimensions except the one we are currently doing the fft on
-								cursorDim.localize( fakeSize );
-								
-								// the location on the one-dimensional vector of which we compute the fft
-								// is simply the first pixel
-								randomAccessPosition[ dim ] = (int)data.min( dim );
-								
-								// get the position in all dimensions except the on we compute the fft in
-								// which we get from the iterator that iterates n-1 dimensions
-								countDim = 0;						
-								for ( int d = 0; d < numDimensions; ++d )
-									if ( d != dim )
-										randomAccessPosition[ d ] = fakeSize[ countDim++ ] + (int)data.min( d );
-	
-								// set the cursor to the beginning of the correct line
-								randomAccess.setPosition( randomAccessPosition );
-								
-								// compute the FFT along the 1d vector and write it into the output
-								computeComplexToComplex1dFFT( fft, forward, randomAccess, dim, tempIn, tempOut, scale );
-							}
-						}				
+						// compute the FFT along the 1d vector and write it into the output
+						computeComplexToComplex1dFFT( fft, forward, randomAccess, dim, tempIn, tempOut, scale );
 					}
-				});
-			
-			SimpleMultiThreading.startAndJoin(threads);
+				}
+			} );
 		}
 		else
 		{
 			// if only one dimension exists, multithreading makes no sense here
 			
 			// the temporary 1-d arrays for the fft
-			final float[] tempIn = new float[ size * 2 ];				
-			final float[] tempOut = new float[ size * 2 ];
+			final FFTPlan.Line buffers = FFTPlan.line( plan, FFTPlan.COMPLEX_TO_COMPLEX, size );
+			final float[] tempIn = buffers.tempIn;
+			final float[] tempOut = buffers.tempOut;
 			
-			final FftComplex fft = new FftComplex( size );
+			final FftComplex fft = buffers.fftComplex;
 			
 			final RandomAccess< C > randomAccess = data.randomAccess();
 			
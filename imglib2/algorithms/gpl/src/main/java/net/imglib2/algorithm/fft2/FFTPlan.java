@@ -0,0 +1,233 @@
+package net.imglib2.algorithm.fft2;
+
+import java.util.ArrayList;
+
+import net.imglib2.Dimensions;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
+import edu.mines.jtk.dsp.FftComplex;
+import edu.mines.jtk.dsp.FftReal;
+
+/**
+ * A reusable plan for the FFT of real-valued data of a fixed (padded) size. It holds the padded real dimensions,
+ * the dimensions of the complex transform and, for every thread that takes part in a transform, the 1d
+ * {@link FftReal}/{@link FftComplex} instances and line buffers. Repeated transforms, e.g. of all frames of a
+ * time series, therefore do not set those up again.
+ * 
+ * The same {@link FFTPlan} can be used from several threads at the same time. If the complex-valued image is a {@link CellImg}, the
+ * transforms are computed by {@link BlockedFFTMethods}.
+ * 
+ * @see FFTConvolutionPlan
+ */
+public class FFTPlan
+{
+	final static int REAL_TO_COMPLEX = 0;
+	final static int COMPLEX_TO_REAL = 1;
+	final static int COMPLEX_TO_COMPLEX = 2;
+
+	/**
+	 * The 1d fft and the temporary arrays to transform one line of a certain kind and size.
+	 */
+	final static class Line
+	{
+		final int kind;
+
+		/**
+		 * the real size for {@link FFTPlan#REAL_TO_COMPLEX} and {@link FFTPlan#COMPLEX_TO_REAL},
+		 * the complex size for {@link FFTPlan#COMPLEX_TO_COMPLEX}
+		 */
+		final int size;
+
+		final float[] tempIn, tempOut;
+		final FftReal fftReal;
+		final FftComplex fftComplex;
+
+		Line( final int kind, final int size )
+		{
+			this.kind = kind;
+			this.size = size;
+
+			final int complexSize = size / 2 + 1;
+
+			if ( kind == REAL_TO_COMPLEX )
+			{
+				tempIn = new float[ size ];
+				tempOut = new float[ complexSize * 2 ];
+			}
+			else if ( kind == COMPLEX_TO_REAL )
+			{
+				tempIn = new float[ complexSize * 2 ];
+				tempOut = new float[ size ];
+			}
+			else
+			{
+				tempIn = new float[ size * 2 ];
+				tempOut = new float[ size * 2 ];
+			}
+
+			if ( kind == COMPLEX_TO_COMPLEX )
+			{
+				fftReal = null;
+				fftComplex = new FftComplex( size );
+			}
+			else
+			{
+				fftReal = new FftReal( size );
+				fftComplex = null;
+			}
+		}
+	}
+
+	/**
+	 * Get the line buffers of the calling thread from the plan, or new ones if the plan is null.
+	 */
+	final static Line line( final FFTPlan plan, final int kind, final int size )
+	{
+		if ( plan == null )
+			return new Line( kind, size );
+
+		final ArrayList< Line > lines = plan.lines.get();
+
+		for ( final Line line : lines )
+			if ( line.kind == kind && line.size == size )
+				return line;
+
+		final Line line = new Line( kind, size );
+		lines.add( line );
+
+		return line;
+	}
+
+	final long[] paddedDimensions, fftDimensions;
+	final int numThreads;
+
+	final ThreadLocal< ArrayList< Line > > lines = new ThreadLocal< ArrayList< Line > >()
+	{
+		@Override
+		protected ArrayList< Line > initialValue()
+		{
+			return new ArrayList< Line >();
+		}
+	};
+
+	/**
+	 * Create a plan using as many threads as the shared {@link TaskExecutor}.
+	 * 
+	 * @param paddedDimensions - the dimensions of the real-valued data, they have to be supported by the edu_mines_jtk 1d fft
+	 * (see {@link FFTMethods#dimensionsRealToComplexFast(Dimensions, long[], long[])})
+	 */
+	public FFTPlan( final Dimensions paddedDimensions )
+	{
+		this( paddedDimensions, TaskExecutor.getInstance().getNumThreads() );
+	}
+
+	/**
+	 * Create a plan.
+	 * 
+	 * @param paddedDimensions - the dimensions of the real-valued data, they have to be supported by the edu_mines_jtk 1d fft
+	 * (see {@link FFTMethods#dimensionsRealToComplexFast(Dimensions, long[], long[])})
+	 * @param numThreads - the number of threads used for each transform
+	 */
+	public FFTPlan( final Dimensions paddedDimensions, final int numThreads )
+	{
+		final int numDimensions = paddedDimensions.numDimensions();
+
+		this.paddedDimensions = new long[ numDimensions ];
+		this.fftDimensions = new long[ numDimensions ];
+		this.numThreads = numThreads;
+
+		paddedDimensions.dimensions( this.paddedDimensions );
+
+		for ( int d = 0; d < numDimensions; ++d )
+			fftDimensions[ d ] = this.paddedDimensions[ d ];
+
+		fftDimensions[ 0 ] = this.paddedDimensions[ 0 ] / 2 + 1;
+
+		if ( !FFTMethods.verifyRealToComplexfftDimensions( ( int ) this.paddedDimensions[ 0 ], ( int ) fftDimensions[ 0 ] ) )
+			throw new IllegalArgumentException( "Unsupported FFT size " + this.paddedDimensions[ 0 ] + " in dimension 0" );
+
+		for ( int d = 1; d < numDimensions; ++d )
+			if ( !FFTMethods.verifyComplexToComplexfftDimensions( ( int ) fftDimensions[ d ], ( int ) fftDimensions[ d ] ) )
+				throw new IllegalArgumentException( "Unsupported FFT size " + fftDimensions[ d ] + " in dimension " + d );
+	}
+
+	public int numDimensions() { return paddedDimensions.length; }
+	public int getNumThreads() { return numThreads; }
+	public Dimensions paddedDimensions() { return FinalDimensions.wrap( paddedDimensions.clone() ); }
+	public Dimensions fftDimensions() { return FinalDimensions.wrap( fftDimensions.clone() ); }
+
+	/**
+	 * Create an {@link Img} of the size of the complex transform.
+	 */
+	public < C extends ComplexType< C > > Img< C > createFFTImg( final ImgFactory< C > factory, final C type )
+	{
+		return factory.create( fftDimensions, type );
+	}
+
+	/**
+	 * Computes the real-to-complex forward FFT (not scaled), see {@link FFT#realToComplex(RandomAccessibleInterval, RandomAccessibleInterval)}.
+	 * 
+	 * @param input - the real-valued input, its dimensions have to be the padded dimensions of this plan
+	 * @param output - the complex-valued output, its dimensions have to be the fft dimensions of this plan
+	 */
+	public < R extends RealType< R >, C extends ComplexType< C > > void realToComplex( final RandomAccessibleInterval< R > input, final RandomAccessibleInterval< C > output )
+	{
+		checkDimensions( input, paddedDimensions );
+		checkDimensions( output, fftDimensions );
+
+		if ( output instanceof CellImg )
+		{
+			FFT.checkBlocked( BlockedFFTMethods.realToComplex( input, output, false, numThreads ) );
+
+			for ( int d = 1; d < input.numDimensions(); ++d )
+				FFT.checkBlocked( BlockedFFTMethods.complexToComplex( output, d, true, false, numThreads ) );
+
+			return;
+		}
+
+		FFTMethods.realToComplex( input, output, output, 0, false, numThreads, this );
+
+		for ( int d = 1; d < input.numDimensions(); ++d )
+			FFTMethods.complexToComplex( output, d, true, false, numThreads, this );
+	}
+
+	/**
+	 * Computes the in-place complex-to-real inverse FFT (scaled) and writes the center part of the result into the output,
+	 * see {@link FFT#complexToRealUnpad(RandomAccessibleInterval, RandomAccessibleInterval)}.
+	 * 
+	 * @param input - the complex-valued input (will be overwritten), its dimensions have to be the fft dimensions of this plan
+	 * @param output - the real-valued output, at most as large as the padded dimensions of this plan
+	 */
+	public < C extends ComplexType< C >, R extends RealType< R > > void complexToRealUnpad( final RandomAccessibleInterval< C > input, final RandomAccessibleInterval< R > output )
+	{
+		checkDimensions( input, fftDimensions );
+
+		if ( input instanceof CellImg )
+		{
+			for ( int d = 1; d < input.numDimensions(); ++d )
+				FFT.checkBlocked( BlockedFFTMethods.complexToComplex( input, d, false, true, numThreads ) );
+
+			FFT.checkBlocked( BlockedFFTMethods.complexToReal( input, output, FFTMethods.unpaddingIntervalCentered( input, output ), true, numThreads ) );
+
+			return;
+		}
+
+		for ( int d = 1; d < input.numDimensions(); ++d )
+			FFTMethods.complexToComplex( input, d, false, true, numThreads, this );
+
+		FFTMethods.complexToReal( input, output, FFTMethods.unpaddingIntervalCentered( input, output ), 0, true, numThreads, this );
+	}
+
+	final private static void checkDimensions( final Dimensions dimensions, final long[] expected )
+	{
+		for ( int d = 0; d < expected.length; ++d )
+			if ( dimensions.dimension( d ) != expected[ d ] )
+				throw new IllegalArgumentException( "Dimension " + d + " is " + dimensions.dimension( d ) + " but the plan requires " + expected[ d ] );
+	}
+}
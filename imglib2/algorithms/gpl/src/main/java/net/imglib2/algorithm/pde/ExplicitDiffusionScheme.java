@@ -1,19 +1,26 @@
 package net.imglib2.algorithm.pde;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import net.imglib2.Cursor;
 import net.imglib2.ExtendedRandomAccessibleInterval;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.ChunkTask;
 import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 
 public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends MultiThreadedBenchmarkAlgorithm {
@@ -25,6 +32,9 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 
 	private static final String BASE_ERROR_MESSAGE = "["+ExplicitDiffusionScheme.class.getSimpleName()+"] ";
 
+	/** The default maximal number of time steps fused in one sweep over a tile. */
+	public static final int DEFAULT_STEPS_PER_SWEEP = 4;
+
 	/** The diffusion tensor. */
 	protected RandomAccessibleInterval<FloatType> D;
 	/** The input image, will be modified by this algorithm. */
@@ -41,6 +51,13 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 	/** The dimension to iterate over to retrieve the tensor components. */
 	protected final int tensorComponentDimension;
 
+	/** The number of time steps executed by one call to {@link #process()}. */
+	private int iterations = 1;
+	/** The side length of the tiles processed by the tiled engine. */
+	private int tileSize;
+	/** The maximal number of time steps executed on a tile before its halo is re-read from the image. */
+	private int stepsPerSweep = DEFAULT_STEPS_PER_SWEEP;
+
 	/*
 	 * PROTECTED CONSTRUCTOR
 	 */
@@ -58,6 +75,7 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 		this.maxVal = (float) input.firstElement().getMaxValue();
 		// The dimension to iterate over to retrieve the tensor components
 		this.tensorComponentDimension = input.numDimensions();
+		this.tileSize = input.numDimensions() > 2 ? 32 : 64;
 		this.processingTime = 0;
 	}
 
@@ -72,12 +90,381 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 	
 
 	/**
-	 * Execute one iteration of explicit scheme of the diffusion equation.
+	 * Execute {@link #getIterations()} iterations of explicit scheme of the diffusion equation.
+	 * <p>
+	 * If the concrete scheme provides the offsets of its neighborhood in a flat buffer
+	 * (see {@link #densityOffsets(int[])}), the image is processed tile by tile: each tile
+	 * and its halo are copied to float buffers, up to {@link #getStepsPerSweep()} time steps
+	 * are executed in these buffers, and the updated tile is written back. The increment is
+	 * added to the density as soon as it is computed, so there is no second pass over the image.
+	 * Otherwise, the image is processed pixel by pixel.
 	 */
 	@Override
 	public boolean process() {
 
 		long start = System.currentTimeMillis();
+		if (null == densityOffsets(new int[input.numDimensions()])) {
+			for (int i = 0; i < iterations; i++) {
+				processPixelwise();
+			}
+		} else {
+			int done = 0;
+			while (done < iterations) {
+				final int steps = Math.min(stepsPerSweep, iterations - done);
+				processTiles(steps);
+				done += steps;
+			}
+		}
+		long end = System.currentTimeMillis();
+		processingTime += (end - start);
+		return true;
+	}
+
+	/**
+	 * Execute the given number of time steps on all the tiles of the image. Every tile is
+	 * loaded with a halo as wide as the number of steps, so that it can be evolved independently
+	 * of its neighbors. The tiles are written back to the image once all of them are done.
+	 */
+	private void processTiles(final int steps) {
+
+		final int n = input.numDimensions();
+		final long[] dims = new long[n];
+		input.dimensions(dims);
+
+		final long[] numTiles = new long[n];
+		final int[] maxBufferDims = new int[n];
+		long totalTiles = 1;
+		int maxBufferSize = 1;
+		for (int d = 0; d < n; d++) {
+			numTiles[d] = (dims[d] + tileSize - 1) / tileSize;
+			totalTiles *= numTiles[d];
+			maxBufferDims[d] = (int) Math.min(tileSize + 2 * steps, dims[d] + 2);
+			maxBufferSize *= maxBufferDims[d];
+		}
+		final int bufferSize = maxBufferSize;
+
+		// HACK: Explicit assignment is needed for OpenJDK javac.
+		final ExtendedRandomAccessibleInterval<T, Img<T>> extendedInput = Views.extendMirrorDouble(input);
+		final int numComponents = diffusionTensorOffsets(new int[n]).length;
+		final List<RandomAccessible<FloatType>> extendedComponents = new ArrayList<RandomAccessible<FloatType>>(numComponents);
+		for (int c = 0; c < numComponents; c++) {
+			final IntervalView<FloatType> component = Views.hyperSlice(D, tensorComponentDimension, c);
+			final ExtendedRandomAccessibleInterval<FloatType, IntervalView<FloatType>> extendedComponent = Views.extendMirrorDouble(component);
+			extendedComponents.add(extendedComponent);
+		}
+
+		// The new values of every tile, kept until all tiles are done reading the image.
+		final float[][] results = new float[(int) totalTiles][];
+
+		TaskExecutor.getInstance().forEachChunk(totalTiles, numThreads, new ChunkTask() {
+
+			@Override
+			public void run(final long startTile, final long numTilesInChunk) {
+
+				float[] source = new float[bufferSize];
+				float[] target = new float[bufferSize];
+				final float[][] tensor = new float[numComponents][bufferSize];
+				final float[] lastIncrement = new float[bufferSize];
+
+				final float[] U = initDensityArray();
+				final float[][] Dt = initDiffusionTensorArray();
+				final T quantizer = input.firstElement().createVariable();
+				final boolean quantize = !(quantizer instanceof FloatType || quantizer instanceof DoubleType);
+
+				final long[] tileMin = new long[n];
+				final long[] tileMax = new long[n];
+				final long[] bufferMin = new long[n];
+				final long[] bufferMax = new long[n];
+				final int[] bufferDims = new int[n];
+				final int[] bufferSteps = new int[n];
+				final long[] regionMin = new long[n];
+				final long[] regionMax = new long[n];
+				final long[] position = new long[n];
+
+				for (long t = startTile; t < startTile + numTilesInChunk; t++) {
+
+					// Locate the tile and its halo
+					long index = t;
+					for (int d = 0; d < n; d++) {
+						tileMin[d] = (index % numTiles[d]) * tileSize;
+						tileMax[d] = Math.min(tileMin[d] + tileSize, dims[d]) - 1;
+						index /= numTiles[d];
+						bufferMin[d] = Math.max(tileMin[d] - steps, -1);
+						bufferMax[d] = Math.min(tileMax[d] + steps, dims[d]);
+						bufferDims[d] = (int) (bufferMax[d] - bufferMin[d] + 1);
+					}
+					bufferSteps[0] = 1;
+					for (int d = 1; d < n; d++) {
+						bufferSteps[d] = bufferSteps[d-1] * bufferDims[d-1];
+					}
+					final int[] uOffsets = densityOffsets(bufferSteps);
+					final int[][] dOffsets = diffusionTensorOffsets(bufferSteps);
+
+					// Copy density and diffusion tensor, including the out-of-bounds ring
+					copyBox(extendedInput.randomAccess(), bufferMin, bufferMax, position, source);
+					for (int c = 0; c < numComponents; c++) {
+						copyBox(extendedComponents.get(c).randomAccess(), bufferMin, bufferMax, position, tensor[c]);
+					}
+
+					for (int s = 0; s < steps; s++) {
+
+						// The region we can update shrinks by one pixel at each step
+						final long shrink = steps - 1 - s;
+						for (int d = 0; d < n; d++) {
+							regionMin[d] = Math.max(tileMin[d] - shrink, 0);
+							regionMax[d] = Math.min(tileMax[d] + shrink, dims[d] - 1);
+						}
+						final int rowLength = (int) (regionMax[0] - regionMin[0] + 1);
+						final boolean last = s == steps - 1;
+
+						System.arraycopy(regionMin, 0, position, 0, n);
+						do {
+							final int rowStart = bufferIndex(position, bufferMin, bufferSteps);
+							for (int i = rowStart; i < rowStart + rowLength; i++) {
+
+								for (int k = 0; k < U.length; k++) {
+									U[k] = source[i + uOffsets[k]];
+								}
+								for (int c = 0; c < numComponents; c++) {
+									final float[] component = tensor[c];
+									final int[] offsets = dOffsets[c];
+									final float[] values = Dt[c];
+									for (int k = 0; k < offsets.length; k++) {
+										values[k] = component[i + offsets[k]];
+									}
+								}
+
+								final float inc = diffusionScheme(U, Dt);
+
+								// Over/Underflow protection
+								float sum = source[i] + inc;
+								if (sum > maxVal) {
+									sum = maxVal;
+								}
+								if (sum < minVal) {
+									sum = minVal;
+								}
+								if (quantize) {
+									// Round as the input type would
+									quantizer.setReal(sum);
+									sum = quantizer.getRealFloat();
+								}
+								target[i] = sum;
+								if (last) {
+									lastIncrement[i] = inc;
+								}
+							}
+						} while (nextRow(position, regionMin, regionMax));
+
+						if (!last) {
+							// Refresh the mirrored ring at the image borders
+							for (int d = 0; d < n; d++) {
+								if (bufferMin[d] < 0) {
+									mirrorFace(target, bufferDims, bufferSteps, d, 1, 0);
+								}
+								if (bufferMax[d] >= dims[d]) {
+									mirrorFace(target, bufferDims, bufferSteps, d, bufferDims[d] - 2, bufferDims[d] - 1);
+								}
+							}
+						}
+
+						final float[] tmp = source;
+						source = target;
+						target = tmp;
+					}
+
+					// Store the tile result, and its last increment
+					final int rowLength = (int) (tileMax[0] - tileMin[0] + 1);
+					int tileVolume = 1;
+					for (int d = 0; d < n; d++) {
+						tileVolume *= (int) (tileMax[d] - tileMin[d] + 1);
+					}
+					final float[] result = new float[tileVolume];
+					final Cursor<FloatType> incrementCursor = Views.flatIterable(Views.interval(increment, tileMin, tileMax)).cursor();
+					int j = 0;
+					System.arraycopy(tileMin, 0, position, 0, n);
+					do {
+						final int rowStart = bufferIndex(position, bufferMin, bufferSteps);
+						for (int i = rowStart; i < rowStart + rowLength; i++) {
+							result[j++] = source[i];
+							incrementCursor.next().set(lastIncrement[i]);
+						}
+					} while (nextRow(position, tileMin, tileMax));
+					results[(int) t] = result;
+				}
+			}
+		});
+
+		// Now that no tile reads the image anymore, write them back.
+		TaskExecutor.getInstance().forEachChunk(totalTiles, numThreads, new ChunkTask() {
+
+			@Override
+			public void run(final long startTile, final long numTilesInChunk) {
+
+				final long[] tileMin = new long[n];
+				final long[] tileMax = new long[n];
+
+				for (long t = startTile; t < startTile + numTilesInChunk; t++) {
+					long index = t;
+					for (int d = 0; d < n; d++) {
+						tileMin[d] = (index % numTiles[d]) * tileSize;
+						tileMax[d] = Math.min(tileMin[d] + tileSize, dims[d]) - 1;
+						index /= numTiles[d];
+					}
+					final float[] result = results[(int) t];
+					final Cursor<T> cursor = Views.flatIterable(Views.interval(input, tileMin, tileMax)).cursor();
+					for (int j = 0; cursor.hasNext(); j++) {
+						cursor.next().setReal(result[j]);
+					}
+					results[(int) t] = null;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copy the values of the given box, in flat iteration order, to the target buffer.
+	 */
+	private static final <S extends RealType<S>> void copyBox(final RandomAccess<S> ra, final long[] min, final long[] max, final long[] position, final float[] target) {
+		final int rowLength = (int) (max[0] - min[0] + 1);
+		int i = 0;
+		System.arraycopy(min, 0, position, 0, min.length);
+		do {
+			ra.setPosition(position);
+			for (int x = 0; x < rowLength; x++) {
+				target[i++] = ra.get().getRealFloat();
+				ra.fwd(0);
+			}
+		} while (nextRow(position, min, max));
+	}
+
+	/**
+	 * Return the index in a flat buffer starting at <code>bufferMin</code> of the given position.
+	 */
+	private static final int bufferIndex(final long[] position, final long[] bufferMin, final int[] bufferSteps) {
+		int index = 0;
+		for (int d = 0; d < position.length; d++) {
+			index += (int) (position[d] - bufferMin[d]) * bufferSteps[d];
+		}
+		return index;
+	}
+
+	/**
+	 * Move the given position to the start of the next row (along dimension 0) in the given box.
+	 * @return  false if the position was in the last row.
+	 */
+	private static final boolean nextRow(final long[] position, final long[] min, final long[] max) {
+		for (int d = 1; d < position.length; d++) {
+			if (position[d] < max[d]) {
+				position[d]++;
+				return true;
+			}
+			position[d] = min[d];
+		}
+		return false;
+	}
+
+	/**
+	 * Copy the hyperplane <code>from</code> of dimension <code>d</code> of a flat buffer
+	 * into its hyperplane <code>to</code>.
+	 */
+	private static final void mirrorFace(final float[] buffer, final int[] bufferDims, final int[] bufferSteps, final int d, final int from, final int to) {
+		final int planeLength = bufferSteps[d];
+		final int blockLength = planeLength * bufferDims[d];
+		int numBlocks = 1;
+		for (int e = d + 1; e < bufferDims.length; e++) {
+			numBlocks *= bufferDims[e];
+		}
+		for (int b = 0; b < numBlocks; b++) {
+			final int base = b * blockLength;
+			System.arraycopy(buffer, base + from * planeLength, buffer, base + to * planeLength, planeLength);
+		}
+	}
+
+	/**
+	 * Return the offsets, in a flat buffer with the given steps, of the density values
+	 * collected by {@link #yieldDensity(RandomAccess, float[])}, in the same order.
+	 * <p>
+	 * Schemes that return <code>null</code>, which is the default, are processed pixel by pixel.
+	 * @param steps  the step of the flat buffer along each dimension
+	 */
+	protected int[] densityOffsets(final int[] steps) {
+		return null;
+	}
+
+	/**
+	 * Return the offsets, in a flat buffer with the given steps, of the diffusion tensor values
+	 * collected by {@link #yieldDiffusionTensor(RandomAccess, float[][])}, in the same order.
+	 * Row <code>c</code> of the returned array must only address tensor component <code>c</code>.
+	 * <p>
+	 * This is only called if {@link #densityOffsets(int[])} does not return <code>null</code>.
+	 * @param steps  the step of the flat buffer along each dimension
+	 */
+	protected int[][] diffusionTensorOffsets(final int[] steps) {
+		return null;
+	}
+
+	/**
+	 * Set the number of time steps executed by each call to {@link #process()}.
+	 * The diffusion tensor is kept constant during these steps.
+	 */
+	public void setIterations(final int iterations) {
+		if (iterations < 1) {
+			throw new IllegalArgumentException(BASE_ERROR_MESSAGE + "The number of iterations must be at least 1, got " + iterations + ".");
+		}
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return  the number of time steps executed by each call to {@link #process()}.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Set the side length of the tiles the image is divided in. Defaults to 64 in 2D,
+	 * 32 in higher dimensions.
+	 */
+	public void setTileSize(final int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException(BASE_ERROR_MESSAGE + "The tile size must be at least 1, got " + tileSize + ".");
+		}
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @return  the side length of the tiles the image is divided in.
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Set the maximal number of time steps executed on a tile before writing it back.
+	 * Each tile is loaded with a halo that many pixels wide, so larger values trade
+	 * redundant computations in the halo for fewer passes over the image.
+	 */
+	public void setStepsPerSweep(final int stepsPerSweep) {
+		if (stepsPerSweep < 1) {
+			throw new IllegalArgumentException(BASE_ERROR_MESSAGE + "The number of steps per sweep must be at least 1, got " + stepsPerSweep + ".");
+		}
+		this.stepsPerSweep = stepsPerSweep;
+	}
+
+	/**
+	 * @return  the maximal number of time steps executed on a tile before writing it back.
+	 */
+	public int getStepsPerSweep() {
+		return stepsPerSweep;
+	}
+
+	/**
+	 * Execute one iteration of explicit scheme of the diffusion equation, pixel by pixel. 
+	 * This is used for the schemes that do not provide their neighborhood offsets.
+	 */
+	private void processPixelwise() {
+
 		final Vector<Chunk> chunks = SimpleMultiThreading.divideIntoChunks(input.size(), numThreads);
 		Thread[] threads = SimpleMultiThreading.newThreads(numThreads);
 
@@ -175,10 +562,6 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 		}
  
 		SimpleMultiThreading.startAndJoin(threads);
-
-		long end = System.currentTimeMillis();
-		processingTime += (end - start);
-		return true;
 	}
 
 
@@ -199,6 +199,32 @@ public abstract class ExplicitDiffusionScheme2D<T extends RealType<T>> extends E
 		target[1][8] = dra.get().get();
 	}
 
+	/**
+	 * Return the offsets of the 3x3 XY neighborhood in a flat buffer, in the order
+	 * used by {@link #yieldDensity(RandomAccess, float[])}.
+	 */
+	@Override
+	protected int[] densityOffsets(final int[] steps) {
+		final int x = steps[0];
+		final int y = steps[1];
+		return new int[] { 0, -y, x - y, x, x + y, y, -x + y, -x, -x - y };
+	}
+
+	/**
+	 * Return the offsets of the tensor neighborhood in a flat buffer, in the order
+	 * used by {@link #yieldDiffusionTensor(RandomAccess, float[][])}.
+	 */
+	@Override
+	protected int[][] diffusionTensorOffsets(final int[] steps) {
+		final int x = steps[0];
+		final int y = steps[1];
+		return new int[][] {
+				{ 0, x, -x },
+				{ 0, -y, x - y, x, x + y, y, -x + y, -x, -x - y },
+				{ 0, -y, y }
+		};
+	}
+
 
 
 }
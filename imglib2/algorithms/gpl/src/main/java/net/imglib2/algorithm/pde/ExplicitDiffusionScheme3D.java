@@ -347,13 +347,7 @@ public abstract class ExplicitDiffusionScheme3D<T extends RealType<T>> extends E
 		// 23. cpp
 		dra.fwd(X);
 		
-		dra.setPosition(C, tensorComponentDimension);
-		target[C][2] = dra.get().get();
-		
-		dra.setPosition(E, tensorComponentDimension);
-		target[E][8] = dra.get().get();
-		
-		dra.fwd(2);
+		dra.setPosition(F, tensorComponentDimension);
 		target[F][7] = dra.get().get();
 		
 		// 24. ppp - unsued, not even traversed
@@ -361,9 +355,58 @@ public abstract class ExplicitDiffusionScheme3D<T extends RealType<T>> extends E
 		// 25. ccp
 		dra.bck(Y);
 		
+		dra.setPosition(C, tensorComponentDimension);
+		target[C][2] = dra.get().get();
+		
+		dra.setPosition(E, tensorComponentDimension);
+		target[E][8] = dra.get().get();
+		
 		dra.setPosition(F, tensorComponentDimension);
 		target[F][8] = dra.get().get();
 	
 	}
 
+	@Override
+	protected int[] densityOffsets(final int[] steps) {
+		final int x = steps[0];
+		final int y = steps[1];
+		final int z = steps[2];
+		return new int[] {
+				0, // ccc
+				-z, // ccm
+				-y - z, // cmm
+				-x - z, // mcm
+				y - z, // cpm
+				x - z, // pcm
+				x - y, // pmc
+				-y, // cmc
+				-x - y, // mmc
+				-x, // mcc
+				-x + y, // mpc
+				y, // cpc
+				x + y, // ppc
+				x, // pcc
+				x + z, // pcp
+				-y + z, // cmp
+				-x + z, // mcp
+				y + z, // cpp
+				z // ccp
+		};
+	}
+
+	@Override
+	protected int[][] diffusionTensorOffsets(final int[] steps) {
+		final int x = steps[0];
+		final int y = steps[1];
+		final int z = steps[2];
+		return new int[][] {
+				{ 0, -x, x }, // A: ccc mcc pcc
+				{ 0, -y, y }, // B: ccc cmc cpc
+				{ 0, -z, z }, // C: ccc ccm ccp
+				{ 0, x - y, -y, -x - y, -x, -x + y, y, x + y, x }, // D: ccc pmc cmc mmc mcc mpc cpc ppc pcc
+				{ 0, -z, -x - z, x - z, -x, x, x + z, -x + z, z }, // E: ccc ccm mcm pcm mcc pcc pcp mcp ccp
+				{ 0, -z, -y - z, y - z, -y, y, -y + z, y + z, z } // F: ccc ccm cmm cpm cmc cpc cmp cpp ccp
+		};
+	}
+
 }
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.fft2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.cell.DiskCellImgFactory;
+import net.imglib2.img.cell.DiskCells;
+import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.complex.ComplexDoubleType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Make sure that the blocked FFT of {@link CellImg}s gives the same result as the line-wise FFT
+ */
+public class BlockedFFTMethodsTest {
+
+	private static Img<FloatType> randomImg(final Random random, final long... dimensions) {
+		final Img<FloatType> img = ArrayImgs.floats(dimensions);
+		for (final FloatType t : img)
+			t.set(random.nextFloat());
+		return img;
+	}
+
+	private static <C extends ComplexType<C>, D extends ComplexType<D>> void assertComplexEquals(final Img<C> expected, final Img<D> actual) {
+		final Cursor<C> e = Views.flatIterable(expected).cursor();
+		final Cursor<D> a = Views.flatIterable(actual).cursor();
+		while (e.hasNext()) {
+			e.fwd();
+			a.fwd();
+			assertEquals(e.get().getRealDouble(), a.get().getRealDouble(), 1e-3);
+			assertEquals(e.get().getImaginaryDouble(), a.get().getImaginaryDouble(), 1e-3);
+		}
+	}
+
+	private static void assertRealEquals(final Img<FloatType> expected, final Img<FloatType> actual) {
+		final Cursor<FloatType> e = Views.flatIterable(expected).cursor();
+		final Cursor<FloatType> a = Views.flatIterable(actual).cursor();
+		while (e.hasNext())
+			assertEquals(e.next().get(), a.next().get(), 1e-4);
+	}
+
+	private static <C extends ComplexType<C>> void testRoundTrip(final ImgFactory<C> factory, final C type) {
+		final Random random = new Random(4321);
+		final Img<FloatType> img = randomImg(random, 10, 7, 5);
+
+		final Img<ComplexFloatType> expected = FFT.realToComplex(img, new ArrayImgFactory<ComplexFloatType>());
+		final Img<C> actual = FFT.realToComplex(Views.extendValue(img, new FloatType()), img, factory, type);
+		assertTrue(actual instanceof CellImg);
+		assertComplexEquals(expected, actual);
+
+		final Img<FloatType> expectedInverse = ArrayImgs.floats(9, 6, 4);
+		FFT.complexToRealUnpad(expected, expectedInverse);
+		final Img<FloatType> actualInverse = ArrayImgs.floats(9, 6, 4);
+		FFT.complexToRealUnpad(actual, actualInverse);
+		assertRealEquals(expectedInverse, actualInverse);
+	}
+
+	@Test
+	public void testCellImg() {
+		testRoundTrip(new CellImgFactory<ComplexFloatType>(3), new ComplexFloatType());
+	}
+
+	@Test
+	public void testCellImgGenericType() {
+		testRoundTrip(new CellImgFactory<ComplexDoubleType>(new int[] {4, 3, 2}), new ComplexDoubleType());
+	}
+
+	@Test
+	public void testDiskCellImg() {
+		// a cache that holds only a few cells
+		testRoundTrip(new DiskCellImgFactory<ComplexFloatType>(2, 3 * 2 * 2 * 2 * 4), new ComplexFloatType());
+	}
+
+	@Test
+	public void testConvolutionOutOfCore() {
+		final Random random = new Random(1234);
+		final Img<FloatType> img = randomImg(random, 17, 12);
+		final Img<FloatType> kernel = randomImg(random, 3, 5);
+
+		final Img<FloatType> expected = ArrayImgs.floats(17, 12);
+		new FFTConvolution<FloatType>(img, kernel, expected, new ArrayImgFactory<ComplexFloatType>()).run();
+
+		final DiskCellImgFactory<ComplexFloatType> factory = new DiskCellImgFactory<ComplexFloatType>(4, 4 * 4 * 2 * 4 * 3);
+		final FFTConvolutionPlan<FloatType> plan = new FFTConvolutionPlan<FloatType>(img, kernel, factory);
+		final Img<FloatType> actual = ArrayImgs.floats(17, 12);
+		plan.convolve(img, actual);
+		assertRealEquals(expected, actual);
+
+		((DiskCells<?>) ((CellImg<?, ?, ?>) plan.kernelFFT()).getCells()).close();
+	}
+
+	@Test
+	public void testNotACellImg() {
+		// not a CellImg
+		assertFalse(BlockedFFTMethods.complexToComplex(ArrayImgs.complexFloats(8, 6), 0, true, false, 1));
+		assertTrue(BlockedFFTMethods.getErrorMessage().length() > 0);
+
+		// success clears the message
+		final Img<ComplexFloatType> cells = new CellImgFactory<ComplexFloatType>(4).create(new long[] {8, 6}, new ComplexFloatType());
+		assertTrue(BlockedFFTMethods.complexToComplex(cells, 1, true, false, 1));
+		assertEquals("", BlockedFFTMethods.getErrorMessage());
+	}
+
+	@Test
+	public void testUnsupportedDimensions() {
+		// the fft dimensions of a real input of size 16 are 9, not 5
+		final Img<FloatType> input = ArrayImgs.floats(16, 6);
+		final Img<ComplexFloatType> output = new CellImgFactory<ComplexFloatType>(4).create(new long[] {5, 6}, new ComplexFloatType());
+		try {
+			FFT.realToComplex(input, output);
+			fail("unsupported dimensions were not rejected");
+		} catch (final IllegalArgumentException e) {
+			assertEquals(BlockedFFTMethods.getErrorMessage(), e.getMessage());
+			assertTrue(e.getMessage().length() > 0);
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.fft2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Make sure that {@link FFTConvolutionPlan} gives the same result as {@link FFTConvolution}
+ */
+public class FFTConvolutionPlanTest {
+
+	private static Img<FloatType> randomImg(final Random random, final long... dimensions) {
+		final Img<FloatType> img = ArrayImgs.floats(dimensions);
+		for (final FloatType t : img)
+			t.set(random.nextFloat());
+		return img;
+	}
+
+	@Test
+	public void testStreamOfImages() {
+		final Random random = new Random(1234);
+		final Img<FloatType> kernel = randomImg(random, 5, 3);
+		final ArrayImgFactory<ComplexFloatType> factory = new ArrayImgFactory<ComplexFloatType>();
+
+		final FFTConvolutionPlan<FloatType> plan = new FFTConvolutionPlan<FloatType>(ArrayImgs.floats(19, 13), kernel, factory);
+		final Img<ComplexFloatType> kernelFFT = plan.kernelFFT();
+
+		for (int frame = 0; frame < 3; ++frame) {
+			final Img<FloatType> img = randomImg(random, 19, 13);
+
+			final Img<FloatType> expected = ArrayImgs.floats(19, 13);
+			FFTConvolution.convolve(Views.extendMirrorSingle(img), img, Views.extendValue(kernel, new FloatType()), kernel, expected, factory);
+
+			final Img<FloatType> actual = ArrayImgs.floats(19, 13);
+			plan.convolve(img, actual);
+
+			final Cursor<FloatType> e = expected.cursor();
+			final Cursor<FloatType> a = actual.cursor();
+			while (e.hasNext())
+				assertEquals(e.next().get(), a.next().get(), 1e-4);
+
+			assertSame(kernelFFT, plan.kernelFFT());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongSize() {
+		final Random random = new Random(1234);
+		final FFTConvolutionPlan<FloatType> plan = new FFTConvolutionPlan<FloatType>(ArrayImgs.floats(19, 13), randomImg(random, 3, 3), new ArrayImgFactory<ComplexFloatType>());
+		final Img<FloatType> img = randomImg(random, 18, 13);
+		plan.convolve(img, img);
+	}
+}
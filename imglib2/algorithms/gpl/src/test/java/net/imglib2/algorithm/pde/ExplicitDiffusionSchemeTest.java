@@ -0,0 +1,191 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.pde;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.outofbounds.OutOfBounds;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Make sure that the tiled engine of {@link ExplicitDiffusionScheme} gives the same
+ * result as applying the scheme pixel by pixel, one iteration at a time.
+ */
+public class ExplicitDiffusionSchemeTest {
+
+	private static Img<FloatType> randomTensor(final Random random, final long... dimensions) {
+		final Img<FloatType> tensor = ArrayImgs.floats(dimensions);
+		for (final FloatType t : tensor)
+			t.set(random.nextFloat());
+		return tensor;
+	}
+
+	/**
+	 * One pixel by pixel iteration of the given scheme on the given image.
+	 */
+	private static <T extends RealType<T>> void referenceIteration(final ExplicitDiffusionScheme<T> scheme, final Img<T> img) {
+		final Img<FloatType> increment = ArrayImgs.floats(Views.iterable(scheme.getIncrement()).size());
+		final OutOfBounds<T> ura = Views.extendMirrorDouble(img).randomAccess();
+		final OutOfBounds<FloatType> dra = Views.extendMirrorDouble(scheme.getDiffusionTensor()).randomAccess();
+		final float[] U = scheme.initDensityArray();
+		final float[][] D = scheme.initDiffusionTensorArray();
+		final long[] position = new long[img.numDimensions()];
+
+		final Cursor<T> cursor = img.localizingCursor();
+		final Cursor<FloatType> inc = increment.cursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.localize(position);
+			ura.setPosition(position);
+			for (int d = 0; d < position.length; d++)
+				dra.setPosition(position[d], d);
+			scheme.yieldDensity(ura, U);
+			scheme.yieldDiffusionTensor(dra, D);
+			inc.next().set(scheme.diffusionScheme(U, D));
+		}
+
+		final double min = img.firstElement().getMinValue();
+		final double max = img.firstElement().getMaxValue();
+		cursor.reset();
+		inc.reset();
+		while (cursor.hasNext()) {
+			final T t = cursor.next();
+			final float sum = t.getRealFloat() + inc.next().get();
+			t.setReal(Math.max(min, Math.min(max, sum)));
+		}
+	}
+
+	private static <T extends RealType<T>> void assertImagesEqual(final Img<T> expected, final Img<T> actual, final double delta) {
+		final Cursor<T> e = expected.cursor();
+		final RandomAccess<T> a = actual.randomAccess();
+		while (e.hasNext()) {
+			e.fwd();
+			a.setPosition(e);
+			assertEquals(e.get().getRealDouble(), a.get().getRealDouble(), delta);
+		}
+	}
+
+	@Test
+	public void testStandard2D() {
+		final Random random = new Random(4321);
+		final Img<FloatType> img = randomTensor(random, 37, 29);
+		final Img<FloatType> expected = img.copy();
+		final StandardDiffusionScheme2D<FloatType> scheme = new StandardDiffusionScheme2D<FloatType>(img, randomTensor(random, 37, 29, 3));
+		scheme.setTileSize(8);
+		scheme.setIterations(5);
+		scheme.setStepsPerSweep(2);
+		scheme.setNumThreads(3);
+		scheme.process();
+
+		for (int i = 0; i < 5; i++)
+			referenceIteration(scheme, expected);
+		assertImagesEqual(expected, img, 1e-5);
+	}
+
+	@Test
+	public void testSingleIterationIncrement2D() {
+		final Random random = new Random(17);
+		final Img<FloatType> img = randomTensor(random, 20, 5);
+		final Img<FloatType> before = img.copy();
+		final NonNegativityDiffusionScheme2D<FloatType> scheme = new NonNegativityDiffusionScheme2D<FloatType>(img, randomTensor(random, 20, 5, 3));
+		scheme.setTileSize(3);
+		scheme.process();
+
+		final Cursor<FloatType> b = before.cursor();
+		final Cursor<FloatType> a = img.cursor();
+		final Cursor<FloatType> inc = Views.iterable(scheme.getIncrement()).cursor();
+		while (b.hasNext())
+			assertEquals(a.next().get(), b.next().get() + inc.next().get(), 0);
+	}
+
+	@Test
+	public void testUnsignedByte2D() {
+		final Random random = new Random(99);
+		final Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(31, 17);
+		for (final UnsignedByteType t : img)
+			t.set(random.nextInt(256));
+		final Img<UnsignedByteType> expected = img.copy();
+		final StandardDiffusionScheme2D<UnsignedByteType> scheme = new StandardDiffusionScheme2D<UnsignedByteType>(img, randomTensor(random, 31, 17, 3));
+		scheme.setTileSize(10);
+		scheme.setIterations(3);
+		scheme.process();
+
+		for (int i = 0; i < 3; i++)
+			referenceIteration(scheme, expected);
+		assertImagesEqual(expected, img, 0);
+	}
+
+	@Test
+	public void testNonNegativity3D() {
+		final Random random = new Random(2012);
+		final Img<FloatType> img = randomTensor(random, 13, 11, 9);
+		final Img<FloatType> expected = img.copy();
+		final NonNegativityDiffusionScheme3D<FloatType> scheme = new NonNegativityDiffusionScheme3D<FloatType>(img, randomTensor(random, 13, 11, 9, 6));
+		scheme.setTileSize(4);
+		scheme.setIterations(3);
+		scheme.setNumThreads(2);
+		scheme.process();
+
+		for (int i = 0; i < 3; i++)
+			referenceIteration(scheme, expected);
+		assertImagesEqual(expected, img, 1e-5);
+	}
+
+	@Test
+	public void testStandard3D() {
+		final Random random = new Random(7);
+		final Img<FloatType> img = randomTensor(random, 6, 7, 5);
+		final Img<FloatType> expected = img.copy();
+		final StandardDiffusionScheme3D<FloatType> scheme = new StandardDiffusionScheme3D<FloatType>(img, randomTensor(random, 6, 7, 5, 6));
+		scheme.process();
+
+		referenceIteration(scheme, expected);
+		assertImagesEqual(expected, img, 1e-6);
+	}
+}
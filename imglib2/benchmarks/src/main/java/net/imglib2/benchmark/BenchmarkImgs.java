@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.list.ListImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.img.sparse.ArrayNtreeImgFactory;
+import net.imglib2.img.sparse.NtreeImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Creates and fills the images used by the benchmarks. Containers are selected
+ * by name, so that they can be given as JMH parameters.
+ */
+public final class BenchmarkImgs
+{
+	public static final String ARRAY = "array";
+
+	public static final String PLANAR = "planar";
+
+	public static final String CELL = "cell";
+
+	public static final String NTREE = "ntree";
+
+	public static final String ARRAY_NTREE = "arrayntree";
+
+	public static final String LIST = "list";
+
+	private BenchmarkImgs()
+	{}
+
+	/**
+	 * @param container
+	 *            one of {@link #ARRAY}, {@link #PLANAR}, {@link #CELL},
+	 *            {@link #NTREE}, {@link #ARRAY_NTREE} or {@link #LIST}.
+	 */
+	public static < T extends NativeType< T > > ImgFactory< T > factory( final String container )
+	{
+		if ( ARRAY.equals( container ) )
+			return new ArrayImgFactory< T >();
+		if ( PLANAR.equals( container ) )
+			return new PlanarImgFactory< T >();
+		if ( CELL.equals( container ) )
+			return new CellImgFactory< T >( 32 );
+		if ( NTREE.equals( container ) )
+			return new NtreeImgFactory< T >();
+		if ( ARRAY_NTREE.equals( container ) )
+			return new ArrayNtreeImgFactory< T >();
+		if ( LIST.equals( container ) )
+			return new ListImgFactory< T >();
+		throw new IllegalArgumentException( "unknown container: " + container );
+	}
+
+	/**
+	 * Parse dimensions given as comma-separated list, e.g. "256,256,32".
+	 */
+	public static long[] dimensions( final String dimensions )
+	{
+		final String[] parts = dimensions.split( "," );
+		final long[] dim = new long[ parts.length ];
+		for ( int d = 0; d < dim.length; ++d )
+			dim[ d ] = Long.parseLong( parts[ d ].trim() );
+		return dim;
+	}
+
+	public static < T extends NativeType< T > & RealType< T > > Img< T > create( final String container, final String dimensions, final T type )
+	{
+		return BenchmarkImgs.< T >factory( container ).create( dimensions( dimensions ), type );
+	}
+
+	/**
+	 * Fill img with cubes of constant value. This gives the sparse containers
+	 * something to compress, while still varying over the image.
+	 */
+	public static < T extends RealType< T > > void fillBlocks( final Img< T > img, final int blockSize )
+	{
+		final int n = img.numDimensions();
+		final Cursor< T > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			long value = 0;
+			for ( int d = 0; d < n; ++d )
+				value += c.getLongPosition( d ) / blockSize;
+			c.get().setReal( value % 7 );
+		}
+	}
+
+	/**
+	 * Fill img with uniformly distributed random values in [0, 1).
+	 */
+	public static < T extends RealType< T > > void fillRandom( final Img< T > img, final long seed )
+	{
+		final Random random = new Random( seed );
+		for ( final T t : img )
+			t.setReal( random.nextDouble() );
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar. Accepts the usual JMH command line, but
+ * writes the results as JSON to {@link #DEFAULT_RESULT_FILE} unless -rf or -rff
+ * are given, so that results of consecutive runs can be compared to spot
+ * regressions.
+ * 
+ * <pre>
+ * mvn package
+ * java -jar target/benchmarks.jar                     # everything
+ * java -jar target/benchmarks.jar Gauss -p sigma=2    # a subset
+ * java -jar target/benchmarks.jar -l                  # list benchmarks
+ * </pre>
+ */
+public class BenchmarkRunner
+{
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException, IOException
+	{
+		final CommandLineOptions commandLine = new CommandLineOptions( args );
+		if ( commandLine.shouldHelp() )
+		{
+			commandLine.showHelp();
+			return;
+		}
+
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent( commandLine );
+		if ( !commandLine.getResultFormat().hasValue() )
+			options.resultFormat( ResultFormatType.JSON );
+		if ( !commandLine.getResult().hasValue() )
+			options.result( DEFAULT_RESULT_FILE );
+
+		final Runner runner = new Runner( options.build() );
+		if ( commandLine.shouldList() )
+			runner.list();
+		else
+			runner.run();
+	}
+}
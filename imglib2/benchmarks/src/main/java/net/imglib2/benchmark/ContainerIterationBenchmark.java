@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cursor and RandomAccess iteration over all containers. This covers the same
+ * loops as the main() methods of ArrayRandomAccessBenchmark,
+ * PlanarRandomAccessBenchmark and CellRandomAccessBenchmark in the core tests,
+ * but runs them through JMH with warmup iterations in a forked JVM, so that
+ * results can be compared between runs. The old benchmarks are kept for quick
+ * runs without JMH.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class ContainerIterationBenchmark
+{
+	@Param( { BenchmarkImgs.ARRAY, BenchmarkImgs.PLANAR, BenchmarkImgs.CELL, BenchmarkImgs.NTREE, BenchmarkImgs.ARRAY_NTREE, BenchmarkImgs.LIST } )
+	public String container;
+
+	@Param( { "256,256,16" } )
+	public String dimensions;
+
+	Img< FloatType > img;
+
+	Img< FloatType > target;
+
+	@Setup
+	public void setup()
+	{
+		img = BenchmarkImgs.create( container, dimensions, new FloatType() );
+		BenchmarkImgs.fillBlocks( img, 16 );
+		target = img.factory().create( img, new FloatType() );
+	}
+
+	@Benchmark
+	public double cursor()
+	{
+		double sum = 0;
+		final Cursor< FloatType > c = img.cursor();
+		while ( c.hasNext() )
+			sum += c.next().get();
+		return sum;
+	}
+
+	@Benchmark
+	public double localizingCursor()
+	{
+		double sum = 0;
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			sum += c.next().get();
+			sum += c.getLongPosition( 0 );
+		}
+		return sum;
+	}
+
+	/**
+	 * Visit all pixels with a RandomAccess, line by line.
+	 */
+	@Benchmark
+	public double randomAccess()
+	{
+		double sum = 0;
+		final int n = img.numDimensions();
+		final long width = img.dimension( 0 );
+		final long numLines = img.size() / width;
+		final long[] position = new long[ n ];
+		final RandomAccess< FloatType > a = img.randomAccess();
+		for ( long line = 0; line < numLines; ++line )
+		{
+			a.setPosition( position );
+			for ( long x = 0; x < width; ++x )
+			{
+				sum += a.get().get();
+				a.fwd( 0 );
+			}
+			for ( int d = 1; d < n; ++d )
+			{
+				if ( ++position[ d ] < img.dimension( d ) )
+					break;
+				position[ d ] = 0;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Visit all pixels with a RandomAccess following a localizing Cursor.
+	 */
+	@Benchmark
+	public double randomAccessFollowingCursor()
+	{
+		double sum = 0;
+		final Cursor< FloatType > c = img.localizingCursor();
+		final RandomAccess< FloatType > a = img.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			a.setPosition( c );
+			sum += a.get().get();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Img< FloatType > copy()
+	{
+		final Cursor< FloatType > s = img.cursor();
+		final Cursor< FloatType > t = target.cursor();
+		while ( s.hasNext() )
+			t.next().set( s.next() );
+		return target;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.algorithm.stats.Histogram;
+import net.imglib2.algorithm.stats.RealBinMapper;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Histogram of a float image with values in [0, 255).
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class HistogramBenchmark
+{
+	@Param( { BenchmarkImgs.ARRAY, BenchmarkImgs.PLANAR, BenchmarkImgs.CELL } )
+	public String container;
+
+	@Param( { "256,256,32" } )
+	public String dimensions;
+
+	@Param( { "256" } )
+	public int numBins;
+
+	Img< FloatType > img;
+
+	RealBinMapper< FloatType > binMapper;
+
+	@Setup
+	public void setup()
+	{
+		img = BenchmarkImgs.create( container, dimensions, new FloatType() );
+		BenchmarkImgs.fillRandom( img, 0 );
+		for ( final FloatType t : img )
+			t.mul( 255 );
+		binMapper = new RealBinMapper< FloatType >( new FloatType( 0 ), new FloatType( 255 ), numBins );
+	}
+
+	@Benchmark
+	public int[] histogram()
+	{
+		final Histogram< FloatType > histogram = new Histogram< FloatType >( binMapper, img );
+		histogram.process();
+		return histogram.getHistogram();
+	}
+}
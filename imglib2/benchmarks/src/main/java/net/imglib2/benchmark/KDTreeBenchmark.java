@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.RealCursor;
+import net.imglib2.RealPoint;
+import net.imglib2.collection.ArrayKDTree;
+import net.imglib2.collection.KDTree;
+import net.imglib2.collection.RealPointSampleList;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnArrayKDTree;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.NearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnArrayKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction of a {@link KDTree} and nearest neighbor, k-nearest neighbor
+ * and radius searches on it, and the same for an {@link ArrayKDTree}. Each
+ * search benchmark runs a fixed set of query points.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class KDTreeBenchmark
+{
+	@Param( { "3" } )
+	public int numDimensions;
+
+	@Param( { "100000" } )
+	public int numPoints;
+
+	@Param( { "1000" } )
+	public int numQueries;
+
+	@Param( { "10" } )
+	public int k;
+
+	/**
+	 * radius for the radius search, relative to the unit cube containing the
+	 * points.
+	 */
+	@Param( { "0.05" } )
+	public double radius;
+
+	RealPointSampleList< FloatType > points;
+
+	KDTree< FloatType > tree;
+
+	ArrayList< RealPoint > queries;
+
+	double[] coordinates;
+
+	ArrayKDTree arrayTree;
+
+	double[] queryCoordinates;
+
+	@Setup
+	public void setup()
+	{
+		final Random random = new Random( 0 );
+		points = new RealPointSampleList< FloatType >( numDimensions );
+		for ( int i = 0; i < numPoints; ++i )
+			points.add( randomPoint( random ), new FloatType( i ) );
+		tree = new KDTree< FloatType >( points );
+		queries = new ArrayList< RealPoint >();
+		for ( int i = 0; i < numQueries; ++i )
+			queries.add( randomPoint( random ) );
+
+		coordinates = new double[ numPoints * numDimensions ];
+		int i = 0;
+		final RealCursor< FloatType > cursor = points.cursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			for ( int d = 0; d < numDimensions; ++d )
+				coordinates[ i++ ] = cursor.getDoublePosition( d );
+		}
+		arrayTree = new ArrayKDTree( numDimensions, coordinates );
+		queryCoordinates = new double[ numQueries * numDimensions ];
+		i = 0;
+		for ( final RealPoint query : queries )
+			for ( int d = 0; d < numDimensions; ++d )
+				queryCoordinates[ i++ ] = query.getDoublePosition( d );
+	}
+
+	private RealPoint randomPoint( final Random random )
+	{
+		final double[] position = new double[ numDimensions ];
+		for ( int d = 0; d < numDimensions; ++d )
+			position[ d ] = random.nextDouble();
+		return new RealPoint( position );
+	}
+
+	@Benchmark
+	public KDTree< FloatType > build()
+	{
+		return new KDTree< FloatType >( points );
+	}
+
+	@Benchmark
+	public double nearestNeighbor()
+	{
+		double sum = 0;
+		final NearestNeighborSearchOnKDTree< FloatType > search = new NearestNeighborSearchOnKDTree< FloatType >( tree );
+		for ( final RealPoint query : queries )
+		{
+			search.search( query );
+			sum += search.getSquareDistance();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double kNearestNeighbors()
+	{
+		double sum = 0;
+		final KNearestNeighborSearchOnKDTree< FloatType > search = new KNearestNeighborSearchOnKDTree< FloatType >( tree, k );
+		for ( final RealPoint query : queries )
+		{
+			search.search( query );
+			sum += search.getSquareDistance( k - 1 );
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long radiusNeighbors()
+	{
+		long count = 0;
+		final RadiusNeighborSearchOnKDTree< FloatType > search = new RadiusNeighborSearchOnKDTree< FloatType >( tree );
+		for ( final RealPoint query : queries )
+		{
+			search.search( query, radius, false );
+			count += search.numNeighbors();
+		}
+		return count;
+	}
+
+	@Benchmark
+	public ArrayKDTree buildArray()
+	{
+		return new ArrayKDTree( numDimensions, coordinates );
+	}
+
+	@Benchmark
+	public double kNearestNeighborsArray()
+	{
+		double sum = 0;
+		final KNearestNeighborSearchOnArrayKDTree search = new KNearestNeighborSearchOnArrayKDTree( arrayTree, k );
+		for ( int q = 0; q < numQueries; ++q )
+		{
+			search.search( queryCoordinates, q * numDimensions );
+			sum += search.getSquareDistance( k - 1 );
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int[] kNearestNeighborsArrayBatch()
+	{
+		final int[] pointIndices = new int[ numQueries * k ];
+		KNearestNeighborSearchOnArrayKDTree.searchAll( arrayTree, k, queryCoordinates, pointIndices, null, Runtime.getRuntime().availableProcessors() );
+		return pointIndices;
+	}
+
+	@Benchmark
+	public long radiusNeighborsArray()
+	{
+		long count = 0;
+		final RadiusNeighborSearchOnArrayKDTree search = new RadiusNeighborSearchOnArrayKDTree( arrayTree );
+		for ( int q = 0; q < numQueries; ++q )
+		{
+			search.search( queryCoordinates, q * numDimensions, radius, false );
+			count += search.numNeighbors();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Iteration through chains of Views: sub-intervals, out-of-bounds extensions,
+ * translations and hyperslices.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 10, time = 1 )
+@Fork( 1 )
+public class ViewsBenchmark
+{
+	@Param( { BenchmarkImgs.ARRAY, BenchmarkImgs.CELL } )
+	public String container;
+
+	@Param( { "256,256,32" } )
+	public String dimensions;
+
+	/**
+	 * by how many pixels the extended interval exceeds the image on each
+	 * side.
+	 */
+	@Param( { "8" } )
+	public int border;
+
+	Img< FloatType > img;
+
+	/**
+	 * image without the border.
+	 */
+	Interval inner;
+
+	/**
+	 * image plus the border.
+	 */
+	Interval outer;
+
+	@Setup
+	public void setup()
+	{
+		img = BenchmarkImgs.create( container, dimensions, new FloatType() );
+		BenchmarkImgs.fillRandom( img, 0 );
+
+		final int n = img.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = border;
+			max[ d ] = img.max( d ) - border;
+		}
+		inner = new FinalInterval( min, max );
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = -border;
+			max[ d ] = img.max( d ) + border;
+		}
+		outer = new FinalInterval( min, max );
+	}
+
+	private static double sum( final Cursor< FloatType > c )
+	{
+		double sum = 0;
+		while ( c.hasNext() )
+			sum += c.next().get();
+		return sum;
+	}
+
+	@Benchmark
+	public double interval()
+	{
+		return sum( Views.iterable( Views.interval( img, inner ) ).cursor() );
+	}
+
+	@Benchmark
+	public double extendZeroInterval()
+	{
+		return sum( Views.iterable( Views.interval( Views.extendValue( img, new FloatType() ), outer ) ).cursor() );
+	}
+
+	@Benchmark
+	public double extendMirrorInterval()
+	{
+		return sum( Views.iterable( Views.interval( Views.extendMirrorSingle( img ), outer ) ).cursor() );
+	}
+
+	@Benchmark
+	public double extendPeriodicInterval()
+	{
+		return sum( Views.iterable( Views.interval( Views.extendPeriodic( img ), outer ) ).cursor() );
+	}
+
+	/**
+	 * zeroMin( interval( translate( extend( img ) ) ) ) sliced in the middle
+	 * of the last dimension.
+	 */
+	@Benchmark
+	public double translatedHyperSlice()
+	{
+		final int n = img.numDimensions();
+		final long[] translation = new long[ n ];
+		translation[ 0 ] = border;
+		final RandomAccessible< FloatType > translated = Views.translate( Views.extendBorder( img ), translation );
+		return sum( Views.iterable( Views.hyperSlice( Views.zeroMin( Views.interval( translated, outer ) ), n - 1, img.dimension( n - 1 ) / 2 ) ).cursor() );
+	}
+
+	/**
+	 * Sum of the 3x3 neighborhoods in the first two dimensions of each pixel
+	 * of the image, read from a mirror-extended view.
+	 */
+	@Benchmark
+	public double neighborhoodRandomAccess()
+	{
+		double sum = 0;
+		final Cursor< FloatType > c = img.localizingCursor();
+		final RandomAccess< FloatType > a = Views.extendMirrorSingle( img ).randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			a.setPosition( c );
+			a.move( -1, 0 );
+			a.move( -1, 1 );
+			for ( int y = 0; y < 3; ++y )
+			{
+				for ( int x = 0; x < 3; ++x )
+				{
+					sum += a.get().get();
+					a.fwd( 0 );
+				}
+				a.move( -3, 0 );
+				a.fwd( 1 );
+			}
+		}
+		return sum;
+	}
+}
@@ -94,7 +94,7 @@ public class FinalDimensions implements Dimensions
 	public void dimensions( final long[] dimensions )
 	{
 		for ( int d = 0; d < dimensions.length; ++d )
-			this.dimensions[ d ] = dimensions[ d ];
+			dimensions[ d ] = this.dimensions[ d ];
 	}
 
 	@Override
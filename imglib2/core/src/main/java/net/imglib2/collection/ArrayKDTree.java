@@ -0,0 +1,358 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.EuclideanSpace;
+import net.imglib2.RealLocalizable;
+import net.imglib2.multithreading.TaskExecutor;
+
+/**
+ * KDTree of points stored in flat primitive arrays.
+ *
+ * <p>
+ * In contrast to {@link KDTree}, there are no node objects. The tree is stored
+ * in implicit layout: the root is node 0 and the children of node i are nodes
+ * 2i+1 and 2i+2. The tree is left-balanced (every level is full except the
+ * last one, which is filled from the left), so the nodes occupy exactly the
+ * indices 0 to {@link #size()}-1. The coordinates of node i are stored at
+ * {@code positions[ i * n ]} to {@code positions[ i * n + n - 1 ]}, and node i
+ * splits the space along dimension {@code depth(i) % n}.
+ * </p>
+ *
+ * <p>
+ * The tree does not store values. Instead, every node knows the index of its
+ * point in the input of the constructor (see {@link #getPointIndex(int)}),
+ * which can be used to look up values in a parallel array or list.
+ * {@link net.imglib2.neighborsearch.KNearestNeighborSearchOnArrayKDTree} and
+ * {@link net.imglib2.neighborsearch.RadiusNeighborSearchOnArrayKDTree} search
+ * the tree and report these point indices.
+ * </p>
+ *
+ * <p>
+ * The number of points times the number of dimensions must fit in an int.
+ * </p>
+ */
+public class ArrayKDTree implements EuclideanSpace
+{
+	/**
+	 * Subtrees with fewer points than this are always built by a single
+	 * thread.
+	 */
+	final static int MIN_PARALLEL_SIZE = 1 << 15;
+
+	/**
+	 * the number of dimensions.
+	 */
+	final protected int n;
+
+	/**
+	 * the number of nodes in the tree.
+	 */
+	final protected int size;
+
+	/**
+	 * node coordinates, n consecutive entries per node.
+	 */
+	final protected double[] positions;
+
+	/**
+	 * for every node, the index of its point in the input.
+	 */
+	final protected int[] pointIndices;
+
+	/**
+	 * Construct an ArrayKDTree from the points in the given list, using
+	 * {@link TaskExecutor#getNumThreads()} threads.
+	 */
+	public < L extends RealLocalizable > ArrayKDTree( final List< L > points )
+	{
+		this( points, TaskExecutor.getInstance().getNumThreads() );
+	}
+
+	/**
+	 * Construct an ArrayKDTree from the points in the given list. The index of
+	 * a point in the list is its point index.
+	 *
+	 * @param points
+	 *            a list of points, all with the same number of dimensions
+	 * @param numThreads
+	 *            number of threads to build the tree
+	 */
+	public < L extends RealLocalizable > ArrayKDTree( final List< L > points, final int numThreads )
+	{
+		this( points.get( 0 ).numDimensions(), toArray( points ), numThreads );
+	}
+
+	/**
+	 * Construct an ArrayKDTree from interleaved coordinates, using
+	 * {@link TaskExecutor#getNumThreads()} threads.
+	 */
+	public ArrayKDTree( final int n, final double[] coordinates )
+	{
+		this( n, coordinates, TaskExecutor.getInstance().getNumThreads() );
+	}
+
+	/**
+	 * Construct an ArrayKDTree from interleaved coordinates. Point i has
+	 * coordinates {@code coordinates[ i * n ]} to
+	 * {@code coordinates[ i * n + n - 1 ]}. The array is not modified.
+	 *
+	 * @param n
+	 *            number of dimensions
+	 * @param coordinates
+	 *            the coordinates of all points
+	 * @param numThreads
+	 *            number of threads to build the tree
+	 */
+	public ArrayKDTree( final int n, final double[] coordinates, final int numThreads )
+	{
+		if ( n < 1 || coordinates.length % n != 0 )
+			throw new IllegalArgumentException( "coordinates.length = " + coordinates.length + " is not a multiple of n = " + n );
+
+		this.n = n;
+		this.size = coordinates.length / n;
+		this.positions = new double[ coordinates.length ];
+		this.pointIndices = new int[ size ];
+
+		final int[] permutation = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			permutation[ i ] = i;
+
+		// Build the top levels of the tree sequentially, until there are
+		// enough subtrees to keep all threads busy. Then build the subtrees
+		// concurrently.
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >();
+		final int maxTasks = numThreads <= 1 ? 1 : numThreads * TaskExecutor.CHUNKS_PER_THREAD;
+		makeTopNodes( coordinates, permutation, 0, 0, size, 0, maxTasks, tasks );
+		TaskExecutor.getInstance().run( tasks, numThreads );
+	}
+
+	private static < L extends RealLocalizable > double[] toArray( final List< L > points )
+	{
+		final int n = points.get( 0 ).numDimensions();
+		if ( ( long ) points.size() * n > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "too many points" );
+		final double[] coordinates = new double[ points.size() * n ];
+		int i = 0;
+		for ( final L point : points )
+		{
+			if ( point.numDimensions() != n )
+				throw new IllegalArgumentException( "all points must have " + n + " dimensions" );
+			for ( int d = 0; d < n; ++d )
+				coordinates[ i++ ] = point.getDoublePosition( d );
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Create the nodes of the subtree rooted at node, which holds the points
+	 * permutation[ i ] to permutation[ j - 1 ], or add a task that will create
+	 * them when the subtree is small enough.
+	 */
+	private void makeTopNodes( final double[] coordinates, final int[] permutation, final int node, final int i, final int j, final int d, final int maxTasks, final List< Runnable > tasks )
+	{
+		final int m = j - i;
+		if ( m <= 0 )
+			return;
+
+		// the number of subtrees at the depth of node
+		final int subtrees = Integer.highestOneBit( node + 1 );
+		if ( subtrees >= maxTasks || m < MIN_PARALLEL_SIZE )
+		{
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					makeNode( coordinates, permutation, node, i, j, d );
+				}
+			} );
+			return;
+		}
+
+		final int k = i + leftSubtreeSize( m );
+		select( coordinates, permutation, i, j - 1, k, d );
+		setNode( coordinates, node, permutation[ k ] );
+
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		makeTopNodes( coordinates, permutation, 2 * node + 1, i, k, dChild, maxTasks, tasks );
+		makeTopNodes( coordinates, permutation, 2 * node + 2, k + 1, j, dChild, maxTasks, tasks );
+	}
+
+	/**
+	 * Create the nodes of the subtree rooted at node, which holds the points
+	 * permutation[ i ] to permutation[ j - 1 ]. The median point with respect
+	 * to dimension d, such that the subtree is left-balanced, becomes the
+	 * node.
+	 */
+	private void makeNode( final double[] coordinates, final int[] permutation, final int node, final int i, final int j, final int d )
+	{
+		final int m = j - i;
+		if ( m <= 0 )
+			return;
+		if ( m == 1 )
+		{
+			setNode( coordinates, node, permutation[ i ] );
+			return;
+		}
+
+		final int k = i + leftSubtreeSize( m );
+		select( coordinates, permutation, i, j - 1, k, d );
+		setNode( coordinates, node, permutation[ k ] );
+
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+		makeNode( coordinates, permutation, 2 * node + 1, i, k, dChild );
+		makeNode( coordinates, permutation, 2 * node + 2, k + 1, j, dChild );
+	}
+
+	private void setNode( final double[] coordinates, final int node, final int point )
+	{
+		System.arraycopy( coordinates, point * n, positions, node * n, n );
+		pointIndices[ node ] = point;
+	}
+
+	/**
+	 * The size of the left subtree of a left-balanced tree with m nodes.
+	 */
+	static int leftSubtreeSize( final int m )
+	{
+		if ( m <= 1 )
+			return 0;
+		// the levels above the last one hold 2^h - 1 nodes
+		final int full = Integer.highestOneBit( m );
+		final int h = Integer.numberOfTrailingZeros( full );
+		final int last = m - ( full - 1 );
+		final int halfLast = 1 << ( h - 1 );
+		return ( halfLast - 1 ) + Math.min( last, halfLast );
+	}
+
+	/**
+	 * Partially sort permutation[ i ] to permutation[ j ] (inclusive) by the
+	 * coordinate of the points in dimension d, such that the point at index k
+	 * is in sorted position.
+	 */
+	private void select( final double[] coordinates, final int[] permutation, int i, int j, final int k, final int d )
+	{
+		while ( j > i )
+		{
+			// median of three pivot
+			final double a = coordinate( coordinates, permutation[ i ], d );
+			final double b = coordinate( coordinates, permutation[ ( i + j ) >>> 1 ], d );
+			final double c = coordinate( coordinates, permutation[ j ], d );
+			final double pivot = a < b ? ( b < c ? b : ( a < c ? c : a ) ) : ( a < c ? a : ( b < c ? c : b ) );
+
+			// three-way partition, so that many equal coordinates (e.g.,
+			// points in a plane) do not degrade to quadratic time:
+			// [i, lt) < pivot, [lt, gt] == pivot, (gt, j] > pivot
+			int lt = i, gt = j, q = i;
+			while ( q <= gt )
+			{
+				final double x = coordinate( coordinates, permutation[ q ], d );
+				if ( x < pivot )
+					swap( permutation, lt++, q++ );
+				else if ( x > pivot )
+					swap( permutation, q, gt-- );
+				else
+					++q;
+			}
+
+			if ( k < lt )
+				j = lt - 1;
+			else if ( k > gt )
+				i = gt + 1;
+			else
+				return;
+		}
+	}
+
+	private double coordinate( final double[] coordinates, final int point, final int d )
+	{
+		return coordinates[ point * n + d ];
+	}
+
+	private static void swap( final int[] array, final int i, final int j )
+	{
+		final int tmp = array[ i ];
+		array[ i ] = array[ j ];
+		array[ j ] = tmp;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of points (nodes) in the tree.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the node coordinates. Node i has coordinates
+	 * {@code positions[ i * n ]} to {@code positions[ i * n + n - 1 ]}. The
+	 * array is not copied and must not be modified.
+	 */
+	public double[] getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * @return the index of the point of the given node in the input of the
+	 *         constructor.
+	 */
+	public int getPointIndex( final int node )
+	{
+		return pointIndices[ node ];
+	}
+
+	/**
+	 * Get the coordinate of a node in dimension d.
+	 */
+	public double getDoublePosition( final int node, final int d )
+	{
+		return positions[ node * n + d ];
+	}
+}
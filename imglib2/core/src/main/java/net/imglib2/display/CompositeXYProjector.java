@@ -40,10 +40,12 @@ import java.util.ArrayList;
 
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
+import net.imglib2.multithreading.IntervalTask;
 import net.imglib2.type.numeric.ARGBType;
 
 /**
@@ -53,6 +55,9 @@ import net.imglib2.type.numeric.ARGBType;
  * the final value. Positions along the axis can be individually toggled for
  * inclusion in the computed composite value using the {@link #setComposite}
  * methods.
+ * <p>
+ * Like the {@link XYProjector}, the target can be rendered in stripes by
+ * multiple threads, and the rendering of a frame can be cancelled.
  *
  * @see XYProjector for the code upon which this class was based.
  *
@@ -140,6 +145,8 @@ public class CompositeXYProjector< A > extends XYProjector< A, ARGBType >
 	public void map()
 	{
 		//System.out.println("    CompositeXYProjector::map() : call #"+(++calls));
+		canceled = false;
+
 		for ( int d = 2; d < position.length; ++d )
 			min[ d ] = max[ d ] = position[ d ];
 
@@ -152,9 +159,7 @@ public class CompositeXYProjector< A > extends XYProjector< A, ARGBType >
 		{
 			// there is only converter[0]
 			// use it to map the current position
-			final RandomAccess< A > sourceRandomAccess = source.randomAccess( new FinalInterval( min, max ) );
-			sourceRandomAccess.setPosition( min );
-			mapSingle( sourceRandomAccess, converters.get( 0 ) );
+			mapSingle( new FinalInterval( min, max ), converters.get( 0 ) );
 			return;
 		}
 
@@ -166,17 +171,31 @@ public class CompositeXYProjector< A > extends XYProjector< A, ARGBType >
 				min[ dimIndex ] = currentPositions[ i ];
 			else if ( currentPositions[ i ] > max[ dimIndex ] )
 				max[ dimIndex ] = currentPositions[ i ];
-		final RandomAccess< A > sourceRandomAccess = source.randomAccess( new FinalInterval( min, max ) );
-		sourceRandomAccess.setPosition( min );
+		final FinalInterval sourceInterval = new FinalInterval( min, max );
 
 		if ( size == 1 )
 		{
 			// there is only one active converter: converter[0]
 			// use it to map the slice at currentPositions[0]
-			mapSingle( sourceRandomAccess, currentConverters[ 0 ] );
+			mapSingle( sourceInterval, currentConverters[ 0 ] );
+			return;
+		}
+
+		if ( stripedTarget != null )
+		{
+			mapStripes( new IntervalTask()
+			{
+				@Override
+				public void run( final Interval stripe )
+				{
+					mapCompositeStripe( stripe, sourceInterval, size );
+				}
+			} );
 			return;
 		}
 
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		sourceRandomAccess.setPosition( min );
 		final Cursor< ARGBType > targetCursor = target.localizingCursor();
 		final ARGBType bi = new ARGBType();
 
@@ -214,6 +233,59 @@ public class CompositeXYProjector< A > extends XYProjector< A, ARGBType >
 		}
 	}
 
+	/**
+	 * Composite the given stripe of the target from the first size
+	 * {@link #currentPositions}.
+	 */
+	protected void mapCompositeStripe( final Interval stripe, final Interval sourceInterval, final int size )
+	{
+		final RandomAccess< ARGBType > targetRandomAccess = stripedTarget.randomAccess( stripe );
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		for ( int d = 2; d < sourceInterval.numDimensions(); ++d )
+			sourceRandomAccess.setPosition( sourceInterval.min( d ), d );
+		final ARGBType bi = new ARGBType();
+
+		final long width = stripe.dimension( 0 );
+		for ( long y = stripe.min( 1 ); y <= stripe.max( 1 ); ++y )
+		{
+			if ( canceled )
+				return;
+
+			targetRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			targetRandomAccess.setPosition( y, 1 );
+			sourceRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			sourceRandomAccess.setPosition( y, 1 );
+
+			for ( long x = 0; x < width; ++x )
+			{
+				int aSum = 0, rSum = 0, gSum = 0, bSum = 0;
+				for ( int i = 0; i < size; i++ )
+				{
+					sourceRandomAccess.setPosition( currentPositions[ i ], dimIndex );
+					currentConverters[ i ].convert( sourceRandomAccess.get(), bi );
+
+					// accumulate converted result
+					final int value = bi.get();
+					aSum += ARGBType.alpha( value );
+					rSum += ARGBType.red( value );
+					gSum += ARGBType.green( value );
+					bSum += ARGBType.blue( value );
+				}
+				if ( aSum > 255 )
+					aSum = 255;
+				if ( rSum > 255 )
+					rSum = 255;
+				if ( gSum > 255 )
+					gSum = 255;
+				if ( bSum > 255 )
+					bSum = 255;
+				targetRandomAccess.get().set( ARGBType.rgba( rSum, gSum, bSum, aSum ) );
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+	}
+
 	// -- Helper methods --
 
 	/**
@@ -261,6 +333,57 @@ public class CompositeXYProjector< A > extends XYProjector< A, ARGBType >
 		}
 	}
 
+	/**
+	 * Map the slice at the min of the sourceInterval using a single
+	 * converter.
+	 */
+	protected void mapSingle( final Interval sourceInterval, final Converter< A, ARGBType > converter )
+	{
+		if ( stripedTarget != null )
+		{
+			mapStripes( new IntervalTask()
+			{
+				@Override
+				public void run( final Interval stripe )
+				{
+					mapSingleStripe( stripe, sourceInterval, converter );
+				}
+			} );
+			return;
+		}
+
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		sourceRandomAccess.setPosition( min );
+		mapSingle( sourceRandomAccess, converter );
+	}
+
+	protected void mapSingleStripe( final Interval stripe, final Interval sourceInterval, final Converter< A, ARGBType > converter )
+	{
+		final RandomAccess< ARGBType > targetRandomAccess = stripedTarget.randomAccess( stripe );
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		for ( int d = 2; d < sourceInterval.numDimensions(); ++d )
+			sourceRandomAccess.setPosition( sourceInterval.min( d ), d );
+
+		final long width = stripe.dimension( 0 );
+		for ( long y = stripe.min( 1 ); y <= stripe.max( 1 ); ++y )
+		{
+			if ( canceled )
+				return;
+
+			targetRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			targetRandomAccess.setPosition( y, 1 );
+			sourceRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			sourceRandomAccess.setPosition( y, 1 );
+
+			for ( long x = 0; x < width; ++x )
+			{
+				converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+	}
+
 	protected void mapSingle( final RandomAccess< A > sourceRandomAccess, final Converter< A, ARGBType > converter )
 	{
 		final Cursor< ARGBType > targetCursor = target.localizingCursor();
@@ -38,13 +38,24 @@ package net.imglib2.display;
 
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
+import net.imglib2.multithreading.IntervalTask;
+import net.imglib2.multithreading.TaskExecutor;
 
 /**
- * 
+ * Maps an XY slice of the source to the target.
+ *
+ * If the target is a two-dimensional {@link RandomAccessibleInterval} (e.g.
+ * an {@link ARGBScreenImage}), it is rendered in stripes of rows. The stripes
+ * are rendered concurrently on the shared {@link TaskExecutor} if more than
+ * one thread is set ({@link #setNumThreads(int)}), which requires the
+ * {@link Converter} to be thread-safe. A frame that is rendered in stripes can
+ * be cancelled from another thread ({@link #cancel()}).
  *
  * @author ImgLib2 developers
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
@@ -53,17 +64,79 @@ public class XYProjector< A, B > extends AbstractXYProjector< A, B >
 {
 	final protected IterableInterval< B > target;
 	final int numDimensions;
+
+	/**
+	 * the target if it can be rendered in stripes, null otherwise
+	 */
+	final protected RandomAccessibleInterval< B > stripedTarget;
+
+	protected int numThreads = 1;
+
+	protected volatile boolean canceled = false;
 	
+	@SuppressWarnings( "unchecked" )
 	public XYProjector( final RandomAccessible< A > source, final IterableInterval< B > target, final Converter< A, B > converter )
 	{
 		super( source, converter );
 		this.target = target;
 		this.numDimensions = source.numDimensions();
+		if ( target instanceof RandomAccessibleInterval && target.numDimensions() == 2 )
+			stripedTarget = ( RandomAccessibleInterval< B > ) target;
+		else
+			stripedTarget = null;
+	}
+
+	/**
+	 * Set the number of threads that render a frame. More than one thread
+	 * is only used if the target is rendered in stripes.
+	 * 
+	 * @param numThreads - the number of threads, at least 1
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Cancel the frame that is currently rendered by {@link #map()}, e.g.
+	 * because a new frame was requested. The rows that were not rendered yet
+	 * are left unchanged. This has no effect if the target is not rendered in
+	 * stripes.
+	 */
+	public void cancel()
+	{
+		canceled = true;
+	}
+
+	/**
+	 * @return whether the last (or current) frame was cancelled before it was
+	 *         complete.
+	 */
+	public boolean isCanceled()
+	{
+		return canceled;
+	}
+
+	/**
+	 * Render the target in stripes of rows using {@link #numThreads}
+	 * threads. Each stripe is an {@link Interval} of the target that covers
+	 * whole rows.
+	 */
+	protected void mapStripes( final IntervalTask stripeTask )
+	{
+		TaskExecutor.getInstance().forEachInterval( stripedTarget, 1, numThreads, stripeTask );
 	}
 
 	@Override
 	public void map()
 	{
+		canceled = false;
+
 		for ( int d = 2; d < position.length; ++d )
 			min[ d ] = max[ d ] = position[ d ];
 		
@@ -73,6 +146,19 @@ public class XYProjector< A, B > extends AbstractXYProjector< A, B >
 		max[ 1 ] = target.max( 1 );
 		final FinalInterval sourceInterval = new FinalInterval( min, max );
 
+		if ( stripedTarget != null )
+		{
+			mapStripes( new IntervalTask()
+			{
+				@Override
+				public void run( final Interval stripe )
+				{
+					mapStripe( stripe, sourceInterval );
+				}
+			} );
+			return;
+		}
+
 		final Cursor< B > targetCursor = target.localizingCursor();
 		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
 		sourceRandomAccess.setPosition( position );
@@ -92,4 +178,31 @@ public class XYProjector< A, B > extends AbstractXYProjector< A, B >
 				converter.convert( sourceRandomAccess.get(), b );
 			}
 	}
+
+	protected void mapStripe( final Interval stripe, final Interval sourceInterval )
+	{
+		final RandomAccess< B > targetRandomAccess = stripedTarget.randomAccess( stripe );
+		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		sourceRandomAccess.setPosition( position );
+
+		final long width = stripe.dimension( 0 );
+		for ( long y = stripe.min( 1 ); y <= stripe.max( 1 ); ++y )
+		{
+			if ( canceled )
+				return;
+
+			targetRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			targetRandomAccess.setPosition( y, 1 );
+			sourceRandomAccess.setPosition( stripe.min( 0 ), 0 );
+			if ( numDimensions > 1 )
+				sourceRandomAccess.setPosition( y, 1 );
+
+			for ( long x = 0; x < width; ++x )
+			{
+				converter.convert( sourceRandomAccess.get(), targetRandomAccess.get() );
+				sourceRandomAccess.fwd( 0 );
+				targetRandomAccess.fwd( 0 );
+			}
+		}
+	}
 }
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.basictypeaccess.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Provides the {@link ByteBuffer}s of {@link BufferAccess}es.
+ * {@link #DIRECT} allocates direct buffers in native byte order outside of the
+ * Java heap. {@link #map(File, long, ByteOrder, boolean)} maps consecutive
+ * regions of a file, so that the accesses of an image created with it (e.g.
+ * the planes of a PlanarImg or the cells of a CellImg, in the order in which
+ * the image creates them) are laid out one after another in the file.
+ */
+public abstract class BufferAllocator
+{
+	/**
+	 * Allocates direct buffers in native byte order.
+	 */
+	public static final BufferAllocator DIRECT = new BufferAllocator()
+	{
+		@Override
+		public ByteBuffer allocate( final long numBytes )
+		{
+			return ByteBuffer.allocateDirect( checkSize( numBytes ) ).order( ByteOrder.nativeOrder() );
+		}
+	};
+
+	/**
+	 * @return a buffer of numBytes bytes
+	 */
+	public abstract ByteBuffer allocate( long numBytes );
+
+	/**
+	 * Creates an allocator that maps consecutive regions of a file, starting
+	 * at offset. A writable mapping grows the file as needed and writes
+	 * changes of the pixels through to the file.
+	 *
+	 * @param file
+	 *            the raw file
+	 * @param offset
+	 *            the position of the first pixel in the file
+	 * @param byteOrder
+	 *            the byte order of the pixels in the file
+	 * @param writable
+	 *            whether pixels may be modified
+	 */
+	public static BufferAllocator map( final File file, final long offset, final ByteOrder byteOrder, final boolean writable )
+	{
+		return new MappedAllocator( file, offset, byteOrder, writable );
+	}
+
+	protected static int checkSize( final long numBytes )
+	{
+		if ( numBytes > Integer.MAX_VALUE )
+			throw new RuntimeException( "Buffer too big, use for example a CellImg instead: " + numBytes + " > " + Integer.MAX_VALUE + " bytes" );
+		return ( int ) numBytes;
+	}
+
+	protected static class MappedAllocator extends BufferAllocator
+	{
+		protected final File file;
+
+		protected final ByteOrder byteOrder;
+
+		protected final boolean writable;
+
+		/**
+		 * position of the next region in the file
+		 */
+		protected long position;
+
+		public MappedAllocator( final File file, final long offset, final ByteOrder byteOrder, final boolean writable )
+		{
+			this.file = file;
+			this.position = offset;
+			this.byteOrder = byteOrder;
+			this.writable = writable;
+		}
+
+		@Override
+		public synchronized ByteBuffer allocate( final long numBytes )
+		{
+			final int size = checkSize( numBytes );
+			if ( size == 0 )
+				return ByteBuffer.allocate( 0 ).order( byteOrder );
+
+			try
+			{
+				final RandomAccessFile raf = new RandomAccessFile( file, writable ? "rw" : "r" );
+				try
+				{
+					final FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+					final ByteBuffer buffer = raf.getChannel().map( mode, position, size ).order( byteOrder );
+					position += size;
+					return buffer;
+				}
+				finally
+				{
+					// the mapping stays valid after the file is closed
+					raf.close();
+				}
+			}
+			catch ( final IOException e )
+			{
+				throw new RuntimeException( "BufferAllocator: cannot map " + file + ".", e );
+			}
+		}
+	}
+}
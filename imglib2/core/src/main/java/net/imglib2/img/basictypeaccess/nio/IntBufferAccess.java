@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.basictypeaccess.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import net.imglib2.img.basictypeaccess.IntAccess;
+
+/**
+ * A {@link IntAccess} that stores its ints in a {@link ByteBuffer}, e.g. a
+ * direct buffer outside of the Java heap or a memory-mapped file region.
+ */
+public class IntBufferAccess implements IntAccess, BufferAccess< IntBufferAccess >
+{
+	protected final ByteBuffer buffer;
+
+	protected final IntBuffer data;
+
+	protected final BufferAllocator allocator;
+
+	/**
+	 * Creates an access to numEntities ints in a new direct buffer.
+	 */
+	public IntBufferAccess( final int numEntities )
+	{
+		this( BufferAllocator.DIRECT, numEntities );
+	}
+
+	/**
+	 * Creates an access to numEntities ints in a buffer obtained from the
+	 * allocator, which also provides the buffers of {@link #createArray(int)}.
+	 */
+	public IntBufferAccess( final BufferAllocator allocator, final int numEntities )
+	{
+		this( allocator.allocate( 4l * numEntities ), allocator );
+	}
+
+	/**
+	 * Wraps the bytes of the buffer between its position and limit, in the
+	 * byte order of the buffer.
+	 */
+	public IntBufferAccess( final ByteBuffer buffer )
+	{
+		this( buffer, BufferAllocator.DIRECT );
+	}
+
+	public IntBufferAccess( final ByteBuffer buffer, final BufferAllocator allocator )
+	{
+		this.buffer = buffer;
+		this.data = buffer.asIntBuffer();
+		this.allocator = allocator;
+	}
+
+	@Override
+	public int getValue( final int index )
+	{
+		return data.get( index );
+	}
+
+	@Override
+	public void setValue( final int index, final int value )
+	{
+		data.put( index, value );
+	}
+
+	@Override
+	public IntBufferAccess createArray( final int numEntities )
+	{
+		return new IntBufferAccess( allocator, numEntities );
+	}
+
+	/**
+	 * Returns the {@link ByteBuffer}, there is no Java array behind this
+	 * access.
+	 */
+	@Override
+	public ByteBuffer getCurrentStorageArray()
+	{
+		return buffer;
+	}
+
+	@Override
+	public ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.basictypeaccess.nio;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.CharAccess;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * Copies the storage of {@link ArrayDataAccess}es from and to bytes, no
+ * matter whether it is a primitive array or the {@link ByteBuffer} of a
+ * {@link BufferAccess}. The storage is obtained by {@link #storage(ArrayDataAccess)},
+ * bytes are in the byte order of the {@link ByteBuffer} they are copied from
+ * or to.
+ */
+public final class StorageArrays
+{
+	private StorageArrays()
+	{}
+
+	/**
+	 * @return the storage array of the access, or for a {@link BufferAccess}
+	 *         a view of its buffer with the element type of the access (e.g.
+	 *         a {@link FloatBuffer} for a {@link FloatAccess})
+	 */
+	public static Object storage( final ArrayDataAccess< ? > data )
+	{
+		if ( !( data instanceof BufferAccess ) )
+			return data.getCurrentStorageArray();
+
+		final ByteBuffer buffer = ( ( BufferAccess< ? > ) data ).getBuffer();
+		if ( data instanceof ByteAccess )
+			return buffer.duplicate();
+		else if ( data instanceof ShortAccess )
+			return buffer.asShortBuffer();
+		else if ( data instanceof CharAccess )
+			return buffer.asCharBuffer();
+		else if ( data instanceof IntAccess )
+			return buffer.asIntBuffer();
+		else if ( data instanceof FloatAccess )
+			return buffer.asFloatBuffer();
+		else if ( data instanceof LongAccess )
+			return buffer.asLongBuffer();
+		else if ( data instanceof DoubleAccess )
+			return buffer.asDoubleBuffer();
+		else
+			throw new IllegalArgumentException( "Unsupported buffer access " + data.getClass().getCanonicalName() );
+	}
+
+	/**
+	 * @param array
+	 *            a primitive array or a {@link Buffer} as returned by
+	 *            {@link #storage(ArrayDataAccess)}
+	 * @return the name of its primitive element type, e.g. "short"
+	 */
+	public static String dataType( final Object array )
+	{
+		if ( array instanceof ByteBuffer )
+			return "byte";
+		else if ( array instanceof ShortBuffer )
+			return "short";
+		else if ( array instanceof CharBuffer )
+			return "char";
+		else if ( array instanceof IntBuffer )
+			return "int";
+		else if ( array instanceof FloatBuffer )
+			return "float";
+		else if ( array instanceof LongBuffer )
+			return "long";
+		else if ( array instanceof DoubleBuffer )
+			return "double";
+		else if ( array.getClass().isArray() && array.getClass().getComponentType().isPrimitive() )
+			return array.getClass().getComponentType().getName();
+		else
+			throw new IllegalArgumentException( "Unsupported storage array " + array.getClass().getCanonicalName() );
+	}
+
+	/**
+	 * @param array
+	 *            a primitive array or a {@link Buffer} as returned by
+	 *            {@link #storage(ArrayDataAccess)}
+	 */
+	public static long sizeInBytes( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return ( ( byte[] ) array ).length;
+		else if ( array instanceof short[] )
+			return 2l * ( ( short[] ) array ).length;
+		else if ( array instanceof char[] )
+			return 2l * ( ( char[] ) array ).length;
+		else if ( array instanceof int[] )
+			return 4l * ( ( int[] ) array ).length;
+		else if ( array instanceof float[] )
+			return 4l * ( ( float[] ) array ).length;
+		else if ( array instanceof long[] )
+			return 8l * ( ( long[] ) array ).length;
+		else if ( array instanceof double[] )
+			return 8l * ( ( double[] ) array ).length;
+		else if ( array instanceof ByteBuffer )
+			return ( ( ByteBuffer ) array ).remaining();
+		else if ( array instanceof ShortBuffer || array instanceof CharBuffer )
+			return 2l * ( ( Buffer ) array ).remaining();
+		else if ( array instanceof IntBuffer || array instanceof FloatBuffer )
+			return 4l * ( ( Buffer ) array ).remaining();
+		else if ( array instanceof LongBuffer || array instanceof DoubleBuffer )
+			return 8l * ( ( Buffer ) array ).remaining();
+		else
+			throw new IllegalArgumentException( "Unsupported storage array " + array.getClass().getCanonicalName() );
+	}
+
+	/**
+	 * Fills the array from the source, starting at the position of the
+	 * source. The position of the source is not changed.
+	 * 
+	 * @param array
+	 *            a primitive array or a {@link Buffer} as returned by
+	 *            {@link #storage(ArrayDataAccess)}
+	 */
+	public static void copyToArray( final ByteBuffer source, final Object array )
+	{
+		if ( array instanceof byte[] )
+			source.duplicate().get( ( byte[] ) array );
+		else if ( array instanceof short[] )
+			source.asShortBuffer().get( ( short[] ) array );
+		else if ( array instanceof char[] )
+			source.asCharBuffer().get( ( char[] ) array );
+		else if ( array instanceof int[] )
+			source.asIntBuffer().get( ( int[] ) array );
+		else if ( array instanceof float[] )
+			source.asFloatBuffer().get( ( float[] ) array );
+		else if ( array instanceof long[] )
+			source.asLongBuffer().get( ( long[] ) array );
+		else if ( array instanceof double[] )
+			source.asDoubleBuffer().get( ( double[] ) array );
+		else if ( array instanceof ByteBuffer )
+			( ( ByteBuffer ) array ).duplicate().put( source.duplicate() );
+		else if ( array instanceof ShortBuffer )
+			( ( ShortBuffer ) array ).duplicate().put( source.asShortBuffer() );
+		else if ( array instanceof CharBuffer )
+			( ( CharBuffer ) array ).duplicate().put( source.asCharBuffer() );
+		else if ( array instanceof IntBuffer )
+			( ( IntBuffer ) array ).duplicate().put( source.asIntBuffer() );
+		else if ( array instanceof FloatBuffer )
+			( ( FloatBuffer ) array ).duplicate().put( source.asFloatBuffer() );
+		else if ( array instanceof LongBuffer )
+			( ( LongBuffer ) array ).duplicate().put( source.asLongBuffer() );
+		else if ( array instanceof DoubleBuffer )
+			( ( DoubleBuffer ) array ).duplicate().put( source.asDoubleBuffer() );
+		else
+			throw new IllegalArgumentException( "Unsupported storage array " + array.getClass().getCanonicalName() );
+	}
+
+	/**
+	 * Copies the array to the target, starting at the position of the target.
+	 * The position of the target is not changed.
+	 * 
+	 * @param array
+	 *            a primitive array or a {@link Buffer} as returned by
+	 *            {@link #storage(ArrayDataAccess)}
+	 */
+	public static void copyFromArray( final Object array, final ByteBuffer target )
+	{
+		if ( array instanceof byte[] )
+			target.duplicate().put( ( byte[] ) array );
+		else if ( array instanceof short[] )
+			target.asShortBuffer().put( ( short[] ) array );
+		else if ( array instanceof char[] )
+			target.asCharBuffer().put( ( char[] ) array );
+		else if ( array instanceof int[] )
+			target.asIntBuffer().put( ( int[] ) array );
+		else if ( array instanceof float[] )
+			target.asFloatBuffer().put( ( float[] ) array );
+		else if ( array instanceof long[] )
+			target.asLongBuffer().put( ( long[] ) array );
+		else if ( array instanceof double[] )
+			target.asDoubleBuffer().put( ( double[] ) array );
+		else if ( array instanceof ByteBuffer )
+			target.duplicate().put( ( ( ByteBuffer ) array ).duplicate() );
+		else if ( array instanceof ShortBuffer )
+			target.asShortBuffer().put( ( ( ShortBuffer ) array ).duplicate() );
+		else if ( array instanceof CharBuffer )
+			target.asCharBuffer().put( ( ( CharBuffer ) array ).duplicate() );
+		else if ( array instanceof IntBuffer )
+			target.asIntBuffer().put( ( ( IntBuffer ) array ).duplicate() );
+		else if ( array instanceof FloatBuffer )
+			target.asFloatBuffer().put( ( ( FloatBuffer ) array ).duplicate() );
+		else if ( array instanceof LongBuffer )
+			target.asLongBuffer().put( ( ( LongBuffer ) array ).duplicate() );
+		else if ( array instanceof DoubleBuffer )
+			target.asDoubleBuffer().put( ( ( DoubleBuffer ) array ).duplicate() );
+		else
+			throw new IllegalArgumentException( "Unsupported storage array " + array.getClass().getCanonicalName() );
+	}
+}
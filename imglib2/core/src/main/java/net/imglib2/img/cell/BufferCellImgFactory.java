@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.cell;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.nio.BufferAllocator;
+import net.imglib2.img.basictypeaccess.nio.ByteBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.CharBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.DoubleBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.FloatBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.IntBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.LongBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.ShortBufferAccess;
+import net.imglib2.type.NativeType;
+
+/**
+ * Factory for {@link CellImg}s whose cells are stored in
+ * {@link java.nio.ByteBuffer}s provided by a {@link BufferAllocator}, i.e.
+ * outside of the Java heap in direct buffers, or in a memory-mapped raw file.
+ * A mapped file holds the cells one after another in flat order of the cell
+ * grid (dimension 0 varies fastest), each with the size of the actual cell
+ * (border cells are smaller). Images of bit types are stored in
+ * {@link net.imglib2.img.basictypeaccess.array.BitArray}s.
+ */
+public class BufferCellImgFactory< T extends NativeType< T > > extends CellImgFactory< T >
+{
+	protected final BufferAllocator allocator;
+
+	public BufferCellImgFactory( final int cellSize )
+	{
+		this( cellSize, BufferAllocator.DIRECT );
+	}
+
+	public BufferCellImgFactory( final int[] cellDimensions )
+	{
+		this( cellDimensions, BufferAllocator.DIRECT );
+	}
+
+	/**
+	 * @param cellSize
+	 *            size of a standard cell in every dimension
+	 * @param allocator
+	 *            provides the buffers of the cells
+	 */
+	public BufferCellImgFactory( final int cellSize, final BufferAllocator allocator )
+	{
+		super( cellSize );
+		this.allocator = allocator;
+	}
+
+	/**
+	 * @param cellDimensions
+	 *            dimensions of a standard cell
+	 * @param allocator
+	 *            provides the buffers of the cells
+	 */
+	public BufferCellImgFactory( final int[] cellDimensions, final BufferAllocator allocator )
+	{
+		super( cellDimensions );
+		this.allocator = allocator;
+	}
+
+	@Override
+	public CellImg< T, ByteBufferAccess, ? > createByteInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new ByteBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, CharBufferAccess, ? > createCharInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new CharBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, ShortBufferAccess, ? > createShortInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new ShortBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, IntBufferAccess, ? > createIntInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new IntBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, LongBufferAccess, ? > createLongInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new LongBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, FloatBufferAccess, ? > createFloatInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new FloatBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@Override
+	public CellImg< T, DoubleBufferAccess, ? > createDoubleInstance( long[] dimensions, final int entitiesPerPixel )
+	{
+		dimensions = checkDimensions( dimensions );
+		final int[] cellSize = checkCellSize( defaultCellDimensions, dimensions );
+		return createInstance( createCells( new DoubleBufferAccess( allocator, 0 ), entitiesPerPixel, dimensions, cellSize ) );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	@Override
+	public < S > ImgFactory< S > imgFactory( final S type ) throws IncompatibleTypeException
+	{
+		if ( NativeType.class.isInstance( type ) )
+			return new BufferCellImgFactory( defaultCellDimensions, allocator );
+		else
+			throw new IncompatibleTypeException( this, type.getClass().getCanonicalName() + " does not implement NativeType." );
+	}
+}
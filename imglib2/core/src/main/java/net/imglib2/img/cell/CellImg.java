@@ -135,6 +135,14 @@ final public class CellImg< T extends NativeType< T >, A extends ArrayDataAccess
 		return new CellRandomAccess< T, A, C >( this );
 	}
 
+	/**
+	 * @return the {@link Cells} that store the data of this image
+	 */
+	public Cells< A, C > getCells()
+	{
+		return cells;
+	}
+
 	@Override
 	public CellImgFactory< T > factory()
 	{
@@ -0,0 +1,116 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.cell;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+
+/**
+ * A cell of a {@link CellImg} that is paged in from and out to disk by
+ * {@link DiskCells}.
+ *
+ * <p>
+ * There is at most one {@link DiskCell} instance for each cell in memory at
+ * any time. As long as a sampler is positioned in the cell, it keeps the
+ * instance (and hence the data) alive. Once the cell is neither held by the
+ * cache of {@link DiskCells} nor by any sampler, it is garbage collected, and
+ * its data is written back to disk if it was modified.
+ * </p>
+ */
+public final class DiskCell< A extends ArrayDataAccess< A > > extends AbstractCell< A >
+{
+	private final A data;
+
+	final CellReference< A > reference;
+
+	DiskCell( final DiskCells< A > cells, final int index, final A data, final long checksum, final int[] dimensions, final long[] min, final ReferenceQueue< DiskCell< ? > > queue )
+	{
+		super( dimensions, min );
+		this.data = data;
+		this.reference = new CellReference< A >( this, index, data, checksum, queue );
+	}
+
+	/**
+	 * Get the basic type array that stores this cells pixels. Whether the
+	 * pixels were modified is detected by {@link DiskCells} when the cell is
+	 * written back.
+	 */
+	@Override
+	public A getData()
+	{
+		return data;
+	}
+
+	/**
+	 * @return the index of this cell in the cell grid
+	 */
+	public int getIndex()
+	{
+		return reference.index;
+	}
+
+	/**
+	 * Weak reference to a {@link DiskCell} that keeps the cell data alive, so
+	 * that it can be written back after the cell itself was collected.
+	 */
+	static final class CellReference< A extends ArrayDataAccess< A > > extends WeakReference< DiskCell< ? > >
+	{
+		final int index;
+
+		/**
+		 * the cell data, null once it was written back after the cell was
+		 * collected (the reference itself might still be reachable from the
+		 * reference queue)
+		 */
+		A data;
+
+		/**
+		 * checksum of the data as it is stored in the file
+		 */
+		volatile long checksum;
+
+		CellReference( final DiskCell< A > cell, final int index, final A data, final long checksum, final ReferenceQueue< DiskCell< ? > > queue )
+		{
+			super( cell, queue );
+			this.index = index;
+			this.data = data;
+			this.checksum = checksum;
+		}
+	}
+}
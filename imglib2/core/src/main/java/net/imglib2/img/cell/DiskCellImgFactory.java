@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.cell;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.NativeType;
+
+/**
+ * Factory for {@link CellImg}s whose cells are stored in a temporary file and
+ * cached in memory (see {@link DiskCells}). Use this for images that do not
+ * fit into memory. The temporary file is deleted when the cells are closed
+ * ({@code ( ( DiskCells< ? > ) img.getCells() ).close()}) or when the virtual
+ * machine exits.
+ */
+public class DiskCellImgFactory< T extends NativeType< T > > extends CellImgFactory< T >
+{
+	/**
+	 * default size of the cell cache, 64 MB
+	 */
+	public static final long DEFAULT_MAX_CACHE_BYTES = 64l * 1024 * 1024;
+
+	protected final File directory;
+
+	protected final long maxCacheBytes;
+
+	/**
+	 * @param cellSize
+	 *            size of a standard cell in every dimension
+	 * @param directory
+	 *            directory for the temporary files, or null to use the default
+	 *            temporary-file directory
+	 * @param maxCacheBytes
+	 *            the maximal number of bytes of cell data held in memory per
+	 *            image
+	 */
+	public DiskCellImgFactory( final int cellSize, final File directory, final long maxCacheBytes )
+	{
+		super( cellSize );
+		this.directory = directory;
+		this.maxCacheBytes = maxCacheBytes;
+	}
+
+	/**
+	 * @param cellDimensions
+	 *            dimensions of a standard cell
+	 * @param directory
+	 *            directory for the temporary files, or null to use the default
+	 *            temporary-file directory
+	 * @param maxCacheBytes
+	 *            the maximal number of bytes of cell data held in memory per
+	 *            image
+	 */
+	public DiskCellImgFactory( final int[] cellDimensions, final File directory, final long maxCacheBytes )
+	{
+		super( cellDimensions );
+		this.directory = directory;
+		this.maxCacheBytes = maxCacheBytes;
+	}
+
+	public DiskCellImgFactory( final int cellSize, final long maxCacheBytes )
+	{
+		this( cellSize, null, maxCacheBytes );
+	}
+
+	public DiskCellImgFactory( final int[] cellDimensions, final long maxCacheBytes )
+	{
+		this( cellDimensions, null, maxCacheBytes );
+	}
+
+	public DiskCellImgFactory( final int cellSize )
+	{
+		this( cellSize, null, DEFAULT_MAX_CACHE_BYTES );
+	}
+
+	@Override
+	protected < A extends ArrayDataAccess< A > > Cells< A, ? > createCells( final A creator, final int entitiesPerPixel, final long[] dimensions, final int[] cellDimensions )
+	{
+		try
+		{
+			final File file = File.createTempFile( "imglib2-cells-", ".raw", directory );
+			file.deleteOnExit();
+			return new DiskCells< A >( creator, entitiesPerPixel, dimensions, cellDimensions, file, true, true, maxCacheBytes );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( "DiskCellImgFactory: cannot create cell file.", e );
+		}
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	@Override
+	public < S > ImgFactory< S > imgFactory( final S type ) throws IncompatibleTypeException
+	{
+		if ( NativeType.class.isInstance( type ) )
+			return new DiskCellImgFactory( defaultCellDimensions, directory, maxCacheBytes );
+		else
+			throw new IncompatibleTypeException( this, type.getClass().getCanonicalName() + " does not implement NativeType." );
+	}
+}
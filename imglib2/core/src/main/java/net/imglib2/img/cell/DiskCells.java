@@ -0,0 +1,789 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.cell;
+
+import static net.imglib2.img.basictypeaccess.nio.StorageArrays.copyFromArray;
+import static net.imglib2.img.basictypeaccess.nio.StorageArrays.copyToArray;
+import static net.imglib2.img.basictypeaccess.nio.StorageArrays.sizeInBytes;
+import static net.imglib2.img.basictypeaccess.nio.StorageArrays.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.imglib2.converter.AbstractConvertedCursor;
+import net.imglib2.converter.AbstractConvertedRandomAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.list.ListImg;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Implementation of {@link Cells} that keeps the cell data in a file and only
+ * holds a bounded number of cells in memory. This allows {@link CellImg}s that
+ * are larger than the available memory.
+ *
+ * <p>
+ * Every cell occupies a fixed slot in the file (the size of a standard cell),
+ * so the file of an image that is only partially written stays sparse on file
+ * systems that support it. Cells that were never written read as zero.
+ * </p>
+ *
+ * <p>
+ * Cells are loaded on demand and kept in a least-recently-used cache, which is
+ * bounded by the number of bytes of cell data it may hold. Cells that are
+ * evicted from the cache stay in memory as long as a sampler is still
+ * positioned in them, so there is never more than one copy of a cell. Once an
+ * evicted cell is not used any more it is garbage collected, and its data is
+ * written back to the file if it was modified and released. Data of collected
+ * cells is released before new cells are loaded, and whenever memory runs out
+ * while loading a cell, so the data of cells that are neither cached nor in
+ * use does not accumulate. Whether a cell was modified is
+ * decided by comparing a 64 bit checksum of its data with the checksum it had
+ * when it was loaded, so that passes that only read pixels do not cause any
+ * writes. Call {@link #flush()} to write all modified cells, and
+ * {@link #close()} when the image is not needed any more.
+ * </p>
+ *
+ * <p>
+ * Cells are loaded and written back under a lock of their slot in the file
+ * only, so threads that work on different cells do their file I/O
+ * concurrently.
+ * </p>
+ *
+ * <p>
+ * Data is stored in native byte order.
+ * </p>
+ */
+public class DiskCells< A extends ArrayDataAccess< A > > implements Cells< A, DiskCell< A > >
+{
+	private final A creator;
+	private final int entitiesPerPixel;
+	private final int n;
+	private final long[] dimensions;
+	private final int[] cellDimensions;
+	private final long[] numCells;
+	private final int[] borderSize;
+
+	/**
+	 * The cell grid. Each element is the index of the cell, which is resolved
+	 * to a {@link DiskCell} by {@link #get(int)}.
+	 */
+	private final ListImg< Integer > grid;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final boolean writable;
+	private final boolean deleteOnClose;
+
+	/**
+	 * size of a standard cell in the file
+	 */
+	private final long slotSize;
+
+	/**
+	 * buffers of slotSize bytes for reading and writing cells
+	 */
+	private final ConcurrentLinkedQueue< ByteBuffer > buffers;
+
+	/**
+	 * Locks of the slots in the file. A cell is loaded and written back only
+	 * while holding the lock of its slot (index modulo the number of locks).
+	 * The cache is guarded by this, which is never held during file I/O. Slot
+	 * locks are always acquired before this.
+	 */
+	private final Object[] slotLocks;
+
+	private final long maxCacheBytes;
+	private long cacheBytes;
+
+	/**
+	 * the number of bytes of data of all cells in {@link #loaded}
+	 */
+	private long loadedBytes;
+
+	/**
+	 * {@link #drainCollected()} is called when the data of cells that are
+	 * loaded but not cached exceeds this
+	 */
+	private long drainBytes;
+
+	/**
+	 * the cells that are held in memory by the cache, in access order
+	 */
+	private final LinkedHashMap< Integer, DiskCell< A > > cache;
+
+	/**
+	 * all cells that are in memory, either in the cache, or still in use
+	 * elsewhere, or waiting to be written back
+	 */
+	private final HashMap< Integer, DiskCell.CellReference< A > > loaded;
+
+	private final ReferenceQueue< DiskCell< ? > > queue;
+
+	private long numHits = 0;
+	private long numMisses = 0;
+	private long numWrites = 0;
+
+	/**
+	 * Create cells that are stored in the given file. If the file exists, its
+	 * content is used as the cell data (as written by a previous instance with
+	 * the same dimensions, cell dimensions and type).
+	 *
+	 * @param creator
+	 *            an instance of the basic type array, used to create the cell
+	 *            arrays
+	 * @param entitiesPerPixel
+	 *            number of basic type entities per pixel
+	 * @param dimensions
+	 *            dimensions of the image
+	 * @param cellDimensions
+	 *            dimensions of a standard cell
+	 * @param file
+	 *            the file that stores the cell data
+	 * @param writable
+	 *            whether modified cells are written back to the file
+	 * @param deleteOnClose
+	 *            whether the file is deleted by {@link #close()}
+	 * @param maxCacheBytes
+	 *            the maximal number of bytes of cell data held by the cache
+	 *            (at least one cell is always cached)
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public DiskCells( final A creator, final int entitiesPerPixel, final long[] dimensions, final int[] cellDimensions, final File file, final boolean writable, final boolean deleteOnClose, final long maxCacheBytes ) throws IOException
+	{
+		this.creator = creator;
+		this.entitiesPerPixel = entitiesPerPixel;
+		this.n = dimensions.length;
+		this.dimensions = dimensions.clone();
+		this.cellDimensions = cellDimensions.clone();
+		this.file = file;
+		this.writable = writable;
+		this.deleteOnClose = deleteOnClose;
+		this.maxCacheBytes = maxCacheBytes;
+
+		numCells = new long[ n ];
+		borderSize = new int[ n ];
+		long numCellsTotal = 1;
+		long numPixelsPerCell = entitiesPerPixel;
+		for ( int d = 0; d < n; ++d )
+		{
+			numCells[ d ] = ( dimensions[ d ] - 1 ) / cellDimensions[ d ] + 1;
+			borderSize[ d ] = ( int )( dimensions[ d ] - ( numCells[ d ] - 1 ) * cellDimensions[ d ] );
+			numCellsTotal *= numCells[ d ];
+			numPixelsPerCell *= cellDimensions[ d ];
+		}
+
+		if ( numCellsTotal > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "DiskCells: too many cells (" + numCellsTotal + "), use larger cells." );
+
+		if ( numPixelsPerCell > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "DiskCells: cells are too large (" + numPixelsPerCell + " entities)." );
+
+		slotSize = sizeInBytes( storage( creator.createArray( ( int ) numPixelsPerCell ) ) );
+		if ( slotSize > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "DiskCells: cells are too large (" + slotSize + " bytes)." );
+
+		final ArrayList< Integer > indices = new ArrayList< Integer >( ( int ) numCellsTotal );
+		for ( int i = 0; i < numCellsTotal; ++i )
+			indices.add( i );
+		grid = new ListImg< Integer >( indices, numCells );
+
+		raf = new RandomAccessFile( file, writable ? "rw" : "r" );
+		channel = raf.getChannel();
+		buffers = new ConcurrentLinkedQueue< ByteBuffer >();
+		slotLocks = new Object[ 64 ];
+		for ( int i = 0; i < slotLocks.length; ++i )
+			slotLocks[ i ] = new Object();
+
+		cache = new LinkedHashMap< Integer, DiskCell< A > >( 16, 0.75f, true );
+		loaded = new HashMap< Integer, DiskCell.CellReference< A > >();
+		queue = new ReferenceQueue< DiskCell< ? > >();
+		cacheBytes = 0;
+		loadedBytes = 0;
+		drainBytes = maxCacheBytes;
+	}
+
+	/**
+	 * @return whether modified cells are written back to the file
+	 */
+	public boolean isWritable()
+	{
+		return writable;
+	}
+
+	/**
+	 * @return the file that stores the cell data
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Get the cell with the given index in the cell grid, loading it from the
+	 * file if it is not in memory.
+	 *
+	 * @param index
+	 *            flat index of the cell in the cell grid
+	 */
+	public DiskCell< A > get( final int index )
+	{
+		processQueue();
+
+		final boolean drain;
+		synchronized ( this )
+		{
+			drain = loadedBytes - cacheBytes > drainBytes;
+		}
+		if ( drain )
+			drainCollected();
+
+		try
+		{
+			return getOrLoad( index );
+		}
+		catch ( final OutOfMemoryError e )
+		{
+			// the garbage collection that preceded the error might have
+			// collected cells whose data is only released by writing it back
+			if ( drainCollected() == 0 )
+				throw e;
+			return getOrLoad( index );
+		}
+	}
+
+	private DiskCell< A > getOrLoad( final int index )
+	{
+		DiskCell< A > cell = lookup( index );
+		if ( cell != null )
+			return cell;
+
+		synchronized ( slotLock( index ) )
+		{
+			// another thread might have loaded the cell in the meantime
+			cell = lookup( index );
+			if ( cell != null )
+				return cell;
+
+			// collected, but not written back yet
+			final DiskCell.CellReference< A > collected;
+			synchronized ( this )
+			{
+				collected = loaded.get( index );
+			}
+			if ( collected != null )
+			{
+				writeBack( collected );
+				release( collected );
+			}
+
+			cell = load( index );
+			synchronized ( this )
+			{
+				++numMisses;
+				loaded.put( index, cell.reference );
+				loadedBytes += sizeInBytes( storage( cell.reference.data ) );
+				addToCache( cell );
+			}
+			return cell;
+		}
+	}
+
+	/**
+	 * @return the cell with the given index if it is in memory, or null
+	 */
+	@SuppressWarnings( "unchecked" )
+	private synchronized DiskCell< A > lookup( final int index )
+	{
+		DiskCell< A > cell = cache.get( index );
+		if ( cell != null )
+		{
+			++numHits;
+			return cell;
+		}
+
+		final DiskCell.CellReference< A > reference = loaded.get( index );
+		if ( reference != null )
+		{
+			cell = ( DiskCell< A > ) reference.get();
+			if ( cell != null )
+			{
+				// evicted, but still in use somewhere
+				++numHits;
+				addToCache( cell );
+				return cell;
+			}
+		}
+		return null;
+	}
+
+	private Object slotLock( final int index )
+	{
+		return slotLocks[ index % slotLocks.length ];
+	}
+
+	/**
+	 * Write all modified cells to the file.
+	 */
+	public void flush()
+	{
+		processQueue();
+
+		final ArrayList< DiskCell.CellReference< A > > references;
+		synchronized ( this )
+		{
+			references = new ArrayList< DiskCell.CellReference< A > >( loaded.values() );
+		}
+
+		for ( final DiskCell.CellReference< A > reference : references )
+		{
+			synchronized ( slotLock( reference.index ) )
+			{
+				writeBack( reference );
+			}
+		}
+	}
+
+	/**
+	 * Write all modified cells to the file and close it. If the cells were
+	 * created as temporary storage, the file is deleted instead.
+	 */
+	public void close()
+	{
+		if ( !deleteOnClose )
+			flush();
+
+		synchronized ( this )
+		{
+			cache.clear();
+			loaded.clear();
+			cacheBytes = 0;
+			loadedBytes = 0;
+
+			try
+			{
+				channel.close();
+				raf.close();
+			}
+			catch ( final IOException e )
+			{
+				throw new RuntimeException( e );
+			}
+		}
+
+		if ( deleteOnClose )
+			file.delete();
+	}
+
+	/**
+	 * @return how many requests for a cell were served from memory
+	 */
+	public synchronized long getNumHits()
+	{
+		return numHits;
+	}
+
+	/**
+	 * @return how many requests for a cell had to load it from the file
+	 */
+	public synchronized long getNumMisses()
+	{
+		return numMisses;
+	}
+
+	/**
+	 * @return how many cells were written to the file
+	 */
+	public synchronized long getNumWrites()
+	{
+		return numWrites;
+	}
+
+	/**
+	 * @return the number of bytes of cell data currently held by the cache
+	 */
+	public synchronized long getCacheSizeInBytes()
+	{
+		return cacheBytes;
+	}
+
+	private void addToCache( final DiskCell< A > cell )
+	{
+		cache.put( cell.getIndex(), cell );
+		cacheBytes += sizeInBytes( storage( cell.reference.data ) );
+
+		final Iterator< Map.Entry< Integer, DiskCell< A > > > eldest = cache.entrySet().iterator();
+		while ( cacheBytes > maxCacheBytes && cache.size() > 1 )
+		{
+			final DiskCell< A > evicted = eldest.next().getValue();
+			eldest.remove();
+			cacheBytes -= sizeInBytes( storage( evicted.reference.data ) );
+		}
+	}
+
+	/**
+	 * Write back the data of all cells that were garbage collected.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void processQueue()
+	{
+		Reference< ? extends DiskCell< ? > > r;
+		while ( ( r = queue.poll() ) != null )
+		{
+			final DiskCell.CellReference< A > reference = ( DiskCell.CellReference< A > ) r;
+			synchronized ( slotLock( reference.index ) )
+			{
+				writeBack( reference );
+				release( reference );
+			}
+		}
+	}
+
+	/**
+	 * Write back and release the data of all cells that were garbage
+	 * collected, including those whose references are not enqueued yet.
+	 * Must be called without holding any slot lock.
+	 *
+	 * @return the number of cells released
+	 */
+	private int drainCollected()
+	{
+		processQueue();
+
+		final ArrayList< DiskCell.CellReference< A > > collected = new ArrayList< DiskCell.CellReference< A > >();
+		synchronized ( this )
+		{
+			for ( final DiskCell.CellReference< A > reference : loaded.values() )
+				if ( reference.get() == null )
+					collected.add( reference );
+		}
+
+		for ( final DiskCell.CellReference< A > reference : collected )
+		{
+			synchronized ( slotLock( reference.index ) )
+			{
+				writeBack( reference );
+				release( reference );
+			}
+		}
+
+		synchronized ( this )
+		{
+			// do not scan again before another cache full of cells was evicted
+			drainBytes = loadedBytes - cacheBytes + maxCacheBytes;
+		}
+		return collected.size();
+	}
+
+	/**
+	 * Forget a collected cell after its data was written back. Must be called
+	 * with the slot lock held.
+	 */
+	private void release( final DiskCell.CellReference< A > reference )
+	{
+		synchronized ( this )
+		{
+			if ( reference.data == null )
+				return;
+			if ( loaded.get( reference.index ) == reference )
+				loaded.remove( reference.index );
+			loadedBytes -= sizeInBytes( storage( reference.data ) );
+			reference.data = null;
+		}
+	}
+
+	/**
+	 * Write the data of a cell to the file if its checksum changed since it
+	 * was loaded or last written. Must be called with the slot lock held.
+	 */
+	private void writeBack( final DiskCell.CellReference< A > reference )
+	{
+		if ( !writable || reference.data == null )
+			return;
+
+		final ByteBuffer buffer = acquireBuffer();
+		try
+		{
+			final Object array = storage( reference.data );
+			buffer.clear();
+			copyFromArray( array, buffer );
+			buffer.limit( ( int ) sizeInBytes( array ) );
+			buffer.position( 0 );
+
+			final long checksum = checksum( buffer );
+			if ( checksum == reference.checksum )
+				return;
+
+			long position = reference.index * slotSize;
+			while ( buffer.hasRemaining() )
+				position += channel.write( buffer, position );
+			reference.checksum = checksum;
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		finally
+		{
+			releaseBuffer( buffer );
+		}
+
+		synchronized ( this )
+		{
+			++numWrites;
+		}
+	}
+
+	/**
+	 * Load a cell from the file. Must be called with the slot lock held.
+	 */
+	private DiskCell< A > load( final int index )
+	{
+		final long[] cellGridPosition = new long[ n ];
+		final long[] min = new long[ n ];
+		final int[] cellDims = new int[ n ];
+
+		IntervalIndexer.indexToPosition( index, numCells, cellGridPosition );
+
+		int numEntities = entitiesPerPixel;
+		for ( int d = 0; d < n; ++d )
+		{
+			cellDims[ d ] = ( cellGridPosition[ d ] + 1 == numCells[ d ] ) ? borderSize[ d ] : cellDimensions[ d ];
+			min[ d ] = cellGridPosition[ d ] * cellDimensions[ d ];
+			numEntities *= cellDims[ d ];
+		}
+
+		final A data = creator.createArray( numEntities );
+		final Object array = storage( data );
+
+		final ByteBuffer buffer = acquireBuffer();
+		try
+		{
+			buffer.clear();
+			buffer.limit( ( int ) sizeInBytes( array ) );
+
+			long position = index * slotSize;
+			while ( buffer.hasRemaining() )
+			{
+				final int r = channel.read( buffer, position );
+				if ( r < 0 )
+					break;
+				position += r;
+			}
+
+			// cells that were never written (beyond the end of the file) are zero
+			while ( buffer.hasRemaining() )
+				buffer.put( ( byte ) 0 );
+
+			buffer.flip();
+			copyToArray( buffer, array );
+			return new DiskCell< A >( this, index, data, checksum( buffer ), cellDims, min, queue );
+		}
+		catch ( final IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		finally
+		{
+			releaseBuffer( buffer );
+		}
+	}
+
+	private ByteBuffer acquireBuffer()
+	{
+		final ByteBuffer buffer = buffers.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect( ( int ) slotSize ).order( ByteOrder.nativeOrder() );
+	}
+
+	private void releaseBuffer( final ByteBuffer buffer )
+	{
+		buffers.offer( buffer );
+	}
+
+	/**
+	 * @return a 64 bit checksum of the bytes from 0 to the limit of the buffer
+	 */
+	protected static long checksum( final ByteBuffer bytes )
+	{
+		final int size = bytes.limit();
+		long h = 0xcbf29ce484222325l;
+		int i = 0;
+		for ( ; i + 8 <= size; i += 8 )
+		{
+			h ^= bytes.getLong( i );
+			h *= 0x100000001b3l;
+			h ^= h >>> 29;
+		}
+		for ( ; i < size; ++i )
+		{
+			h ^= bytes.get( i );
+			h *= 0x100000001b3l;
+		}
+		return h;
+	}
+
+	@Override
+	public RandomAccess randomAccess()
+	{
+		return new RandomAccess( grid.randomAccess() );
+	}
+
+	@Override
+	public Cursor cursor()
+	{
+		return new Cursor( grid.cursor() );
+	}
+
+	@Override
+	public Cursor localizingCursor()
+	{
+		return new Cursor( grid.localizingCursor() );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	@Override
+	public void dimensions( final long[] s )
+	{
+		for ( int i = 0; i < n; ++i )
+			s[ i ] = dimensions[ i ];
+	}
+
+	@Override
+	public long dimension( final int d )
+	{
+		try { return this.dimensions[ d ]; }
+		catch ( final ArrayIndexOutOfBoundsException e ) { return 1; }
+	}
+
+	@Override
+	public void cellDimensions( final int[] s )
+	{
+		for ( int i = 0; i < n; ++i )
+			s[ i ] = cellDimensions[ i ];
+	}
+
+	@Override
+	public int cellDimension( final int d )
+	{
+		try { return this.cellDimensions[ d ]; }
+		catch ( final ArrayIndexOutOfBoundsException e ) { return 1; }
+	}
+
+	@Override
+	public int getEntitiesPerPixel()
+	{
+		return entitiesPerPixel;
+	}
+
+	/**
+	 * {@link net.imglib2.RandomAccess} on the cell grid. It holds on to the
+	 * current cell, which prevents it from being written back while the
+	 * sampler using this access is positioned in it.
+	 */
+	public class RandomAccess extends AbstractConvertedRandomAccess< Integer, DiskCell< A > >
+	{
+		private DiskCell< A > cell = null;
+
+		RandomAccess( final net.imglib2.RandomAccess< Integer > source )
+		{
+			super( source );
+		}
+
+		@Override
+		public DiskCell< A > get()
+		{
+			final int index = source.get().intValue();
+			if ( cell == null || cell.getIndex() != index )
+				cell = DiskCells.this.get( index );
+			return cell;
+		}
+
+		@Override
+		public RandomAccess copy()
+		{
+			return new RandomAccess( source.copyRandomAccess() );
+		}
+	}
+
+	/**
+	 * {@link net.imglib2.Cursor} on the cell grid. It holds on to the current
+	 * cell, which prevents it from being written back while the sampler
+	 * using this cursor is positioned in it.
+	 */
+	public class Cursor extends AbstractConvertedCursor< Integer, DiskCell< A > >
+	{
+		private DiskCell< A > cell = null;
+
+		Cursor( final net.imglib2.Cursor< Integer > source )
+		{
+			super( source );
+		}
+
+		@Override
+		public DiskCell< A > get()
+		{
+			final int index = source.get().intValue();
+			if ( cell == null || cell.getIndex() != index )
+				cell = DiskCells.this.get( index );
+			return cell;
+		}
+
+		@Override
+		public Cursor copy()
+		{
+			return new Cursor( source.copyCursor() );
+		}
+	}
+}
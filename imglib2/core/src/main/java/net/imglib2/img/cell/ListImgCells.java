@@ -77,7 +77,8 @@ public class ListImgCells< A extends ArrayDataAccess< A > > implements Cells< A,
 			borderSize[ d ] = ( int )( dimensions[ d ] - (numCells[ d ] - 1) * cellDimensions[ d ] );
 		}
 
-		cells = new ListImgFactory< DefaultCell< A > >().create( numCells, new DefaultCell< A >( creator, new int[1], new long[1], entitiesPerPixel ) );
+		// the prototype cell is empty, so that it does not allocate any data
+		cells = new ListImgFactory< DefaultCell< A > >().create( numCells, new DefaultCell< A >( creator, new int[] { 0 }, new long[1], entitiesPerPixel ) );
 
 		final ListLocalizingCursor< DefaultCell < A > > cellCursor = cells.localizingCursor();
 		while ( cellCursor.hasNext() ) {
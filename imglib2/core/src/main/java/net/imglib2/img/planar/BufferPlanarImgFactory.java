@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.planar;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.NativeImgFactory;
+import net.imglib2.img.basictypeaccess.array.BitArray;
+import net.imglib2.img.basictypeaccess.nio.BufferAllocator;
+import net.imglib2.img.basictypeaccess.nio.ByteBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.CharBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.DoubleBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.FloatBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.IntBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.LongBufferAccess;
+import net.imglib2.img.basictypeaccess.nio.ShortBufferAccess;
+import net.imglib2.type.NativeType;
+
+/**
+ * Factory for {@link PlanarImg}s whose planes are stored in
+ * {@link java.nio.ByteBuffer}s provided by a {@link BufferAllocator}, i.e.
+ * outside of the Java heap in direct buffers, or in a memory-mapped raw file
+ * with the planes stored one after another. Images of bit types are stored in
+ * {@link BitArray}s.
+ */
+public class BufferPlanarImgFactory< T extends NativeType< T > > extends NativeImgFactory< T >
+{
+	protected final BufferAllocator allocator;
+
+	/**
+	 * Creates images in direct buffers.
+	 */
+	public BufferPlanarImgFactory()
+	{
+		this( BufferAllocator.DIRECT );
+	}
+
+	/**
+	 * Creates images in buffers of the given allocator, e.g.
+	 * {@link BufferAllocator#map(java.io.File, long, java.nio.ByteOrder, boolean)}
+	 * to map an image over an existing raw file.
+	 */
+	public BufferPlanarImgFactory( final BufferAllocator allocator )
+	{
+		this.allocator = allocator;
+	}
+
+	@Override
+	public PlanarImg< T, ? > create( final long[] dim, final T type )
+	{
+		return ( PlanarImg< T, ? > ) type.createSuitableNativeImg( this, dim );
+	}
+
+	@Override
+	public NativeImg< T, BitArray > createBitInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, BitArray >( new BitArray( 1 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, ByteBufferAccess > createByteInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, ByteBufferAccess >( new ByteBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, CharBufferAccess > createCharInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, CharBufferAccess >( new CharBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, ShortBufferAccess > createShortInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, ShortBufferAccess >( new ShortBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, IntBufferAccess > createIntInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, IntBufferAccess >( new IntBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, LongBufferAccess > createLongInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, LongBufferAccess >( new LongBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, FloatBufferAccess > createFloatInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, FloatBufferAccess >( new FloatBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@Override
+	public NativeImg< T, DoubleBufferAccess > createDoubleInstance( final long[] dimensions, final int entitiesPerPixel )
+	{
+		return new PlanarImg< T, DoubleBufferAccess >( new DoubleBufferAccess( allocator, 0 ), dimensions, entitiesPerPixel );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	@Override
+	public < S > ImgFactory< S > imgFactory( final S type ) throws IncompatibleTypeException
+	{
+		if ( NativeType.class.isInstance( type ) )
+			return new BufferPlanarImgFactory( allocator );
+		else
+			throw new IncompatibleTypeException( this, type.getClass().getCanonicalName() + " does not implement NativeType." );
+	}
+}
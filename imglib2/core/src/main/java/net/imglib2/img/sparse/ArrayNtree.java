@@ -0,0 +1,505 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.sparse;
+
+/**
+ * N-dimensional equivalent of a quad/oct-tree, like {@link Ntree}, but without
+ * node objects. Nodes are addressed by an int index. For every node, the index
+ * of its first child is stored in a primitive array (the children of a node are
+ * stored in consecutive indices), and subclasses store the node values in a
+ * primitive array of their type. This avoids the per-node object overhead and
+ * the boxing of values of {@link Ntree}.
+ * 
+ * When a value is written, nodes are split as necessary, and afterwards all
+ * children of a node that have the same value are merged into their parent
+ * again. The indices of the merged children are reused for new nodes.
+ * {@link #compact()} can be used to release unused capacity.
+ * 
+ * Reading is thread-safe, writing is not.
+ * 
+ * Accesses look up nodes through a {@link NodeLookup}, which remembers the
+ * last leaf it found. As long as the tree structure does not change, positions
+ * inside that leaf are resolved without descending from the root, which makes
+ * iteration over large uniform regions cheap.
+ */
+public abstract class ArrayNtree
+{
+	/**
+	 * marks a node without children.
+	 */
+	static final int LEAF = -1;
+
+	/**
+	 * marks the end of the list of free child blocks.
+	 */
+	static final int NONE = -1;
+
+	static final int ROOT = 0;
+
+	/**
+	 * number of dimensions.
+	 */
+	final int n;
+
+	/**
+	 * maximum depth of the tree.
+	 */
+	final int numTreeLevels;
+
+	/**
+	 * how many children (if any) each node has.
+	 */
+	final int numChildren;
+
+	/**
+	 * dimensions of tree
+	 */
+	final long[] dimensions;
+
+	/**
+	 * index of the first child of each node, or {@link #LEAF}. For a free
+	 * block of children, the first entry links to the next free block.
+	 */
+	int[] children;
+
+	/**
+	 * number of used node indices (including free blocks).
+	 */
+	int size;
+
+	/**
+	 * first free block of children, or {@link #NONE}.
+	 */
+	int freeBlocks;
+
+	/**
+	 * incremented whenever nodes are split or merged, to invalidate node
+	 * indices cached by accesses.
+	 */
+	volatile int modCount;
+
+	/**
+	 * Create a tree capable of representing an array of the given dimensions.
+	 * Initially, the tree contains only a root node.
+	 * 
+	 * @param dimensions
+	 *            of the array
+	 */
+	protected ArrayNtree( final long[] dimensions )
+	{
+		this.n = dimensions.length;
+		this.dimensions = dimensions.clone();
+
+		// set the maximum number of levels in the ntree.
+		// This is how many times to split the maximum dimension
+		// in half to arrive at a single pixel
+		long maxdim = 0;
+		for ( int d = 0; d < n; ++d )
+			maxdim = Math.max( maxdim, dimensions[ d ] );
+		this.numTreeLevels = ( int ) Math.ceil( Math.log( maxdim ) / Math.log( 2 ) ) + 1;
+
+		this.numChildren = 1 << n;
+
+		final int capacity = 1 + numChildren;
+		children = new int[ capacity ];
+		children[ ROOT ] = LEAF;
+		size = 1;
+		freeBlocks = NONE;
+		modCount = 0;
+	}
+
+	/**
+	 * @return whether node holds value. (The value is encoded as in
+	 *         {@link #setValue(int, long)}).
+	 */
+	protected abstract boolean hasValue( int node, long value );
+
+	/**
+	 * Set the value of node. Values are passed as long: integral values are
+	 * widened, floating point values are passed as their bits.
+	 */
+	protected abstract void setValue( int node, long value );
+
+	/**
+	 * @return whether two nodes hold the same value.
+	 */
+	protected abstract boolean sameValue( int node1, int node2 );
+
+	/**
+	 * Copy the value of one node to another.
+	 */
+	protected abstract void copyValue( int fromNode, int toNode );
+
+	/**
+	 * Change the capacity of the value array.
+	 */
+	protected abstract void resizeValues( int capacity );
+
+	/**
+	 * Move the values to a new array of the given capacity, where the value of
+	 * node i is stored at index newIndices[ i ] (if that is not
+	 * {@link #NONE}).
+	 */
+	protected abstract void remapValues( int[] newIndices, int capacity );
+
+	/**
+	 * @return the number of node indices in use, including nodes that were
+	 *         merged and can be reused.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return how many bytes the primitive arrays of the tree occupy.
+	 */
+	public long sizeInBytes()
+	{
+		return 4l * children.length + ( long ) children.length * bytesPerValue();
+	}
+
+	protected abstract int bytesPerValue();
+
+	/**
+	 * @return maximum depth of the tree.
+	 */
+	public int numTreeLevels()
+	{
+		return numTreeLevels;
+	}
+
+	final int childIndex( final long[] position, final int level )
+	{
+		final long bitmask = 1l << level;
+		int childindex = 0;
+		for ( int d = 0; d < n; ++d )
+			if ( ( position[ d ] & bitmask ) != 0 )
+				childindex |= 1 << d;
+		return childindex;
+	}
+
+	/**
+	 * Get the lowest-level node containing position. Note that position is not
+	 * necessarily the only pixel inside the node. So use this for read-access
+	 * to pixel values only.
+	 * 
+	 * @param position
+	 *            a position inside the image.
+	 * @return index of the lowest-level node containing position.
+	 */
+	public int getNode( final long[] position )
+	{
+		final int[] c = children;
+		int current = ROOT;
+		for ( int l = numTreeLevels - 2; l >= 0; --l )
+		{
+			final int first = c[ current ];
+			if ( first == LEAF )
+				break;
+			current = first + childIndex( position, l );
+		}
+		return current;
+	}
+
+	/**
+	 * Get the lowest-level node containing position, and the level below which
+	 * the position bits do not matter for this node (0 for single pixel
+	 * nodes). All positions that agree with position in all bits at or above
+	 * this level are contained in the node.
+	 * 
+	 * @param position
+	 *            a position inside the image.
+	 * @param level
+	 *            stores the level in level[ 0 ]
+	 * @return index of the lowest-level node containing position.
+	 */
+	int getNode( final long[] position, final int[] level )
+	{
+		final int[] c = children;
+		int current = ROOT;
+		for ( int l = numTreeLevels - 2; l >= 0; --l )
+		{
+			final int first = c[ current ];
+			if ( first == LEAF )
+			{
+				level[ 0 ] = l + 1;
+				return current;
+			}
+			current = first + childIndex( position, l );
+		}
+		level[ 0 ] = 0;
+		return current;
+	}
+
+	/**
+	 * Set the value at position. If necessary, new nodes will be created. If
+	 * possible, nodes will be merged.
+	 * 
+	 * @param position
+	 *            a position inside the image.
+	 * @param value
+	 *            value to store at position (encoded as in
+	 *            {@link #setValue(int, long)}).
+	 * @param path
+	 *            temporary array of at least {@link #numTreeLevels()} elements
+	 *            to store the path to the node.
+	 */
+	protected void createNodeWithValue( final long[] position, final long value, final int[] path )
+	{
+		int current = ROOT;
+		int depth = 0;
+		for ( int l = numTreeLevels - 2; l >= 0; --l )
+		{
+			path[ depth++ ] = current;
+			if ( children[ current ] == LEAF )
+			{
+				if ( hasValue( current, value ) )
+					return;
+				split( current );
+			}
+			current = children[ current ] + childIndex( position, l );
+		}
+		if ( hasValue( current, value ) )
+			return;
+		setValue( current, value );
+		mergeUpwards( path, depth );
+	}
+
+	/**
+	 * Create children for a leaf node. The children have the value of the
+	 * node.
+	 */
+	void split( final int node )
+	{
+		final int first = allocateBlock();
+		for ( int i = 0; i < numChildren; ++i )
+		{
+			children[ first + i ] = LEAF;
+			copyValue( node, first + i );
+		}
+		children[ node ] = first;
+		++modCount;
+	}
+
+	/**
+	 * If all the children of the last node on the path have the same value
+	 * remove them all. Continue with the next node on the path.
+	 * 
+	 * @param path
+	 *            node indices from the root down to the parent of the node
+	 *            that was changed.
+	 * @param depth
+	 *            number of nodes on the path.
+	 */
+	void mergeUpwards( final int[] path, final int depth )
+	{
+		for ( int k = depth - 1; k >= 0; --k )
+		{
+			final int parent = path[ k ];
+			final int first = children[ parent ];
+			if ( children[ first ] != LEAF )
+				return;
+			for ( int i = 1; i < numChildren; ++i )
+				if ( children[ first + i ] != LEAF || !sameValue( first, first + i ) )
+					return;
+			copyValue( first, parent );
+			children[ parent ] = LEAF;
+			freeBlock( first );
+			++modCount;
+		}
+	}
+
+	private int allocateBlock()
+	{
+		if ( freeBlocks != NONE )
+		{
+			final int first = freeBlocks;
+			freeBlocks = children[ first ];
+			return first;
+		}
+
+		final int first = size;
+		final long newSize = ( long ) size + numChildren;
+		if ( newSize > Integer.MAX_VALUE )
+			throw new RuntimeException( "ArrayNtree: too many nodes." );
+		if ( newSize > children.length )
+		{
+			final int capacity = ( int ) Math.min( Integer.MAX_VALUE, Math.max( newSize, children.length + ( long ) children.length / 2 ) );
+			final int[] newChildren = new int[ capacity ];
+			System.arraycopy( children, 0, newChildren, 0, size );
+			children = newChildren;
+			resizeValues( capacity );
+		}
+		size = ( int ) newSize;
+		return first;
+	}
+
+	private void freeBlock( final int first )
+	{
+		children[ first ] = freeBlocks;
+		freeBlocks = first;
+	}
+
+	/**
+	 * Renumber the nodes in depth-first order, so that no unused indices
+	 * remain, and trim the arrays to that size.
+	 */
+	public void compact()
+	{
+		final int[] newIndices = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			newIndices[ i ] = NONE;
+
+		// count the nodes, to allocate arrays of the right size
+		int numNodes = 1;
+		final int[] stack = new int[ numTreeLevels * numChildren + 1 ];
+		int top = 0;
+		stack[ top++ ] = ROOT;
+		while ( top > 0 )
+		{
+			final int node = stack[ --top ];
+			final int first = children[ node ];
+			if ( first != LEAF )
+			{
+				numNodes += numChildren;
+				for ( int i = 0; i < numChildren; ++i )
+					stack[ top++ ] = first + i;
+			}
+		}
+
+		// assign new indices, children blocks in the order of their parents
+		final int[] newChildren = new int[ numNodes ];
+		newIndices[ ROOT ] = ROOT;
+		int next = 1;
+		top = 0;
+		stack[ top++ ] = ROOT;
+		while ( top > 0 )
+		{
+			final int node = stack[ --top ];
+			final int first = children[ node ];
+			if ( first == LEAF )
+				newChildren[ newIndices[ node ] ] = LEAF;
+			else
+			{
+				newChildren[ newIndices[ node ] ] = next;
+				for ( int i = 0; i < numChildren; ++i )
+				{
+					newIndices[ first + i ] = next + i;
+					stack[ top++ ] = first + i;
+				}
+				next += numChildren;
+			}
+		}
+
+		remapValues( newIndices, numNodes );
+		children = newChildren;
+		size = numNodes;
+		freeBlocks = NONE;
+		++modCount;
+	}
+
+	/**
+	 * Finds and writes the node at a position that is shared with a
+	 * RandomAccess or Cursor. Remembers the last leaf that was found, and the
+	 * region it covers, so that subsequent lookups inside the same leaf are
+	 * answered without descending the tree.
+	 */
+	static final class NodeLookup
+	{
+		final ArrayNtree tree;
+
+		final long[] position;
+
+		private final int[] path;
+
+		private final int[] level;
+
+		/**
+		 * position bits at and above {@link #shift} of the cached leaf.
+		 */
+		private final long[] key;
+
+		private int node;
+
+		private int shift;
+
+		private int modCount;
+
+		NodeLookup( final ArrayNtree tree, final long[] position )
+		{
+			this.tree = tree;
+			this.position = position;
+			path = new int[ tree.numTreeLevels ];
+			level = new int[ 1 ];
+			key = new long[ tree.n ];
+			modCount = tree.modCount - 1;
+		}
+
+		/**
+		 * @return index of the lowest-level node containing the current
+		 *         position.
+		 */
+		int getNode()
+		{
+			final int n = key.length;
+			if ( modCount == tree.modCount )
+			{
+				final int s = shift;
+				int d = 0;
+				while ( d < n && ( position[ d ] >> s ) == key[ d ] )
+					++d;
+				if ( d == n )
+					return node;
+			}
+			modCount = tree.modCount;
+			node = tree.getNode( position, level );
+			shift = level[ 0 ];
+			for ( int d = 0; d < n; ++d )
+				key[ d ] = position[ d ] >> shift;
+			return node;
+		}
+
+		/**
+		 * Set the value at the current position.
+		 */
+		void setValue( final long value )
+		{
+			tree.createNodeWithValue( position, value, path );
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.sparse;
+
+import java.util.Arrays;
+
+import net.imglib2.img.basictypeaccess.BitAccess;
+
+/**
+ * BitAccess based on an {@link ArrayNtree} storing boolean values.
+ * 
+ * All instances created by {@link #createInstance(long[])} share the same
+ * tree. Concurrent reading is safe, concurrent writing is not.
+ */
+public final class BooleanArrayNtree implements BitAccess, ArrayNtreeAccess< BooleanArrayNtree >
+{
+	private final Tree data;
+
+	private final ArrayNtree.NodeLookup lookup;
+
+	/**
+	 * Standard constructor called by factory
+	 * 
+	 * @param dimensions
+	 *            The dimensions of the tree
+	 * @param value
+	 *            Uniform value of created nodes of the tree
+	 */
+	public BooleanArrayNtree( final long[] dimensions, final long[] position, final boolean value )
+	{
+		this( new Tree( dimensions, value ), position );
+	}
+
+	/* Copy constructor */
+	private BooleanArrayNtree( final Tree data, final long[] position )
+	{
+		this.data = data;
+		this.lookup = new ArrayNtree.NodeLookup( data, position );
+	}
+
+	@Override
+	public boolean getValue( final int index )
+	{
+		// ignore index, get tree position from RandomAccess/Cursor
+		return data.values[ lookup.getNode() ];
+	}
+
+	@Override
+	public void setValue( final int index, final boolean value )
+	{
+		// ignore index, get tree position from RandomAccess/Cursor
+		lookup.setValue( value ? 1 : 0 );
+	}
+
+	@Override
+	public ArrayNtree getCurrentStorageNtree()
+	{
+		return data;
+	}
+
+	@Override
+	public BooleanArrayNtree createInstance( final long[] pos )
+	{
+		return new BooleanArrayNtree( data, pos );
+	}
+
+	static final class Tree extends ArrayNtree
+	{
+		boolean[] values;
+
+		Tree( final long[] dimensions, final boolean value )
+		{
+			super( dimensions );
+			values = new boolean[ children.length ];
+			values[ ROOT ] = value;
+		}
+
+		@Override
+		protected boolean hasValue( final int node, final long value )
+		{
+			return values[ node ] == ( value != 0 );
+		}
+
+		@Override
+		protected void setValue( final int node, final long value )
+		{
+			values[ node ] = value != 0;
+		}
+
+		@Override
+		protected boolean sameValue( final int node1, final int node2 )
+		{
+			return values[ node1 ] == values[ node2 ];
+		}
+
+		@Override
+		protected void copyValue( final int fromNode, final int toNode )
+		{
+			values[ toNode ] = values[ fromNode ];
+		}
+
+		@Override
+		protected void resizeValues( final int capacity )
+		{
+			values = Arrays.copyOf( values, capacity );
+		}
+
+		@Override
+		protected void remapValues( final int[] newIndices, final int capacity )
+		{
+			final boolean[] newValues = new boolean[ capacity ];
+			for ( int i = 0; i < newIndices.length; ++i )
+				if ( newIndices[ i ] != NONE )
+					newValues[ newIndices[ i ] ] = values[ i ];
+			values = newValues;
+		}
+
+		@Override
+		protected int bytesPerValue()
+		{
+			return 1;
+		}
+	}
+}
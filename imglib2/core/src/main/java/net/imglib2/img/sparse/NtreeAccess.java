@@ -36,11 +36,12 @@
 
 package net.imglib2.img.sparse;
 
-
-public interface NtreeAccess< L extends Comparable< L >, A extends NtreeAccess< L, A > >
+/**
+ * An {@link NtreeImgAccess} that stores its pixels in an {@link Ntree} of
+ * node objects with values of type L.
+ */
+public interface NtreeAccess< L extends Comparable< L >, A extends NtreeAccess< L, A > > extends NtreeImgAccess< A >
 {
 
 	Ntree< L > getCurrentStorageNtree();
-
-	A createInstance( long[] pos );
 }
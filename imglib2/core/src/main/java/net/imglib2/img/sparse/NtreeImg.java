@@ -47,7 +47,7 @@ import net.imglib2.type.NativeType;
  * @author Tobias Pietzsch
  * 
  */
-public final class NtreeImg< T extends NativeType< T >, A extends NtreeAccess< ?, A >> extends AbstractNativeImg< T, A > implements Serializable
+public final class NtreeImg< T extends NativeType< T >, A extends NtreeImgAccess< A >> extends AbstractNativeImg< T, A > implements Serializable
 {
 
 	/**
@@ -113,6 +113,8 @@ public final class NtreeImg< T extends NativeType< T >, A extends NtreeAccess< ?
 	@Override
 	public ImgFactory< T > factory()
 	{
+		if ( data instanceof ArrayNtreeAccess )
+			return new ArrayNtreeImgFactory< T >();
 		return new NtreeImgFactory< T >();
 	}
 
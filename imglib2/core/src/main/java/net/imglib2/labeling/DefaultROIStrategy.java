@@ -38,18 +38,30 @@ package net.imglib2.labeling;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
-import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.roi.AbstractIterableRegionOfInterest;
 import net.imglib2.roi.IterableRegionOfInterest;
 import net.imglib2.roi.RegionOfInterest;
 
 /**
  * A relatively conservative strategy suitable for blobby objects - retain the
- * bounding boxes and raster starts and reconstruct the cursors by scanning.
+ * bounding boxes, raster starts and run-length encoded pixels of every label
+ * and reconstruct the cursors from the runs.
+ * 
+ * The statistics are computed lazily in one pass over the labeling, split
+ * into rows along dimension 0 that are processed in parallel by the
+ * {@link TaskExecutor}. Each label records its pixels as runs along
+ * dimension 0 in raster order, so iterating over the region of interest of
+ * a label takes time proportional to the label's area, not to the size of
+ * the labeling.
  * 
  * @param <T>
  *            - the type used to label the space
@@ -71,11 +83,21 @@ public class DefaultROIStrategy< T extends Comparable< T >, L extends Labeling<
 
 		private long area = 0;
 
+		/**
+		 * The runs of the label in raster order. Run i occupies
+		 * runs[i * (n + 1) ... (i + 1) * (n + 1) - 1]: the position of its
+		 * first pixel followed by its end (exclusive) in dimension 0.
+		 */
+		private long[] runs;
+
+		private int numRuns = 0;
+
 		public LabelStatistics( final int dimensions )
 		{
 			super( dimensions );
 			rasterStart = new long[ dimensions ];
 			Arrays.fill( rasterStart, Integer.MAX_VALUE );
+			runs = new long[ 4 * ( dimensions + 1 ) ];
 		}
 
 		public void getRasterStart( final long[] start )
@@ -88,11 +110,61 @@ public class DefaultROIStrategy< T extends Comparable< T >, L extends Labeling<
 			return area;
 		}
 
-		@Override
-		public void update( final long[] position )
+		/**
+		 * Add the run from start to (start[0] = runEnd - 1) to the label. Runs
+		 * must be added in raster order, a run that continues the last run is
+		 * merged with it.
+		 */
+		void addRun( final long[] start, final long runEnd )
+		{
+			final int n = min.length;
+			final int stride = n + 1;
+			final int last = ( numRuns - 1 ) * stride;
+			if ( numRuns > 0 && runs[ last + n ] == start[ 0 ] && sameRow( runs, last, start ) )
+			{
+				runs[ last + n ] = runEnd;
+			}
+			else
+			{
+				if ( ( numRuns + 1 ) * stride > runs.length )
+					runs = Arrays.copyOf( runs, 2 * runs.length );
+				final int o = numRuns * stride;
+				System.arraycopy( start, 0, runs, o, n );
+				runs[ o + n ] = runEnd;
+				++numRuns;
+				updateRasterStart( start );
+			}
+			area += runEnd - start[ 0 ];
+			if ( start[ 0 ] < min[ 0 ] )
+				min[ 0 ] = start[ 0 ];
+			if ( runEnd - 1 > max[ 0 ] )
+				max[ 0 ] = runEnd - 1;
+			for ( int i = 1; i < n; i++ )
+			{
+				if ( start[ i ] < min[ i ] )
+					min[ i ] = start[ i ];
+				if ( start[ i ] > max[ i ] )
+					max[ i ] = start[ i ];
+			}
+		}
+
+		/**
+		 * Append the runs of a label that were collected from rows following
+		 * all rows of this label.
+		 */
+		void append( final LabelStatistics other )
+		{
+			final int stride = min.length + 1;
+			final long[] start = new long[ min.length ];
+			for ( int r = 0; r < other.numRuns; r++ )
+			{
+				System.arraycopy( other.runs, r * stride, start, 0, min.length );
+				addRun( start, other.runs[ r * stride + min.length ] );
+			}
+		}
+
+		private void updateRasterStart( final long[] position )
 		{
-			super.update( position );
-			area++;
 			for ( int i = 0; i < rasterStart.length; i++ )
 			{
 				if ( rasterStart[ i ] > position[ i ] )
@@ -103,6 +175,48 @@ public class DefaultROIStrategy< T extends Comparable< T >, L extends Labeling<
 				else if ( rasterStart[ i ] < position[ i ] ) { return; }
 			}
 		}
+
+		/**
+		 * Find the first run that ends after the given position in raster
+		 * order.
+		 * 
+		 * @return the index of the run or numRuns if there is none.
+		 */
+		int findRun( final long[] position )
+		{
+			final int stride = min.length + 1;
+			int lo = 0;
+			int hi = numRuns;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				if ( isBefore( mid * stride, position ) )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		private boolean isBefore( final int o, final long[] position )
+		{
+			for ( int i = min.length - 1; i > 0; i-- )
+			{
+				if ( runs[ o + i ] < position[ i ] )
+					return true;
+				else if ( runs[ o + i ] > position[ i ] )
+					return false;
+			}
+			return runs[ o + min.length ] <= position[ 0 ];
+		}
+	}
+
+	private static boolean sameRow( final long[] runs, final int o, final long[] position )
+	{
+		for ( int i = 1; i < position.length; i++ )
+			if ( runs[ o + i ] != position[ i ] )
+				return false;
+		return true;
 	}
 
 	protected Map< T, LabelStatistics > statistics;
@@ -118,37 +232,118 @@ public class DefaultROIStrategy< T extends Comparable< T >, L extends Labeling<
 	 */
 	protected synchronized void computeStatistics()
 	{
-		LabelingType< T > type = labeling.firstElement();
+		final LabelingType< T > type = labeling.firstElement();
 		if ( ( type == null ) || ( type.getGeneration() != generation ) )
 		{
+			final int n = labeling.numDimensions();
+			long numRows = 1;
+			for ( int d = 1; d < n; d++ )
+				numRows *= labeling.dimension( d );
+
+			final List< Map< T, LabelStatistics > > rowStatistics = new ArrayList< Map< T, LabelStatistics > >();
+			final List< Long > rowStarts = new ArrayList< Long >();
+			TaskExecutor.getInstance().forEachChunk( numRows, new ChunkTask()
+			{
+				@Override
+				public void run( final long startRow, final long loopSize )
+				{
+					final Map< T, LabelStatistics > chunkStatistics = computeStatistics( startRow, loopSize );
+					synchronized ( rowStatistics )
+					{
+						int i = 0;
+						while ( i < rowStarts.size() && rowStarts.get( i ) < startRow )
+							++i;
+						rowStarts.add( i, startRow );
+						rowStatistics.add( i, chunkStatistics );
+					}
+				}
+			} );
+
+			// concatenate the chunks in raster order
 			statistics = new HashMap< T, LabelStatistics >();
-			final long[] position = new long[ labeling.numDimensions() ];
-			LabelStatistics last = null;
-			T lastLabel = null;
-			final Cursor< LabelingType< T >> c = labeling.localizingCursor();
-			while ( c.hasNext() )
+			for ( final Map< T, LabelStatistics > chunkStatistics : rowStatistics )
+			{
+				for ( final Map.Entry< T, LabelStatistics > entry : chunkStatistics.entrySet() )
+				{
+					final LabelStatistics stats = statistics.get( entry.getKey() );
+					if ( stats == null )
+						statistics.put( entry.getKey(), entry.getValue() );
+					else
+						stats.append( entry.getValue() );
+				}
+			}
+
+			generation = type == null ? Long.MIN_VALUE : type.getGeneration();
+		}
+	}
+
+	/**
+	 * Collect the runs of all labels in the rows [startRow, startRow +
+	 * numRows), where the rows are the lines along dimension 0 in raster
+	 * order.
+	 */
+	private Map< T, LabelStatistics > computeStatistics( final long startRow, final long numRows )
+	{
+		final int n = labeling.numDimensions();
+		final long width = labeling.dimension( 0 );
+		final Map< T, LabelStatistics > chunkStatistics = new HashMap< T, LabelStatistics >();
+		// the label sets are interned, so the statistics of a set can be
+		// looked up by identity
+		final IdentityHashMap< List< T >, List< LabelStatistics > > setStatistics = new IdentityHashMap< List< T >, List< LabelStatistics > >();
+		final RandomAccess< LabelingType< T > > ra = labeling.randomAccess();
+		final long[] start = new long[ n ];
+
+		for ( long row = startRow; row < startRow + numRows; ++row )
+		{
+			long r = row;
+			start[ 0 ] = labeling.min( 0 );
+			for ( int d = 1; d < n; d++ )
 			{
-				type = c.next();
-				c.localize( position );
+				final long size = labeling.dimension( d );
+				start[ d ] = labeling.min( d ) + r % size;
+				r /= size;
+			}
+			ra.setPosition( start );
 
-				for ( final T label : type.getLabeling() )
+			List< T > current = null;
+			long runStart = start[ 0 ];
+			for ( long x = 0; x <= width; ++x )
+			{
+				final List< T > labels = x < width ? ra.get().getLabeling() : null;
+				if ( labels != current )
 				{
-					if ( ( last == null ) || ( !label.equals( lastLabel ) ) )
+					if ( current != null && !current.isEmpty() )
 					{
-						lastLabel = label;
-						last = statistics.get( label );
-						if ( last == null )
+						List< LabelStatistics > stats = setStatistics.get( current );
+						if ( stats == null )
 						{
-							last = new LabelStatistics( labeling.numDimensions() );
-							statistics.put( label, last );
+							stats = new ArrayList< LabelStatistics >( current.size() );
+							for ( final T label : current )
+							{
+								LabelStatistics s = chunkStatistics.get( label );
+								if ( s == null )
+								{
+									s = new LabelStatistics( n );
+									chunkStatistics.put( label, s );
+								}
+								stats.add( s );
+							}
+							setStatistics.put( current, stats );
 						}
+						final long runEnd = start[ 0 ] + x;
+						start[ 0 ] = runStart;
+						for ( final LabelStatistics s : stats )
+							s.addRun( start, runEnd );
+						start[ 0 ] = labeling.min( 0 );
 					}
-					last.update( position );
+					current = labels;
+					runStart = start[ 0 ] + x;
 				}
+				if ( x < width - 1 )
+					ra.fwd( 0 );
 			}
-
-			generation = type.getGeneration();
 		}
+		return chunkStatistics;
 	}
 
 	@Override
@@ -276,43 +471,19 @@ public class DefaultROIStrategy< T extends Comparable< T >, L extends Labeling<
 		@Override
 		protected boolean nextRaster( final long[] position, final long[] end )
 		{
-			for ( int i = numDimensions() - 1; i >= 0; i-- )
-			{
-				if ( position[ i ] < min[ i ] )
-				{
-					System.arraycopy( min, 0, position, 0, i + 1 );
-					// Pre-decrement in anticipation of one increment.
-					position[ 0 ]--;
-					break;
-				}
-			}
-			do
-			{
-				int i;
-				for ( i = 0; i < numDimensions(); i++ )
-				{
-					if ( position[ i ] >= max[ i ] )
-					{
-						position[ i ] = min[ i ];
-					}
-					else
-					{
-						position[ i ]++;
-						break;
-					}
-				}
-				if ( i == numDimensions() )
-					return false;
-				randomAccess.setPosition( position );
-			}
-			while ( !randomAccess.get().getLabeling().contains( label ) );
-			System.arraycopy( position, 0, end, 0, numDimensions() );
-			do
-			{
-				end[ 0 ]++;
-				randomAccess.setPosition( end );
-			}
-			while ( ( end[ 0 ] <= max[ 0 ] ) && ( randomAccess.get().getLabeling().contains( label ) ) );
+			final int r = labelStats.findRun( position );
+			if ( r == labelStats.numRuns )
+				return false;
+			final int n = numDimensions();
+			final int o = r * ( n + 1 );
+			final long x = position[ 0 ];
+			final boolean sameRow = sameRow( labelStats.runs, o, position );
+			System.arraycopy( labelStats.runs, o, position, 0, n );
+			System.arraycopy( labelStats.runs, o, end, 0, n );
+			// a run that contains the position is continued from there
+			if ( sameRow && x > position[ 0 ] )
+				position[ 0 ] = x;
+			end[ 0 ] = labelStats.runs[ o + n ];
 			return true;
 		}
 
@@ -0,0 +1,463 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.multithreading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+/**
+ * A process-wide pool of worker threads that replaces creating new
+ * {@link Thread} objects for every multithreaded call (see
+ * {@link SimpleMultiThreading#startAndJoin(Thread[])}).
+ *
+ * <p>
+ * Work is handed to the pool as a list of tasks or as a parallel loop over
+ * flat index ranges or {@link Interval Intervals}. The range is cut into more
+ * chunks than there are threads, and every participating thread keeps
+ * claiming the next unprocessed chunk until none are left, so that threads
+ * finishing early take over work from slower ones. The calling thread always
+ * participates in the work. Therefore, a parallel loop that is started from
+ * within a worker thread of the pool (nested parallelism) never waits for
+ * tasks that cannot be scheduled, it simply processes the remaining chunks
+ * itself.
+ * </p>
+ *
+ * <p>
+ * The number of threads of the shared instance defaults to the number of
+ * available processors, and can be changed with {@link #setNumThreads(int)}
+ * or the system property <code>imglib2.numThreads</code>.
+ * </p>
+ */
+public class TaskExecutor
+{
+	/**
+	 * How many chunks per thread a range is divided into by
+	 * {@link #forEachChunk(long, int, ChunkTask)}.
+	 */
+	public static final int CHUNKS_PER_THREAD = 4;
+
+	private static TaskExecutor instance = null;
+
+	/**
+	 * @return the shared {@link TaskExecutor}, which is created on first use.
+	 */
+	public static synchronized TaskExecutor getInstance()
+	{
+		if ( instance == null )
+			instance = new TaskExecutor( defaultNumThreads() );
+
+		return instance;
+	}
+
+	/**
+	 * Replace the shared {@link TaskExecutor} by one with the given number of
+	 * threads. The old instance still accepts work from callers that obtained
+	 * it before, but its threads terminate once they are idle.
+	 *
+	 * @param numThreads - the number of threads, at least 1
+	 */
+	public static synchronized void setNumThreads( final int numThreads )
+	{
+		final TaskExecutor old = instance;
+		instance = new TaskExecutor( numThreads );
+
+		if ( old != null )
+		{
+			old.executor.setKeepAliveTime( 1, TimeUnit.SECONDS );
+			old.executor.allowCoreThreadTimeOut( true );
+		}
+	}
+
+	protected static int defaultNumThreads()
+	{
+		final String property = System.getProperty( "imglib2.numThreads" );
+
+		if ( property != null )
+		{
+			try
+			{
+				return Math.max( 1, Integer.parseInt( property.trim() ) );
+			}
+			catch ( final NumberFormatException e )
+			{
+				System.err.println( "TaskExecutor: cannot parse imglib2.numThreads=" + property + ", using all processors." );
+			}
+		}
+
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	final int numThreads;
+	final ThreadPoolExecutor executor;
+
+	/**
+	 * Create a new {@link TaskExecutor} with its own pool of threads. Usually
+	 * the shared instance ({@link #getInstance()}) should be used instead.
+	 *
+	 * @param numThreads - the number of threads, at least 1
+	 */
+	public TaskExecutor( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ThreadFactory threadFactory = new ThreadFactory()
+		{
+			@Override
+			public Thread newThread( final Runnable r )
+			{
+				final Thread thread = new Thread( r, "imglib2-worker-" + threadCount.incrementAndGet() );
+				thread.setDaemon( true );
+				thread.setPriority( Thread.NORM_PRIORITY );
+				return thread;
+			}
+		};
+
+		this.executor = new ThreadPoolExecutor( this.numThreads, this.numThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue< Runnable >(), threadFactory );
+	}
+
+	/**
+	 * @return the number of threads in the pool
+	 */
+	public int getNumThreads() { return numThreads; }
+
+	/**
+	 * @return the underlying {@link ExecutorService}, for submitting
+	 *         independent, asynchronous tasks
+	 */
+	public ExecutorService getExecutorService() { return executor; }
+
+	/**
+	 * Stop accepting new tasks, the threads terminate once all submitted
+	 * tasks are done. Parallel loops started afterwards run on the calling
+	 * thread only.
+	 */
+	public void shutdown() { executor.shutdown(); }
+
+	/**
+	 * Run all tasks, using up to {@link #getNumThreads()} threads including
+	 * the calling thread, and return when all of them are done.
+	 *
+	 * @param tasks - the tasks to run, each is run exactly once
+	 */
+	public void run( final List< ? extends Runnable > tasks )
+	{
+		run( tasks, numThreads );
+	}
+
+	/**
+	 * Run all tasks, using up to numThreads threads including the calling
+	 * thread, and return when all of them are done. If a task throws an
+	 * exception the remaining tasks are still run, and the first exception is
+	 * rethrown afterwards.
+	 *
+	 * @param tasks - the tasks to run, each is run exactly once
+	 * @param numThreads - the maximal number of tasks that run concurrently
+	 */
+	public void run( final List< ? extends Runnable > tasks, final int numThreads )
+	{
+		final int numTasks = tasks.size();
+		final int numWorkers = Math.min( Math.max( 1, numThreads ), numTasks );
+
+		if ( numWorkers == 0 )
+			return;
+
+		// the first exception thrown by any task, the worker loops catch it so
+		// that every task is run even if another one failed
+		final AtomicReference< Throwable > firstError = new AtomicReference< Throwable >();
+		final AtomicInteger nextTask = new AtomicInteger();
+		final Runnable worker = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for ( int i = nextTask.getAndIncrement(); i < numTasks; i = nextTask.getAndIncrement() )
+				{
+					try
+					{
+						tasks.get( i ).run();
+					}
+					catch ( final Throwable t )
+					{
+						firstError.compareAndSet( null, t );
+					}
+				}
+			}
+		};
+
+		if ( numWorkers == 1 )
+		{
+			worker.run();
+			rethrow( firstError.get() );
+			return;
+		}
+
+		final ArrayList< Helper > helpers = new ArrayList< Helper >( numWorkers - 1 );
+		for ( int i = 1; i < numWorkers; ++i )
+		{
+			final Helper helper = new Helper( worker );
+			try
+			{
+				helper.future = executor.submit( helper );
+			}
+			catch ( final RejectedExecutionException e )
+			{
+				// shut down, the calling thread runs the remaining tasks
+				break;
+			}
+			helpers.add( helper );
+		}
+
+		worker.run();
+		Throwable error = null;
+
+		// at this point every task has been claimed by some thread, helpers
+		// that did not start yet are not needed anymore (and might never
+		// start if all pool threads are blocked in nested calls)
+		boolean interrupted = false;
+		for ( final Helper helper : helpers )
+		{
+			if ( helper.claim() )
+			{
+				helper.future.cancel( false );
+				continue;
+			}
+
+			while ( true )
+			{
+				try
+				{
+					helper.future.get();
+					break;
+				}
+				catch ( final InterruptedException e )
+				{
+					interrupted = true;
+				}
+				catch ( final ExecutionException e )
+				{
+					if ( error == null )
+						error = e.getCause();
+					break;
+				}
+			}
+		}
+
+		if ( interrupted )
+			Thread.currentThread().interrupt();
+
+		if ( firstError.get() != null )
+			error = firstError.get();
+		rethrow( error );
+	}
+
+	private static void rethrow( final Throwable error )
+	{
+		if ( error != null )
+		{
+			if ( error instanceof RuntimeException )
+				throw ( RuntimeException ) error;
+			else if ( error instanceof Error )
+				throw ( Error ) error;
+			else
+				throw new RuntimeException( error );
+		}
+	}
+
+	/**
+	 * Parallel loop over the flat index range [0, size) using all threads.
+	 *
+	 * @see #forEachChunk(long, int, ChunkTask)
+	 */
+	public void forEachChunk( final long size, final ChunkTask task )
+	{
+		forEachChunk( size, numThreads, task );
+	}
+
+	/**
+	 * Parallel loop over the flat index range [0, size). The range is divided
+	 * into {@link #CHUNKS_PER_THREAD} chunks per thread (but at most size
+	 * chunks), which are processed by up to numThreads threads.
+	 *
+	 * @param size - the number of indices
+	 * @param numThreads - the maximal number of threads that are used
+	 * @param task - called once for every chunk
+	 */
+	public void forEachChunk( final long size, final int numThreads, final ChunkTask task )
+	{
+		if ( size <= 0 )
+			return;
+
+		final int numWorkers = Math.max( 1, numThreads );
+
+		if ( numWorkers == 1 )
+		{
+			task.run( 0, size );
+			return;
+		}
+
+		final int numChunks = ( int ) Math.min( size, ( long ) numWorkers * CHUNKS_PER_THREAD );
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( size, numChunks );
+
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >( numChunks );
+		for ( final Chunk chunk : chunks )
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					task.run( chunk.getStartPosition(), chunk.getLoopSize() );
+				}
+			} );
+
+		run( tasks, numWorkers );
+	}
+
+	/**
+	 * Parallel loop over an {@link Interval} using all threads.
+	 *
+	 * @see #forEachInterval(Interval, int, IntervalTask)
+	 */
+	public void forEachInterval( final Interval interval, final IntervalTask task )
+	{
+		forEachInterval( interval, numThreads, task );
+	}
+
+	/**
+	 * Parallel loop over an {@link Interval}. The interval is cut into slabs
+	 * along its largest dimension, {@link #CHUNKS_PER_THREAD} slabs per thread
+	 * (but at most one per slice), which are processed by up to numThreads
+	 * threads.
+	 *
+	 * @param interval - the interval to process
+	 * @param numThreads - the maximal number of threads that are used
+	 * @param task - called once for every slab
+	 */
+	public void forEachInterval( final Interval interval, final int numThreads, final IntervalTask task )
+	{
+		int splitDim = 0;
+		for ( int d = 1; d < interval.numDimensions(); ++d )
+			if ( interval.dimension( d ) > interval.dimension( splitDim ) )
+				splitDim = d;
+
+		forEachInterval( interval, splitDim, numThreads, task );
+	}
+
+	/**
+	 * Parallel loop over an {@link Interval}, which is cut into slabs along
+	 * the given dimension.
+	 *
+	 * @param interval - the interval to process
+	 * @param splitDim - the dimension along which the interval is cut
+	 * @param numThreads - the maximal number of threads that are used
+	 * @param task - called once for every slab
+	 */
+	public void forEachInterval( final Interval interval, final int splitDim, final int numThreads, final IntervalTask task )
+	{
+		final int n = interval.numDimensions();
+
+		if ( n == 0 )
+		{
+			task.run( interval );
+			return;
+		}
+
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		interval.min( min );
+		interval.max( max );
+
+		final long offset = min[ splitDim ];
+
+		forEachChunk( interval.dimension( splitDim ), numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				final long[] slabMin = min.clone();
+				final long[] slabMax = max.clone();
+				slabMin[ splitDim ] = offset + startPosition;
+				slabMax[ splitDim ] = offset + startPosition + loopSize - 1;
+
+				task.run( new FinalInterval( slabMin, slabMax ) );
+			}
+		} );
+	}
+
+	/**
+	 * Runs the worker loop on a pool thread unless the calling thread
+	 * claimed it first because the loop was already finished.
+	 */
+	static class Helper implements Runnable
+	{
+		final Runnable worker;
+		final AtomicBoolean claimed = new AtomicBoolean( false );
+		Future< ? > future;
+
+		public Helper( final Runnable worker )
+		{
+			this.worker = worker;
+		}
+
+		public boolean claim()
+		{
+			return claimed.compareAndSet( false, true );
+		}
+
+		@Override
+		public void run()
+		{
+			if ( claim() )
+				worker.run();
+		}
+	}
+}
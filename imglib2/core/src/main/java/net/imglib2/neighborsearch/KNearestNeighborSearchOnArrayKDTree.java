@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.neighborsearch;
+
+import net.imglib2.EuclideanSpace;
+import net.imglib2.RealLocalizable;
+import net.imglib2.collection.ArrayKDTree;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+
+/**
+ * <em>k</em>-nearest neighbor search on an {@link ArrayKDTree}.
+ *
+ * <p>
+ * Neighbors are reported by their point index (see
+ * {@link ArrayKDTree#getPointIndex(int)}) and squared distance, ordered by
+ * ascending distance. A search does not allocate any objects, so one instance
+ * can answer many queries. In a multi-threaded application, each thread needs
+ * its own instance, or use
+ * {@link #searchAll(ArrayKDTree, int, double[], int[], double[], int)} to
+ * answer many queries concurrently.
+ * </p>
+ */
+public class KNearestNeighborSearchOnArrayKDTree implements EuclideanSpace
+{
+	protected final ArrayKDTree tree;
+
+	protected final double[] positions;
+
+	protected final int size;
+
+	protected final int n;
+
+	protected final double[] pos;
+
+	protected final int k;
+
+	protected final int[] bestNodes;
+
+	protected final double[] bestSquDistances;
+
+	public KNearestNeighborSearchOnArrayKDTree( final ArrayKDTree tree, final int k )
+	{
+		if ( k < 1 )
+			throw new IllegalArgumentException( "k must be at least 1" );
+		this.tree = tree;
+		this.positions = tree.getPositions();
+		this.size = tree.size();
+		this.n = tree.numDimensions();
+		this.pos = new double[ n ];
+		this.k = k;
+		this.bestNodes = new int[ k ];
+		this.bestSquDistances = new double[ k ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	public int getK()
+	{
+		return k;
+	}
+
+	/**
+	 * Search the k nearest neighbors of the given reference point.
+	 */
+	public void search( final RealLocalizable reference )
+	{
+		reference.localize( pos );
+		search();
+	}
+
+	/**
+	 * Search the k nearest neighbors of the given reference point.
+	 */
+	public void search( final double[] reference )
+	{
+		search( reference, 0 );
+	}
+
+	/**
+	 * Search the k nearest neighbors of the reference point with coordinates
+	 * {@code references[ offset ]} to {@code references[ offset + n - 1 ]}.
+	 */
+	public void search( final double[] references, final int offset )
+	{
+		System.arraycopy( references, offset, pos, 0, n );
+		search();
+	}
+
+	protected void search()
+	{
+		for ( int i = 0; i < k; ++i )
+		{
+			bestNodes[ i ] = -1;
+			bestSquDistances[ i ] = Double.MAX_VALUE;
+		}
+		if ( size > 0 )
+			searchNode( 0, 0 );
+	}
+
+	protected void searchNode( final int node, final int d )
+	{
+		// consider the current node
+		final int o = node * n;
+		double squDistance = 0;
+		for ( int dd = 0; dd < n; ++dd )
+		{
+			final double diff = positions[ o + dd ] - pos[ dd ];
+			squDistance += diff * diff;
+		}
+		if ( squDistance < bestSquDistances[ k - 1 ] )
+		{
+			int i = k - 1;
+			for ( int j = i - 1; i > 0 && squDistance < bestSquDistances[ j ]; --i, --j )
+			{
+				bestSquDistances[ i ] = bestSquDistances[ j ];
+				bestNodes[ i ] = bestNodes[ j ];
+			}
+			bestSquDistances[ i ] = squDistance;
+			bestNodes[ i ] = node;
+		}
+
+		final double axisDiff = pos[ d ] - positions[ o + d ];
+		final double axisSquDistance = axisDiff * axisDiff;
+		final int left = 2 * node + 1;
+		final int nearChild = axisDiff < 0 ? left : left + 1;
+		final int awayChild = axisDiff < 0 ? left + 1 : left;
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+
+		// search the near branch
+		if ( nearChild < size )
+			searchNode( nearChild, dChild );
+
+		// search the away branch - maybe
+		if ( axisSquDistance <= bestSquDistances[ k - 1 ] && awayChild < size )
+			searchNode( awayChild, dChild );
+	}
+
+	/**
+	 * @return the number of neighbors found by the last search, which is k
+	 *         unless the tree has fewer points.
+	 */
+	public int numNeighbors()
+	{
+		return Math.min( k, size );
+	}
+
+	/**
+	 * @return the tree node of the i-th nearest neighbor.
+	 */
+	public int getNode( final int i )
+	{
+		return bestNodes[ i ];
+	}
+
+	/**
+	 * @return the point index of the i-th nearest neighbor.
+	 */
+	public int getPointIndex( final int i )
+	{
+		return tree.getPointIndex( bestNodes[ i ] );
+	}
+
+	public double getSquareDistance( final int i )
+	{
+		return bestSquDistances[ i ];
+	}
+
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( bestSquDistances[ i ] );
+	}
+
+	/**
+	 * Search the k nearest neighbors of many reference points concurrently.
+	 * The results for the q-th reference point are stored at
+	 * {@code pointIndices[ q * k ]} to {@code pointIndices[ q * k + k - 1 ]},
+	 * and likewise in squDistances. If the tree has fewer than k points, the
+	 * remaining point indices are -1.
+	 *
+	 * @param tree
+	 *            the tree to search
+	 * @param k
+	 *            the number of neighbors per reference point
+	 * @param references
+	 *            interleaved coordinates of the reference points
+	 * @param pointIndices
+	 *            receives the point indices of the neighbors, must have space
+	 *            for k entries per reference point
+	 * @param squDistances
+	 *            receives the squared distances of the neighbors, may be null
+	 * @param numThreads
+	 *            number of threads to use
+	 */
+	public static void searchAll( final ArrayKDTree tree, final int k, final double[] references, final int[] pointIndices, final double[] squDistances, final int numThreads )
+	{
+		final int n = tree.numDimensions();
+		final int numReferences = references.length / n;
+		final long numResults = ( long ) numReferences * k;
+		if ( pointIndices.length < numResults || ( squDistances != null && squDistances.length < numResults ) )
+			throw new IllegalArgumentException( "result arrays must have space for " + numResults + " elements" );
+
+		TaskExecutor.getInstance().forEachChunk( numReferences, numThreads, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				final KNearestNeighborSearchOnArrayKDTree search = new KNearestNeighborSearchOnArrayKDTree( tree, k );
+				final int found = search.numNeighbors();
+				final int end = ( int ) ( startPosition + loopSize );
+				for ( int q = ( int ) startPosition; q < end; ++q )
+				{
+					search.search( references, q * n );
+					final int o = q * k;
+					for ( int i = 0; i < found; ++i )
+						pointIndices[ o + i ] = tree.getPointIndex( search.bestNodes[ i ] );
+					for ( int i = found; i < k; ++i )
+						pointIndices[ o + i ] = -1;
+					if ( squDistances != null )
+						System.arraycopy( search.bestSquDistances, 0, squDistances, o, k );
+				}
+			}
+		} );
+	}
+}
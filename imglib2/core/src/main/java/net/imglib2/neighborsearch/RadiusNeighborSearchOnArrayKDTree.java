@@ -0,0 +1,433 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.neighborsearch;
+
+import java.util.ArrayList;
+import java.util.Vector;
+
+import net.imglib2.EuclideanSpace;
+import net.imglib2.RealLocalizable;
+import net.imglib2.collection.ArrayKDTree;
+import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.multithreading.TaskExecutor;
+
+/**
+ * Radius neighbor search on an {@link ArrayKDTree}.
+ *
+ * <p>
+ * Neighbors are reported by their point index (see
+ * {@link ArrayKDTree#getPointIndex(int)}) and squared distance. The results
+ * are collected in primitive arrays that grow as needed and are reused by the
+ * next search, so once they are large enough a search does not allocate any
+ * objects. In a multi-threaded application, each thread needs its own
+ * instance, or use
+ * {@link #searchAll(ArrayKDTree, double[], double, boolean, int)} to answer
+ * many queries concurrently.
+ * </p>
+ */
+public class RadiusNeighborSearchOnArrayKDTree implements EuclideanSpace
+{
+	protected final ArrayKDTree tree;
+
+	protected final double[] positions;
+
+	protected final int size;
+
+	protected final int n;
+
+	protected final double[] pos;
+
+	protected double squRadius;
+
+	protected int numNeighbors;
+
+	protected int[] nodes;
+
+	protected double[] squDistances;
+
+	public RadiusNeighborSearchOnArrayKDTree( final ArrayKDTree tree )
+	{
+		this.tree = tree;
+		this.positions = tree.getPositions();
+		this.size = tree.size();
+		this.n = tree.numDimensions();
+		this.pos = new double[ n ];
+		this.nodes = new int[ 16 ];
+		this.squDistances = new double[ 16 ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Search all points within radius about the reference point. A point is
+	 * considered within radius if its distance to the reference is smaller or
+	 * equal the radius.
+	 *
+	 * @param sortResults
+	 *            whether the results should be ordered by ascending distances
+	 *            to reference.
+	 */
+	public void search( final RealLocalizable reference, final double radius, final boolean sortResults )
+	{
+		reference.localize( pos );
+		search( radius, sortResults );
+	}
+
+	/**
+	 * @see #search(RealLocalizable, double, boolean)
+	 */
+	public void search( final double[] reference, final double radius, final boolean sortResults )
+	{
+		search( reference, 0, radius, sortResults );
+	}
+
+	/**
+	 * Search all points within radius about the reference point with
+	 * coordinates {@code references[ offset ]} to
+	 * {@code references[ offset + n - 1 ]}.
+	 *
+	 * @see #search(RealLocalizable, double, boolean)
+	 */
+	public void search( final double[] references, final int offset, final double radius, final boolean sortResults )
+	{
+		System.arraycopy( references, offset, pos, 0, n );
+		search( radius, sortResults );
+	}
+
+	protected void search( final double radius, final boolean sortResults )
+	{
+		assert radius >= 0;
+		squRadius = radius * radius;
+		numNeighbors = 0;
+		if ( size > 0 )
+			searchNode( 0, 0 );
+		if ( sortResults )
+			sort( 0, numNeighbors - 1 );
+	}
+
+	protected void searchNode( final int node, final int d )
+	{
+		// consider the current node
+		final int o = node * n;
+		double squDistance = 0;
+		for ( int dd = 0; dd < n; ++dd )
+		{
+			final double diff = positions[ o + dd ] - pos[ dd ];
+			squDistance += diff * diff;
+		}
+		if ( squDistance <= squRadius )
+		{
+			if ( numNeighbors == nodes.length )
+			{
+				final int capacity = nodes.length * 2;
+				final int[] newNodes = new int[ capacity ];
+				System.arraycopy( nodes, 0, newNodes, 0, numNeighbors );
+				nodes = newNodes;
+				final double[] newSquDistances = new double[ capacity ];
+				System.arraycopy( squDistances, 0, newSquDistances, 0, numNeighbors );
+				squDistances = newSquDistances;
+			}
+			nodes[ numNeighbors ] = node;
+			squDistances[ numNeighbors ] = squDistance;
+			++numNeighbors;
+		}
+
+		final double axisDiff = pos[ d ] - positions[ o + d ];
+		final double axisSquDistance = axisDiff * axisDiff;
+		final int left = 2 * node + 1;
+		final int nearChild = axisDiff < 0 ? left : left + 1;
+		final int awayChild = axisDiff < 0 ? left + 1 : left;
+		final int dChild = ( d + 1 == n ) ? 0 : d + 1;
+
+		// search the near branch
+		if ( nearChild < size )
+			searchNode( nearChild, dChild );
+
+		// search the away branch - maybe
+		if ( axisSquDistance <= squRadius && awayChild < size )
+			searchNode( awayChild, dChild );
+	}
+
+	/**
+	 * Sort the results from i to j (inclusive) by ascending distance.
+	 */
+	private void sort( int i, int j )
+	{
+		while ( j - i > 16 )
+		{
+			final double pivot = squDistances[ ( i + j ) >>> 1 ];
+			int l = i, r = j;
+			while ( l <= r )
+			{
+				while ( squDistances[ l ] < pivot )
+					++l;
+				while ( squDistances[ r ] > pivot )
+					--r;
+				if ( l <= r )
+					swap( l++, r-- );
+			}
+			// recurse into the smaller part, loop on the larger one
+			if ( r - i < j - l )
+			{
+				sort( i, r );
+				i = l;
+			}
+			else
+			{
+				sort( l, j );
+				j = r;
+			}
+		}
+		for ( int a = i + 1; a <= j; ++a )
+			for ( int b = a; b > i && squDistances[ b ] < squDistances[ b - 1 ]; --b )
+				swap( b, b - 1 );
+	}
+
+	private void swap( final int a, final int b )
+	{
+		final int node = nodes[ a ];
+		nodes[ a ] = nodes[ b ];
+		nodes[ b ] = node;
+		final double squDistance = squDistances[ a ];
+		squDistances[ a ] = squDistances[ b ];
+		squDistances[ b ] = squDistance;
+	}
+
+	/**
+	 * @return the number of points found within radius by the last search.
+	 */
+	public int numNeighbors()
+	{
+		return numNeighbors;
+	}
+
+	/**
+	 * @return the tree node of the i-th neighbor.
+	 */
+	public int getNode( final int i )
+	{
+		return nodes[ i ];
+	}
+
+	/**
+	 * @return the point index of the i-th neighbor.
+	 */
+	public int getPointIndex( final int i )
+	{
+		return tree.getPointIndex( nodes[ i ] );
+	}
+
+	public double getSquareDistance( final int i )
+	{
+		return squDistances[ i ];
+	}
+
+	public double getDistance( final int i )
+	{
+		return Math.sqrt( squDistances[ i ] );
+	}
+
+	/**
+	 * The neighbors of many reference points, as found by
+	 * {@link RadiusNeighborSearchOnArrayKDTree#searchAll(ArrayKDTree, double[], double, boolean, int)}.
+	 * The neighbors of the q-th reference point are stored from
+	 * {@code offsets[ q ]} (inclusive) to {@code offsets[ q + 1 ]} (exclusive)
+	 * in the point index and squared distance arrays.
+	 */
+	public static class Neighbors
+	{
+		protected final int[] offsets;
+
+		protected final int[] pointIndices;
+
+		protected final double[] squDistances;
+
+		public Neighbors( final int[] offsets, final int[] pointIndices, final double[] squDistances )
+		{
+			this.offsets = offsets;
+			this.pointIndices = pointIndices;
+			this.squDistances = squDistances;
+		}
+
+		/**
+		 * @return the number of reference points.
+		 */
+		public int numReferences()
+		{
+			return offsets.length - 1;
+		}
+
+		public int numNeighbors( final int q )
+		{
+			return offsets[ q + 1 ] - offsets[ q ];
+		}
+
+		/**
+		 * @return the point index of the i-th neighbor of the q-th reference
+		 *         point.
+		 */
+		public int getPointIndex( final int q, final int i )
+		{
+			return pointIndices[ offsets[ q ] + i ];
+		}
+
+		public double getSquareDistance( final int q, final int i )
+		{
+			return squDistances[ offsets[ q ] + i ];
+		}
+
+		public int[] getOffsets()
+		{
+			return offsets;
+		}
+
+		public int[] getPointIndices()
+		{
+			return pointIndices;
+		}
+
+		public double[] getSquareDistances()
+		{
+			return squDistances;
+		}
+	}
+
+	/**
+	 * Search the neighbors within radius of many reference points
+	 * concurrently.
+	 *
+	 * @param tree
+	 *            the tree to search
+	 * @param references
+	 *            interleaved coordinates of the reference points
+	 * @param radius
+	 *            the radius about each reference point
+	 * @param sortResults
+	 *            whether the neighbors of each reference point should be
+	 *            ordered by ascending distances
+	 * @param numThreads
+	 *            number of threads to use
+	 * @return the neighbors of all reference points
+	 */
+	public static Neighbors searchAll( final ArrayKDTree tree, final double[] references, final double radius, final boolean sortResults, final int numThreads )
+	{
+		final int n = tree.numDimensions();
+		final int numReferences = references.length / n;
+		final int[] offsets = new int[ numReferences + 1 ];
+
+		final int numChunks = ( int ) Math.min( numReferences, ( long ) Math.max( 1, numThreads ) * TaskExecutor.CHUNKS_PER_THREAD );
+		if ( numChunks == 0 )
+			return new Neighbors( offsets, new int[ 0 ], new double[ 0 ] );
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( numReferences, numChunks );
+
+		// every chunk collects its neighbors in its own arrays, storing the
+		// number of neighbors of reference q in offsets[ q + 1 ]
+		final int[][] chunkPointIndices = new int[ numChunks ][];
+		final double[][] chunkSquDistances = new double[ numChunks ][];
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >( numChunks );
+		for ( int c = 0; c < numChunks; ++c )
+		{
+			final int chunkIndex = c;
+			final Chunk chunk = chunks.get( c );
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					final RadiusNeighborSearchOnArrayKDTree search = new RadiusNeighborSearchOnArrayKDTree( tree );
+					int[] pointIndices = new int[ 1024 ];
+					double[] squDistances = new double[ 1024 ];
+					int count = 0;
+					final int start = ( int ) chunk.getStartPosition();
+					final int end = start + ( int ) chunk.getLoopSize();
+					for ( int q = start; q < end; ++q )
+					{
+						search.search( references, q * n, radius, sortResults );
+						final int m = search.numNeighbors();
+						if ( count + m > pointIndices.length )
+						{
+							final int capacity = Math.max( count + m, 2 * pointIndices.length );
+							final int[] newPointIndices = new int[ capacity ];
+							System.arraycopy( pointIndices, 0, newPointIndices, 0, count );
+							pointIndices = newPointIndices;
+							final double[] newSquDistances = new double[ capacity ];
+							System.arraycopy( squDistances, 0, newSquDistances, 0, count );
+							squDistances = newSquDistances;
+						}
+						for ( int i = 0; i < m; ++i )
+							pointIndices[ count + i ] = tree.getPointIndex( search.nodes[ i ] );
+						System.arraycopy( search.squDistances, 0, squDistances, count, m );
+						count += m;
+						offsets[ q + 1 ] = m;
+					}
+					chunkPointIndices[ chunkIndex ] = pointIndices;
+					chunkSquDistances[ chunkIndex ] = squDistances;
+				}
+			} );
+		}
+		TaskExecutor.getInstance().run( tasks, numThreads );
+
+		long total = 0;
+		for ( int q = 1; q <= numReferences; ++q )
+		{
+			total += offsets[ q ];
+			if ( total > Integer.MAX_VALUE )
+				throw new IllegalStateException( "too many neighbors" );
+			offsets[ q ] = ( int ) total;
+		}
+
+		final int[] pointIndices = new int[ ( int ) total ];
+		final double[] squDistances = new double[ ( int ) total ];
+		for ( int c = 0; c < numChunks; ++c )
+		{
+			final Chunk chunk = chunks.get( c );
+			final int start = offsets[ ( int ) chunk.getStartPosition() ];
+			final int length = offsets[ ( int ) ( chunk.getStartPosition() + chunk.getLoopSize() ) ] - start;
+			System.arraycopy( chunkPointIndices[ c ], 0, pointIndices, start, length );
+			System.arraycopy( chunkSquDistances[ c ], 0, squDistances, start, length );
+			chunkPointIndices[ c ] = null;
+			chunkSquDistances[ c ] = null;
+		}
+		return new Neighbors( offsets, pointIndices, squDistances );
+	}
+}
@@ -65,6 +65,8 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 
 	private long[] cached_max;
 
+	private RegionOfInterestSpans cached_spans;
+
 	protected AbstractIterableRegionOfInterest( int nDimensions )
 	{
 		super( nDimensions );
@@ -754,6 +756,26 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 		cached_min = null;
 		cached_max = null;
 		cached_size = SIZE_NOT_CACHED;
+		cached_spans = null;
+	}
+
+	/**
+	 * Get the pixels of the ROI as spans along dimension 0. The spans are
+	 * computed once with {@link #nextRaster(long[], long[])} and cached until
+	 * the ROI changes, so iterating them repeatedly, e.g. to measure many
+	 * images, avoids re-deriving the rasters for every pixel.
+	 * 
+	 * @return the cached spans of this ROI.
+	 */
+	public RegionOfInterestSpans getSpans()
+	{
+		RegionOfInterestSpans spans = cached_spans;
+		if ( spans == null )
+		{
+			spans = RegionOfInterestSpans.rasterize( this );
+			cached_spans = spans;
+		}
+		return spans;
 	}
 
 	/**
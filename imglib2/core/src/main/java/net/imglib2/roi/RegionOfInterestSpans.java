@@ -0,0 +1,330 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.roi;
+
+import java.util.Arrays;
+
+import net.imglib2.AbstractCursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+
+/**
+ * The pixels of an {@link AbstractIterableRegionOfInterest}, rasterized once
+ * into a list of spans along dimension 0. Each span is stored in primitive
+ * arrays as its start position and its (exclusive) end along dimension 0,
+ * in the order in which {@link AbstractIterableRegionOfInterest#nextRaster(long[], long[])}
+ * produces them.
+ * 
+ * Use {@link AbstractIterableRegionOfInterest#getSpans()} to get the cached
+ * spans of a ROI, and {@link #cursor(RandomAccessible)} to iterate an image
+ * span by span.
+ */
+public final class RegionOfInterestSpans
+{
+	final private int n;
+
+	final private int numSpans;
+
+	/**
+	 * start position of span i is at [i * n, (i + 1) * n)
+	 */
+	final private long[] positions;
+
+	/**
+	 * exclusive end (in dimension 0) of each span
+	 */
+	final private long[] ends;
+
+	final private long size;
+
+	private RegionOfInterestSpans( final int n, final int numSpans, final long[] positions, final long[] ends )
+	{
+		this.n = n;
+		this.numSpans = numSpans;
+		this.positions = positions;
+		this.ends = ends;
+		long s = 0;
+		for ( int i = 0; i < numSpans; ++i )
+			s += ends[ i ] - positions[ i * n ];
+		this.size = s;
+	}
+
+	/**
+	 * Rasterize a ROI by walking all its rasters.
+	 */
+	static RegionOfInterestSpans rasterize( final AbstractIterableRegionOfInterest roi )
+	{
+		final int n = roi.numDimensions();
+		final long[] position = new long[ n ];
+		final long[] end = new long[ n ];
+		Arrays.fill( position, Long.MIN_VALUE );
+
+		long[] positions = new long[ 16 * n ];
+		long[] ends = new long[ 16 ];
+		int numSpans = 0;
+		while ( roi.nextRaster( position, end ) )
+		{
+			if ( end[ 0 ] > position[ 0 ] )
+			{
+				if ( numSpans == ends.length )
+				{
+					ends = Arrays.copyOf( ends, 2 * numSpans );
+					positions = Arrays.copyOf( positions, 2 * numSpans * n );
+				}
+				System.arraycopy( position, 0, positions, numSpans * n, n );
+				ends[ numSpans++ ] = end[ 0 ];
+			}
+			position[ 0 ] = end[ 0 ];
+		}
+		return new RegionOfInterestSpans( n, numSpans, positions, ends );
+	}
+
+	/**
+	 * Get the spans that lie within the given interval. Spans are clipped to
+	 * the interval along dimension 0.
+	 */
+	public RegionOfInterestSpans intersect( final Interval interval )
+	{
+		final long[] clippedPositions = new long[ numSpans * n ];
+		final long[] clippedEnds = new long[ numSpans ];
+		int numClipped = 0;
+		final long min0 = interval.min( 0 );
+		final long end0 = interval.max( 0 ) + 1;
+		spans:
+		for ( int i = 0; i < numSpans; ++i )
+		{
+			final int o = i * n;
+			for ( int d = 1; d < n; ++d )
+			{
+				final long p = positions[ o + d ];
+				if ( p < interval.min( d ) || p > interval.max( d ) )
+					continue spans;
+			}
+			final long start = Math.max( positions[ o ], min0 );
+			final long end = Math.min( ends[ i ], end0 );
+			if ( start >= end )
+				continue;
+			final int co = numClipped * n;
+			System.arraycopy( positions, o, clippedPositions, co, n );
+			clippedPositions[ co ] = start;
+			clippedEnds[ numClipped++ ] = end;
+		}
+		return new RegionOfInterestSpans( n, numClipped, clippedPositions, clippedEnds );
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of spans
+	 */
+	public int numSpans()
+	{
+		return numSpans;
+	}
+
+	/**
+	 * @return the total number of pixels in all spans
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the start position of a span.
+	 * 
+	 * @param span
+	 *            index of the span
+	 * @param position
+	 *            receives the start position
+	 */
+	public void getStart( final int span, final long[] position )
+	{
+		System.arraycopy( positions, span * n, position, 0, n );
+	}
+
+	/**
+	 * Get one coordinate of the start position of a span.
+	 */
+	public long getStart( final int span, final int d )
+	{
+		return positions[ span * n + d ];
+	}
+
+	/**
+	 * @return the (exclusive) end of a span along dimension 0
+	 */
+	public long getEnd( final int span )
+	{
+		return ends[ span ];
+	}
+
+	/**
+	 * @return the number of pixels in a span
+	 */
+	public long getLength( final int span )
+	{
+		return ends[ span ] - positions[ span * n ];
+	}
+
+	/**
+	 * Move a {@link RandomAccess} to the start of a span.
+	 */
+	public void setPosition( final int span, final RandomAccess< ? > ra )
+	{
+		final int o = span * n;
+		for ( int d = 0; d < n; ++d )
+			ra.setPosition( positions[ o + d ], d );
+	}
+
+	/**
+	 * Create a cursor that visits the pixels of all spans in the given source.
+	 * Within a span, the underlying {@link RandomAccess} is only moved
+	 * forward along dimension 0.
+	 */
+	public < T > AbstractCursor< T > cursor( final RandomAccessible< T > src )
+	{
+		return new SpanCursor< T >( src.randomAccess() );
+	}
+
+	private final class SpanCursor< T > extends AbstractCursor< T >
+	{
+		final private RandomAccess< T > ra;
+
+		private int span;
+
+		private long x;
+
+		private long end;
+
+		SpanCursor( final RandomAccess< T > ra )
+		{
+			super( RegionOfInterestSpans.this.n );
+			this.ra = ra;
+			reset();
+		}
+
+		SpanCursor( final SpanCursor< T > cursor )
+		{
+			super( RegionOfInterestSpans.this.n );
+			this.ra = cursor.ra.copyRandomAccess();
+			this.span = cursor.span;
+			this.x = cursor.x;
+			this.end = cursor.end;
+		}
+
+		@Override
+		public T get()
+		{
+			return ra.get();
+		}
+
+		@Override
+		public void fwd()
+		{
+			if ( ++x < end )
+				ra.fwd( 0 );
+			else
+				startSpan( span + 1 );
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			long remaining = steps;
+			while ( x + remaining >= end )
+			{
+				remaining -= end - x;
+				startSpan( span + 1 );
+			}
+			x += remaining;
+			ra.move( remaining, 0 );
+		}
+
+		private void startSpan( final int s )
+		{
+			span = s;
+			setPosition( s, ra );
+			x = positions[ s * n ];
+			end = ends[ s ];
+		}
+
+		@Override
+		public void reset()
+		{
+			span = -1;
+			x = -1;
+			end = 0;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return x + 1 < end || span + 1 < numSpans;
+		}
+
+		@Override
+		public void localize( final long[] position )
+		{
+			System.arraycopy( positions, span * n, position, 0, n );
+			position[ 0 ] = x;
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return d == 0 ? x : positions[ span * n + d ];
+		}
+
+		@Override
+		public SpanCursor< T > copy()
+		{
+			return new SpanCursor< T >( this );
+		}
+
+		@Override
+		public SpanCursor< T > copyCursor()
+		{
+			return copy();
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.roi;
+
+import java.util.List;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
+
+/**
+ * Pixel count, sum, mean and (optionally) histogram of an image inside each
+ * of a list of ROIs, computed in a single pass over the image.
+ * 
+ * The {@link RegionOfInterestSpans spans} of all ROIs are sorted by row, so
+ * the image is visited in row order by a single {@link RandomAccess}, and
+ * spans of different ROIs in the same row are read one after another while
+ * the row is still cached (pixels covered by several ROIs are read once per
+ * ROI). This is much faster than iterating each ROI with its own cursor when
+ * there are many small ROIs, e.g. cell outlines.
+ */
+public class RegionOfInterestStatistics
+{
+	final private long[] counts;
+
+	final private double[] sums;
+
+	final private long[][] histograms;
+
+	final private int numBins;
+
+	final private double histogramMin;
+
+	final private double histogramMax;
+
+	private RegionOfInterestStatistics( final int numRegions, final int numBins, final double histogramMin, final double histogramMax )
+	{
+		this.counts = new long[ numRegions ];
+		this.sums = new double[ numRegions ];
+		this.numBins = numBins;
+		this.histogramMin = histogramMin;
+		this.histogramMax = histogramMax;
+		if ( numBins > 0 )
+			this.histograms = new long[ numRegions ][ numBins ];
+		else
+			this.histograms = null;
+	}
+
+	/**
+	 * Compute count, sum and mean of the image in each ROI.
+	 * 
+	 * @param img
+	 *            the image. If it is an {@link Interval}, the ROIs are clipped
+	 *            to it.
+	 * @param rois
+	 *            the regions to measure
+	 */
+	public static < T extends RealType< T > > RegionOfInterestStatistics compute( final RandomAccessible< T > img, final List< ? extends AbstractIterableRegionOfInterest > rois )
+	{
+		return compute( img, rois, 0, 0, 0 );
+	}
+
+	/**
+	 * Compute count, sum, mean and histogram of the image in each ROI.
+	 * 
+	 * @param img
+	 *            the image. If it is an {@link Interval}, the ROIs are clipped
+	 *            to it.
+	 * @param rois
+	 *            the regions to measure
+	 * @param numBins
+	 *            number of histogram bins, 0 for no histogram
+	 * @param histogramMin
+	 *            lower bound of the first bin
+	 * @param histogramMax
+	 *            upper bound of the last bin. Values outside of
+	 *            [histogramMin, histogramMax] are not counted in the histogram.
+	 */
+	public static < T extends RealType< T > > RegionOfInterestStatistics compute( final RandomAccessible< T > img, final List< ? extends AbstractIterableRegionOfInterest > rois, final int numBins, final double histogramMin, final double histogramMax )
+	{
+		if ( numBins < 0 )
+			throw new IllegalArgumentException( "Number of histogram bins must not be negative: " + numBins );
+		if ( numBins > 0 && !( histogramMax > histogramMin ) )
+			throw new IllegalArgumentException( "Histogram range is empty: [" + histogramMin + ", " + histogramMax + "]" );
+
+		final int numRegions = rois.size();
+		final RegionOfInterestStatistics stats = new RegionOfInterestStatistics( numRegions, numBins, histogramMin, histogramMax );
+		if ( numRegions == 0 )
+			return stats;
+
+		final int n = img.numDimensions();
+		final RegionOfInterestSpans[] spans = new RegionOfInterestSpans[ numRegions ];
+		for ( int r = 0; r < numRegions; ++r )
+		{
+			final RegionOfInterestSpans s = rois.get( r ).getSpans();
+			spans[ r ] = ( img instanceof Interval ) ? s.intersect( ( Interval ) img ) : s;
+		}
+
+		/*
+		 * Bounding box of the rows (dimensions 1 to n-1) of all spans.
+		 */
+		final long[] rowMin = new long[ n ];
+		final long[] rowMax = new long[ n ];
+		int totalSpans = 0;
+		for ( int d = 1; d < n; ++d )
+		{
+			rowMin[ d ] = Long.MAX_VALUE;
+			rowMax[ d ] = Long.MIN_VALUE;
+		}
+		for ( final RegionOfInterestSpans s : spans )
+		{
+			totalSpans += s.numSpans();
+			for ( int i = 0; i < s.numSpans(); ++i )
+				for ( int d = 1; d < n; ++d )
+				{
+					final long p = s.getStart( i, d );
+					rowMin[ d ] = Math.min( rowMin[ d ], p );
+					rowMax[ d ] = Math.max( rowMax[ d ], p );
+				}
+		}
+		if ( totalSpans == 0 )
+			return stats;
+
+		/*
+		 * Flat index of the row of a span within the bounding box, if it fits
+		 * into a long.
+		 */
+		final long[] rowSteps = new long[ n ];
+		long numRows = 1;
+		for ( int d = 1; d < n && numRows > 0; ++d )
+		{
+			rowSteps[ d ] = numRows;
+			final long size = rowMax[ d ] - rowMin[ d ] + 1;
+			numRows = size > 0 && numRows <= Long.MAX_VALUE / size ? numRows * size : -1;
+		}
+
+		final RandomAccess< T > ra = img.randomAccess();
+		if ( numRows < 0 )
+		{
+			/*
+			 * Too many rows to index, measure ROI by ROI.
+			 */
+			for ( int r = 0; r < numRegions; ++r )
+				for ( int i = 0; i < spans[ r ].numSpans(); ++i )
+					stats.measureSpan( r, spans[ r ], i, ra );
+			return stats;
+		}
+
+		/*
+		 * Sort (row, region, span) triples by row.
+		 */
+		final long[] rowKeys = new long[ totalSpans ];
+		final int[] order = new int[ totalSpans ];
+		final int[] spanRegion = new int[ totalSpans ];
+		final int[] spanIndex = new int[ totalSpans ];
+		int k = 0;
+		for ( int r = 0; r < numRegions; ++r )
+		{
+			final RegionOfInterestSpans s = spans[ r ];
+			for ( int i = 0; i < s.numSpans(); ++i, ++k )
+			{
+				rowKeys[ k ] = rowIndex( s, i, rowMin, rowSteps );
+				order[ k ] = k;
+				spanRegion[ k ] = r;
+				spanIndex[ k ] = i;
+			}
+		}
+		Util.quicksort( rowKeys, order, 0, totalSpans - 1 );
+
+		for ( final int j : order )
+			stats.measureSpan( spanRegion[ j ], spans[ spanRegion[ j ] ], spanIndex[ j ], ra );
+
+		return stats;
+	}
+
+	private static long rowIndex( final RegionOfInterestSpans s, final int span, final long[] rowMin, final long[] rowSteps )
+	{
+		long index = 0;
+		for ( int d = 1; d < rowMin.length; ++d )
+			index += ( s.getStart( span, d ) - rowMin[ d ] ) * rowSteps[ d ];
+		return index;
+	}
+
+	private < T extends RealType< T > > void measureSpan( final int region, final RegionOfInterestSpans s, final int span, final RandomAccess< T > ra )
+	{
+		final long length = s.getLength( span );
+		s.setPosition( span, ra );
+		double sum = 0;
+		if ( histograms == null )
+		{
+			for ( long x = 0; x < length; ++x )
+			{
+				sum += ra.get().getRealDouble();
+				ra.fwd( 0 );
+			}
+		}
+		else
+		{
+			final long[] histogram = histograms[ region ];
+			final double scale = numBins / ( histogramMax - histogramMin );
+			for ( long x = 0; x < length; ++x )
+			{
+				final double v = ra.get().getRealDouble();
+				sum += v;
+				if ( v >= histogramMin && v <= histogramMax )
+				{
+					final int bin = ( int ) ( ( v - histogramMin ) * scale );
+					++histogram[ bin < numBins ? bin : numBins - 1 ];
+				}
+				ra.fwd( 0 );
+			}
+		}
+		sums[ region ] += sum;
+		counts[ region ] += length;
+	}
+
+	/**
+	 * @return the number of measured ROIs
+	 */
+	public int numRegions()
+	{
+		return counts.length;
+	}
+
+	/**
+	 * @return the number of pixels of ROI i (within the image)
+	 */
+	public long getCount( final int i )
+	{
+		return counts[ i ];
+	}
+
+	/**
+	 * @return the sum of the pixel values in ROI i
+	 */
+	public double getSum( final int i )
+	{
+		return sums[ i ];
+	}
+
+	/**
+	 * @return the mean of the pixel values in ROI i, NaN if it is empty
+	 */
+	public double getMean( final int i )
+	{
+		return sums[ i ] / counts[ i ];
+	}
+
+	/**
+	 * @return the histogram of ROI i, or null if no histogram was requested
+	 */
+	public long[] getHistogram( final int i )
+	{
+		return histograms == null ? null : histograms[ i ];
+	}
+
+	public int getNumBins()
+	{
+		return numBins;
+	}
+}
@@ -421,6 +421,34 @@ public class Util
 		if (i < right) quicksort(data, sortAlso, i, right);
 	}
 
+	public static void quicksort( final long[] data, final int[] sortAlso, final int left, final int right )
+	{
+		if (data == null || data.length < 2)return;
+		int i = left, j = right;
+		final long x = data[(left + right) / 2];
+		do
+		{
+			while (data[i] < x) i++;
+			while (x < data[j]) j--;
+			if (i <= j)
+			{
+				final long temp = data[i];
+				data[i] = data[j];
+				data[j] = temp;
+
+				final int temp2 = sortAlso[i];
+				sortAlso[i] = sortAlso[j];
+				sortAlso[j] = temp2;
+
+				i++;
+				j--;
+			}
+		}
+		while (i <= j);
+		if (left < j) quicksort(data, sortAlso, left, j);
+		if (i < right) quicksort(data, sortAlso, i, right);
+	}
+
 	public static double gLog( final double z, final double c )
 	{
 		if (c == 0)
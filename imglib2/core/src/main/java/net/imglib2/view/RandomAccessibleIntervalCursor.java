@@ -104,9 +104,9 @@ public final class RandomAccessibleIntervalCursor< T > extends AbstractInterval
 	public void jumpFwd( final long steps )
 	{
 		index += steps;
-		maxIndexOnLine += steps / dimensions[ 0 ];
-		IntervalIndexer.indexToPosition( steps, dimensions, tmp );
-		randomAccess.move( tmp );
+		maxIndexOnLine = ( 1 + index / dimensions[ 0 ] ) * dimensions[ 0 ] - 1;
+		IntervalIndexer.indexToPositionWithOffset( index, dimensions, min, tmp );
+		randomAccess.setPosition( tmp );
 	}
 
 	@Override
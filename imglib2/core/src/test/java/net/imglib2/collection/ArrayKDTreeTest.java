@@ -0,0 +1,206 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnArrayKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnArrayKDTree;
+
+import org.junit.Test;
+
+/**
+ * Compares searches on {@link ArrayKDTree} to exhaustive search.
+ */
+public class ArrayKDTreeTest
+{
+	final static private int n = 3;
+
+	final static private int numPoints = 20000;
+
+	final static private int numReferences = 200;
+
+	private static double[] randomCoordinates( final Random rnd, final int numPoints, final boolean flat )
+	{
+		final double[] coordinates = new double[ numPoints * n ];
+		for ( int i = 0; i < coordinates.length; ++i )
+			coordinates[ i ] = ( flat && i % n == n - 1 ) ? 0 : rnd.nextInt( 1000 ) * 0.1;
+		return coordinates;
+	}
+
+	private static double squDistance( final double[] coordinates, final int i, final double[] references, final int q )
+	{
+		double sum = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double diff = coordinates[ i * n + d ] - references[ q * n + d ];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	private static double[] sortedSquDistances( final double[] coordinates, final double[] references, final int q )
+	{
+		final double[] squDistances = new double[ coordinates.length / n ];
+		for ( int i = 0; i < squDistances.length; ++i )
+			squDistances[ i ] = squDistance( coordinates, i, references, q );
+		Arrays.sort( squDistances );
+		return squDistances;
+	}
+
+	@Test
+	public void testLeftSubtreeSize()
+	{
+		for ( int m = 1; m < 1000; ++m )
+		{
+			// a left-balanced tree with m nodes occupies indices 0 to m-1
+			int left = 0;
+			for ( int level = 1; ( 1 << level ) - 1 < m; ++level )
+			{
+				final int first = ( 1 << level ) - 1;
+				left += Math.max( 0, Math.min( m - first, 1 << ( level - 1 ) ) );
+			}
+			assertEquals( "m = " + m, left, ArrayKDTree.leftSubtreeSize( m ) );
+		}
+	}
+
+	@Test
+	public void testTreeIsPermutationOfPoints()
+	{
+		final double[] coordinates = randomCoordinates( new Random( 1 ), numPoints, false );
+		final ArrayKDTree tree = new ArrayKDTree( n, coordinates, 4 );
+		assertEquals( numPoints, tree.size() );
+
+		final boolean[] seen = new boolean[ numPoints ];
+		for ( int node = 0; node < numPoints; ++node )
+		{
+			final int i = tree.getPointIndex( node );
+			assertTrue( !seen[ i ] );
+			seen[ i ] = true;
+			for ( int d = 0; d < n; ++d )
+				assertEquals( coordinates[ i * n + d ], tree.getDoublePosition( node, d ), 0 );
+		}
+	}
+
+	@Test
+	public void testKNearestNeighbors()
+	{
+		final Random rnd = new Random( 2 );
+		for ( final boolean flat : new boolean[] { false, true } )
+		{
+			final double[] coordinates = randomCoordinates( rnd, numPoints, flat );
+			final double[] references = randomCoordinates( rnd, numReferences, flat );
+			final ArrayKDTree tree = new ArrayKDTree( n, coordinates, 4 );
+
+			final int k = 10;
+			final int[] pointIndices = new int[ numReferences * k ];
+			final double[] squDistances = new double[ numReferences * k ];
+			KNearestNeighborSearchOnArrayKDTree.searchAll( tree, k, references, pointIndices, squDistances, 3 );
+
+			final KNearestNeighborSearchOnArrayKDTree search = new KNearestNeighborSearchOnArrayKDTree( tree, k );
+			for ( int q = 0; q < numReferences; ++q )
+			{
+				final double[] expected = sortedSquDistances( coordinates, references, q );
+				search.search( references, q * n );
+				for ( int i = 0; i < k; ++i )
+				{
+					assertEquals( expected[ i ], search.getSquareDistance( i ), 0 );
+					assertEquals( expected[ i ], squDistance( coordinates, search.getPointIndex( i ), references, q ), 0 );
+					assertEquals( expected[ i ], squDistances[ q * k + i ], 0 );
+					assertEquals( expected[ i ], squDistance( coordinates, pointIndices[ q * k + i ], references, q ), 0 );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMoreNeighborsThanPoints()
+	{
+		final double[] coordinates = randomCoordinates( new Random( 3 ), 5, false );
+		final ArrayKDTree tree = new ArrayKDTree( n, coordinates, 1 );
+		final int[] pointIndices = new int[ 8 ];
+		KNearestNeighborSearchOnArrayKDTree.searchAll( tree, 8, new double[ n ], pointIndices, null, 1 );
+		final int[] sorted = Arrays.copyOf( pointIndices, 5 );
+		Arrays.sort( sorted );
+		assertTrue( Arrays.equals( new int[] { 0, 1, 2, 3, 4 }, sorted ) );
+		for ( int i = 5; i < 8; ++i )
+			assertEquals( -1, pointIndices[ i ] );
+	}
+
+	@Test
+	public void testRadiusNeighbors()
+	{
+		final Random rnd = new Random( 4 );
+		final double[] coordinates = randomCoordinates( rnd, numPoints, false );
+		final double[] references = randomCoordinates( rnd, numReferences, false );
+		final ArrayList< RealPoint > points = new ArrayList< RealPoint >();
+		for ( int i = 0; i < numPoints; ++i )
+			points.add( new RealPoint( Arrays.copyOfRange( coordinates, i * n, i * n + n ) ) );
+		final ArrayKDTree tree = new ArrayKDTree( points );
+
+		final double radius = 5;
+		final RadiusNeighborSearchOnArrayKDTree.Neighbors neighbors = RadiusNeighborSearchOnArrayKDTree.searchAll( tree, references, radius, true, 3 );
+		assertEquals( numReferences, neighbors.numReferences() );
+
+		final RadiusNeighborSearchOnArrayKDTree search = new RadiusNeighborSearchOnArrayKDTree( tree );
+		for ( int q = 0; q < numReferences; ++q )
+		{
+			final double[] expected = sortedSquDistances( coordinates, references, q );
+			int m = 0;
+			while ( m < expected.length && expected[ m ] <= radius * radius )
+				++m;
+
+			search.search( references, q * n, radius, true );
+			assertEquals( m, search.numNeighbors() );
+			assertEquals( m, neighbors.numNeighbors( q ) );
+			for ( int i = 0; i < m; ++i )
+			{
+				assertEquals( expected[ i ], search.getSquareDistance( i ), 0 );
+				assertEquals( expected[ i ], squDistance( coordinates, search.getPointIndex( i ), references, q ), 0 );
+				assertEquals( expected[ i ], neighbors.getSquareDistance( q, i ), 0 );
+				assertEquals( expected[ i ], squDistance( coordinates, neighbors.getPointIndex( q, i ), references, q ), 0 );
+			}
+		}
+	}
+}
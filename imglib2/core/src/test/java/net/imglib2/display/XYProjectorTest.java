@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+public class XYProjectorTest
+{
+	final int width = 67;
+
+	final int height = 45;
+
+	private ArrayImg< UnsignedByteType, ? > createSource( final long depth )
+	{
+		final ArrayImg< UnsignedByteType, ? > img = new ArrayImgFactory< UnsignedByteType >().create( new long[] { width, height, depth }, new UnsignedByteType() );
+		final Random random = new Random( 0 );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		return img;
+	}
+
+	@Test
+	public void testStripesMatchSource()
+	{
+		final ArrayImg< UnsignedByteType, ? > source = createSource( 3 );
+		final ARGBScreenImage target = new ARGBScreenImage( width, height );
+		final RealARGBConverter< UnsignedByteType > converter = new RealARGBConverter< UnsignedByteType >( 0, 255 );
+
+		final XYProjector< UnsignedByteType, ARGBType > projector = new XYProjector< UnsignedByteType, ARGBType >( source, target, converter );
+		projector.setNumThreads( 4 );
+		projector.setPosition( 2, 2 );
+		projector.map();
+		assertFalse( projector.isCanceled() );
+
+		final RandomAccess< UnsignedByteType > sourceAccess = source.randomAccess();
+		final ARGBType expected = new ARGBType();
+		final Cursor< ARGBType > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			sourceAccess.setPosition( c.getLongPosition( 0 ), 0 );
+			sourceAccess.setPosition( c.getLongPosition( 1 ), 1 );
+			sourceAccess.setPosition( 2, 2 );
+			converter.convert( sourceAccess.get(), expected );
+			assertEquals( expected.get(), c.get().get() );
+		}
+	}
+
+	@Test
+	public void testCompositeStripesMatchSource()
+	{
+		final ArrayImg< UnsignedByteType, ? > source = createSource( 4 );
+		final ARGBScreenImage target = new ARGBScreenImage( width, height );
+
+		final CompositeXYProjector< UnsignedByteType > projector = new CompositeXYProjector< UnsignedByteType >( source, target, ChannelARGBConverter.converterListRGBA, 2 );
+		projector.setComposite( true );
+		projector.setNumThreads( 4 );
+		projector.map();
+
+		final RandomAccess< UnsignedByteType > sourceAccess = source.randomAccess();
+		final Cursor< ARGBType > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			sourceAccess.setPosition( c.getLongPosition( 0 ), 0 );
+			sourceAccess.setPosition( c.getLongPosition( 1 ), 1 );
+			final int[] channels = new int[ 4 ];
+			for ( int i = 0; i < 4; ++i )
+			{
+				sourceAccess.setPosition( i, 2 );
+				channels[ i ] = sourceAccess.get().get();
+			}
+			assertEquals( ARGBType.rgba( channels[ 0 ], channels[ 1 ], channels[ 2 ], channels[ 3 ] ), c.get().get() );
+		}
+	}
+
+	/**
+	 * Requests a new frame (cancels the current one) after a number of pixels.
+	 */
+	static class CancellingConverter implements Converter< UnsignedByteType, ARGBType >
+	{
+		final int cancelAfter;
+
+		XYProjector< ?, ? > projector;
+
+		int count = 0;
+
+		CancellingConverter( final int cancelAfter )
+		{
+			this.cancelAfter = cancelAfter;
+		}
+
+		@Override
+		public void convert( final UnsignedByteType input, final ARGBType output )
+		{
+			output.set( 0xffffffff );
+			if ( ++count == cancelAfter )
+				projector.cancel();
+		}
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final ArrayImg< UnsignedByteType, ? > source = createSource( 1 );
+		final ARGBScreenImage target = new ARGBScreenImage( width, height );
+		final CancellingConverter converter = new CancellingConverter( 10 * width );
+
+		final XYProjector< UnsignedByteType, ARGBType > projector = new XYProjector< UnsignedByteType, ARGBType >( source, target, converter );
+		converter.projector = projector;
+		projector.map();
+
+		// the rows after the one in which the frame was cancelled are left
+		// unchanged
+		assertTrue( projector.isCanceled() );
+		int numRendered = 0;
+		for ( final ARGBType t : target )
+			if ( t.get() != 0 )
+				++numRendered;
+		assertEquals( 10 * width, numRendered );
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.basictypeaccess.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.NativeImgFactory;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.BufferArrayImgFactory;
+import net.imglib2.img.cell.BufferCellImgFactory;
+import net.imglib2.img.planar.BufferPlanarImgFactory;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests images created by the buffer factories.
+ */
+public class BufferImgTest
+{
+	long[] dimensions = { 23, 17, 5 };
+
+	private < T extends RealType< T > & NativeType< T > > void testFactory( final NativeImgFactory< T > factory, final T type )
+	{
+		final Img< T > img = factory.create( dimensions, type );
+		final ArrayImg< T, ? > reference = new ArrayImgFactory< T >().create( dimensions, type );
+
+		final Random random = new Random( 12 );
+		final Cursor< T > cursor = reference.localizingCursor();
+		final RandomAccess< T > access = img.randomAccess();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.get().setReal( random.nextInt( 200 ) );
+			access.setPosition( cursor );
+			access.get().set( cursor.get() );
+		}
+
+		final Cursor< T > c = img.localizingCursor();
+		final RandomAccess< T > r = reference.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			r.setPosition( c );
+			assertEquals( r.get().getRealDouble(), c.get().getRealDouble(), 0 );
+		}
+	}
+
+	@Test
+	public void testArrayImg()
+	{
+		testFactory( new BufferArrayImgFactory< FloatType >(), new FloatType() );
+		testFactory( new BufferArrayImgFactory< UnsignedByteType >(), new UnsignedByteType() );
+		testFactory( new BufferArrayImgFactory< DoubleType >(), new DoubleType() );
+	}
+
+	@Test
+	public void testPlanarImg()
+	{
+		testFactory( new BufferPlanarImgFactory< FloatType >(), new FloatType() );
+		testFactory( new BufferPlanarImgFactory< UnsignedShortType >(), new UnsignedShortType() );
+	}
+
+	@Test
+	public void testCellImg()
+	{
+		testFactory( new BufferCellImgFactory< FloatType >( 7 ), new FloatType() );
+		testFactory( new BufferCellImgFactory< UnsignedByteType >( new int[] { 8, 4, 3 } ), new UnsignedByteType() );
+	}
+
+	@Test
+	public void testDirect()
+	{
+		final ArrayImg< FloatType, ? > img = new BufferArrayImgFactory< FloatType >().create( dimensions, new FloatType() );
+		final ByteBuffer buffer = ( ( BufferAccess< ? > ) img.update( null ) ).getBuffer();
+		assertTrue( buffer.isDirect() );
+		assertEquals( 23 * 17 * 5 * 4, buffer.capacity() );
+	}
+
+	@Test
+	public void testMapped() throws IOException
+	{
+		final File file = File.createTempFile( "buffer", ".raw" );
+		try
+		{
+			// a raw file with a 16 byte header and 4 x 3 x 2 little endian shorts
+			final ByteBuffer raw = ByteBuffer.allocate( 16 + 24 * 2 ).order( ByteOrder.LITTLE_ENDIAN );
+			raw.position( 16 );
+			for ( int i = 0; i < 24; ++i )
+				raw.putShort( ( short ) ( 1000 * i ) );
+			final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+			raf.write( raw.array() );
+			raf.close();
+
+			final long[] dims = { 4, 3, 2 };
+			final ArrayImg< UnsignedShortType, ? > array = new BufferArrayImgFactory< UnsignedShortType >( BufferAllocator.map( file, 16, ByteOrder.LITTLE_ENDIAN, false ) ).create( dims, new UnsignedShortType() );
+			int i = 0;
+			for ( final UnsignedShortType t : array )
+				assertEquals( 1000 * i++, t.get() );
+
+			// planes are mapped one after another, writes go to the file
+			final PlanarImg< UnsignedShortType, ? > planar = new BufferPlanarImgFactory< UnsignedShortType >( BufferAllocator.map( file, 16, ByteOrder.LITTLE_ENDIAN, true ) ).create( dims, new UnsignedShortType() );
+			final RandomAccess< UnsignedShortType > access = planar.randomAccess();
+			access.setPosition( new long[] { 3, 2, 1 } );
+			assertEquals( 23000, access.get().get() );
+			access.get().set( 65535 );
+
+			final RandomAccess< UnsignedShortType > check = array.randomAccess();
+			check.setPosition( new long[] { 3, 2, 1 } );
+			assertEquals( 65535, check.get().get() );
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.cell;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.nio.BufferAllocator;
+import net.imglib2.img.basictypeaccess.nio.FloatBufferAccess;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+
+import org.junit.Test;
+
+public class DiskCellsTest
+{
+	final long[] dimensions = new long[] { 23, 31, 7 };
+
+	final int[] cellDimensions = new int[] { 8, 8, 3 };
+
+	// room for two standard cells
+	final long maxCacheBytes = 2 * 8 * 8 * 3 * 4;
+
+	private float[] createData()
+	{
+		final int numValues = ( int ) ( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] );
+		final float[] data = new float[ numValues ];
+		final Random random = new Random( 0 );
+		for ( int i = 0; i < numValues; ++i )
+			data[ i ] = random.nextFloat();
+		return data;
+	}
+
+	private void write( final CellImg< FloatType, ?, ? > img, final float[] data )
+	{
+		final long[] pos = new long[ dimensions.length ];
+		final RandomAccess< FloatType > a = img.randomAccess();
+		for ( int i = 0; i < data.length; ++i )
+		{
+			IntervalIndexer.indexToPosition( i, dimensions, pos );
+			a.setPosition( pos );
+			a.get().set( data[ i ] );
+		}
+	}
+
+	private void check( final CellImg< FloatType, ?, ? > img, final float[] data )
+	{
+		final long[] pos = new long[ dimensions.length ];
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final float value = c.next().get();
+			c.localize( pos );
+			assertEquals( data[ ( int ) IntervalIndexer.positionToIndex( pos, dimensions ) ], value, 0 );
+		}
+	}
+
+	@Test
+	public void testWriteAndRead()
+	{
+		final float[] data = createData();
+		final CellImg< FloatType, ?, ? > img = new DiskCellImgFactory< FloatType >( cellDimensions, maxCacheBytes ).create( dimensions, new FloatType() );
+		final DiskCells< ? > cells = ( DiskCells< ? > ) img.getCells();
+
+		write( img, data );
+		System.gc();
+		check( img, data );
+
+		assertTrue( cells.getCacheSizeInBytes() <= maxCacheBytes );
+		assertTrue( cells.getNumMisses() > 0 );
+
+		final File file = cells.getFile();
+		assertTrue( file.exists() );
+		cells.close();
+		assertFalse( file.exists() );
+	}
+
+	@Test
+	public void testReopen() throws Exception
+	{
+		final float[] data = createData();
+		final File file = File.createTempFile( "imglib2-cells-test-", ".raw" );
+		file.deleteOnExit();
+
+		final DiskCells< FloatArray > cells = new DiskCells< FloatArray >( new FloatArray( 1 ), 1, dimensions, cellDimensions, file, true, false, maxCacheBytes );
+		final CellImg< FloatType, FloatArray, DiskCell< FloatArray > > img = new CellImg< FloatType, FloatArray, DiskCell< FloatArray > >( new CellImgFactory< FloatType >( cellDimensions ), cells );
+		img.setLinkedType( new FloatType( img ) );
+		write( img, data );
+		cells.close();
+
+		final DiskCells< FloatArray > reopened = new DiskCells< FloatArray >( new FloatArray( 1 ), 1, dimensions, cellDimensions, file, false, true, maxCacheBytes );
+		final CellImg< FloatType, FloatArray, DiskCell< FloatArray > > img2 = new CellImg< FloatType, FloatArray, DiskCell< FloatArray > >( new CellImgFactory< FloatType >( cellDimensions ), reopened );
+		img2.setLinkedType( new FloatType( img2 ) );
+		check( img2, data );
+		assertEquals( 0, reopened.getNumWrites() );
+		reopened.close();
+	}
+
+	@Test
+	public void testReadOnlyPassDoesNotWrite() throws Exception
+	{
+		final float[] data = createData();
+		final File file = File.createTempFile( "imglib2-cells-test-", ".raw" );
+		file.deleteOnExit();
+
+		final DiskCells< FloatArray > cells = new DiskCells< FloatArray >( new FloatArray( 1 ), 1, dimensions, cellDimensions, file, true, false, maxCacheBytes );
+		final CellImg< FloatType, FloatArray, DiskCell< FloatArray > > img = new CellImg< FloatType, FloatArray, DiskCell< FloatArray > >( new CellImgFactory< FloatType >( cellDimensions ), cells );
+		img.setLinkedType( new FloatType( img ) );
+		write( img, data );
+		cells.flush();
+		final long numWrites = cells.getNumWrites();
+		assertTrue( numWrites > 0 );
+
+		// reading every cell (and evicting most of them) writes nothing
+		check( img, data );
+		System.gc();
+		check( img, data );
+		cells.flush();
+		assertEquals( numWrites, cells.getNumWrites() );
+
+		// modifying one pixel writes its cell only
+		final RandomAccess< FloatType > a = img.randomAccess();
+		a.setPosition( new long[] { 9, 17, 4 } );
+		a.get().set( -1 );
+		cells.flush();
+		assertEquals( numWrites + 1, cells.getNumWrites() );
+		cells.close();
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception
+	{
+		final float[] data = createData();
+		final CellImg< FloatType, ?, ? > img = new DiskCellImgFactory< FloatType >( cellDimensions, maxCacheBytes ).create( dimensions, new FloatType() );
+		final DiskCells< ? > cells = ( DiskCells< ? > ) img.getCells();
+
+		final int numThreads = 4;
+		final Thread[] threads = new Thread[ numThreads ];
+		for ( int t = 0; t < numThreads; ++t )
+		{
+			final int offset = t;
+			threads[ t ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					final long[] pos = new long[ dimensions.length ];
+					final RandomAccess< FloatType > a = img.randomAccess();
+					for ( int i = offset; i < data.length; i += numThreads )
+					{
+						IntervalIndexer.indexToPosition( i, dimensions, pos );
+						a.setPosition( pos );
+						a.get().set( data[ i ] );
+					}
+				}
+			};
+			threads[ t ].start();
+		}
+		for ( final Thread thread : threads )
+			thread.join();
+
+		System.gc();
+		check( img, data );
+		cells.close();
+	}
+
+	@Test
+	public void testBufferAccess() throws Exception
+	{
+		final float[] data = createData();
+		final File file = File.createTempFile( "imglib2-cells-test-", ".raw" );
+		file.deleteOnExit();
+
+		// big endian heap buffers, so that the bytes are swapped on little
+		// endian machines where the file is written in native order
+		final BufferAllocator allocator = new BufferAllocator()
+		{
+			@Override
+			public ByteBuffer allocate( final long numBytes )
+			{
+				return ByteBuffer.allocate( ( int ) numBytes ).order( ByteOrder.BIG_ENDIAN );
+			}
+		};
+		final DiskCells< FloatBufferAccess > cells = new DiskCells< FloatBufferAccess >( new FloatBufferAccess( allocator, 1 ), 1, dimensions, cellDimensions, file, true, false, maxCacheBytes );
+		final CellImg< FloatType, FloatBufferAccess, DiskCell< FloatBufferAccess > > img = new CellImg< FloatType, FloatBufferAccess, DiskCell< FloatBufferAccess > >( new CellImgFactory< FloatType >( cellDimensions ), cells );
+		img.setLinkedType( new FloatType( img ) );
+		write( img, data );
+		System.gc();
+		check( img, data );
+		cells.close();
+
+		final DiskCells< FloatArray > reopened = new DiskCells< FloatArray >( new FloatArray( 1 ), 1, dimensions, cellDimensions, file, false, true, maxCacheBytes );
+		final CellImg< FloatType, FloatArray, DiskCell< FloatArray > > img2 = new CellImg< FloatType, FloatArray, DiskCell< FloatArray > >( new CellImgFactory< FloatType >( cellDimensions ), reopened );
+		img2.setLinkedType( new FloatType( img2 ) );
+		check( img2, data );
+		reopened.close();
+	}
+
+	@Test
+	public void testUnwrittenCellsAreZero()
+	{
+		final CellImg< FloatType, ?, ? > img = new DiskCellImgFactory< FloatType >( cellDimensions, maxCacheBytes ).create( dimensions, new FloatType() );
+		for ( final FloatType t : img )
+			assertEquals( 0, t.get(), 0 );
+		( ( DiskCells< ? > ) img.getCells() ).close();
+	}
+
+	@Test
+	public void testScanLargerThanHeap() throws Exception
+	{
+		// scan an image that is three times larger than the heap in a separate
+		// virtual machine, the data of evicted cells must not be kept in memory
+		// (serial collector, G1 wastes half a region per cell of 1 MB)
+		final String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+		final Process process = new ProcessBuilder( java, "-Xmx32m", "-XX:+UseSerialGC", "-cp", System.getProperty( "java.class.path" ), DiskCellsTest.class.getName() ).redirectErrorStream( true ).start();
+		final StringBuilder output = new StringBuilder();
+		final BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+		for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+			output.append( line ).append( '\n' );
+		assertEquals( output.toString(), 0, process.waitFor() );
+	}
+
+	/**
+	 * Writes and twice reads an image of 96 MB with a cache of 8 MB, run by
+	 * {@link #testScanLargerThanHeap()} with a heap of 32 MB.
+	 */
+	public static void main( final String[] args )
+	{
+		final long[] dims = new long[] { 512, 512, 96 };
+		final CellImg< FloatType, ?, ? > img = new DiskCellImgFactory< FloatType >( new int[] { 64, 64, 64 }, 8l << 20 ).create( dims, new FloatType() );
+		final long[] pos = new long[ dims.length ];
+		final Cursor< FloatType > w = img.localizingCursor();
+		while ( w.hasNext() )
+		{
+			w.fwd();
+			w.localize( pos );
+			w.get().set( pos[ 0 ] + 3 * pos[ 1 ] + 7 * pos[ 2 ] );
+		}
+		for ( int pass = 0; pass < 2; ++pass )
+		{
+			final Cursor< FloatType > r = img.localizingCursor();
+			while ( r.hasNext() )
+			{
+				r.fwd();
+				r.localize( pos );
+				if ( r.get().get() != pos[ 0 ] + 3 * pos[ 1 ] + 7 * pos[ 2 ] )
+					throw new AssertionError( "wrong value at " + Arrays.toString( pos ) );
+			}
+		}
+		( ( DiskCells< ? > ) img.getCells() ).close();
+	}
+}
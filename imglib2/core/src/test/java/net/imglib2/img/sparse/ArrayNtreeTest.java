@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.img.sparse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class ArrayNtreeTest
+{
+	@Test
+	public void testSetValueAndMergeUpwards()
+	{
+		final int v = 10;
+		final long[] pos = new long[] { 27, 38, 99 };
+		final long[] pos2 = new long[] { 28, 38, 99 };
+		final IntArrayNtree a = new IntArrayNtree( new long[] { 256, 257, 100 }, pos, v );
+		final IntArrayNtree a2 = a.createInstance( pos2 );
+		final ArrayNtree t = a.getCurrentStorageNtree();
+
+		assertEquals( v, a.getValue( 0 ) );
+		assertEquals( 1, t.size() );
+
+		a.setValue( 0, v + 1 );
+		assertEquals( v + 1, a.getValue( 0 ) );
+		assertEquals( v, a2.getValue( 0 ) );
+		assertEquals( 1 + ( t.numTreeLevels() - 1 ) * 8, t.size() );
+
+		a.setValue( 0, v );
+		assertEquals( v, a.getValue( 0 ) );
+		assertEquals( ArrayNtree.LEAF, t.children[ ArrayNtree.ROOT ] );
+
+		// merged nodes are reused
+		a2.setValue( 0, v - 1 );
+		assertEquals( 1 + ( t.numTreeLevels() - 1 ) * 8, t.size() );
+		assertEquals( v - 1, a2.getValue( 0 ) );
+		assertEquals( v, a.getValue( 0 ) );
+	}
+
+	@Test
+	public void testCompact()
+	{
+		final long[] dimensions = new long[] { 64, 64 };
+		final long[] pos = new long[ 2 ];
+		final IntArrayNtree a = new IntArrayNtree( dimensions, pos, 0 );
+		final ArrayNtree t = a.getCurrentStorageNtree();
+
+		final int[][] expected = new int[ 64 ][ 64 ];
+		final Random random = new Random( 1 );
+		for ( int i = 0; i < 1000; ++i )
+		{
+			pos[ 0 ] = random.nextInt( 64 );
+			pos[ 1 ] = random.nextInt( 64 );
+			final int value = random.nextInt( 3 );
+			a.setValue( 0, value );
+			expected[ ( int ) pos[ 0 ] ][ ( int ) pos[ 1 ] ] = value;
+		}
+		for ( int i = 0; i < 3000; ++i )
+		{
+			pos[ 0 ] = random.nextInt( 64 );
+			pos[ 1 ] = random.nextInt( 64 );
+			a.setValue( 0, 0 );
+			expected[ ( int ) pos[ 0 ] ][ ( int ) pos[ 1 ] ] = 0;
+		}
+
+		final int sizeBefore = t.size();
+		t.compact();
+		assertTrue( t.size() <= sizeBefore );
+		assertEquals( t.size(), t.children.length );
+
+		for ( int x = 0; x < 64; ++x )
+			for ( int y = 0; y < 64; ++y )
+			{
+				pos[ 0 ] = x;
+				pos[ 1 ] = y;
+				assertEquals( expected[ x ][ y ], a.getValue( 0 ) );
+			}
+	}
+
+	@Test
+	public void testSameContentAsNtreeImg()
+	{
+		final long[] dimensions = new long[] { 53, 40, 17 };
+		final NtreeImg< IntType, ? > reference = new NtreeImgFactory< IntType >().create( dimensions, new IntType() );
+		final NtreeImg< IntType, ? > img = new ArrayNtreeImgFactory< IntType >().create( dimensions, new IntType() );
+
+		final RandomAccess< IntType > ra = reference.randomAccess();
+		final RandomAccess< IntType > ia = img.randomAccess();
+		final Random random = new Random( 42 );
+		final long[] pos = new long[ 3 ];
+		for ( int i = 0; i < 5000; ++i )
+		{
+			for ( int d = 0; d < 3; ++d )
+				pos[ d ] = random.nextInt( ( int ) dimensions[ d ] );
+			final int value = random.nextInt( 4 );
+			ra.setPosition( pos );
+			ra.get().set( value );
+			ia.setPosition( pos );
+			ia.get().set( value );
+		}
+
+		final Cursor< IntType > rc = reference.cursor();
+		final Cursor< IntType > ic = img.cursor();
+		while ( rc.hasNext() )
+			assertEquals( rc.next().get(), ic.next().get() );
+
+		final NtreeImg< IntType, ? > copy = img.copy();
+		assertTrue( copy.factory() instanceof ArrayNtreeImgFactory );
+		final Cursor< IntType > cc = copy.cursor();
+		rc.reset();
+		while ( rc.hasNext() )
+			assertEquals( rc.next().get(), cc.next().get() );
+	}
+
+	@Test
+	public void testFloatingPointValues()
+	{
+		final long[] dimensions = new long[] { 20, 30 };
+		final ArrayImg< FloatType, ? > expectedFloat = new ArrayImgFactory< FloatType >().create( dimensions, new FloatType() );
+		final ArrayImg< DoubleType, ? > expectedDouble = new ArrayImgFactory< DoubleType >().create( dimensions, new DoubleType() );
+		final NtreeImg< FloatType, ? > floatImg = new ArrayNtreeImgFactory< FloatType >().create( dimensions, new FloatType() );
+		final NtreeImg< DoubleType, ? > doubleImg = new ArrayNtreeImgFactory< DoubleType >().create( dimensions, new DoubleType() );
+
+		final RandomAccess< FloatType > ef = expectedFloat.randomAccess();
+		final RandomAccess< DoubleType > ed = expectedDouble.randomAccess();
+		final RandomAccess< FloatType > f = floatImg.randomAccess();
+		final RandomAccess< DoubleType > d = doubleImg.randomAccess();
+		final Random random = new Random( 7 );
+		final double[] values = new double[] { 0, -0.0, 1.5, Double.NaN };
+		for ( int i = 0; i < 2000; ++i )
+		{
+			final long[] pos = new long[] { random.nextInt( 20 ), random.nextInt( 30 ) };
+			final double value = values[ random.nextInt( values.length ) ];
+			ef.setPosition( pos );
+			ef.get().set( ( float ) value );
+			ed.setPosition( pos );
+			ed.get().set( value );
+			f.setPosition( pos );
+			f.get().set( ( float ) value );
+			d.setPosition( pos );
+			d.get().set( value );
+		}
+
+		final Cursor< FloatType > c = expectedFloat.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			f.setPosition( c );
+			ed.setPosition( c );
+			d.setPosition( c );
+			assertEquals( Float.floatToIntBits( c.get().get() ), Float.floatToIntBits( f.get().get() ) );
+			assertEquals( Double.doubleToLongBits( ed.get().get() ), Double.doubleToLongBits( d.get().get() ) );
+		}
+	}
+}
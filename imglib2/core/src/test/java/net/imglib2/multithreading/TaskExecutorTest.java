@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.multithreading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TaskExecutor}.
+ */
+public class TaskExecutorTest
+{
+	final TaskExecutor executor = new TaskExecutor( 4 );
+
+	@Test
+	public void testForEachChunkCoversRange()
+	{
+		final int size = 1013;
+		final AtomicInteger[] visits = new AtomicInteger[ size ];
+		for ( int i = 0; i < size; ++i )
+			visits[ i ] = new AtomicInteger();
+
+		executor.forEachChunk( size, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				for ( long i = startPosition; i < startPosition + loopSize; ++i )
+					visits[ ( int ) i ].incrementAndGet();
+			}
+		} );
+
+		for ( int i = 0; i < size; ++i )
+			assertEquals( 1, visits[ i ].get() );
+	}
+
+	@Test
+	public void testForEachIntervalCoversInterval()
+	{
+		final Interval interval = new FinalInterval( new long[] { -3, 2, 0 }, new long[] { 5, 40, 1 } );
+		final AtomicLong count = new AtomicLong();
+
+		executor.forEachInterval( interval, new IntervalTask()
+		{
+			@Override
+			public void run( final Interval slab )
+			{
+				for ( int d = 0; d < interval.numDimensions(); ++d )
+				{
+					assertTrue( slab.min( d ) >= interval.min( d ) );
+					assertTrue( slab.max( d ) <= interval.max( d ) );
+				}
+				long size = 1;
+				for ( int d = 0; d < slab.numDimensions(); ++d )
+					size *= slab.dimension( d );
+				count.addAndGet( size );
+			}
+		} );
+
+		assertEquals( 9 * 39 * 2, count.get() );
+	}
+
+	@Test
+	public void testNestedLoopsDoNotBlock()
+	{
+		final AtomicLong count = new AtomicLong();
+
+		executor.forEachChunk( 64, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				for ( long i = 0; i < loopSize; ++i )
+					executor.forEachChunk( 100, new ChunkTask()
+					{
+						@Override
+						public void run( final long start, final long length )
+						{
+							count.addAndGet( length );
+						}
+					} );
+			}
+		} );
+
+		assertEquals( 6400, count.get() );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testExceptionIsRethrown()
+	{
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >();
+		for ( int i = 0; i < 8; ++i )
+		{
+			final int index = i;
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if ( index == 5 )
+						throw new IllegalStateException();
+				}
+			} );
+		}
+
+		executor.run( tasks );
+	}
+
+	@Test
+	public void testRemainingTasksRunAfterException()
+	{
+		// the calling thread claims the first task, which fails before any
+		// helper had a chance to start
+		final AtomicInteger count = new AtomicInteger();
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >();
+		for ( int i = 0; i < 16; ++i )
+		{
+			final int index = i;
+			tasks.add( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					if ( index == 0 )
+						throw new IllegalStateException();
+					count.incrementAndGet();
+				}
+			} );
+		}
+
+		try
+		{
+			executor.run( tasks );
+			fail( "exception was not rethrown" );
+		}
+		catch ( final IllegalStateException e )
+		{
+			assertEquals( 15, count.get() );
+		}
+
+		// also when running on the calling thread only
+		count.set( 0 );
+		try
+		{
+			executor.run( tasks, 1 );
+			fail( "exception was not rethrown" );
+		}
+		catch ( final IllegalStateException e )
+		{
+			assertEquals( 15, count.get() );
+		}
+	}
+
+	@Test
+	public void testSetNumThreadsWhileRunning() throws InterruptedException
+	{
+		final int size = 1013;
+		final AtomicLong sum = new AtomicLong();
+		final ChunkTask task = new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				for ( long i = startPosition; i < startPosition + loopSize; ++i )
+					sum.addAndGet( i );
+			}
+		};
+
+		final int numLoops = 200;
+		final AtomicInteger numCorrect = new AtomicInteger();
+		final Thread[] threads = new Thread[ 4 ];
+		for ( int t = 0; t < threads.length; ++t )
+		{
+			threads[ t ] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for ( int i = 0; i < numLoops; ++i )
+					{
+						// the instance might be replaced before the loop
+						// submits its chunks
+						final TaskExecutor shared = TaskExecutor.getInstance();
+						final AtomicLong loopSum = new AtomicLong();
+						shared.forEachChunk( size, 4, new ChunkTask()
+						{
+							@Override
+							public void run( final long startPosition, final long loopSize )
+							{
+								task.run( startPosition, loopSize );
+								loopSum.addAndGet( loopSize );
+							}
+						} );
+						if ( loopSum.get() == size )
+							numCorrect.incrementAndGet();
+					}
+				}
+			};
+			threads[ t ].start();
+		}
+
+		final int numThreads = TaskExecutor.getInstance().getNumThreads();
+		for ( int i = 0; i < 100; ++i )
+			TaskExecutor.setNumThreads( 1 + i % 3 );
+		for ( final Thread thread : threads )
+			thread.join();
+		TaskExecutor.setNumThreads( numThreads );
+
+		assertEquals( threads.length * numLoops, numCorrect.get() );
+		assertEquals( threads.length * numLoops * ( ( long ) size * ( size - 1 ) / 2 ), sum.get() );
+	}
+
+	@Test
+	public void testShutdownRunsOnCallingThread()
+	{
+		final TaskExecutor shutDown = new TaskExecutor( 4 );
+		shutDown.shutdown();
+
+		final AtomicInteger count = new AtomicInteger();
+		shutDown.forEachChunk( 100, new ChunkTask()
+		{
+			@Override
+			public void run( final long startPosition, final long loopSize )
+			{
+				count.addAndGet( ( int ) loopSize );
+			}
+		} );
+		assertEquals( 100, count.get() );
+	}
+}
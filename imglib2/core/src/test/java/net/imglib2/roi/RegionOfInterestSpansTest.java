@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.roi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealPoint;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Compare {@link RegionOfInterestSpans} and {@link RegionOfInterestStatistics}
+ * with the cursors of {@link AbstractIterableRegionOfInterest}.
+ */
+public class RegionOfInterestSpansTest {
+
+	private static Img<IntType> makeNumberedArray(int width, int height) {
+		Img<IntType> img = ArrayImgs.ints(width, height);
+		int i = 0;
+		for (IntType t : img)
+			t.set(i++);
+		return img;
+	}
+
+	private static PolygonRegionOfInterest makePolygon(double[][] points) {
+		PolygonRegionOfInterest p = new PolygonRegionOfInterest();
+		for (int i = 0; i < points.length; i++)
+			p.addVertex(i, new RealPoint(points[i]));
+		return p;
+	}
+
+	private static List<AbstractIterableRegionOfInterest> makeRois() {
+		List<AbstractIterableRegionOfInterest> rois = new ArrayList<AbstractIterableRegionOfInterest>();
+		rois.add(makePolygon(new double[][] { { 2.5, 1.2 }, { 20.1, 4.3 }, { 13.7, 17.9 }, { 3.1, 12.2 } }));
+		rois.add(makePolygon(new double[][] { { 10, 10 }, { 30, 10 }, { 20, 15 }, { 30, 20 }, { 10, 20 } }));
+		rois.add(new EllipseRegionOfInterest(new RealPoint(new double[] { 15.3, 12.6 }), new double[] { 7.2, 4.1 }));
+		// partially outside of the image
+		rois.add(new EllipseRegionOfInterest(new RealPoint(new double[] { 38, 2 }), 6));
+		return rois;
+	}
+
+	@Test
+	public void testCursor() {
+		Img<IntType> img = makeNumberedArray(40, 30);
+		long[] expectedPosition = new long[2];
+		long[] position = new long[2];
+		for (AbstractIterableRegionOfInterest roi : makeRois()) {
+			Cursor<IntType> expected = roi.getIterableIntervalOverROI(img).cursor();
+			RegionOfInterestSpans spans = roi.getSpans().intersect(img);
+			Cursor<IntType> actual = spans.cursor(img);
+			long count = 0;
+			while (expected.hasNext()) {
+				assertTrue(actual.hasNext());
+				expected.fwd();
+				actual.fwd();
+				expected.localize(expectedPosition);
+				actual.localize(position);
+				assertArrayEquals(expectedPosition, position);
+				assertEquals(expected.get().get(), actual.get().get());
+				count++;
+			}
+			assertFalse(actual.hasNext());
+			assertEquals(count, spans.size());
+		}
+	}
+
+	@Test
+	public void testJumpFwd() {
+		Img<IntType> img = makeNumberedArray(40, 30);
+		RegionOfInterestSpans spans = makeRois().get(2).getSpans();
+		Cursor<IntType> stepping = spans.cursor(img);
+		Cursor<IntType> jumping = spans.cursor(img);
+		int steps = 0;
+		while (stepping.hasNext()) {
+			stepping.fwd();
+			steps++;
+			if (steps % 7 == 0) {
+				jumping.jumpFwd(7);
+				assertEquals(stepping.get().get(), jumping.get().get());
+			}
+		}
+	}
+
+	@Test
+	public void testSpansAreCached() {
+		EllipseRegionOfInterest roi = new EllipseRegionOfInterest(new RealPoint(new double[] { 5, 5 }), 3);
+		RegionOfInterestSpans spans = roi.getSpans();
+		assertTrue(spans == roi.getSpans());
+		roi.move(new double[] { 1, 0 });
+		assertFalse(spans == roi.getSpans());
+		assertEquals(spans.getStart(0, 0) + 1, roi.getSpans().getStart(0, 0));
+	}
+
+	@Test
+	public void testStatistics() {
+		Img<IntType> img = makeNumberedArray(40, 30);
+		List<AbstractIterableRegionOfInterest> rois = makeRois();
+		int numBins = 16;
+		RegionOfInterestStatistics stats = RegionOfInterestStatistics.compute(img, rois, numBins, 0, 1200);
+		assertEquals(rois.size(), stats.numRegions());
+		for (int r = 0; r < rois.size(); r++) {
+			long count = 0;
+			double sum = 0;
+			long[] histogram = new long[numBins];
+			for (IntType t : rois.get(r).getIterableIntervalOverROI(img)) {
+				count++;
+				sum += t.get();
+				histogram[Math.min(numBins - 1, (int) (t.get() * numBins / 1200.0))]++;
+			}
+			assertEquals(count, stats.getCount(r));
+			assertEquals(sum, stats.getSum(r), 0);
+			assertEquals(sum / count, stats.getMean(r), 1e-10);
+			assertArrayEquals(histogram, stats.getHistogram(r));
+		}
+	}
+
+	@Test
+	public void testStatisticsFarApartRows() {
+		// the rows of the ROIs span more than 2^32 rows of an unbounded image
+		RandomAccessible<IntType> img = Views.extendPeriodic(makeNumberedArray(40, 30));
+		List<AbstractIterableRegionOfInterest> rois = new ArrayList<AbstractIterableRegionOfInterest>();
+		rois.add(new RectangleRegionOfInterest(new double[] { 3, 3e9 }, new double[] { 5, 4 }));
+		rois.add(new RectangleRegionOfInterest(new double[] { 7, -3e9 }, new double[] { 4, 6 }));
+		rois.add(new RectangleRegionOfInterest(new double[] { 0, 3e9 + 1 }, new double[] { 9, 2 }));
+		RegionOfInterestStatistics stats = RegionOfInterestStatistics.compute(img, rois);
+		for (int r = 0; r < rois.size(); r++) {
+			long count = 0;
+			double sum = 0;
+			for (IntType t : rois.get(r).getIterableIntervalOverROI(img)) {
+				count++;
+				sum += t.get();
+			}
+			assertTrue(count > 0);
+			assertEquals(count, stats.getCount(r));
+			assertEquals(sum, stats.getSum(r), 0);
+		}
+	}
+}
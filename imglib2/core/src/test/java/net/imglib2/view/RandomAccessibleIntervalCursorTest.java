@@ -147,6 +147,30 @@ public class RandomAccessibleIntervalCursorTest
 		assertEquals( c1.get().get(), c2.get().get() );
 	}
 
+	@Test
+	public void testJumpFwdAcrossLines()
+	{
+		final Cursor< IntType > c = new RandomAccessibleIntervalCursor< IntType >( array1 );
+
+		c.jumpFwd( 3120 );
+		c.fwd();
+		assertEquals( intData[ 3120 ], c.get().get() );
+
+		c.jumpFwd( 150 );
+		assertEquals( intData[ 3270 ], c.get().get() );
+
+		c.jumpFwd( 207 * 5 + 100 );
+		assertEquals( intData[ 3270 + 207 * 5 + 100 ], c.get().get() );
+
+		// fwd() after a jump must wrap at the end of the right line
+		final int i = 3270 + 207 * 5 + 100;
+		for ( int j = i + 1; j < i + 400; ++j )
+		{
+			c.fwd();
+			assertEquals( intData[ j ], c.get().get() );
+		}
+	}
+
 	@Test
 	public void testArrayCopy()
 	{
@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package tests.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.labeling.Labeling;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.roi.IterableRegionOfInterest;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks the run-length label index of the DefaultROIStrategy against a
+ * brute-force scan of the labeling.
+ */
+public class DefaultROIStrategyTest
+{
+	private final int numThreads = TaskExecutor.getInstance().getNumThreads();
+
+	@After
+	public void restoreThreads()
+	{
+		TaskExecutor.setNumThreads( numThreads );
+	}
+
+	private Labeling< Integer > makeRandomLabeling( final long[] dimensions, final int numLabels, final long seed )
+	{
+		final Labeling< Integer > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final Random random = new Random( seed );
+		final Cursor< LabelingType< Integer > > c = labeling.cursor();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			final List< Integer > labels = new ArrayList< Integer >();
+			// long runs of a label with occasional overlaps
+			if ( random.nextInt( 4 ) > 0 )
+				labels.add( random.nextInt( numLabels ) );
+			if ( random.nextInt( 8 ) == 0 )
+				labels.add( numLabels );
+			t.setLabeling( labels );
+		}
+		return labeling;
+	}
+
+	private void checkAgainstBruteForce( final Labeling< Integer > labeling )
+	{
+		final int n = labeling.numDimensions();
+		final Set< Integer > expectedLabels = new HashSet< Integer >();
+		for ( final LabelingType< Integer > t : labeling )
+			expectedLabels.addAll( t.getLabeling() );
+		assertEquals( expectedLabels, new HashSet< Integer >( labeling.getLabels() ) );
+
+		for ( final Integer label : expectedLabels )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			final long[] start = new long[ n ];
+			Arrays.fill( min, Long.MAX_VALUE );
+			Arrays.fill( max, Long.MIN_VALUE );
+			boolean first = true;
+			long area = 0;
+			final List< long[] > positions = new ArrayList< long[] >();
+			final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+			while ( c.hasNext() )
+			{
+				if ( !c.next().getLabeling().contains( label ) )
+					continue;
+				final long[] position = new long[ n ];
+				c.localize( position );
+				positions.add( position );
+				area++;
+				for ( int d = 0; d < n; d++ )
+				{
+					min[ d ] = Math.min( min[ d ], position[ d ] );
+					max[ d ] = Math.max( max[ d ], position[ d ] );
+				}
+				if ( first || isLess( position, start ) )
+					System.arraycopy( position, 0, start, 0, n );
+				first = false;
+			}
+
+			final long[] actualMin = new long[ n ];
+			final long[] actualMax = new long[ n ];
+			final long[] actualStart = new long[ n ];
+			assertTrue( labeling.getExtents( label, actualMin, actualMax ) );
+			assertArrayEquals( min, actualMin );
+			assertArrayEquals( max, actualMax );
+			assertTrue( labeling.getRasterStart( label, actualStart ) );
+			assertArrayEquals( start, actualStart );
+			assertEquals( area, labeling.getArea( label ) );
+
+			final IterableRegionOfInterest roi = labeling.getIterableRegionOfInterest( label );
+			final Cursor< BitType > rc = roi.getIterableIntervalOverROI( new ArrayImgFactory< BitType >().create( labeling, new BitType() ) ).localizingCursor();
+			int i = 0;
+			final long[] position = new long[ n ];
+			while ( rc.hasNext() )
+			{
+				rc.fwd();
+				rc.localize( position );
+				assertArrayEquals( positions.get( i++ ), position );
+			}
+			assertEquals( positions.size(), i );
+		}
+	}
+
+	/**
+	 * lexicographic order starting with dimension 0, the order used for the
+	 * raster start
+	 */
+	private static boolean isLess( final long[] a, final long[] b )
+	{
+		for ( int d = 0; d < a.length; d++ )
+		{
+			if ( a[ d ] < b[ d ] )
+				return true;
+			if ( a[ d ] > b[ d ] )
+				return false;
+		}
+		return false;
+	}
+
+	@Test
+	public void testRandom2D()
+	{
+		checkAgainstBruteForce( makeRandomLabeling( new long[] { 37, 23 }, 3, 17 ) );
+	}
+
+	@Test
+	public void testRandom3DMultiThreaded()
+	{
+		TaskExecutor.setNumThreads( 4 );
+		checkAgainstBruteForce( makeRandomLabeling( new long[] { 13, 11, 9 }, 4, 42 ) );
+	}
+
+	@Test
+	public void testRandom1D()
+	{
+		checkAgainstBruteForce( makeRandomLabeling( new long[] { 100 }, 2, 5 ) );
+	}
+
+	@Test
+	public void testStatisticsFollowChanges()
+	{
+		final Labeling< Integer > labeling = makeRandomLabeling( new long[] { 20, 10 }, 2, 3 );
+		checkAgainstBruteForce( labeling );
+		final Cursor< LabelingType< Integer > > c = labeling.cursor();
+		while ( c.hasNext() )
+			c.next().setLabeling( new ArrayList< Integer >() );
+		assertTrue( labeling.getLabels().isEmpty() );
+		assertFalse( labeling.getExtents( 0, new long[ 2 ], new long[ 2 ] ) );
+	}
+}
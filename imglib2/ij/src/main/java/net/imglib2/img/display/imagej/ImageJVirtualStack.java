@@ -43,6 +43,16 @@ import ij.process.ColorProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
+
+import java.lang.reflect.Array;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
@@ -54,11 +64,27 @@ import net.imglib2.type.NativeType;
 import net.imglib2.view.Views;
 
 /**
- * TODO
- *
+ * A {@link VirtualStack} that renders the slices of a
+ * {@link RandomAccessibleInterval} through a {@link Converter} when they are
+ * requested.
+ * 
+ * <p>
+ * By default every request renders the slice from the source, so the stack
+ * always shows the current content of the source. Rendered slices can be kept
+ * in a cache by giving it a memory budget with {@link #setMaxCacheBytes(long)},
+ * and the neighbors of a requested slice can be rendered in the background
+ * with {@link #setPrefetch(boolean)}. With caching enabled,
+ * {@link #invalidateCache()} has to be called whenever the source is
+ * modified.
+ * </p>
  */
 public abstract class ImageJVirtualStack< S, T extends NativeType< T > > extends VirtualStack
 {
+	/**
+	 * single daemon thread shared by all stacks to render prefetched slices
+	 */
+	private static ExecutorService prefetchService;
+
 	final private XYProjector< S, T > projector;
 
 	final private int size;
@@ -68,6 +94,46 @@ public abstract class ImageJVirtualStack< S, T extends NativeType< T > > extends
 
 	final protected ImageProcessor imageProcessor;
 
+	/**
+	 * the zero-min source, converter and type used to render prefetched slices
+	 */
+	final private RandomAccessibleInterval< S > source;
+
+	final private Converter< S, T > converter;
+
+	final private T type;
+
+	/**
+	 * the pixel array of {@link #imageProcessor}, rendered by the projector
+	 */
+	final private Object pixels;
+
+	final private long bytesPerSlice;
+
+	/**
+	 * rendered slices by slice index (1-based), least recently used first
+	 */
+	final private LinkedHashMap< Integer, Object > cache = new LinkedHashMap< Integer, Object >( 16, 0.75f, true );
+
+	/**
+	 * slices that are queued for prefetching
+	 */
+	final private Set< Integer > pending = new HashSet< Integer >();
+
+	/**
+	 * incremented by {@link #invalidateCache()}, so that slices that were
+	 * rendered before are not added to the cache
+	 */
+	private long generation = 0;
+
+	private int maxCachedSlices = 0;
+
+	private boolean prefetch = false;
+
+	private long cacheHits = 0;
+
+	private long cacheMisses = 0;
+
 	protected ImageJVirtualStack( final RandomAccessibleInterval< S > source, final Converter< S, T > converter, final T type, final int ijtype )
 	{
 		super( ( int ) source.dimension( 0 ), getDimension1Size( source ), null, null );
@@ -84,7 +150,11 @@ public abstract class ImageJVirtualStack< S, T extends NativeType< T > > extends
 		this.numDimensions = source.numDimensions();
 
 		// if the source interval is not zero-min, we wrap it into a view that translates it to the origin
-		this.projector = new XYProjector< S, T >( Views.isZeroMin( source ) ? source : Views.zeroMin( source ), img, converter );
+		this.source = Views.isZeroMin( source ) ? source : Views.zeroMin( source );
+		this.converter = converter;
+		this.type = type.createVariable();
+		this.projector = new XYProjector< S, T >( this.source, img, converter );
+		this.pixels = ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
 
 		switch ( ijtype )
 		{
@@ -108,6 +178,8 @@ public abstract class ImageJVirtualStack< S, T extends NativeType< T > > extends
 		default:
 			throw new IllegalArgumentException( "unsupported color type " + ijtype );
 		}
+
+		this.bytesPerSlice = ( long ) sizeX * sizeY * ( bitDepth == 24 ? 4 : bitDepth / 8 );
 	}
 	
 	/**
@@ -127,17 +199,245 @@ public abstract class ImageJVirtualStack< S, T extends NativeType< T > > extends
 	/**
 	 * Returns an ImageProcessor for the specified slice, were 1<=n<=nslices.
 	 * Returns null if the stack is empty.
+	 * 
+	 * If caching is enabled, slices are served from the slice cache if
+	 * possible. Otherwise they are rendered through the converter and added to
+	 * the cache. If prefetching is enabled, the neighboring slices n-1 and n+1
+	 * are then rendered in the background.
 	 */
 	@Override
 	public ImageProcessor getProcessor( final int n )
 	{
-		if ( numDimensions > 2 )
-			projector.setPosition( n - 1, 2 );
+		final Object cached;
+		final long renderedGeneration;
+		synchronized ( cache )
+		{
+			renderedGeneration = generation;
+			cached = cache.get( n );
+			if ( cached != null )
+				++cacheHits;
+			else
+				++cacheMisses;
+		}
+
+		if ( cached != null )
+			System.arraycopy( cached, 0, pixels, 0, imageProcessor.getPixelCount() );
+		else
+		{
+			if ( numDimensions > 2 )
+				projector.setPosition( n - 1, 2 );
+
+			projector.map();
+			if ( maxCachedSlices > 0 )
+				put( n, copyOf( pixels ), renderedGeneration );
+		}
 
-		projector.map();
+		if ( prefetch && maxCachedSlices > 2 )
+		{
+			prefetch( n - 1 );
+			prefetch( n + 1 );
+		}
 		return imageProcessor;
 	}
 
+	/**
+	 * Render slice n in the background, unless it is out of range, cached or
+	 * already queued.
+	 */
+	private void prefetch( final int n )
+	{
+		if ( n < 1 || n > size )
+			return;
+
+		final long renderedGeneration;
+		synchronized ( cache )
+		{
+			if ( cache.containsKey( n ) || !pending.add( n ) )
+				return;
+			renderedGeneration = generation;
+		}
+
+		getPrefetchService().execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					synchronized ( cache )
+					{
+						if ( cache.containsKey( n ) )
+							return;
+					}
+					put( n, render( n ), renderedGeneration );
+				}
+				finally
+				{
+					synchronized ( cache )
+					{
+						pending.remove( n );
+					}
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Render slice n into a new pixel array, using a projector of its own.
+	 */
+	private Object render( final int n )
+	{
+		final ArrayImg< T, ? > img = new ArrayImgFactory< T >().create( new long[] { imageProcessor.getWidth(), imageProcessor.getHeight() }, type );
+		final XYProjector< S, T > sliceProjector = new XYProjector< S, T >( source, img, converter );
+		if ( numDimensions > 2 )
+			sliceProjector.setPosition( n - 1, 2 );
+		sliceProjector.map();
+		return ( ( ArrayDataAccess< ? > ) img.update( null ) ).getCurrentStorageArray();
+	}
+
+	/**
+	 * Add a slice to the cache, unless the cache was invalidated since the
+	 * slice was rendered.
+	 */
+	private void put( final int n, final Object slicePixels, final long renderedGeneration )
+	{
+		synchronized ( cache )
+		{
+			if ( renderedGeneration != generation )
+				return;
+
+			cache.put( n, slicePixels );
+			final Iterator< Integer > eldest = cache.keySet().iterator();
+			while ( cache.size() > maxCachedSlices )
+			{
+				eldest.next();
+				eldest.remove();
+			}
+		}
+	}
+
+	private static Object copyOf( final Object array )
+	{
+		final int length = Array.getLength( array );
+		final Object copy = Array.newInstance( array.getClass().getComponentType(), length );
+		System.arraycopy( array, 0, copy, 0, length );
+		return copy;
+	}
+
+	private static synchronized ExecutorService getPrefetchService()
+	{
+		if ( prefetchService == null )
+		{
+			prefetchService = Executors.newSingleThreadExecutor( new ThreadFactory()
+			{
+				@Override
+				public Thread newThread( final Runnable r )
+				{
+					final Thread thread = new Thread( r, "ImageJVirtualStack prefetch" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			} );
+		}
+		return prefetchService;
+	}
+
+	/**
+	 * Set the memory budget of the slice cache. Caching is disabled by default,
+	 * and a budget smaller than one slice disables it again (and prefetching).
+	 * While caching is enabled, {@link #invalidateCache()} has to be called
+	 * when the source is modified.
+	 * 
+	 * @param maxCacheBytes
+	 *            the maximal number of bytes of rendered slices kept in memory
+	 */
+	public void setMaxCacheBytes( final long maxCacheBytes )
+	{
+		synchronized ( cache )
+		{
+			maxCachedSlices = ( int ) Math.min( size, maxCacheBytes / Math.max( 1, bytesPerSlice ) );
+			final Iterator< Integer > eldest = cache.keySet().iterator();
+			while ( cache.size() > maxCachedSlices )
+			{
+				eldest.next();
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the maximal number of slices kept in the cache
+	 */
+	public int getMaxCachedSlices()
+	{
+		return maxCachedSlices;
+	}
+
+	/**
+	 * Enable or disable rendering the neighbors of a requested slice in the
+	 * background. Prefetching is disabled by default, and only works if the
+	 * cache can hold more than two slices. The source and the converter must
+	 * be safe to use from a second thread.
+	 */
+	public void setPrefetch( final boolean prefetch )
+	{
+		this.prefetch = prefetch;
+	}
+
+	public boolean getPrefetch()
+	{
+		return prefetch;
+	}
+
+	/**
+	 * Drop all cached slices. Call this when the source has been modified.
+	 * Slices that are being prefetched are not added to the cache when they
+	 * are finished.
+	 */
+	public void invalidateCache()
+	{
+		synchronized ( cache )
+		{
+			++generation;
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @return true if slice n (1-based) is in the cache
+	 */
+	public boolean isCached( final int n )
+	{
+		synchronized ( cache )
+		{
+			return cache.containsKey( n );
+		}
+	}
+
+	/**
+	 * @return the number of {@link #getProcessor(int)} calls served from the
+	 *         cache
+	 */
+	public long getCacheHits()
+	{
+		synchronized ( cache )
+		{
+			return cacheHits;
+		}
+	}
+
+	/**
+	 * @return the number of {@link #getProcessor(int)} calls that rendered the
+	 *         slice
+	 */
+	public long getCacheMisses()
+	{
+		synchronized ( cache )
+		{
+			return cacheMisses;
+		}
+	}
+
 	@Override
 	public int getBitDepth()
 	{
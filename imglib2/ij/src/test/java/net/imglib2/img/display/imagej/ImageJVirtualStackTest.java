@@ -0,0 +1,209 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.img.display.imagej;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.TypeIdentity;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageJVirtualStackTest
+{
+	final long[] dimensions = new long[] { 16, 8, 5 };
+
+	Img< UnsignedByteType > img;
+
+	ImageJVirtualStackUnsignedByte< UnsignedByteType > stack;
+
+	@Before
+	public void setUp()
+	{
+		img = new ArrayImgFactory< UnsignedByteType >().create( dimensions, new UnsignedByteType() );
+		final RandomAccess< UnsignedByteType > a = img.randomAccess();
+		for ( int z = 0; z < dimensions[ 2 ]; ++z )
+		{
+			a.setPosition( z, 2 );
+			for ( int y = 0; y < dimensions[ 1 ]; ++y )
+			{
+				a.setPosition( y, 1 );
+				for ( int x = 0; x < dimensions[ 0 ]; ++x )
+				{
+					a.setPosition( x, 0 );
+					a.get().set( value( x, y, z ) );
+				}
+			}
+		}
+		stack = new ImageJVirtualStackUnsignedByte< UnsignedByteType >( img, new TypeIdentity< UnsignedByteType >() );
+	}
+
+	static int value( final int x, final int y, final int z )
+	{
+		return ( x + 3 * y + 50 * z ) & 0xff;
+	}
+
+	/**
+	 * Check that slice n (1-based) shows the values set in {@link #setUp()},
+	 * or the given value at (0,0).
+	 */
+	void checkSlice( final int n, final int valueAtOrigin )
+	{
+		final byte[] pixels = ( byte[] ) stack.getProcessor( n ).getPixels();
+		assertEquals( valueAtOrigin, pixels[ 0 ] & 0xff );
+		for ( int i = 1; i < pixels.length; ++i )
+			assertEquals( value( i % ( int ) dimensions[ 0 ], i / ( int ) dimensions[ 0 ], n - 1 ), pixels[ i ] & 0xff );
+	}
+
+	void checkSlice( final int n )
+	{
+		checkSlice( n, value( 0, 0, n - 1 ) );
+	}
+
+	void setOrigin( final int z, final int value )
+	{
+		final RandomAccess< UnsignedByteType > a = img.randomAccess();
+		a.setPosition( new long[] { 0, 0, z } );
+		a.get().set( value );
+	}
+
+	long bytesPerSlice()
+	{
+		return dimensions[ 0 ] * dimensions[ 1 ];
+	}
+
+	@Test
+	public void testNoCachingByDefault()
+	{
+		assertEquals( 0, stack.getMaxCachedSlices() );
+		assertFalse( stack.getPrefetch() );
+
+		checkSlice( 2 );
+		checkSlice( 2 );
+		assertFalse( stack.isCached( 2 ) );
+		assertEquals( 0, stack.getCacheHits() );
+
+		// modifications of the source show up without invalidating anything
+		setOrigin( 1, 222 );
+		checkSlice( 2, 222 );
+	}
+
+	@Test
+	public void testHitAndMiss()
+	{
+		stack.setMaxCacheBytes( 2 * bytesPerSlice() );
+		assertEquals( 2, stack.getMaxCachedSlices() );
+
+		checkSlice( 1 );
+		assertEquals( 1, stack.getCacheMisses() );
+		assertTrue( stack.isCached( 1 ) );
+
+		checkSlice( 1 );
+		assertEquals( 1, stack.getCacheHits() );
+
+		checkSlice( 2 );
+		checkSlice( 3 );
+		assertEquals( 3, stack.getCacheMisses() );
+
+		// least recently used slice was evicted
+		assertFalse( stack.isCached( 1 ) );
+		assertTrue( stack.isCached( 2 ) );
+		assertTrue( stack.isCached( 3 ) );
+
+		checkSlice( 2 );
+		assertEquals( 2, stack.getCacheHits() );
+
+		stack.setMaxCacheBytes( 0 );
+		assertFalse( stack.isCached( 2 ) );
+		checkSlice( 2 );
+		assertEquals( 2, stack.getCacheHits() );
+	}
+
+	@Test
+	public void testInvalidateAfterSourceModified()
+	{
+		stack.setMaxCacheBytes( 5 * bytesPerSlice() );
+		checkSlice( 3 );
+
+		setOrigin( 2, 222 );
+
+		// still the cached slice
+		checkSlice( 3 );
+
+		stack.invalidateCache();
+		assertFalse( stack.isCached( 3 ) );
+		checkSlice( 3, 222 );
+		assertTrue( stack.isCached( 3 ) );
+	}
+
+	@Test
+	public void testPrefetch() throws InterruptedException
+	{
+		stack.setMaxCacheBytes( 5 * bytesPerSlice() );
+		stack.setPrefetch( true );
+
+		checkSlice( 3 );
+		waitUntilCached( 2 );
+		waitUntilCached( 4 );
+		assertFalse( stack.isCached( 1 ) );
+		assertFalse( stack.isCached( 5 ) );
+
+		final long misses = stack.getCacheMisses();
+		checkSlice( 2 );
+		checkSlice( 4 );
+		assertEquals( misses, stack.getCacheMisses() );
+		assertEquals( 2, stack.getCacheHits() );
+
+		// the first and last slice only have one neighbor
+		waitUntilCached( 1 );
+		waitUntilCached( 5 );
+	}
+
+	void waitUntilCached( final int n ) throws InterruptedException
+	{
+		for ( int i = 0; i < 500 && !stack.isCached( n ); ++i )
+			Thread.sleep( 10 );
+		assertTrue( "slice " + n + " was not prefetched", stack.isCached( n ) );
+	}
+}
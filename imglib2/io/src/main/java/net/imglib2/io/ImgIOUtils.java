@@ -47,6 +47,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import loci.formats.FormatTools;
+import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
@@ -58,6 +59,8 @@ import net.imglib2.img.basictypeaccess.array.FloatArray;
 import net.imglib2.img.basictypeaccess.array.IntArray;
 import net.imglib2.img.basictypeaccess.array.LongArray;
 import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.AbstractCell;
+import net.imglib2.img.cell.Cells;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.integer.IntType;
@@ -257,4 +260,67 @@ public final class ImgIOUtils {
 		else access = null;
 		return access;
 	}
+
+	/** Copies a row of a plane from or to the primitive array of a cell. */
+	interface RowCopier {
+
+		/**
+		 * @param data The primitive array of the cell.
+		 * @param index The index of the first pixel of the row in the cell.
+		 * @param offset The index of the first pixel of the row in the plane.
+		 * @param length The number of pixels of the row.
+		 * @return false to stop copying.
+		 */
+		boolean copy(Object data, int index, int offset, int length);
+	}
+
+	/**
+	 * Passes the rows of all cells that intersect a plane to the
+	 * {@link RowCopier}. Only the cells of the plane are visited, i.e. the
+	 * position of the plane selects one cell in dimensions 2 and above.
+	 * 
+	 * @param pos The position of the plane, only dimensions 2 and above are
+	 *          used.
+	 * @param sizeX The width of the plane.
+	 * @return false if the {@link RowCopier} stopped copying.
+	 */
+	static <A extends ArrayDataAccess<A>, C extends AbstractCell<A>> boolean
+		copyPlane(final Cells<A, C> cells, final long[] pos, final long sizeX,
+			final RowCopier copier)
+	{
+		final int n = pos.length;
+		final RandomAccess<C> access = cells.randomAccess();
+		for (int d = 2; d < n; d++)
+			access.setPosition(pos[d] / cells.cellDimension(d), d);
+		final long cellsX = (cells.dimension(0) - 1) / cells.cellDimension(0) + 1;
+		final long cellsY =
+			n > 1 ? (cells.dimension(1) - 1) / cells.cellDimension(1) + 1 : 1;
+
+		final long[] cellPos = new long[n];
+		for (long cy = 0; cy < cellsY; cy++) {
+			if (n > 1) access.setPosition(cy, 1);
+			for (long cx = 0; cx < cellsX; cx++) {
+				access.setPosition(cx, 0);
+				final C cell = access.get();
+				final Object data = cell.getData().getCurrentStorageArray();
+
+				// position of the plane's rows relative to the cell
+				for (int d = 2; d < n; d++)
+					cellPos[d] = pos[d] - cell.min(d);
+				final long x0 = cell.min(0);
+				final long y0 = n > 1 ? cell.min(1) : 0;
+				final int height = n > 1 ? cell.dimension(1) : 1;
+				final int width = cell.dimension(0);
+				for (int y = 0; y < height; y++) {
+					if (n > 1) cellPos[1] = y;
+					if (!copier.copy(data, cell.localPositionToIndex(cellPos),
+						(int) ((y0 + y) * sizeX + x0), width))
+					{
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
 }
@@ -40,6 +40,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import loci.common.DataTools;
 import loci.common.StatusEvent;
@@ -64,11 +65,19 @@ import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.BitArray;
+import net.imglib2.img.basictypeaccess.nio.BufferAccess;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.Cells;
+import net.imglib2.img.cell.ListImgCells;
 import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.sampler.special.OrthoSliceCursor;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
@@ -89,8 +98,32 @@ public class ImgOpener implements StatusReporter {
 	private final List<StatusListener> listeners =
 		new ArrayList<StatusListener>();
 
+	/** Number of planes that are read concurrently. */
+	private int numThreads = 1;
+
 	// -- ImgOpener methods --
 
+	/**
+	 * Sets the number of planes that are read and decoded concurrently. With
+	 * more than one thread, every additional worker opens the source with its
+	 * own {@link IFormatReader} (see {@link #createReader(String, boolean)}).
+	 * Images that cannot safely be written from several threads (e.g., disk
+	 * backed {@link CellImg}s or sub-word types such as bit types) and readers
+	 * whose configuration cannot be reproduced this way are always read
+	 * sequentially. Progress is only reported from the calling thread.
+	 * 
+	 * @param numThreads The number of threads, 1 (the default) for sequential
+	 *          reading.
+	 */
+	public void setNumThreads(final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/** Gets the number of planes that are read concurrently. */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	/**
 	 * Reads in an {@link ImgPlus} from the given source. It will read it into a
 	 * {@link PlanarImg}, where the {@link Type} T is defined by the file format
@@ -601,29 +634,236 @@ public class ImgOpener implements StatusReporter {
 
 		// populate planes
 		final int planeCount = r.getImageCount();
-		final boolean isPlanar = planarAccess != null && compatibleTypes;
+		// planes in buffers (e.g., direct or memory-mapped) are filled in place,
+		// adopting a heap array would detach them from their storage
+		final boolean isPlanar =
+			planarAccess != null && compatibleTypes &&
+				!(planarAccess.getPlane(0) instanceof BufferAccess);
 		imgPlus.initializeColorTables(planeCount);
 
-		byte[] plane = null;
-		for (int no = 0; no < planeCount; no++) {
-			notifyListeners(new StatusEvent(no, planeCount, "Reading plane " +
-				(no + 1) + "/" + planeCount));
+		final int numWorkers = Math.min(numThreads, planeCount);
+		// one reader per worker, the first one is the given reader
+		final List<IFormatReader> readers = new ArrayList<IFormatReader>();
+		readers.add(r);
+		if (numWorkers > 1 && isConcurrentlyWritable(imgPlus.getImg())) {
+			for (int i = 1; i < numWorkers; i++) {
+				final IFormatReader worker = reproduceReader(r);
+				if (worker == null) break;
+				readers.add(worker);
+			}
+			if (readers.size() == 1) {
+				notifyListeners(new StatusEvent("Cannot reproduce the reader for " +
+					r.getCurrentFile() + ", reading sequentially"));
+			}
+		}
+
+		if (readers.size() == 1) {
+			byte[] plane = null;
+			for (int no = 0; no < planeCount; no++) {
+				notifyListeners(new StatusEvent(no, planeCount, "Reading plane " +
+					(no + 1) + "/" + planeCount));
+				plane =
+					readPlane(r, no, plane, planarAccess, isPlanar, compatibleTypes,
+						imgPlus);
+			}
+			if (computeMinMax) populateMinMax(r, imgPlus);
+			r.close();
+			return;
+		}
+
+		try {
+			// listeners are only notified from the calling thread, which also
+			// reads planes, with the number of planes read by all workers
+			final Thread caller = Thread.currentThread();
+			final AtomicInteger planesRead = new AtomicInteger();
+			final AtomicInteger nextPlane = new AtomicInteger();
+			final List<Runnable> tasks = new ArrayList<Runnable>();
+			for (final IFormatReader reader : readers) {
+				tasks.add(new Runnable() {
+
+					@Override
+					public void run() {
+						byte[] plane = null;
+						for (int no = nextPlane.getAndIncrement(); no < planeCount; no =
+							nextPlane.getAndIncrement())
+						{
+							if (Thread.currentThread() == caller) {
+								final int read = planesRead.get();
+								notifyListeners(new StatusEvent(read, planeCount,
+									"Reading plane " + (read + 1) + "/" + planeCount));
+							}
+							try {
+								plane =
+									readPlane(reader, no, plane, planarAccess, isPlanar,
+										compatibleTypes, imgPlus);
+								planesRead.incrementAndGet();
+							}
+							catch (final FormatException e) {
+								throw new RuntimeException(e);
+							}
+							catch (final IOException e) {
+								throw new RuntimeException(e);
+							}
+						}
+					}
+				});
+			}
+			try {
+				TaskExecutor.getInstance().run(tasks, readers.size());
+			}
+			catch (final RuntimeException e) {
+				if (e.getCause() instanceof FormatException) {
+					throw (FormatException) e.getCause();
+				}
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			}
+			if (computeMinMax) populateMinMax(readers, imgPlus);
+		}
+		finally {
+			for (final IFormatReader reader : readers)
+				reader.close();
+		}
+	}
+
+	/**
+	 * Reads one plane and stores it in the image together with its color
+	 * table.
+	 * 
+	 * @param buffer A buffer for the plane that may be reused, or null.
+	 * @return A buffer that may be reused for the next plane.
+	 */
+	private <T extends RealType<T>> byte[] readPlane(final IFormatReader r,
+		final int no, final byte[] buffer, final PlanarAccess<?> planarAccess,
+		final boolean isPlanar, final boolean compatibleTypes,
+		final ImgPlus<T> imgPlus) throws FormatException, IOException
+	{
+		byte[] plane = buffer;
+		if (isPlanar) {
+			// read into a new array which the image adopts
+			populatePlane(r, no, r.openBytes(no), planarAccess);
+		}
+		else {
 			if (plane == null) plane = r.openBytes(no);
 			else r.openBytes(no, plane);
-			if (isPlanar) populatePlane(r, no, plane, planarAccess);
-			else populatePlane(r, no, plane, imgPlus);
+			if (!compatibleTypes || !copyPlane(r, no, plane, imgPlus.getImg())) {
+				populatePlane(r, no, plane, imgPlus);
+			}
+		}
 
-			// store color table
-			final byte[][] lut8 = r.get8BitLookupTable();
+		// store color table
+		final byte[][] lut8 = r.get8BitLookupTable();
+		final short[][] lut16 = r.get16BitLookupTable();
+		synchronized (imgPlus) {
 			if (lut8 != null) imgPlus.setColorTable(new ColorTable8(lut8), no);
-			final short[][] lut16 = r.get16BitLookupTable();
 			if (lut16 != null) imgPlus.setColorTable(new ColorTable16(lut16), no);
 		}
-		if (computeMinMax) populateMinMax(r, imgPlus);
-		r.close();
+		return plane;
+	}
+
+	/**
+	 * Checks whether different planes of the image can be written by
+	 * different threads.
+	 */
+	private boolean isConcurrentlyWritable(final Img<?> img) {
+		// sub-word types share array elements between neighboring pixels, which
+		// may belong to different planes
+		if (img instanceof PlanarAccess) {
+			return !(((PlanarAccess<?>) img).getPlane(0) instanceof BitArray);
+		}
+		if (img instanceof ArrayImg) {
+			return !(((ArrayImg<?, ?>) img).update(null) instanceof BitArray);
+		}
+		if (img instanceof CellImg) {
+			final Cells<?, ?> cells = ((CellImg<?, ?, ?>) img).getCells();
+			if (!(cells instanceof ListImgCells)) return false;
+			final Object access = ((ListImgCells<?>) cells).cursor().next().getData();
+			return !(access instanceof BitArray);
+		}
+		return false;
+	}
+
+	/**
+	 * Opens the source of the given reader a second time, for reading planes
+	 * concurrently.
+	 * 
+	 * @return the new reader, or null if it would not be configured like the
+	 *         given one (e.g., because that one was not created by
+	 *         {@link #createReader(String, boolean)}).
+	 */
+	private IFormatReader reproduceReader(final IFormatReader r) {
+		final IFormatReader worker;
+		try {
+			worker = createReader(r.getCurrentFile(), hasMinMax(r));
+			worker.setSeries(r.getSeries());
+		}
+		catch (final FormatException e) {
+			return null;
+		}
+		catch (final IOException e) {
+			return null;
+		}
+		catch (final RuntimeException e) {
+			return null;
+		}
+		if (isSameConfiguration(r, worker)) return worker;
+		try {
+			worker.close();
+		}
+		catch (final IOException e) {
+			// the reader is not used anyway
+		}
+		return null;
+	}
+
+	/** Checks whether the reader chain includes a {@link MinMaxCalculator}. */
+	private boolean hasMinMax(final IFormatReader r) {
+		for (IFormatReader reader = r; reader != null; reader = wrapped(reader)) {
+			if (reader instanceof MinMaxCalculator) return true;
+		}
+		return false;
 	}
 
-	/** Populates plane by reference using {@link PlanarAccess} interface. */
+	/** Gets the reader wrapped by the given one, or null. */
+	private IFormatReader wrapped(final IFormatReader r) {
+		if (r instanceof ReaderWrapper) return ((ReaderWrapper) r).getReader();
+		if (r instanceof ImageReader) return ((ImageReader) r).getReader();
+		return null;
+	}
+
+	/**
+	 * Checks whether two readers are made of the same wrappers and format
+	 * reader, use the same options and yield the same planes.
+	 */
+	private boolean isSameConfiguration(final IFormatReader r1,
+		final IFormatReader r2)
+	{
+		IFormatReader a = r1;
+		IFormatReader b = r2;
+		while (a != null && b != null) {
+			if (a.getClass() != b.getClass()) return false;
+			a = wrapped(a);
+			b = wrapped(b);
+		}
+		if (a != null || b != null) return false;
+
+		return r1.isNormalized() == r2.isNormalized() &&
+			r1.isGroupFiles() == r2.isGroupFiles() &&
+			r1.getSeries() == r2.getSeries() &&
+			r1.getImageCount() == r2.getImageCount() &&
+			r1.getSizeX() == r2.getSizeX() && r1.getSizeY() == r2.getSizeY() &&
+			r1.getPixelType() == r2.getPixelType() &&
+			r1.isLittleEndian() == r2.isLittleEndian() &&
+			r1.getDimensionOrder().equals(r2.getDimensionOrder());
+	}
+
+	/**
+	 * Populates plane by reference using {@link PlanarAccess} interface. The
+	 * given plane must not be reused, since byte data is adopted without a
+	 * copy.
+	 */
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	private void populatePlane(final IFormatReader r, final int no,
 		final byte[] plane, final PlanarAccess planarAccess)
@@ -632,14 +872,64 @@ public class ImgOpener implements StatusReporter {
 		final int bpp = FormatTools.getBytesPerPixel(pixelType);
 		final boolean fp = FormatTools.isFloatingPoint(pixelType);
 		final boolean little = r.isLittleEndian();
-		Object planeArray = DataTools.makeDataArray(plane, bpp, fp, little);
-		if (planeArray == plane) {
-			// array was returned by reference; make a copy
-			final byte[] planeCopy = new byte[plane.length];
-			System.arraycopy(plane, 0, planeCopy, 0, plane.length);
-			planeArray = planeCopy;
+		final Object planeArray = DataTools.makeDataArray(plane, bpp, fp, little);
+		synchronized (planarAccess) {
+			planarAccess.setPlane(no, ImgIOUtils.makeArray(planeArray));
+		}
+	}
+
+	/**
+	 * Copies the plane block-wise into the primitive arrays of an
+	 * {@link ArrayImg} or {@link CellImg} of the same type.
+	 * 
+	 * @return false if the image does not support block copies, in which case
+	 *         nothing is written.
+	 */
+	private boolean copyPlane(final IFormatReader r, final int no,
+		final byte[] plane, final Img<?> img)
+	{
+		if (!(img instanceof ArrayImg) && !(img instanceof CellImg)) return false;
+
+		final int sizeX = r.getSizeX();
+		final int sizeY = r.getSizeY();
+		final int pixelType = r.getPixelType();
+		final int bpp = FormatTools.getBytesPerPixel(pixelType);
+		final boolean fp = FormatTools.isFloatingPoint(pixelType);
+		final boolean little = r.isLittleEndian();
+		final Object data = DataTools.makeDataArray(plane, bpp, fp, little);
+
+		final long[] pos = new long[img.numDimensions()];
+		getPosition(r, no, pos);
+
+		if (img instanceof ArrayImg) {
+			final Object access = ((ArrayImg<?, ?>) img).update(null);
+			if (!(access instanceof ArrayDataAccess)) return false;
+			final Object target =
+				((ArrayDataAccess<?>) access).getCurrentStorageArray();
+			if (target.getClass() != data.getClass()) return false;
+
+			// the plane is a contiguous block of the flat array
+			long offset = 0;
+			long stride = 1;
+			for (int d = 0; d < pos.length; d++) {
+				offset += pos[d] * stride;
+				stride *= img.dimension(d);
+			}
+			System.arraycopy(data, 0, target, (int) offset, sizeX * sizeY);
+			return true;
 		}
-		planarAccess.setPlane(no, ImgIOUtils.makeArray(planeArray));
+		return ImgIOUtils.copyPlane(((CellImg<?, ?, ?>) img).getCells(), pos,
+			sizeX, new ImgIOUtils.RowCopier() {
+
+				@Override
+				public boolean copy(final Object target, final int index,
+					final int offset, final int length)
+				{
+					if (target.getClass() != data.getClass()) return false;
+					System.arraycopy(data, offset, target, index, length);
+					return true;
+				}
+			});
 	}
 
 	/**
@@ -677,15 +967,33 @@ public class ImgOpener implements StatusReporter {
 	private void populateMinMax(final IFormatReader r, final ImgPlus<?> imgPlus)
 		throws FormatException, IOException
 	{
-		final int sizeC = r.getSizeC();
-		final ReaderWrapper rw = (ReaderWrapper) r;
-		final MinMaxCalculator minMaxCalc =
-			(MinMaxCalculator) rw.unwrap(MinMaxCalculator.class, null);
+		final List<IFormatReader> readers = new ArrayList<IFormatReader>();
+		readers.add(r);
+		populateMinMax(readers, imgPlus);
+	}
+
+	/**
+	 * Populates the channel minima and maxima from the planes seen by all
+	 * readers.
+	 */
+	private void populateMinMax(final List<IFormatReader> readers,
+		final ImgPlus<?> imgPlus) throws FormatException, IOException
+	{
+		final int sizeC = readers.get(0).getSizeC();
 		for (int c = 0; c < sizeC; c++) {
-			final Double min = minMaxCalc.getChannelKnownMinimum(c);
-			final Double max = minMaxCalc.getChannelKnownMaximum(c);
-			imgPlus.setChannelMinimum(c, min == null ? Double.NaN : min);
-			imgPlus.setChannelMaximum(c, max == null ? Double.NaN : max);
+			double min = Double.NaN;
+			double max = Double.NaN;
+			for (final IFormatReader r : readers) {
+				final ReaderWrapper rw = (ReaderWrapper) r;
+				final MinMaxCalculator minMaxCalc =
+					(MinMaxCalculator) rw.unwrap(MinMaxCalculator.class, null);
+				final Double rMin = minMaxCalc.getChannelKnownMinimum(c);
+				final Double rMax = minMaxCalc.getChannelKnownMaximum(c);
+				if (rMin != null && !(rMin >= min)) min = rMin;
+				if (rMax != null && !(rMax <= max)) max = rMax;
+			}
+			imgPlus.setChannelMinimum(c, min);
+			imgPlus.setChannelMaximum(c, max);
 		}
 	}
 
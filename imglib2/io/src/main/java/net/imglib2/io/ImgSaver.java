@@ -38,6 +38,11 @@ package net.imglib2.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -55,16 +60,22 @@ import loci.formats.MetadataTools;
 import loci.formats.meta.IMetadata;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.services.OMEXMLService;
-import net.imglib2.exception.ImgLibException;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.CellImg;
 import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
 
 /**
  * Writes out an {@link ImgPlus} using SCIFIO.
@@ -81,6 +92,9 @@ public class ImgSaver implements StatusReporter {
 
 	private final OMEXMLService omexmlService;
 
+	/** Number of threads that encode planes when streaming. */
+	private int numThreads = TaskExecutor.getInstance().getNumThreads();
+
 	// -- Constructor --
 
 	public ImgSaver() {
@@ -89,6 +103,22 @@ public class ImgSaver implements StatusReporter {
 
 	// -- ImgSaver methods --
 
+	/**
+	 * Sets the number of threads that encode planes when streaming images that
+	 * are not planar (see
+	 * {@link #saveImg(String, RandomAccessibleInterval, AxisType[])}). The
+	 * calling thread is one of them, and at most numThreads encoded planes are
+	 * held in memory.
+	 */
+	public void setNumThreads(final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/** Gets the number of threads that encode planes when streaming. */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	/**
 	 * see isCompressible(ImgPlus)
 	 */
@@ -220,6 +250,47 @@ public class ImgSaver implements StatusReporter {
 		saveImg(w, img, true);
 	}
 
+	/**
+	 * Saves any {@link RandomAccessibleInterval}, e.g. a {@link CellImg} or a
+	 * view such as {@link Views#interval} or {@link Views#hyperSlice}, by
+	 * streaming it plane by plane. Dimensions 0 and 1 span the planes. Planes
+	 * are encoded ahead on {@link #getNumThreads()} threads while the current
+	 * plane is written, so only a few planes are held in memory at any time.
+	 * 
+	 * @param id The destination of the image (e.g., a file on disk).
+	 * @param interval The pixels to save.
+	 * @param axes The axis type of every dimension of the interval.
+	 * @throws ImgIOException
+	 * @throws IncompatibleTypeException
+	 * @throws IllegalArgumentException if there is not one axis per dimension.
+	 */
+	public <T extends RealType<T> & NativeType<T>> void saveImg(final String id,
+		final RandomAccessibleInterval<T> interval, final AxisType[] axes)
+		throws ImgIOException, IncompatibleTypeException
+	{
+		if (axes.length != interval.numDimensions()) {
+			throw new IllegalArgumentException("Expected " +
+				interval.numDimensions() + " axes, got " + axes.length);
+		}
+		final long[] dimensions = new long[interval.numDimensions()];
+		interval.dimensions(dimensions);
+		final T type = Views.iterable(interval).firstElement();
+		final String name = new File(id).getName();
+
+		final File f = new File(id);
+		if (f.exists()) f.delete();
+
+		final long startTime = System.currentTimeMillis();
+		final IFormatWriter w =
+			initializeWriter(id, name, axes, dimensions, type);
+		final int planeCount = writePlanes(w, interval, type);
+
+		final long endTime = System.currentTimeMillis();
+		final float time = (endTime - startTime) / 1000f;
+		notifyListeners(new StatusEvent(planeCount, planeCount, id + ": wrote " +
+			planeCount + " planes in " + time + " s"));
+	}
+
 	// -- Utility methods --
 
 	/**
@@ -486,7 +557,10 @@ public class ImgSaver implements StatusReporter {
 	/**
 	 * Iterates through the planes of the provided {@link ImgPlus}, converting
 	 * each to a byte[] if necessary (the SCIFIO writer requires a byte[]) and
-	 * saving the plane. Currently only {@link PlanarImg} is supported.
+	 * saving the plane. {@link PlanarImg}s are written plane by plane from
+	 * their arrays, all other images, including {@link PlanarImg}s whose planes
+	 * are not stored in primitive arrays (e.g. in {@link java.nio.ByteBuffer}s),
+	 * are streamed block-wise.
 	 * 
 	 * @throws IncompatibleTypeException
 	 */
@@ -496,32 +570,39 @@ public class ImgSaver implements StatusReporter {
 		IncompatibleTypeException
 	{
 		final PlanarAccess<?> planarAccess = ImgIOUtils.getPlanarAccess(img);
-		if (planarAccess == null) {
-			throw new IncompatibleTypeException(new ImgLibException(), "Only " +
-				PlanarAccess.class + " images supported at this time.");
+		final Class<?> arrayType =
+			planarAccess == null || img.numDimensions() == 0 ? null
+				: ((PlanarImg<T, ?>) planarAccess).getPlane(0)
+					.getCurrentStorageArray().getClass();
+		if (planarAccess == null || img.numDimensions() > 0 &&
+			arrayType != int[].class && arrayType != byte[].class &&
+			arrayType != short[].class && arrayType != long[].class &&
+			arrayType != double[].class && arrayType != float[].class)
+		{
+			// stream all other images plane by plane
+			final File f = new File(img.getSource());
+			if (f.exists()) {
+				f.delete();
+				w = initializeWriter(img.getSource(), img);
+				populateMeta(w, img);
+			}
+			writePlanes(w, img.getImg(), img.firstElement());
+			return;
 		}
 
 		final PlanarImg<T, ?> planarImg = (PlanarImg<T, ?>) planarAccess;
 		final int planeCount = planarImg.numSlices();
 
 		if (img.numDimensions() > 0) {
-			final Class<?> arrayType =
-				planarImg.getPlane(0).getCurrentStorageArray().getClass();
-
 			byte[] plane = null;
 
-			// if we know this image will pass to SCIFIO to be saved,
-			// then delete the old file if it exists
-			if (arrayType == int[].class || arrayType == byte[].class ||
-				arrayType == short[].class || arrayType == long[].class ||
-				arrayType == double[].class || arrayType == float[].class)
-			{
-				final File f = new File(img.getSource());
-				if (f.exists()) {
-					f.delete();
-					w = initializeWriter(img.getSource(), img);
-					populateMeta(w, img);
-				}
+			// this image will pass to SCIFIO to be saved,
+			// so delete the old file if it exists
+			final File f = new File(img.getSource());
+			if (f.exists()) {
+				f.delete();
+				w = initializeWriter(img.getSource(), img);
+				populateMeta(w, img);
 			}
 
 			// iterate over each plane
@@ -548,13 +629,8 @@ public class ImgSaver implements StatusReporter {
 				else if (arrayType == double[].class) {
 					plane = DataTools.doublesToBytes((double[]) curPlane, false);
 				}
-				else if (arrayType == float[].class) {
-					plane = DataTools.floatsToBytes((float[]) curPlane, false);
-				}
 				else {
-					throw new IncompatibleTypeException(new ImgLibException(),
-						"PlanarImgs of type " + planarImg.getPlane(0).getClass() +
-							" not supported.");
+					plane = DataTools.floatsToBytes((float[]) curPlane, false);
 				}
 
 				// save bytes
@@ -579,6 +655,219 @@ public class ImgSaver implements StatusReporter {
 		}
 	}
 
+	/**
+	 * Streams the planes (spanned by dimensions 0 and 1) of the interval to
+	 * the writer and closes it. Batches of numThreads planes are encoded
+	 * concurrently by the {@link TaskExecutor}, including the calling thread,
+	 * which then writes them in order.
+	 * 
+	 * @return the number of planes written
+	 */
+	private <T extends RealType<T> & NativeType<T>> int writePlanes(
+		final IFormatWriter w, final RandomAccessibleInterval<T> interval,
+		final T type) throws ImgIOException
+	{
+		final int n = interval.numDimensions();
+		long count = 1;
+		for (int d = 2; d < n; d++)
+			count *= interval.dimension(d);
+		final int planeCount = (int) count;
+		final int pixelType = ImgIOUtils.makeType(type);
+
+		final byte[][] encoded = new byte[Math.min(numThreads, planeCount)][];
+		boolean written = false;
+		try {
+			for (int first = 0; first < planeCount; first += encoded.length) {
+				final int batchSize = Math.min(encoded.length, planeCount - first);
+				final List<Runnable> tasks = new ArrayList<Runnable>(batchSize);
+				for (int i = 0; i < batchSize; i++) {
+					final int slot = i;
+					final int no = first + i;
+					tasks.add(new Runnable() {
+
+						@Override
+						public void run() {
+							encoded[slot] = encodePlane(interval, no, pixelType);
+						}
+					});
+				}
+				TaskExecutor.getInstance().run(tasks, numThreads);
+
+				for (int i = 0; i < batchSize; i++) {
+					final int planeIndex = first + i;
+					notifyListeners(new StatusEvent(planeIndex, planeCount,
+						"Saving plane " + (planeIndex + 1) + "/" + planeCount));
+					w.saveBytes(planeIndex, encoded[i]);
+					encoded[i] = null;
+				}
+			}
+			written = true;
+		}
+		catch (final FormatException e) {
+			throw new ImgIOException(e);
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+		finally {
+			try {
+				w.close();
+			}
+			catch (final IOException e) {
+				// do not mask the exception that aborted writing
+				if (written) throw new ImgIOException(e);
+			}
+		}
+		return planeCount;
+	}
+
+	/**
+	 * Encodes the given plane of the interval as big endian bytes of the given
+	 * SCIFIO pixel type.
+	 */
+	private static <T extends RealType<T>> byte[] encodePlane(
+		final RandomAccessibleInterval<T> interval, final int no,
+		final int pixelType)
+	{
+		final int n = interval.numDimensions();
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		interval.min(min);
+		interval.max(max);
+
+		// position of the plane in dimensions 2 and above
+		long index = no;
+		for (int d = 2; d < n; d++) {
+			final long pos = min[d] + index % interval.dimension(d);
+			index /= interval.dimension(d);
+			min[d] = pos;
+			max[d] = pos;
+		}
+
+		final long planeSize =
+			interval.dimension(0) * (n > 1 ? interval.dimension(1) : 1);
+		final ByteBuffer bytes =
+			ByteBuffer.allocate((int) planeSize *
+				FormatTools.getBytesPerPixel(pixelType));
+		if (copyPlane(interval, no, min, pixelType, bytes)) return bytes.array();
+
+		final Cursor<T> cursor =
+			Views.flatIterable(Views.interval(interval, min, max)).cursor();
+		while (cursor.hasNext()) {
+			final double value = cursor.next().getRealDouble();
+			switch (pixelType) {
+				case FormatTools.INT8:
+				case FormatTools.UINT8:
+					bytes.put((byte) (long) value);
+					break;
+				case FormatTools.INT16:
+				case FormatTools.UINT16:
+					bytes.putShort((short) (long) value);
+					break;
+				case FormatTools.INT32:
+				case FormatTools.UINT32:
+					bytes.putInt((int) (long) value);
+					break;
+				case FormatTools.FLOAT:
+					bytes.putFloat((float) value);
+					break;
+				default:
+					bytes.putDouble(value);
+			}
+		}
+		return bytes.array();
+	}
+
+	/**
+	 * Copies a plane of an {@link ArrayImg} or {@link CellImg} from its
+	 * primitive arrays, if these hold the values of the given SCIFIO pixel
+	 * type.
+	 * 
+	 * @param pos The position of the plane, only dimensions 2 and above are
+	 *          used.
+	 * @return false if the image does not support block copies, in which case
+	 *         nothing is written.
+	 */
+	private static boolean copyPlane(final RandomAccessibleInterval<?> img,
+		final int no, final long[] pos, final int pixelType,
+		final ByteBuffer bytes)
+	{
+		if (img instanceof ArrayImg) {
+			final Object access = ((ArrayImg<?, ?>) img).update(null);
+			if (!(access instanceof ArrayDataAccess)) return false;
+			final Object data =
+				((ArrayDataAccess<?>) access).getCurrentStorageArray();
+			final int planeSize =
+				bytes.capacity() / FormatTools.getBytesPerPixel(pixelType);
+
+			// the plane is a contiguous block of the flat array
+			return copy(data, no * planeSize, pixelType, bytes, 0, planeSize);
+		}
+		if (img instanceof CellImg) {
+			return ImgIOUtils.copyPlane(((CellImg<?, ?, ?>) img).getCells(), pos,
+				img.dimension(0), new ImgIOUtils.RowCopier() {
+
+					@Override
+					public boolean copy(final Object data, final int index,
+						final int offset, final int length)
+					{
+						return ImgSaver.copy(data, index, pixelType, bytes, offset, length);
+					}
+				});
+		}
+		return false;
+	}
+
+	/**
+	 * Copies elements of a primitive array to the buffer, if the array type
+	 * matches the SCIFIO pixel type.
+	 * 
+	 * @param offset The index of the first buffer element (not byte) to write.
+	 * @return false if the array type does not match.
+	 */
+	private static boolean copy(final Object data, final int start,
+		final int pixelType, final ByteBuffer bytes, final int offset,
+		final int length)
+	{
+		switch (pixelType) {
+			case FormatTools.INT8:
+			case FormatTools.UINT8:
+				if (!(data instanceof byte[])) return false;
+				final ByteBuffer b = bytes.duplicate();
+				b.position(offset);
+				b.put((byte[]) data, start, length);
+				return true;
+			case FormatTools.INT16:
+			case FormatTools.UINT16:
+				if (!(data instanceof short[])) return false;
+				final ShortBuffer s = bytes.asShortBuffer();
+				s.position(offset);
+				s.put((short[]) data, start, length);
+				return true;
+			case FormatTools.INT32:
+			case FormatTools.UINT32:
+				if (!(data instanceof int[])) return false;
+				final IntBuffer i = bytes.asIntBuffer();
+				i.position(offset);
+				i.put((int[]) data, start, length);
+				return true;
+			case FormatTools.FLOAT:
+				if (!(data instanceof float[])) return false;
+				final FloatBuffer f = bytes.asFloatBuffer();
+				f.position(offset);
+				f.put((float[]) data, start, length);
+				return true;
+			case FormatTools.DOUBLE:
+				if (!(data instanceof double[])) return false;
+				final DoubleBuffer d = bytes.asDoubleBuffer();
+				d.position(offset);
+				d.put((double[]) data, start, length);
+				return true;
+			default:
+				return false;
+		}
+	}
+
 	/**
 	 * Creates a new {@link IFormatWriter} with an unpopulated MetadataStore and
 	 * sets its id to the provided String.
@@ -586,13 +875,30 @@ public class ImgSaver implements StatusReporter {
 	private <T extends RealType<T> & NativeType<T>> IFormatWriter
 		initializeWriter(final String id, final ImgPlus<T> img)
 			throws ImgIOException
+	{
+		final AxisType[] axes = new AxisType[img.numDimensions()];
+		img.axes(axes);
+		final long[] dimensions = new long[img.numDimensions()];
+		img.dimensions(dimensions);
+		return initializeWriter(id, img.getName(), axes, dimensions, img
+			.firstElement());
+	}
+
+	/**
+	 * Creates a new {@link IFormatWriter} with an unpopulated MetadataStore and
+	 * sets its id to the provided String.
+	 */
+	private <T extends RealType<T> & NativeType<T>> IFormatWriter
+		initializeWriter(final String id, final String name,
+			final AxisType[] axes, final long[] dimensions, final T type)
+			throws ImgIOException
 	{
 		final IFormatWriter writer = new ImageWriter();
 		final IMetadata store = MetadataTools.createOMEXMLMetadata();
 		store.createRoot();
 		writer.setMetadataRetrieve(store);
 
-		populateMeta(writer, img);
+		populateMeta(writer, name, axes, dimensions, type);
 
 		try {
 			writer.setId(id);
@@ -614,7 +920,22 @@ public class ImgSaver implements StatusReporter {
 	private <T extends RealType<T> & NativeType<T>> void populateMeta(
 		final IFormatWriter w, final ImgPlus<T> img) throws ImgIOException
 	{
-		notifyListeners(new StatusEvent("Initializing " + img.getName()));
+		final AxisType[] axes = new AxisType[img.numDimensions()];
+		img.axes(axes);
+		final long[] dimensions = new long[img.numDimensions()];
+		img.dimensions(dimensions);
+		populateMeta(w, img.getName(), axes, dimensions, img.firstElement());
+	}
+
+	/**
+	 * Uses the provided name, axes, dimensions and type to populate the minimum
+	 * metadata fields necessary for writing.
+	 */
+	private <T extends RealType<T> & NativeType<T>> void populateMeta(
+		final IFormatWriter w, final String name, final AxisType[] axes,
+		final long[] dimensions, final T type) throws ImgIOException
+	{
+		notifyListeners(new StatusEvent("Initializing " + name));
 
 		final MetadataRetrieve retrieve = w.getMetadataRetrieve();
 
@@ -627,19 +948,14 @@ public class ImgSaver implements StatusReporter {
 
 			// set required metadata
 
-			final int pixelType = ImgIOUtils.makeType(img.firstElement());
+			final int pixelType = ImgIOUtils.makeType(type);
 
 			// TODO is there some way to consolidate this with the isCompressible
 			// method?
-			final AxisType[] axes = new AxisType[img.numDimensions()];
-			img.axes(axes);
-
 			String dimOrder = "";
 
 			final long[] axisLengths = new long[5];
-			final long[] oldLengths = new long[img.numDimensions()];
-			img.dimensions(oldLengths);
-			dimOrder = guessDimOrder(axes, oldLengths, axisLengths);
+			dimOrder = guessDimOrder(axes, dimensions, axisLengths);
 
 			if (dimOrder == null) throw new ImgIOException(
 				"Image has more than 5 dimensions in an order that could not be compressed.");
@@ -675,7 +991,7 @@ public class ImgSaver implements StatusReporter {
 			}
 
 			// TODO save composite channel count somewhere...
-			MetadataTools.populateMetadata(meta, 0, img.getName(), false, dimOrder,
+			MetadataTools.populateMetadata(meta, 0, name, false, dimOrder,
 				FormatTools.getPixelTypeString(pixelType), sizeX, sizeY, sizeZ, sizeC,
 				sizeT, 1);
 		}
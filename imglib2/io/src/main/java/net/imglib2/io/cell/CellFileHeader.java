@@ -0,0 +1,345 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io.cell;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.io.ImgIOException;
+
+/**
+ * The header of a cell file, as written by {@link CellFileWriter} and read by
+ * {@link CellFileReader}. A cell file stores the cells of a {@link CellImg}
+ * as independent chunks, so that they can be loaded and stored concurrently.
+ * <p>
+ * Layout of a cell file (the framing is big endian):
+ * <ul>
+ * <li>8 bytes magic {@link #MAGIC}</li>
+ * <li>an int giving the length of the header in bytes, followed by the header
+ * as UTF-8 encoded JSON, for example
+ * <code>{"version":1,"type":"net.imglib2.type.numeric.integer.UnsignedShortType",
+ * "dataType":"short","entitiesPerPixel":1,"dimensions":[512,512,100],
+ * "cellDimensions":[64,64,64],"byteOrder":"LITTLE_ENDIAN","compression":"RAW"}</code>
+ * </li>
+ * <li>starting at the next multiple of 8, the chunk index: one pair of longs
+ * (offset, length in bytes) per cell, in flat order of the cell grid (dimension
+ * 0 varies fastest). A length of 0 denotes a cell that was not written.</li>
+ * <li>starting at the next multiple of {@link #PAGE_SIZE}, the chunks. Every
+ * chunk holds the storage array of one cell in the header's byte order,
+ * compressed with the header's {@link Compression}.</li>
+ * </ul>
+ * With {@link Compression#RAW}, chunk i starts at data offset + i * (size of
+ * chunk 0), so that the chunks can be memory mapped and addressed without the
+ * index.
+ */
+public class CellFileHeader {
+
+	/** The magic bytes at the start of every cell file. */
+	public static final byte[] MAGIC = { 'I', 'L', '2', 'C', 'E', 'L', 'L',
+		'S' };
+
+	public static final int VERSION = 1;
+
+	/** Alignment of the first chunk. */
+	public static final long PAGE_SIZE = 4096;
+
+	/** How the chunks are compressed. */
+	public static enum Compression {
+		/** Uncompressed, memory-mappable chunks in fixed slots. */
+		RAW,
+		/** Chunks compressed with {@link java.util.zip.Deflater}. */
+		DEFLATE
+	}
+
+	private final String type;
+
+	private final String dataType;
+
+	private final int entitiesPerPixel;
+
+	private final long[] dimensions;
+
+	private final int[] cellDimensions;
+
+	private final long[] numCells;
+
+	private final ByteOrder byteOrder;
+
+	private final Compression compression;
+
+	public CellFileHeader(final String type, final String dataType,
+		final int entitiesPerPixel, final long[] dimensions,
+		final int[] cellDimensions, final ByteOrder byteOrder,
+		final Compression compression)
+	{
+		this.type = type;
+		this.dataType = dataType;
+		this.entitiesPerPixel = entitiesPerPixel;
+		this.dimensions = dimensions.clone();
+		this.cellDimensions = cellDimensions.clone();
+		this.byteOrder = byteOrder;
+		this.compression = compression;
+
+		numCells = new long[dimensions.length];
+		for (int d = 0; d < dimensions.length; d++)
+			numCells[d] = (dimensions[d] - 1) / cellDimensions[d] + 1;
+	}
+
+	/** Gets the class name of the pixel type. */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the primitive type of the cell storage arrays, e.g. "byte" or
+	 * "float".
+	 */
+	public String getDataType() {
+		return dataType;
+	}
+
+	public int getEntitiesPerPixel() {
+		return entitiesPerPixel;
+	}
+
+	public int numDimensions() {
+		return dimensions.length;
+	}
+
+	public long[] getDimensions() {
+		return dimensions.clone();
+	}
+
+	public int[] getCellDimensions() {
+		return cellDimensions.clone();
+	}
+
+	/** Gets the number of cells in every dimension. */
+	public long[] getNumCells() {
+		return numCells.clone();
+	}
+
+	/** Gets the total number of cells. */
+	public long getCellCount() {
+		long count = 1;
+		for (final long c : numCells)
+			count *= c;
+		return count;
+	}
+
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/** Gets the offset of the chunk index, given the length of the JSON. */
+	static long indexOffset(final int jsonLength) {
+		return (MAGIC.length + 4 + jsonLength + 7) / 8 * 8;
+	}
+
+	/** Gets the offset of the first chunk, given the length of the JSON. */
+	long dataOffset(final int jsonLength) {
+		final long indexEnd = indexOffset(jsonLength) + 16 * getCellCount();
+		return (indexEnd + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+	}
+
+	// -- JSON --
+
+	/** Serializes the header as JSON. */
+	public String toJson() {
+		final StringBuilder json = new StringBuilder();
+		json.append("{\"version\":").append(VERSION);
+		json.append(",\"type\":\"").append(type).append('"');
+		json.append(",\"dataType\":\"").append(dataType).append('"');
+		json.append(",\"entitiesPerPixel\":").append(entitiesPerPixel);
+		json.append(",\"dimensions\":[");
+		for (int d = 0; d < dimensions.length; d++)
+			json.append(d == 0 ? "" : ",").append(dimensions[d]);
+		json.append("],\"cellDimensions\":[");
+		for (int d = 0; d < cellDimensions.length; d++)
+			json.append(d == 0 ? "" : ",").append(cellDimensions[d]);
+		json.append("],\"byteOrder\":\"").append(byteOrder).append('"');
+		json.append(",\"compression\":\"").append(compression).append('"');
+		json.append('}');
+		return json.toString();
+	}
+
+	/** Parses a header serialized by {@link #toJson()}. */
+	public static CellFileHeader fromJson(final String json)
+		throws ImgIOException
+	{
+		final Map<String, Object> map = new JsonParser(json).parseObject();
+
+		final Object version = map.get("version");
+		if (version == null || Long.parseLong((String) version) > VERSION) {
+			throw new ImgIOException("Unsupported cell file version: " + version);
+		}
+
+		try {
+			final List<?> dims = (List<?>) map.get("dimensions");
+			final List<?> cellDims = (List<?>) map.get("cellDimensions");
+			if (dims.size() != cellDims.size()) {
+				throw new ImgIOException(
+					"Dimensionality of image and cells differ in cell file header");
+			}
+			final long[] dimensions = new long[dims.size()];
+			final int[] cellDimensions = new int[dims.size()];
+			for (int d = 0; d < dimensions.length; d++) {
+				dimensions[d] = Long.parseLong((String) dims.get(d));
+				cellDimensions[d] = Integer.parseInt((String) cellDims.get(d));
+			}
+
+			final String order = (String) map.get("byteOrder");
+			final ByteOrder byteOrder =
+				ByteOrder.LITTLE_ENDIAN.toString().equals(order)
+					? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+			return new CellFileHeader((String) map.get("type"), (String) map
+				.get("dataType"), Integer.parseInt((String) map
+				.get("entitiesPerPixel")), dimensions, cellDimensions, byteOrder,
+				Compression.valueOf((String) map.get("compression")));
+		}
+		catch (final RuntimeException e) {
+			throw new ImgIOException("Invalid cell file header: " + json);
+		}
+	}
+
+	/**
+	 * Minimal parser for the JSON written by {@link CellFileHeader#toJson()}:
+	 * an object of strings, numbers and arrays. Numbers are kept as strings.
+	 */
+	private static class JsonParser {
+
+		private final String json;
+
+		private int pos = 0;
+
+		public JsonParser(final String json) {
+			this.json = json;
+		}
+
+		public Map<String, Object> parseObject() throws ImgIOException {
+			final Map<String, Object> map = new HashMap<String, Object>();
+			expect('{');
+			if (peek() == '}') {
+				pos++;
+				return map;
+			}
+			while (true) {
+				final String key = parseString();
+				expect(':');
+				map.put(key, parseValue());
+				if (peek() == ',') pos++;
+				else break;
+			}
+			expect('}');
+			return map;
+		}
+
+		private Object parseValue() throws ImgIOException {
+			final char c = peek();
+			if (c == '"') return parseString();
+			if (c == '{') return parseObject();
+			if (c == '[') {
+				pos++;
+				final List<Object> list = new ArrayList<Object>();
+				if (peek() == ']') {
+					pos++;
+					return list;
+				}
+				while (true) {
+					list.add(parseValue());
+					if (peek() == ',') pos++;
+					else break;
+				}
+				expect(']');
+				return list;
+			}
+			final int start = pos;
+			while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0)
+				pos++;
+			if (start == pos) throw error();
+			return json.substring(start, pos);
+		}
+
+		private String parseString() throws ImgIOException {
+			expect('"');
+			final StringBuilder s = new StringBuilder();
+			while (pos < json.length() && json.charAt(pos) != '"') {
+				char c = json.charAt(pos++);
+				if (c == '\\' && pos < json.length()) {
+					c = json.charAt(pos++);
+					if (c == 'n') c = '\n';
+					else if (c == 't') c = '\t';
+					else if (c == 'u' && pos + 4 <= json.length()) {
+						c = (char) Integer.parseInt(json.substring(pos, pos + 4), 16);
+						pos += 4;
+					}
+				}
+				s.append(c);
+			}
+			expect('"');
+			return s.toString();
+		}
+
+		private char peek() throws ImgIOException {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+				pos++;
+			if (pos >= json.length()) throw error();
+			return json.charAt(pos);
+		}
+
+		private void expect(final char c) throws ImgIOException {
+			if (peek() != c) throw error();
+			pos++;
+		}
+
+		private ImgIOException error() {
+			return new ImgIOException("Invalid cell file header at character " +
+				pos + ": " + json);
+		}
+	}
+
+}
@@ -0,0 +1,412 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io.cell;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.nio.StorageArrays;
+import net.imglib2.img.cell.AbstractCell;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.cell.Cells;
+import net.imglib2.io.ImgIOException;
+import net.imglib2.io.cell.CellFileHeader.Compression;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.complex.ComplexDoubleType;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.Unsigned12BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Reads cell files written by {@link CellFileWriter}. The cells are loaded
+ * concurrently with positional reads into a {@link CellImg} with the same cell
+ * grid. Chunks of uncompressed files can also be memory mapped individually
+ * (see {@link #map(long)}).
+ * <p>
+ * A reader keeps the file open until {@link #close()} is called; it may be
+ * used by several threads at the same time.
+ */
+public class CellFileReader {
+
+	/** The pixel types that cell files may have. */
+	private static final NativeType<?>[] TYPES = { new BitType(),
+		new Unsigned12BitType(), new ByteType(), new UnsignedByteType(),
+		new ShortType(), new UnsignedShortType(), new IntType(),
+		new UnsignedIntType(), new LongType(), new FloatType(), new DoubleType(),
+		new ComplexFloatType(), new ComplexDoubleType(), new ARGBType() };
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	private final CellFileHeader header;
+
+	/** Offset and length of every chunk. */
+	private final long[] index;
+
+	private int numThreads = TaskExecutor.getInstance().getNumThreads();
+
+	// -- Constructor --
+
+	/** Opens the cell file and reads its header and chunk index. */
+	public CellFileReader(final File file) throws ImgIOException {
+		this.file = file;
+		try {
+			raf = new RandomAccessFile(file, "r");
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+		channel = raf.getChannel();
+
+		try {
+			final ByteBuffer magic =
+				ByteBuffer.allocate(CellFileHeader.MAGIC.length + 4);
+			CellFileUtils.read(channel, magic, 0);
+			final byte[] bytes = new byte[CellFileHeader.MAGIC.length];
+			magic.flip();
+			magic.get(bytes);
+			if (!Arrays.equals(bytes, CellFileHeader.MAGIC)) {
+				throw new ImgIOException(file + " is not a cell file");
+			}
+
+			final byte[] json = new byte[magic.getInt()];
+			CellFileUtils.read(channel, ByteBuffer.wrap(json), magic.capacity());
+			header = CellFileHeader.fromJson(new String(json, "UTF-8"));
+
+			final long cellCount = header.getCellCount();
+			if (2 * cellCount > Integer.MAX_VALUE) {
+				throw new ImgIOException("Too many cells in " + file);
+			}
+			final ByteBuffer indexBuffer =
+				ByteBuffer.allocate((int) (16 * cellCount));
+			CellFileUtils.read(channel, indexBuffer, CellFileHeader
+				.indexOffset(json.length));
+			indexBuffer.flip();
+			index = new long[(int) (2 * cellCount)];
+			indexBuffer.asLongBuffer().get(index);
+		}
+		catch (final UnsupportedEncodingException e) {
+			close();
+			throw new ImgIOException(e);
+		}
+		catch (final IOException e) {
+			close();
+			throw new ImgIOException(e);
+		}
+		catch (final ImgIOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	// -- CellFileReader methods --
+
+	public CellFileHeader getHeader() {
+		return header;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/** Sets the number of threads that read and decode cells. */
+	public void setNumThreads(final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Reads the image into a new {@link CellImg} created by a
+	 * {@link CellImgFactory} with the cell dimensions of the file. T is not
+	 * checked, it must be the pixel type of the file (see
+	 * {@link CellFileHeader#getType()}); use
+	 * {@link #read(CellImgFactory, NativeType)} if it is not known.
+	 */
+	public <T extends NativeType<T>> CellImg<T, ?, ?> read()
+		throws ImgIOException
+	{
+		return read(new CellImgFactory<T>(header.getCellDimensions()));
+	}
+
+	/**
+	 * Reads the image into a new {@link CellImg} created by the given factory
+	 * (e.g. a {@link net.imglib2.img.cell.DiskCellImgFactory}), which must
+	 * create cells of the dimensions stored in the file. T is not checked, as
+	 * for {@link #read()}.
+	 */
+	public <T extends NativeType<T>> CellImg<T, ?, ?> read(
+		final CellImgFactory<T> factory) throws ImgIOException
+	{
+		final T type = createType();
+		return read(factory, type);
+	}
+
+	/**
+	 * Reads the image into a new {@link CellImg} of the given type created by
+	 * the given factory.
+	 * 
+	 * @throws ImgIOException if the type is not the pixel type of the file.
+	 */
+	public <T extends NativeType<T>> CellImg<T, ?, ?> read(
+		final CellImgFactory<T> factory, final T type) throws ImgIOException
+	{
+		checkType(type);
+		final CellImg<T, ?, ?> img = factory.create(header.getDimensions(), type);
+		readCells(img.getCells());
+		return img;
+	}
+
+	/**
+	 * Reads all cells into an existing {@link CellImg} whose pixel type,
+	 * dimensions and cell dimensions equal those of the file.
+	 */
+	public void read(final CellImg<?, ?, ?> img) throws ImgIOException {
+		checkType(img.firstElement());
+		readCells(img.getCells());
+	}
+
+	/**
+	 * Reads one cell into the given storage array.
+	 * 
+	 * @param cellIndex flat index of the cell in the cell grid
+	 * @param array the storage array of the cell, or for cells of
+	 *          {@link net.imglib2.img.basictypeaccess.nio.BufferAccess}es a
+	 *          view of their buffer with the element type of the access (e.g.,
+	 *          a {@link java.nio.FloatBuffer})
+	 * @param buffer a buffer of at least the size of the compressed chunk, or
+	 *          null
+	 * @return the buffer, or a larger one that may be reused
+	 */
+	public ByteBuffer readCell(final long cellIndex, final Object array,
+		ByteBuffer buffer) throws ImgIOException
+	{
+		final long offset = index[(int) (2 * cellIndex)];
+		final int length = (int) index[(int) (2 * cellIndex + 1)];
+		final int size = (int) StorageArrays.sizeInBytes(array);
+		if (length == 0) {
+			// this cell was never written
+			return buffer;
+		}
+
+		if (buffer == null || buffer.capacity() < length) {
+			buffer = ByteBuffer.allocate(Math.max(length, size));
+		}
+		buffer.clear();
+		buffer.limit(length);
+		try {
+			CellFileUtils.read(channel, buffer, offset);
+			buffer.flip();
+
+			if (header.getCompression() == Compression.DEFLATE) {
+				final byte[] decompressed = new byte[size];
+				final Inflater inflater = new Inflater();
+				try {
+					inflater.setInput(buffer.array(), 0, length);
+					if (inflater.inflate(decompressed) != size) {
+						throw new ImgIOException("Cell " + cellIndex + " of " + file +
+							" has the wrong size");
+					}
+				}
+				finally {
+					inflater.end();
+				}
+				StorageArrays.copyToArray(ByteBuffer.wrap(decompressed).order(
+					header.getByteOrder()), array);
+			}
+			else {
+				if (length != size) {
+					throw new ImgIOException("Cell " + cellIndex + " of " + file +
+						" has the wrong size");
+				}
+				buffer.order(header.getByteOrder());
+				StorageArrays.copyToArray(buffer, array);
+			}
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+		catch (final DataFormatException e) {
+			throw new ImgIOException(e);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Maps the chunk of one cell of an uncompressed file into memory. The
+	 * returned buffer has the byte order of the file.
+	 * 
+	 * @param cellIndex flat index of the cell in the cell grid
+	 */
+	public ByteBuffer map(final long cellIndex) throws ImgIOException {
+		if (header.getCompression() != Compression.RAW) {
+			throw new ImgIOException("Only uncompressed cell files can be mapped");
+		}
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY,
+				index[(int) (2 * cellIndex)], index[(int) (2 * cellIndex + 1)])
+				.order(header.getByteOrder());
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+	}
+
+	/** Closes the file. */
+	public void close() throws ImgIOException {
+		try {
+			raf.close();
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Creates the pixel type of the file, if it is one of {@link #TYPES}. */
+	@SuppressWarnings("unchecked")
+	private <T extends NativeType<T>> T createType() throws ImgIOException {
+		for (final NativeType<?> type : TYPES) {
+			if (type.getClass().getName().equals(header.getType())) {
+				return (T) type.createVariable();
+			}
+		}
+		throw new ImgIOException("Unsupported pixel type " + header.getType() +
+			" in " + file);
+	}
+
+	private void checkType(final Object type) throws ImgIOException {
+		if (!type.getClass().getName().equals(header.getType())) {
+			throw new ImgIOException("The pixel type " +
+				type.getClass().getName() + " does not match " + header.getType() +
+				" of " + file);
+		}
+	}
+
+	private <A extends ArrayDataAccess<A>, C extends AbstractCell<A>> void
+		readCells(final Cells<A, C> cells) throws ImgIOException
+	{
+		final int n = cells.numDimensions();
+		final long[] dimensions = new long[n];
+		final int[] cellDimensions = new int[n];
+		cells.dimensions(dimensions);
+		cells.cellDimensions(cellDimensions);
+		if (!Arrays.equals(dimensions, header.getDimensions()) ||
+			!Arrays.equals(cellDimensions, header.getCellDimensions()))
+		{
+			throw new ImgIOException("The cell grid of the image does not match " +
+				file);
+		}
+
+		// the storage must hold the same primitive values the file does
+		final RandomAccess<C> first = cells.randomAccess();
+		first.setPosition(new long[n]);
+		final String dataType =
+			StorageArrays.dataType(StorageArrays.storage(first.get().getData()));
+		if (!dataType.equals(header.getDataType()) ||
+			cells.getEntitiesPerPixel() != header.getEntitiesPerPixel())
+		{
+			throw new ImgIOException("The storage of the image (" +
+				cells.getEntitiesPerPixel() + " " + dataType +
+				" per pixel) does not match " + header.getEntitiesPerPixel() + " " +
+				header.getDataType() + " per pixel of " + file);
+		}
+
+		final long[] numCells = header.getNumCells();
+		try {
+			TaskExecutor.getInstance().forEachChunk(header.getCellCount(),
+				numThreads, new ChunkTask() {
+
+					@Override
+					public void run(final long startPosition, final long loopSize) {
+						final RandomAccess<C> access = cells.randomAccess();
+						final long[] position = new long[n];
+						ByteBuffer buffer = null;
+						for (long i = startPosition; i < startPosition + loopSize; i++) {
+							IntervalIndexer.indexToPosition(i, numCells, position);
+							access.setPosition(position);
+							final Object array =
+								StorageArrays.storage(access.get().getData());
+							try {
+								buffer = readCell(i, array, buffer);
+							}
+							catch (final ImgIOException e) {
+								throw new RuntimeException(e);
+							}
+						}
+					}
+				});
+		}
+		catch (final RuntimeException e) {
+			if (e.getCause() instanceof ImgIOException) {
+				throw (ImgIOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+}
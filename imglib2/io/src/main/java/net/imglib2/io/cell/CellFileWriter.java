@@ -0,0 +1,283 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io.cell;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.nio.StorageArrays;
+import net.imglib2.img.cell.AbstractCell;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.Cells;
+import net.imglib2.io.ImgIOException;
+import net.imglib2.io.cell.CellFileHeader.Compression;
+import net.imglib2.multithreading.ChunkTask;
+import net.imglib2.multithreading.TaskExecutor;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Writes the cells of a {@link CellImg} to a cell file (see
+ * {@link CellFileHeader}), one chunk per cell. Cells are encoded, compressed
+ * and written concurrently with positional writes, so a {@link CellImg} can be
+ * checkpointed at disk bandwidth. Read it back with {@link CellFileReader}.
+ */
+public class CellFileWriter {
+
+	private Compression compression = Compression.RAW;
+
+	private int compressionLevel = Deflater.BEST_SPEED;
+
+	private ByteOrder byteOrder = ByteOrder.nativeOrder();
+
+	private int numThreads = TaskExecutor.getInstance().getNumThreads();
+
+	// -- CellFileWriter methods --
+
+	/** Sets how the chunks are compressed, {@link Compression#RAW} by default. */
+	public void setCompression(final Compression compression) {
+		this.compression = compression;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Sets the {@link Deflater} level (0-9) for {@link Compression#DEFLATE},
+	 * {@link Deflater#BEST_SPEED} by default.
+	 */
+	public void setCompressionLevel(final int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/** Sets the byte order of the chunks, the native order by default. */
+	public void setByteOrder(final ByteOrder byteOrder) {
+		this.byteOrder = byteOrder;
+	}
+
+	public ByteOrder getByteOrder() {
+		return byteOrder;
+	}
+
+	/** Sets the number of threads that encode and write cells. */
+	public void setNumThreads(final int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Writes all cells of the image to the given file, replacing it if it
+	 * exists.
+	 * 
+	 * @return the header of the written file
+	 */
+	public <T extends NativeType<T>> CellFileHeader write(
+		final CellImg<T, ?, ?> img, final File file) throws ImgIOException
+	{
+		return writeCells(img.getCells(), img.firstElement(), file);
+	}
+
+	// -- Helper methods --
+
+	private <A extends ArrayDataAccess<A>, C extends AbstractCell<A>>
+		CellFileHeader writeCells(final Cells<A, C> cells, final Object type,
+			final File file) throws ImgIOException
+	{
+		final int n = cells.numDimensions();
+		final long[] dimensions = new long[n];
+		final int[] cellDimensions = new int[n];
+		cells.dimensions(dimensions);
+		cells.cellDimensions(cellDimensions);
+
+		// the first cell is a standard cell (or the only one), so it is the
+		// largest and defines the size of a slot
+		final RandomAccess<C> first = cells.randomAccess();
+		first.setPosition(new long[n]);
+		final Object firstArray = StorageArrays.storage(first.get().getData());
+		final int slotSize = (int) StorageArrays.sizeInBytes(firstArray);
+
+		final CellFileHeader header =
+			new CellFileHeader(type.getClass().getName(), StorageArrays
+				.dataType(firstArray), cells.getEntitiesPerPixel(), dimensions,
+				cellDimensions, byteOrder, compression);
+		final byte[] json = utf8(header.toJson());
+		final long indexOffset = CellFileHeader.indexOffset(json.length);
+		final long dataOffset = header.dataOffset(json.length);
+		final long cellCount = header.getCellCount();
+		final long[] numCells = header.getNumCells();
+
+		if (file.exists() && !file.delete()) {
+			throw new ImgIOException("Cannot replace " + file);
+		}
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			final FileChannel channel = raf.getChannel();
+
+			final ByteBuffer head =
+				ByteBuffer.allocate(CellFileHeader.MAGIC.length + 4 + json.length);
+			head.put(CellFileHeader.MAGIC).putInt(json.length).put(json).flip();
+			CellFileUtils.write(channel, head, 0);
+
+			final long[] index = new long[(int) (2 * cellCount)];
+			final AtomicLong end = new AtomicLong(dataOffset);
+			try {
+				TaskExecutor.getInstance().forEachChunk(cellCount, numThreads,
+					new ChunkTask() {
+
+						@Override
+						public void run(final long startPosition, final long loopSize) {
+							final RandomAccess<C> access = cells.randomAccess();
+							final long[] position = new long[n];
+							final ByteBuffer raw =
+								ByteBuffer.allocate(slotSize).order(byteOrder);
+							final Deflater deflater =
+								compression == Compression.DEFLATE ? new Deflater(
+									compressionLevel) : null;
+							byte[] compressed = new byte[slotSize + slotSize / 8 + 64];
+							try {
+								for (long i = startPosition; i < startPosition + loopSize; i++)
+								{
+									IntervalIndexer.indexToPosition(i, numCells, position);
+									access.setPosition(position);
+									final Object array =
+										StorageArrays.storage(access.get().getData());
+									final int size = (int) StorageArrays.sizeInBytes(array);
+									raw.clear();
+									StorageArrays.copyFromArray(array, raw);
+									raw.limit(size);
+
+									final ByteBuffer chunk;
+									final long offset;
+									if (deflater == null) {
+										chunk = raw;
+										offset = dataOffset + i * slotSize;
+									}
+									else {
+										deflater.reset();
+										deflater.setInput(raw.array(), 0, size);
+										deflater.finish();
+										int length = 0;
+										while (!deflater.finished()) {
+											if (length == compressed.length) {
+												final byte[] larger = new byte[2 * compressed.length];
+												System.arraycopy(compressed, 0, larger, 0, length);
+												compressed = larger;
+											}
+											length +=
+												deflater.deflate(compressed, length, compressed.length -
+													length);
+										}
+										chunk = ByteBuffer.wrap(compressed, 0, length);
+										offset = end.getAndAdd(length);
+									}
+
+									index[(int) (2 * i)] = offset;
+									index[(int) (2 * i + 1)] = chunk.remaining();
+									CellFileUtils.write(channel, chunk, offset);
+								}
+							}
+							catch (final IOException e) {
+								throw new RuntimeException(e);
+							}
+							finally {
+								if (deflater != null) deflater.end();
+							}
+						}
+					});
+			}
+			catch (final RuntimeException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			}
+
+			final ByteBuffer indexBuffer = ByteBuffer.allocate(index.length * 8);
+			indexBuffer.asLongBuffer().put(index);
+			CellFileUtils.write(channel, indexBuffer, indexOffset);
+			if (compression == Compression.RAW) {
+				// make sure that the last slot is complete for memory mapping
+				raf.setLength(Math.max(raf.length(), dataOffset + cellCount *
+					slotSize));
+			}
+		}
+		catch (final IOException e) {
+			throw new ImgIOException(e);
+		}
+		finally {
+			if (raf != null) {
+				try {
+					raf.close();
+				}
+				catch (final IOException e) {
+					throw new ImgIOException(e);
+				}
+			}
+		}
+		return header;
+	}
+
+	static byte[] utf8(final String s) {
+		try {
+			return s.getBytes("UTF-8");
+		}
+		catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
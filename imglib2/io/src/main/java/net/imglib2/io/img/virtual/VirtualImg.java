@@ -72,6 +72,7 @@ public class VirtualImg<T extends NativeType<T> & RealType<T>> extends
 	private final IFormatReader reader;
 	private final T type;
 	private final boolean bytesOnly;
+	private final VirtualPlaneCache planeCache;
 
 	// TODO
 	// The reader gets shared among all copy()'s and randomAccess()'s and
@@ -84,12 +85,22 @@ public class VirtualImg<T extends NativeType<T> & RealType<T>> extends
 
 	private VirtualImg(final long[] dims, final IFormatReader reader,
 		final T type, final boolean bytesOnly)
+	{
+		this(dims, reader, type, bytesOnly, new VirtualPlaneCache(reader,
+			bytesOnly, numPlanes(dims)));
+	}
+
+	// copies share the plane cache since they share the reader
+
+	private VirtualImg(final long[] dims, final IFormatReader reader,
+		final T type, final boolean bytesOnly, final VirtualPlaneCache planeCache)
 	{
 		super(dims);
 		this.dims = dims.clone();
 		this.reader = reader;
 		this.type = type.copy();
 		this.bytesOnly = bytesOnly;
+		this.planeCache = planeCache;
 		checkDimensions();
 	}
 
@@ -152,7 +163,7 @@ public class VirtualImg<T extends NativeType<T> & RealType<T>> extends
 	}
 
 	public Img<T> copy() {
-		return new VirtualImg<T>(dims, reader, type, bytesOnly);
+		return new VirtualImg<T>(dims, reader, type, bytesOnly, planeCache);
 	}
 
 	public T getType() {
@@ -167,8 +178,24 @@ public class VirtualImg<T extends NativeType<T> & RealType<T>> extends
 		return bytesOnly;
 	}
 
+	/**
+	 * Returns the cache of decoded planes that is shared by all accessors of
+	 * this image. Use it to configure the number of cached planes and the read
+	 * ahead, and to query the cache hit and miss counters.
+	 */
+	public VirtualPlaneCache getPlaneCache() {
+		return planeCache;
+	}
+
 	// -- private helpers --
 
+	private static int numPlanes(final long[] dims) {
+		long numPlanes = 1;
+		for (int i = 2; i < dims.length; i++)
+			numPlanes *= dims[i];
+		return (int) numPlanes;
+	}
+
 	private void checkDimensions() {
 		if (dims.length < 2) throw new IllegalArgumentException(
 			"VirtualImg must be of dimension two or higher");
@@ -0,0 +1,333 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.io.img.virtual;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import loci.common.DataTools;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import net.imglib2.multithreading.TaskExecutor;
+
+/**
+ * This class caches decoded planes of a {@link VirtualImg}. It is shared by all
+ * accessors of an image (and its copies) so that a plane is decoded only once
+ * as long as it stays in the cache. The least recently used plane is evicted
+ * when the cache is full.
+ * <p>
+ * When a plane is requested, the cache can asynchronously read ahead the
+ * planes that follow it in the direction of iteration (i.e. the direction of
+ * the previous plane change of the requesting accessor).
+ * <p>
+ * Planes are handed out without copying. Changes made to the values of a
+ * cached plane are therefore visible to all accessors of the image until the
+ * plane is evicted. As before, changes are never saved to disk.
+ */
+public class VirtualPlaneCache {
+
+	// -- constants --
+
+	/** Default number of planes held by the cache. */
+	public static final int DEFAULT_CAPACITY = 4;
+
+	/** Default number of planes read ahead in the direction of iteration. */
+	public static final int DEFAULT_READ_AHEAD = 1;
+
+	// -- instance variables --
+
+	private final IFormatReader reader;
+	private final boolean bytesOnly;
+	private final int numPlanes;
+
+	private int capacity;
+	private int readAhead;
+
+	private final LinkedHashMap<Integer, Object> planes;
+	private final HashMap<Integer, ReadAhead> pending;
+
+	private long hits;
+	private long misses;
+	private long readAheadHits;
+
+	// -- constructor --
+
+	/**
+	 * Create a VirtualPlaneCache for the planes of a reader.
+	 * 
+	 * @param reader - the IFormatReader to load planes from
+	 * @param bytesOnly - a flag which defines whether planes are cached as
+	 *          byte[]'s only or as other primitive array types (int[]'s, etc.).
+	 * @param numPlanes - the number of planes of the image
+	 */
+	public VirtualPlaneCache(final IFormatReader reader, final boolean bytesOnly,
+		final int numPlanes)
+	{
+		this.reader = reader;
+		this.bytesOnly = bytesOnly;
+		this.numPlanes = numPlanes;
+		this.capacity = DEFAULT_CAPACITY;
+		this.readAhead = DEFAULT_READ_AHEAD;
+		this.planes = new LinkedHashMap<Integer, Object>(16, 0.75f, true);
+		this.pending = new HashMap<Integer, ReadAhead>();
+	}
+
+	// -- public interface --
+
+	/**
+	 * Returns the data of a plane, loading it if it is not cached. The returned
+	 * value is a byte[] if the cache is bytes only and a primitive array of the
+	 * pixel type otherwise.
+	 * 
+	 * @param planeNum - the index of the plane
+	 * @param direction - the direction of iteration: the planes following
+	 *          planeNum in this direction are read ahead. Pass 0 to not read
+	 *          ahead.
+	 */
+	public Object getPlane(final int planeNum, final int direction) {
+		ReadAhead pendingRead;
+		synchronized (this) {
+			final Object plane = planes.get(planeNum);
+			if (plane != null) {
+				hits++;
+				readAhead(planeNum, direction);
+				return plane;
+			}
+			pendingRead = pending.remove(planeNum);
+			if (pendingRead != null) readAheadHits++;
+			else misses++;
+		}
+
+		Object plane = null;
+		if (pendingRead != null) {
+			// load the plane ourselves if the read ahead has not started yet
+			if (pendingRead.claim()) plane = loadPlane(planeNum);
+			else plane = waitFor(pendingRead.future, planeNum);
+		}
+		else plane = loadPlane(planeNum);
+
+		synchronized (this) {
+			final Object cached = planes.get(planeNum);
+			if (cached != null) plane = cached;
+			else put(planeNum, plane);
+			readAhead(planeNum, direction);
+		}
+		return plane;
+	}
+
+	/** Returns the maximal number of planes held by the cache. */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximal number of planes held by the cache. Planes are evicted if
+	 * the cache holds more planes than that.
+	 */
+	public synchronized void setCapacity(final int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException(
+			"cache capacity must be at least one plane");
+		this.capacity = capacity;
+		evict();
+	}
+
+	/** Returns the number of planes read ahead in the direction of iteration. */
+	public synchronized int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Sets the number of planes read ahead in the direction of iteration. 0
+	 * disables reading ahead. At most capacity - 1 planes are read ahead.
+	 */
+	public synchronized void setReadAhead(final int readAhead) {
+		if (readAhead < 0) throw new IllegalArgumentException(
+			"read ahead must not be negative");
+		this.readAhead = readAhead;
+	}
+
+	/** Returns how many plane requests were served from the cache. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Returns how many plane requests had to load the plane. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns how many plane requests were served by a plane that was read
+	 * ahead (possibly waiting for the read to finish).
+	 */
+	public synchronized long getReadAheadHits() {
+		return readAheadHits;
+	}
+
+	/** Resets the hit and miss counters. */
+	public synchronized void resetCounters() {
+		hits = 0;
+		misses = 0;
+		readAheadHits = 0;
+	}
+
+	/** Removes all planes from the cache and cancels pending read aheads. */
+	public synchronized void clear() {
+		for (final ReadAhead pendingRead : pending.values())
+			pendingRead.claim();
+		pending.clear();
+		planes.clear();
+	}
+
+	// -- private helpers --
+
+	private void put(final int planeNum, final Object plane) {
+		planes.put(planeNum, plane);
+		evict();
+	}
+
+	private void evict() {
+		final Iterator<Map.Entry<Integer, Object>> eldest =
+			planes.entrySet().iterator();
+		while (planes.size() > capacity) {
+			eldest.next();
+			eldest.remove();
+		}
+	}
+
+	/** Must be called while holding the lock of this cache. */
+	private void readAhead(final int planeNum, final int direction) {
+		if (direction == 0) return;
+		final int step = direction > 0 ? 1 : -1;
+		final int count = Math.min(readAhead, capacity - 1);
+		for (int i = 1; i <= count; i++) {
+			final int next = planeNum + i * step;
+			if (next < 0 || next >= numPlanes) return;
+			if (planes.containsKey(next) || pending.containsKey(next)) continue;
+			final ReadAhead pendingRead = new ReadAhead(next);
+			try {
+				pendingRead.future =
+					TaskExecutor.getInstance().getExecutorService().submit(pendingRead);
+				pending.put(next, pendingRead);
+			}
+			catch (final RejectedExecutionException e) {
+				// the shared executor is being replaced, skip reading ahead
+				return;
+			}
+		}
+	}
+
+	private Object waitFor(final Future<Object> future, final int planeNum) {
+		try {
+			return future.get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return loadPlane(planeNum);
+		}
+		catch (final ExecutionException e) {
+			// report the failure in the thread that requested the plane
+			return loadPlane(planeNum);
+		}
+	}
+
+	private Object loadPlane(final int planeNum) {
+		byte[] planeBytes = null;
+		// the reader is shared among all accessors and is not thread safe
+		synchronized (reader) {
+			try {
+				planeBytes = reader.openBytes(planeNum);
+			}
+			catch (final Exception e) {
+				throw new IllegalArgumentException("cannot load plane " + planeNum);
+			}
+		}
+		if (bytesOnly) return planeBytes;
+		return typeConvert(planeBytes); // want type from encoded bytes
+	}
+
+	private Object typeConvert(final byte[] bytes) {
+		final int pixelType = reader.getPixelType();
+		final int bytesPerPix = FormatTools.getBytesPerPixel(pixelType);
+		final boolean floating = FormatTools.isFloatingPoint(pixelType);
+
+		return DataTools.makeDataArray(bytes, bytesPerPix, floating, reader
+			.isLittleEndian());
+	}
+
+	// -- helper classes --
+
+	/**
+	 * Loads a plane in the background. Whoever claims it first - the worker or a
+	 * thread requesting the plane - loads the plane.
+	 */
+	private class ReadAhead implements Callable<Object> {
+
+		private final int planeNum;
+		private final AtomicBoolean claimed = new AtomicBoolean(false);
+		private Future<Object> future;
+
+		public ReadAhead(final int planeNum) {
+			this.planeNum = planeNum;
+		}
+
+		public boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		public Object call() {
+			if (!claim()) return null;
+			final Object plane = loadPlane(planeNum);
+			synchronized (VirtualPlaneCache.this) {
+				// only cache the plane if nobody took over the request
+				if (pending.get(planeNum) == this) {
+					pending.remove(planeNum);
+					put(planeNum, plane);
+				}
+			}
+			return plane;
+		}
+	}
+
+}
@@ -36,8 +36,6 @@
 
 package net.imglib2.io.img.virtual;
 
-import loci.common.DataTools;
-import loci.formats.FormatTools;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.planar.PlanarImg;
 import net.imglib2.io.ImgIOUtils;
@@ -46,7 +44,9 @@ import net.imglib2.io.ImgIOUtils;
  * This class is responsible for loading one plane of data from an image using
  * an IFormatReader. The loading is done in a virtual fashion with planes loaded
  * when a desired position has not been loaded. The data is loaded into a
- * PlanarImg provided at construction time.
+ * PlanarImg provided at construction time. Decoded planes are taken from the
+ * {@link VirtualPlaneCache} of the image, which reads ahead in the direction in
+ * which this loader moves through the planes.
  * 
  * @author Barry DeZonia
  */
@@ -58,7 +58,7 @@ public class VirtualPlaneLoader {
 	private final PlanarImg<?, ? extends ArrayDataAccess<?>> planeImg;
 	private final long[] planeDims;
 	private final long[] planePosLoaded;
-	private final boolean bytesOnly;
+	private int planeNumLoaded;
 
 	// -- constructor --
 
@@ -70,6 +70,7 @@ public class VirtualPlaneLoader {
 	 * @param planeImg - the PlanarImg to load planes into
 	 * @param bytesOnly - a flag which defines whether planes passed around as
 	 *          byte[]'s only or as other primitive array types (int[]'s, etc.).
+	 *          It must match {@link VirtualImg#isByteOnly()} of the image.
 	 */
 	public VirtualPlaneLoader(final VirtualImg<?> image,
 		final PlanarImg<?, ? extends ArrayDataAccess<?>> planeImg,
@@ -81,7 +82,9 @@ public class VirtualPlaneLoader {
 		for (int i = 0; i < planeDims.length; i++)
 			this.planeDims[i] = image.dimension(i + 2);
 		this.planePosLoaded = new long[planeDims.length];
-		this.bytesOnly = bytesOnly;
+		if (bytesOnly != image.isByteOnly()) throw new IllegalArgumentException(
+			"bytesOnly does not match the VirtualImg");
+		this.planeNumLoaded = -1;
 		loadPlane(new long[image.numDimensions()]);
 	}
 
@@ -107,20 +110,11 @@ public class VirtualPlaneLoader {
 		for (int i = 0; i < planePosLoaded.length; i++)
 			planePosLoaded[i] = pos[i + 2];
 		final int planeNum = planeIndex(planeDims, planePosLoaded);
-		byte[] planeBytes = null;
-		try {
-			planeBytes = virtImage.getReader().openBytes(planeNum);
-		}
-		catch (final Exception e) {
-			throw new IllegalArgumentException("cannot load plane " + planeNum);
-		}
-		Object primitivePlane;
-		if (bytesOnly) {
-			primitivePlane = planeBytes;
-		}
-		else { // want type from encoded bytes
-			primitivePlane = typeConvert(planeBytes);
-		}
+		final int direction =
+			planeNumLoaded < 0 ? 0 : Integer.signum(planeNum - planeNumLoaded);
+		final Object primitivePlane =
+			virtImage.getPlaneCache().getPlane(planeNum, direction);
+		planeNumLoaded = planeNum;
 		final ArrayDataAccess<?> wrappedPlane =
 			ImgIOUtils.makeArray(primitivePlane);
 		((PlanarImg) planeImg).setPlane(0, wrappedPlane);
@@ -148,13 +142,4 @@ public class VirtualPlaneLoader {
 		return index;
 	}
 
-	private Object typeConvert(final byte[] bytes) {
-		final int pixelType = virtImage.getReader().getPixelType();
-		final int bytesPerPix = FormatTools.getBytesPerPixel(pixelType);
-		final boolean floating = FormatTools.isFloatingPoint(pixelType);
-
-		return DataTools.makeDataArray(bytes, bytesPerPix, floating, virtImage
-			.getReader().isLittleEndian());
-	}
-
 }
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import loci.common.StatusEvent;
+import loci.common.StatusListener;
+import loci.formats.ChannelSeparator;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link ImgOpener} reads the same image with several threads as
+ * it does sequentially. The images are read from "fake" files, which are
+ * generated by SCIFIO from the given id.
+ */
+public class ImgOpenerTest {
+
+	private static final String ID =
+		"test&pixelType=uint16&sizeX=67&sizeY=45&sizeZ=7&sizeC=3.fake";
+
+	@Test
+	public void testArrayImg() throws Exception {
+		assertParallelEqualsSequential(new ArrayImgFactory<UnsignedShortType>(),
+			new UnsignedShortType());
+		assertParallelEqualsSequential(new ArrayImgFactory<FloatType>(),
+			new FloatType());
+	}
+
+	@Test
+	public void testPlanarImg() throws Exception {
+		assertParallelEqualsSequential(new PlanarImgFactory<UnsignedShortType>(),
+			new UnsignedShortType());
+		assertParallelEqualsSequential(new PlanarImgFactory<FloatType>(),
+			new FloatType());
+	}
+
+	@Test
+	public void testCellImg() throws Exception {
+		// cells span several planes in z and c, and do not align with the
+		// plane borders in x and y
+		final int[] cellSize = { 16, 10, 3, 2 };
+		assertParallelEqualsSequential(new CellImgFactory<UnsignedShortType>(
+			cellSize), new UnsignedShortType());
+		assertParallelEqualsSequential(new CellImgFactory<FloatType>(cellSize),
+			new FloatType());
+	}
+
+	@Test
+	public void testReaderThatCannotBeReproduced() throws Exception {
+		final ImgOpener sequential = new ImgOpener();
+		final ImgPlus<UnsignedShortType> expected =
+			sequential.openImg(ID, new ArrayImgFactory<UnsignedShortType>(),
+				new UnsignedShortType());
+
+		// not created by ImgOpener.createReader, so it is read sequentially
+		final IFormatReader r = new ChannelSeparator(new ImageReader());
+		r.setId(ID);
+		final ImgOpener parallel = new ImgOpener();
+		parallel.setNumThreads(4);
+		final ImgPlus<UnsignedShortType> actual =
+			parallel.openImg(r, new ArrayImgFactory<UnsignedShortType>(),
+				new UnsignedShortType());
+
+		assertImgEquals(expected.getImg(), actual.getImg());
+	}
+
+	@Test
+	public void testProgressIsReportedFromCallingThread() throws Exception {
+		final List<Thread> threads = new ArrayList<Thread>();
+		final ImgOpener opener = new ImgOpener();
+		opener.setNumThreads(4);
+		opener.addStatusListener(new StatusListener() {
+
+			@Override
+			public void statusUpdated(final StatusEvent e) {
+				threads.add(Thread.currentThread());
+			}
+		});
+		opener.openImg(ID, new ArrayImgFactory<FloatType>(), new FloatType());
+
+		assertTrue(threads.size() > 1);
+		for (final Thread thread : threads)
+			assertEquals(Thread.currentThread(), thread);
+	}
+
+	private static <T extends RealType<T> & NativeType<T>> void
+		assertParallelEqualsSequential(final ImgFactory<T> factory, final T type)
+			throws Exception
+	{
+		final ImgOpener sequential = new ImgOpener();
+		final ImgPlus<T> expected = sequential.openImg(ID, factory, type);
+
+		for (final int numThreads : new int[] { 2, 3, 8 }) {
+			final ImgOpener parallel = new ImgOpener();
+			parallel.setNumThreads(numThreads);
+			final ImgPlus<T> actual = parallel.openImg(ID, factory, type);
+			assertImgEquals(expected.getImg(), actual.getImg());
+		}
+	}
+
+	private static <T extends RealType<T>> void assertImgEquals(
+		final Img<T> expected, final Img<T> actual)
+	{
+		assertEquals(expected.numDimensions(), actual.numDimensions());
+		for (int d = 0; d < expected.numDimensions(); d++)
+			assertEquals(expected.dimension(d), actual.dimension(d));
+
+		final Cursor<T> cursor = expected.localizingCursor();
+		final RandomAccess<T> access = actual.randomAccess();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().getRealDouble(), access.get().getRealDouble(),
+				0);
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.nio.FloatBufferAccess;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.BufferPlanarImgFactory;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that images which are not planar, or whose planes are not stored in
+ * primitive arrays, are saved by {@link ImgSaver} such that {@link ImgOpener}
+ * reads them back unchanged.
+ */
+public class ImgSaverTest {
+
+	private static final long[] DIMENSIONS = { 29, 17, 5, 3 };
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z,
+		Axes.CHANNEL };
+
+	/** Cells that span several planes and do not align with the rows. */
+	private static final int[] CELL_SIZE = { 8, 6, 2, 2 };
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("imgsaver", ".tif");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void testArrayImg() throws Exception {
+		assertRoundTrip(new ArrayImgFactory<UnsignedByteType>(),
+			new UnsignedByteType());
+		assertRoundTrip(new ArrayImgFactory<ShortType>(), new ShortType());
+		assertRoundTrip(new ArrayImgFactory<FloatType>(), new FloatType());
+	}
+
+	@Test
+	public void testCellImg() throws Exception {
+		assertRoundTrip(new CellImgFactory<UnsignedShortType>(CELL_SIZE),
+			new UnsignedShortType());
+		assertRoundTrip(new CellImgFactory<IntType>(CELL_SIZE), new IntType());
+		assertRoundTrip(new CellImgFactory<DoubleType>(CELL_SIZE),
+			new DoubleType());
+	}
+
+	@Test
+	public void testBufferPlanarImg() throws Exception {
+		assertRoundTrip(new BufferPlanarImgFactory<UnsignedShortType>(),
+			new UnsignedShortType());
+		assertRoundTrip(new BufferPlanarImgFactory<FloatType>(), new FloatType());
+	}
+
+	@Test
+	public void testOpenIntoBufferPlanarImg() throws Exception {
+		final Img<FloatType> img =
+			new ArrayImgFactory<FloatType>().create(DIMENSIONS, new FloatType());
+		final Random random = new Random(42);
+		for (final FloatType t : img)
+			t.setReal(random.nextInt(200));
+		new ImgSaver().saveImg(file.getPath(), img, AXES);
+
+		final PlanarImg<FloatType, ?> actual =
+			(PlanarImg<FloatType, ?>) new ImgOpener().openImg(file.getPath(),
+				new BufferPlanarImgFactory<FloatType>(), new FloatType()).getImg();
+		assertImgEquals(img, actual);
+
+		// the planes were filled, not replaced by arrays on the heap
+		for (int i = 0; i < actual.numSlices(); i++)
+			assertTrue(actual.getPlane(i) instanceof FloatBufferAccess);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAxesMismatch() throws Exception {
+		final Img<FloatType> img =
+			new ArrayImgFactory<FloatType>().create(DIMENSIONS, new FloatType());
+		new ImgSaver().saveImg(file.getPath(), img, new AxisType[] { Axes.X,
+			Axes.Y, Axes.Z });
+	}
+
+	private <T extends RealType<T> & NativeType<T>> void assertRoundTrip(
+		final ImgFactory<T> factory, final T type) throws Exception
+	{
+		final Img<T> img = factory.create(DIMENSIONS, type);
+		final Random random = new Random(42);
+		for (final T t : img)
+			t.setReal(random.nextInt(200));
+
+		for (final int numThreads : new int[] { 1, 4 }) {
+			final ImgSaver saver = new ImgSaver();
+			saver.setNumThreads(numThreads);
+
+			file.delete();
+			saver.saveImg(file.getPath(), img, AXES);
+			assertImgEquals(img, read(type));
+
+			file.delete();
+			saver.saveImg(file.getPath(), new ImgPlus<T>(img, "test", AXES));
+			assertImgEquals(img, read(type));
+		}
+	}
+
+	private <T extends RealType<T> & NativeType<T>> Img<T> read(final T type)
+		throws ImgIOException
+	{
+		return new ImgOpener().openImg(file.getPath(),
+			new ArrayImgFactory<T>(), type).getImg();
+	}
+
+	private static <T extends RealType<T>> void assertImgEquals(
+		final Img<T> expected, final Img<T> actual)
+	{
+		assertEquals(expected.numDimensions(), actual.numDimensions());
+		for (int d = 0; d < expected.numDimensions(); d++)
+			assertEquals(expected.dimension(d), actual.dimension(d));
+
+		final Cursor<T> cursor = expected.localizingCursor();
+		final RandomAccess<T> access = actual.randomAccess();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().getRealDouble(), access.get().getRealDouble(),
+				0);
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package net.imglib2.io.cell;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.cell.BufferCellImgFactory;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.io.ImgIOException;
+import net.imglib2.io.cell.CellFileHeader.Compression;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CellFileWriter} and {@link CellFileReader}.
+ */
+public class CellFileTest {
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("cellfile", ".cells");
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	private static CellImg<FloatType, ?, ?> createImg() {
+		final CellImg<FloatType, ?, ?> img =
+			new CellImgFactory<FloatType>(new int[] { 16, 8, 5 }).create(
+				new long[] { 37, 20, 11 }, new FloatType());
+		final Random random = new Random(42);
+		for (final FloatType t : img)
+			t.set(random.nextFloat());
+		return img;
+	}
+
+	private static void assertImgEquals(final CellImg<FloatType, ?, ?> expected,
+		final CellImg<FloatType, ?, ?> actual)
+	{
+		final long[] dims = new long[expected.numDimensions()];
+		actual.dimensions(dims);
+		final long[] expectedDims = new long[expected.numDimensions()];
+		expected.dimensions(expectedDims);
+		assertArrayEquals(expectedDims, dims);
+
+		final Cursor<FloatType> cursor = expected.localizingCursor();
+		final RandomAccess<FloatType> access = actual.randomAccess();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			access.setPosition(cursor);
+			assertEquals(cursor.get().get(), access.get().get(), 0);
+		}
+	}
+
+	private void roundTrip(final Compression compression,
+		final ByteOrder byteOrder, final int numThreads) throws ImgIOException
+	{
+		final CellImg<FloatType, ?, ?> img = createImg();
+
+		final CellFileWriter writer = new CellFileWriter();
+		writer.setCompression(compression);
+		writer.setByteOrder(byteOrder);
+		writer.setNumThreads(numThreads);
+		writer.write(img, file);
+
+		final CellFileReader reader = new CellFileReader(file);
+		try {
+			reader.setNumThreads(numThreads);
+			assertEquals(compression, reader.getHeader().getCompression());
+			assertEquals(byteOrder, reader.getHeader().getByteOrder());
+			final CellImg<FloatType, ?, ?> copy = reader.read();
+			assertImgEquals(img, copy);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testRaw() throws ImgIOException {
+		roundTrip(Compression.RAW, ByteOrder.LITTLE_ENDIAN, 1);
+		roundTrip(Compression.RAW, ByteOrder.BIG_ENDIAN, 4);
+	}
+
+	@Test
+	public void testDeflate() throws ImgIOException {
+		roundTrip(Compression.DEFLATE, ByteOrder.LITTLE_ENDIAN, 4);
+		roundTrip(Compression.DEFLATE, ByteOrder.BIG_ENDIAN, 1);
+	}
+
+	@Test
+	public void testBufferCellImg() throws ImgIOException {
+		final CellImg<FloatType, ?, ?> img =
+			new BufferCellImgFactory<FloatType>(new int[] { 16, 8, 5 }).create(
+				new long[] { 37, 20, 11 }, new FloatType());
+		final Random random = new Random(42);
+		for (final FloatType t : img)
+			t.set(random.nextFloat());
+
+		final CellFileWriter writer = new CellFileWriter();
+		writer.setByteOrder(ByteOrder.BIG_ENDIAN);
+		final CellFileHeader header = writer.write(img, file);
+		assertEquals("float", header.getDataType());
+
+		final CellFileReader reader = new CellFileReader(file);
+		try {
+			assertImgEquals(img, reader.read());
+
+			final CellImg<FloatType, ?, ?> copy =
+				new BufferCellImgFactory<FloatType>(new int[] { 16, 8, 5 }).create(
+					new long[] { 37, 20, 11 }, new FloatType());
+			reader.read(copy);
+			assertImgEquals(img, copy);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testHeader() throws ImgIOException {
+		final CellFileHeader header =
+			new CellFileHeader(UnsignedShortType.class.getName(), "short", 1,
+				new long[] { 100, 50 }, new int[] { 32, 32 },
+				ByteOrder.LITTLE_ENDIAN, Compression.DEFLATE);
+		final CellFileHeader parsed = CellFileHeader.fromJson(header.toJson());
+		assertEquals(header.toJson(), parsed.toJson());
+		assertArrayEquals(new long[] { 4, 2 }, parsed.getNumCells());
+		assertEquals(8, parsed.getCellCount());
+	}
+
+	@Test
+	public void testMap() throws ImgIOException {
+		final CellImg<FloatType, ?, ?> img = createImg();
+		final CellFileWriter writer = new CellFileWriter();
+		writer.write(img, file);
+
+		final CellFileReader reader = new CellFileReader(file);
+		try {
+			// the last cell is a border cell of 5 x 4 x 1 pixels
+			final long last = reader.getHeader().getCellCount() - 1;
+			final ByteBuffer buffer = reader.map(last);
+			assertEquals(5 * 4 * 1 * 4, buffer.capacity());
+
+			final RandomAccess<FloatType> access = img.randomAccess();
+			access.setPosition(new long[] { 32, 16, 10 });
+			assertEquals(access.get().get(), buffer.getFloat(0), 0);
+			access.setPosition(new long[] { 36, 19, 10 });
+			assertEquals(access.get().get(), buffer.getFloat(buffer.capacity() - 4),
+				0);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testTypeMismatch() throws ImgIOException {
+		new CellFileWriter().write(createImg(), file);
+
+		final CellFileReader reader = new CellFileReader(file);
+		try {
+			final CellImg<IntType, ?, ?> ints =
+				new CellImgFactory<IntType>(new int[] { 16, 8, 5 }).create(
+					new long[] { 37, 20, 11 }, new IntType());
+			assertReadFails(reader, ints);
+			try {
+				reader.read(new CellImgFactory<IntType>(new int[] { 16, 8, 5 }),
+					new IntType());
+				fail("the pixel type was not checked");
+			}
+			catch (final ImgIOException e) {
+				// expected
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testStorageMismatch() throws ImgIOException, IOException {
+		new CellFileWriter().write(createImg(), file);
+
+		// FloatType pixels in shorts
+		replace("\"dataType\":\"float\"", "\"dataType\":\"short\"");
+		CellFileReader reader = new CellFileReader(file);
+		try {
+			assertReadFails(reader, createImg());
+		}
+		finally {
+			reader.close();
+		}
+
+		// a class that is not a known pixel type
+		replace("FloatType", "FloatTypo");
+		reader = new CellFileReader(file);
+		try {
+			reader.read();
+			fail("the pixel type was not checked");
+		}
+		catch (final ImgIOException e) {
+			// expected
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static void assertReadFails(final CellFileReader reader,
+		final CellImg<?, ?, ?> img)
+	{
+		try {
+			reader.read(img);
+			fail("the image was read into mismatching storage");
+		}
+		catch (final ImgIOException e) {
+			// expected
+		}
+	}
+
+	/** Replaces a string of the same length in the header of the file. */
+	private void replace(final String target, final String replacement)
+		throws IOException
+	{
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final byte[] head = new byte[4096];
+			raf.readFully(head);
+			final String text = new String(head, "ISO-8859-1");
+			final int offset = text.indexOf(target);
+			assertTrue(offset >= 0);
+			raf.seek(offset);
+			raf.write(replacement.getBytes("ISO-8859-1"));
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+}
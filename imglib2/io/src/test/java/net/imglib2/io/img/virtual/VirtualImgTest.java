@@ -41,8 +41,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.net.URL;
+import java.util.concurrent.CountDownLatch;
 
 import net.imglib2.img.ImgFactory;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.type.numeric.RealType;
 
 import org.junit.Test;
@@ -81,6 +83,9 @@ public class VirtualImgTest {
 
 		// test out cursor
 
+		// all planes fit into the cache
+		image.getPlaneCache().setCapacity(10);
+
 		long numElements = 0;
 		final VirtualCursor<? extends RealType<?>> cursor = image.cursor();
 		while (cursor.hasNext()) {
@@ -92,6 +97,7 @@ public class VirtualImgTest {
 
 		// test out random access
 
+		image.getPlaneCache().resetCounters();
 		VirtualRandomAccess<? extends RealType<?>> accessor = image.randomAccess();
 		final long[] pos = new long[3];
 		for (int x = 0; x < 20; x++) {
@@ -107,6 +113,11 @@ public class VirtualImgTest {
 		}
 		assertNotNull(accessor.getCurrentPlane());
 
+		// the cursor left all planes in the cache
+		assertEquals(0, image.getPlaneCache().getMisses());
+		assertEquals(0, image.getPlaneCache().getReadAheadHits());
+		assertTrue(image.getPlaneCache().getHits() > 0);
+
 		final long xDim = image.dimension(0);
 
 		// test byte only code
@@ -144,4 +155,102 @@ public class VirtualImgTest {
 		assertNotNull(accessor.getCurrentPlane());
 	}
 
+	@Test
+	public void testEvictionOrder() {
+		final VirtualPlaneCache cache = open().getPlaneCache();
+		// fewer planes than the image has, no read ahead
+		cache.setCapacity(3);
+		cache.setReadAhead(0);
+
+		assertLoads(cache, 0, true); // 0
+		assertLoads(cache, 1, true); // 0 1
+		assertLoads(cache, 2, true); // 0 1 2
+		assertLoads(cache, 0, false); // 1 2 0
+		assertLoads(cache, 3, true); // 2 0 3, the least recently used 1 is evicted
+		assertLoads(cache, 2, false); // 0 3 2
+		assertLoads(cache, 0, false); // 3 2 0
+		assertLoads(cache, 1, true); // 2 0 1
+		assertLoads(cache, 3, true); // 0 1 3
+		assertLoads(cache, 2, true); // 1 3 2
+
+		// shrinking the cache evicts the least recently used planes
+		cache.setCapacity(1);
+		assertLoads(cache, 2, false);
+		assertLoads(cache, 3, true);
+	}
+
+	@Test
+	public void testReadAhead() throws InterruptedException {
+		final VirtualImg<?> image = open();
+		final VirtualPlaneCache cache = image.getPlaneCache();
+		final int numPlanes = (int) image.dimension(2);
+		cache.setCapacity(3);
+		cache.setReadAhead(2);
+		assertTrue(cache.getCapacity() < numPlanes);
+
+		// block the only worker thread, so that the planes read ahead are still
+		// pending when they are requested
+		final int numThreads = TaskExecutor.getInstance().getNumThreads();
+		TaskExecutor.setNumThreads(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		TaskExecutor.getInstance().getExecutorService().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				blocked.countDown();
+				try {
+					release.await();
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		try {
+			blocked.await();
+			for (int z = 0; z < numPlanes; z++)
+				assertNotNull(cache.getPlane(z, 1));
+		}
+		finally {
+			release.countDown();
+			TaskExecutor.setNumThreads(numThreads);
+		}
+
+		// only the first plane was not read ahead
+		assertEquals(1, cache.getMisses());
+		assertEquals(numPlanes - 1, cache.getReadAheadHits());
+		assertTrue(cache.getReadAheadHits() > 0);
+
+		// scanning backwards, the planes are read ahead in the other direction
+		cache.clear();
+		cache.resetCounters();
+		for (int z = numPlanes - 1; z >= 0; z--)
+			assertNotNull(cache.getPlane(z, -1));
+		assertEquals(numPlanes, cache.getMisses() + cache.getReadAheadHits() +
+			cache.getHits());
+		assertTrue(cache.getMisses() < numPlanes);
+	}
+
+	private VirtualImg<?> open() {
+		try {
+			final URL fileURL = getClass().getResource("TestImage.tif");
+			return VirtualImg.create(fileURL.getFile(), false);
+		}
+		catch (final Exception e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+
+	/** Requests a plane and checks whether it had to be loaded. */
+	private static void assertLoads(final VirtualPlaneCache cache,
+		final int planeNum, final boolean load)
+	{
+		final long misses = cache.getMisses();
+		final long hits = cache.getHits();
+		assertNotNull(cache.getPlane(planeNum, 0));
+		assertEquals(load ? misses + 1 : misses, cache.getMisses());
+		assertEquals(load ? hits : hits + 1, cache.getHits());
+	}
+
 }
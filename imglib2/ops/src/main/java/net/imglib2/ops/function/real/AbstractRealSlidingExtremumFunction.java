@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.real;
+
+import net.imglib2.ops.Function;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Base class of {@link RealSlidingMinFunction} and
+ * {@link RealSlidingMaxFunction}. The candidates for the extremum of a sliding
+ * neighborhood are kept in a monotonic deque: a sample is dropped from the
+ * back of the deque as soon as a newer sample at least as extreme arrives,
+ * and from the front when it leaves the neighborhood. The front of the deque
+ * is the extremum. Each sample enters and leaves the deque once, so moving a
+ * HyperVolumePointSet neighborhood one step along axis 0 costs O(s) where s is
+ * the number of samples entering and leaving.
+ * 
+ * @see AbstractRealSlidingWindowFunction
+ */
+public abstract class AbstractRealSlidingExtremumFunction<T extends RealType<T>>
+	extends AbstractRealSlidingWindowFunction<T>
+{
+	// -- instance variables --
+
+	protected final StatCalculator calculator;
+
+	// ring buffer of slots with monotonic values, front is the extremum
+	private int[] deque;
+	private double[] values;
+	private int front;
+	private int size;
+
+	// -- constructor --
+
+	public AbstractRealSlidingExtremumFunction(Function<long[],T> otherFunc) {
+		super(otherFunc);
+		calculator = new StatCalculator();
+		deque = new int[0];
+		values = new double[0];
+	}
+
+	// -- abstract methods --
+
+	/**
+	 * Returns true if value a makes an older value b obsolete.
+	 */
+	protected abstract boolean supersedes(double a, double b);
+
+	// -- AbstractRealSlidingWindowFunction methods --
+
+	@Override
+	protected void reset(int capacity) {
+		if (deque.length < capacity) {
+			deque = new int[capacity];
+			values = new double[capacity];
+		}
+		front = 0;
+		size = 0;
+	}
+
+	@Override
+	protected void insert(int slot, double value) {
+		final int capacity = deque.length;
+		while (size > 0) {
+			int back = front + size - 1;
+			if (back >= capacity) back -= capacity;
+			if (!supersedes(value, values[back])) break;
+			size--;
+		}
+		int back = front + size;
+		if (back >= capacity) back -= capacity;
+		deque[back] = slot;
+		values[back] = value;
+		size++;
+	}
+
+	@Override
+	protected void removeOldest(int slot, double value) {
+		if (size > 0 && deque[front] == slot) {
+			front++;
+			if (front == deque.length) front = 0;
+			size--;
+		}
+	}
+
+	@Override
+	protected double value() {
+		if (size <= 0)
+			throw new IllegalArgumentException(
+				"number of samples must be greater than 0");
+		return values[front];
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.real;
+
+import net.imglib2.ops.Function;
+import net.imglib2.ops.PointSet;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.type.numeric.RealType;
+
+// ImageAssignment and PointSetInputIterator move one neighborhood PointSet
+// point by point along the fastest axis (axis 0). When that neighborhood is a
+// HyperVolumePointSet two consecutive windows share all but their first and
+// last slab (the points with a fixed axis 0 coordinate). So rather than
+// recollecting and resorting the whole neighborhood each time the window is
+// updated incrementally: the samples of the slabs that left are removed in
+// the order they were added and the samples of the new slabs are added.
+// Other kinds of PointSets are not guaranteed to keep their shape when
+// moved, so they are collected completely every time.
+
+/**
+ * Base class for neighborhood functions that compute a statistic of the
+ * values of another function over a sliding window. Subclasses maintain the
+ * statistic incrementally as samples are inserted and removed. Samples are
+ * always removed in the order they were inserted.
+ * 
+ * Instances are not thread safe. Like all Functions they are copied per
+ * thread by ImageAssignment.
+ */
+public abstract class AbstractRealSlidingWindowFunction<T extends RealType<T>>
+	implements Function<PointSet,T>
+{
+	// -- instance variables --
+
+	protected final Function<long[],T> otherFunc;
+	private final T variable;
+	private final RealSampleCollector<T> collector;
+	private final PrimitiveDoubleArray values;
+	private long[] lastMin;
+	private long[] lastMax;
+	private boolean windowValid;
+	private long[] point;
+	private long slabSize;
+	private double[] window;
+	private int capacity;
+	private int head;
+	private int count;
+
+	// -- constructor --
+
+	public AbstractRealSlidingWindowFunction(Function<long[],T> otherFunc) {
+		this.otherFunc = otherFunc;
+		this.variable = otherFunc.createOutput();
+		this.collector = new RealSampleCollector<T>();
+		this.values = new PrimitiveDoubleArray();
+		this.lastMin = null;
+		this.lastMax = null;
+		this.windowValid = false;
+		this.point = null;
+		this.window = new double[0];
+	}
+
+	// -- abstract methods --
+
+	/**
+	 * Removes all samples. At most capacity samples will be in the window
+	 * until the next reset.
+	 */
+	protected abstract void reset(int capacity);
+
+	/**
+	 * Adds a sample to the window. slot is an index in [0, capacity) that is
+	 * not used by any other sample currently in the window.
+	 */
+	protected abstract void insert(int slot, double value);
+
+	/**
+	 * Removes the oldest sample from the window.
+	 */
+	protected abstract void removeOldest(int slot, double value);
+
+	/**
+	 * Returns the statistic of the samples currently in the window.
+	 */
+	protected abstract double value();
+
+	/**
+	 * Returns the statistic of a given set of samples. Used for PointSets
+	 * that can not be updated incrementally.
+	 */
+	protected abstract double value(PrimitiveDoubleArray samples);
+
+	// -- Function methods --
+
+	@Override
+	public void compute(PointSet input, T output) {
+		if (input instanceof HyperVolumePointSet) {
+			slide(input.findBoundMin(), input.findBoundMax());
+			output.setReal(value());
+		}
+		else {
+			windowValid = false;
+			collector.collect(input, otherFunc, values);
+			output.setReal(value(values));
+		}
+	}
+
+	@Override
+	public T createOutput() {
+		return otherFunc.createOutput();
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Moves the window to the box given by min and max.
+	 */
+	private void slide(long[] min, long[] max) {
+		final long width = max[0] - min[0] + 1;
+		if (canSlide(min, max) && (min[0] - lastMin[0] < width)) {
+			final long shift = min[0] - lastMin[0];
+			for (long i = 0; i < shift; i++)
+				removeSlab();
+			for (long x = lastMax[0] + 1; x <= max[0]; x++)
+				addSlab(x, min, max);
+		}
+		else {
+			long size = 1;
+			for (int i = 1; i < min.length; i++)
+				size *= max[i] - min[i] + 1;
+			slabSize = size;
+			size *= width;
+			if (size > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("neighborhood is too big");
+			capacity = (int) size;
+			if (window.length < capacity) window = new double[capacity];
+			head = 0;
+			count = 0;
+			reset(capacity);
+			if (point == null || point.length != min.length)
+				point = new long[min.length];
+			for (long x = min[0]; x <= max[0]; x++)
+				addSlab(x, min, max);
+		}
+		if (lastMin == null || lastMin.length != min.length) {
+			lastMin = new long[min.length];
+			lastMax = new long[min.length];
+		}
+		for (int i = 0; i < min.length; i++) {
+			lastMin[i] = min[i];
+			lastMax[i] = max[i];
+		}
+		windowValid = true;
+	}
+
+	/**
+	 * Returns true if the box given by min and max equals the last window
+	 * moved forward along axis 0.
+	 */
+	private boolean canSlide(long[] min, long[] max) {
+		if (!windowValid) return false;
+		if (lastMin.length != min.length) return false;
+		if (min[0] < lastMin[0]) return false;
+		if (max[0] - min[0] != lastMax[0] - lastMin[0]) return false;
+		for (int i = 1; i < min.length; i++) {
+			if (min[i] != lastMin[i]) return false;
+			if (max[i] != lastMax[i]) return false;
+		}
+		return true;
+	}
+
+	private void addSlab(long x, long[] min, long[] max) {
+		final int n = min.length;
+		point[0] = x;
+		for (int i = 1; i < n; i++)
+			point[i] = min[i];
+		for (long s = 0; s < slabSize; s++) {
+			otherFunc.compute(point, variable);
+			final double value = variable.getRealDouble();
+			int slot = head + count;
+			if (slot >= capacity) slot -= capacity;
+			window[slot] = value;
+			count++;
+			insert(slot, value);
+			for (int i = 1; i < n; i++) {
+				if (++point[i] <= max[i]) break;
+				point[i] = min[i];
+			}
+		}
+	}
+
+	private void removeSlab() {
+		for (long s = 0; s < slabSize; s++) {
+			final int slot = head;
+			head++;
+			if (head == capacity) head = 0;
+			count--;
+			removeOldest(slot, window[slot]);
+		}
+	}
+}
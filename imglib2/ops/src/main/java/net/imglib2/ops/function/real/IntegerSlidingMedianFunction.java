@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.real;
+
+import net.imglib2.ops.Function;
+import net.imglib2.type.numeric.IntegerType;
+
+/**
+ * Computes the median of the values of another function over a neighborhood.
+ * Produces the same results as {@link RealMedianFunction} for integer types.
+ * The samples of a sliding neighborhood are counted in a histogram with one
+ * bin per possible value. The median is found by moving a pointer from the
+ * bin of the previous median, which for most images is only a few bins away.
+ * Hence moving a HyperVolumePointSet neighborhood one step along axis 0 costs
+ * about O(s) where s is the number of samples entering and leaving.
+ * 
+ * The type of the other function must have at most {@link #MAX_BINS} possible
+ * values (e.g. 8 and 16 bit types). Use {@link RealSlidingMedianFunction} for
+ * other types.
+ * 
+ * @see AbstractRealSlidingWindowFunction
+ */
+public class IntegerSlidingMedianFunction<T extends IntegerType<T>>
+	extends AbstractRealSlidingWindowFunction<T>
+{
+	// -- constants --
+
+	public static final int MAX_BINS = 1 << 16;
+
+	// -- instance variables --
+
+	private final StatCalculator calculator;
+	private final long minValue;
+	private final int[] counts;
+	private int count;
+
+	// the bin of the last median and the number of samples in lower bins
+	private int bin;
+	private int below;
+
+	// -- constructor --
+
+	public IntegerSlidingMedianFunction(Function<long[],T> otherFunc) {
+		super(otherFunc);
+		final T type = otherFunc.createOutput();
+		final double min = type.getMinValue();
+		final double max = type.getMaxValue();
+		if (max - min + 1 > MAX_BINS)
+			throw new IllegalArgumentException(
+				"type has more than " + MAX_BINS + " values");
+		calculator = new StatCalculator();
+		minValue = (long) min;
+		counts = new int[(int) (max - min + 1)];
+		count = 0;
+		bin = 0;
+		below = 0;
+	}
+
+	// -- Function methods --
+
+	@Override
+	public IntegerSlidingMedianFunction<T> copy() {
+		return new IntegerSlidingMedianFunction<T>(otherFunc.copy());
+	}
+
+	// -- AbstractRealSlidingWindowFunction methods --
+
+	@Override
+	protected void reset(int capacity) {
+		if (count > 0) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = 0;
+		}
+		count = 0;
+		below = 0;
+	}
+
+	@Override
+	protected void insert(int slot, double value) {
+		final int b = binOf(value);
+		counts[b]++;
+		count++;
+		if (b < bin) below++;
+	}
+
+	@Override
+	protected void removeOldest(int slot, double value) {
+		final int b = binOf(value);
+		counts[b]--;
+		count--;
+		if (b < bin) below--;
+	}
+
+	@Override
+	protected double value() {
+		if (count <= 0)
+			throw new IllegalArgumentException(
+				"number of samples must be greater than 0");
+		final int lowerMid = (count - 1) / 2;
+		final int upperMid = count / 2;
+		moveTo(lowerMid);
+		final long value1 = bin + minValue;
+		if (below + counts[bin] > upperMid)
+			return value1;
+		// the upper middle sample is in the next nonempty bin
+		int b = bin + 1;
+		while (counts[b] == 0)
+			b++;
+		final long value2 = b + minValue;
+		return (value1 + value2) / 2.0;
+	}
+
+	@Override
+	protected double value(PrimitiveDoubleArray samples) {
+		return calculator.median(samples);
+	}
+
+	// -- private helpers --
+
+	private int binOf(double value) {
+		final long b = (long) value - minValue;
+		if (b < 0) return 0;
+		if (b >= counts.length) return counts.length - 1;
+		return (int) b;
+	}
+
+	/**
+	 * Moves bin to the bin containing the k-th smallest sample.
+	 */
+	private void moveTo(int k) {
+		while (below > k) {
+			bin--;
+			below -= counts[bin];
+		}
+		while (below + counts[bin] <= k) {
+			below += counts[bin];
+			bin++;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.real;
+
+import net.imglib2.ops.Function;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computes the median of the values of another function over a neighborhood.
+ * Produces the same results as {@link RealMedianFunction} but maintains the
+ * samples of a sliding neighborhood in two heaps: a max heap holding the
+ * lower half and a min heap holding the upper half of the samples. Moving a
+ * HyperVolumePointSet neighborhood one step along axis 0 costs O(s log n)
+ * where s is the number of samples entering and leaving and n is the size of
+ * the neighborhood. For integer types with a small range of values
+ * {@link IntegerSlidingMedianFunction} is faster still.
+ * 
+ * @see AbstractRealSlidingWindowFunction
+ */
+public class RealSlidingMedianFunction<T extends RealType<T>>
+	extends AbstractRealSlidingWindowFunction<T>
+{
+	// -- instance variables --
+
+	private final StatCalculator calculator;
+
+	// value of the sample in a slot
+	private double[] values;
+
+	// whether a slot is stored in the lower heap
+	private boolean[] inLower;
+
+	// index of a slot within its heap
+	private int[] heapIndex;
+
+	// heaps of slots. lower is a max heap, upper a min heap.
+	private int[] lower;
+	private int[] upper;
+	private int lowerSize;
+	private int upperSize;
+
+	// -- constructor --
+
+	public RealSlidingMedianFunction(Function<long[],T> otherFunc) {
+		super(otherFunc);
+		calculator = new StatCalculator();
+		allocate(0);
+	}
+
+	// -- Function methods --
+
+	@Override
+	public RealSlidingMedianFunction<T> copy() {
+		return new RealSlidingMedianFunction<T>(otherFunc.copy());
+	}
+
+	// -- AbstractRealSlidingWindowFunction methods --
+
+	@Override
+	protected void reset(int capacity) {
+		if (values.length < capacity) allocate(capacity);
+		lowerSize = 0;
+		upperSize = 0;
+	}
+
+	@Override
+	protected void insert(int slot, double value) {
+		values[slot] = value;
+		if (lowerSize == 0 || Double.compare(value, values[lower[0]]) <= 0) {
+			inLower[slot] = true;
+			lower[lowerSize] = slot;
+			heapIndex[slot] = lowerSize;
+			lowerSize++;
+			siftUp(lower, lowerSize - 1, -1);
+		}
+		else {
+			inLower[slot] = false;
+			upper[upperSize] = slot;
+			heapIndex[slot] = upperSize;
+			upperSize++;
+			siftUp(upper, upperSize - 1, 1);
+		}
+		rebalance();
+	}
+
+	@Override
+	protected void removeOldest(int slot, double value) {
+		if (inLower[slot]) {
+			lowerSize--;
+			remove(lower, lowerSize, heapIndex[slot], -1);
+		}
+		else {
+			upperSize--;
+			remove(upper, upperSize, heapIndex[slot], 1);
+		}
+		rebalance();
+	}
+
+	@Override
+	protected double value() {
+		if (lowerSize == 0)
+			throw new IllegalArgumentException(
+				"number of samples must be greater than 0");
+		if (lowerSize > upperSize) return values[lower[0]];
+		return (values[lower[0]] + values[upper[0]]) / 2;
+	}
+
+	@Override
+	protected double value(PrimitiveDoubleArray samples) {
+		return calculator.median(samples);
+	}
+
+	// -- private helpers --
+
+	private void allocate(int capacity) {
+		values = new double[capacity];
+		inLower = new boolean[capacity];
+		heapIndex = new int[capacity];
+		lower = new int[capacity];
+		upper = new int[capacity];
+	}
+
+	/**
+	 * Keeps lowerSize == upperSize or lowerSize == upperSize + 1, so that the
+	 * median is at the top of the lower heap (or halfway between the tops).
+	 */
+	private void rebalance() {
+		if (lowerSize > upperSize + 1) {
+			final int slot = lower[0];
+			lowerSize--;
+			remove(lower, lowerSize, 0, -1);
+			inLower[slot] = false;
+			upper[upperSize] = slot;
+			heapIndex[slot] = upperSize;
+			upperSize++;
+			siftUp(upper, upperSize - 1, 1);
+		}
+		else if (upperSize > lowerSize) {
+			final int slot = upper[0];
+			upperSize--;
+			remove(upper, upperSize, 0, 1);
+			inLower[slot] = true;
+			lower[lowerSize] = slot;
+			heapIndex[slot] = lowerSize;
+			lowerSize++;
+			siftUp(lower, lowerSize - 1, -1);
+		}
+	}
+
+	/**
+	 * Compares the values of two slots. order is 1 for a min heap and -1 for
+	 * a max heap. Returns true if a belongs above b in the heap.
+	 */
+	private boolean above(int a, int b, int order) {
+		return order * Double.compare(values[a], values[b]) < 0;
+	}
+
+	/**
+	 * Removes the element at index i of a heap. size is the size of the heap
+	 * after removal, i.e. heap[size] is the last element.
+	 */
+	private void remove(int[] heap, int size, int i, int order) {
+		if (i == size) return;
+		final int last = heap[size];
+		heap[i] = last;
+		heapIndex[last] = i;
+		if (i > 0 && above(last, heap[(i - 1) / 2], order))
+			siftUp(heap, i, order);
+		else
+			siftDown(heap, size, i, order);
+	}
+
+	private void siftUp(int[] heap, int i, int order) {
+		final int slot = heap[i];
+		while (i > 0) {
+			final int parent = (i - 1) / 2;
+			if (!above(slot, heap[parent], order)) break;
+			heap[i] = heap[parent];
+			heapIndex[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+
+	private void siftDown(int[] heap, int size, int i, int order) {
+		final int slot = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) break;
+			if (child + 1 < size && above(heap[child + 1], heap[child], order))
+				child++;
+			if (!above(heap[child], slot, order)) break;
+			heap[i] = heap[child];
+			heapIndex[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = slot;
+		heapIndex[slot] = i;
+	}
+}
@@ -39,11 +39,10 @@ package net.imglib2.ops.image;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.ops.Condition;
 import net.imglib2.ops.Function;
 import net.imglib2.ops.InputIterator;
@@ -80,8 +79,8 @@ public class ImageAssignment<A extends ComplexType<A>,B extends ComplexType<B>,I
 
 	// -- instance variables --
 
-	private ExecutorService executor;
 	private boolean assigning;
+	private volatile boolean aborted;
 	private List<Runnable> tasks;
 	
 	// -- constructor --
@@ -110,7 +109,7 @@ public class ImageAssignment<A extends ComplexType<A>,B extends ComplexType<B>,I
 		InputIteratorFactory<INPUT> factory)
 	{
 		this.assigning = false;
-		this.executor = null;
+		this.aborted = false;
 		this.tasks = null;
 		setupTasks(img, origin, span, function, condition, factory);
 	}
@@ -119,57 +118,36 @@ public class ImageAssignment<A extends ComplexType<A>,B extends ComplexType<B>,I
 
 	/**
 	 * Assign pixels using input variables specified in constructor. Can be
-	 * aborted using abort().
+	 * aborted using abort(). The work is distributed over the shared
+	 * {@link TaskExecutor}.
 	 */
 	public void assign() {
 		synchronized(this) {
 			assigning = true;
-			executor = Executors.newFixedThreadPool(tasks.size());
-			for (Runnable task : tasks)
-				executor.submit(task);
+			aborted = false;
 		}
-		boolean terminated = true;
-		synchronized (this) {
-			// TODO - does this shutdown() call return immediately or wait until
-			// everything is complete. If it waits then this synchronized block will
-			// keep abort() from being able to work.
-			executor.shutdown();
-			terminated = executor.isTerminated();
-			if (terminated) executor = null;
+		try {
+			TaskExecutor.getInstance().run(tasks);
 		}
-		while (!terminated) {
-			try { Thread.sleep(100); } catch (Exception e) { /* do nothing */ }
+		finally {
 			synchronized (this) {
-				terminated = executor.isTerminated();
-				if (terminated) executor = null;
+				assigning = false;
+				notifyAll();
 			}
 		}
-		synchronized (this) {
-			assigning = false;
-		}
 	}
 
 	/**
 	 * Aborts an in progress assignment. Has no effect if not currently
-	 * running an assign() operation.
+	 * running an assign() operation. Returns once the running assign()
+	 * operation has stopped.
 	 */
 	public void abort() {
-		// TODO - this method maybe ineffective. See TODO note in assign().
-		boolean terminated = true;
 		synchronized (this) {
 			if (!assigning) return;
-			if (executor != null) {
-				executor.shutdownNow();
-				terminated = executor.isTerminated();
-			}
-		}
-		while (!terminated) {
-			try { Thread.sleep(100); } catch (Exception e) { /* do nothing */ }
-			synchronized (this) {
-				if (executor == null)
-					terminated = true;
-				else
-					terminated = executor.isTerminated();
+			aborted = true;
+			while (assigning) {
+				try { wait(100); } catch (InterruptedException e) { /* do nothing */ }
 			}
 		}
 	}
@@ -314,6 +292,7 @@ public class ImageAssignment<A extends ComplexType<A>,B extends ComplexType<B>,I
 			final V output = function.createOutput();
 			INPUT input = null;
 			while (iter.hasNext()) {
+				if (aborted) return;
 				input = iter.next(input);
 				boolean proceed = (condition == null) || (condition.isTrue(input));
 				if (proceed) {
@@ -155,7 +155,7 @@ public class HyperVolumePointSet implements PointSet {
 
 	@Override
 	public HyperVolumePointSet copy() {
-		return new HyperVolumePointSet(findBoundMin(), findBoundMax());
+		return new HyperVolumePointSet(anchor, negOffsets, posOffsets);
 	}
 	
 	private class HyperVolumePointSetIterator implements PointSetIterator {
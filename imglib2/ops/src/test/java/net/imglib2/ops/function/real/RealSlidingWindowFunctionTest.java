@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.real;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.Function;
+import net.imglib2.ops.PointSet;
+import net.imglib2.ops.condition.RangeCondition;
+import net.imglib2.ops.image.ImageAssignment;
+import net.imglib2.ops.input.PointSetInputIteratorFactory;
+import net.imglib2.ops.pointset.ConditionalPointSet;
+import net.imglib2.ops.pointset.HyperVolumePointSet;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Compares the sliding window functions to the functions that collect the
+ * whole neighborhood at every point.
+ */
+public class RealSlidingWindowFunctionTest {
+
+	private static final long[] DIMS = new long[]{23, 17, 9};
+
+	private <T extends RealType<T> & NativeType<T>> Img<T> makeInputImage(T type, int range) {
+		Img<T> img = new ArrayImgFactory<T>().create(DIMS, type);
+		Random random = new Random(17);
+		for (T t : img)
+			t.setReal(random.nextInt(range));
+		return img;
+	}
+
+	private <T extends RealType<T>> Img<DoubleType> assign(
+		Function<PointSet,T> function, PointSet neighborhood)
+	{
+		Img<DoubleType> output = new ArrayImgFactory<DoubleType>().create(DIMS, new DoubleType());
+		long[] origin = new long[]{3, 2, 2};
+		long[] span = new long[]{DIMS[0] - 6, DIMS[1] - 4, DIMS[2] - 4};
+		ImageAssignment<DoubleType,T,PointSet> assigner =
+			new ImageAssignment<DoubleType,T,PointSet>(output, origin, span, function,
+				null, new PointSetInputIteratorFactory(neighborhood));
+		assigner.assign();
+		return output;
+	}
+
+	private void assertSameImage(Img<DoubleType> expected, Img<DoubleType> actual) {
+		Cursor<DoubleType> e = expected.cursor();
+		Cursor<DoubleType> a = actual.cursor();
+		while (e.hasNext())
+			assertEquals(e.next().getRealDouble(), a.next().getRealDouble(), 0);
+	}
+
+	private PointSet[] neighborhoods() {
+		return new PointSet[] {
+			// odd number of samples
+			new HyperVolumePointSet(new long[3], new long[]{2, 1, 1}, new long[]{2, 1, 1}),
+			// even number of samples
+			new HyperVolumePointSet(new long[3], new long[]{3, 1, 0}, new long[]{0, 1, 1}),
+			// not a hypervolume, evaluated without sliding
+			new ConditionalPointSet(
+				new HyperVolumePointSet(new long[3], new long[]{2, 2, 1}, new long[]{2, 2, 1}),
+				new RangeCondition(1, 0, DIMS[1], 2))
+		};
+	}
+
+	@Test
+	public void testMedian() {
+		Img<DoubleType> img = makeInputImage(new DoubleType(), 1000);
+		Function<long[],DoubleType> imageFunc =
+			new RealImageFunction<DoubleType,DoubleType>(img, new DoubleType());
+		for (PointSet neighborhood : neighborhoods()) {
+			assertSameImage(
+				assign(new RealMedianFunction<DoubleType>(imageFunc), neighborhood),
+				assign(new RealSlidingMedianFunction<DoubleType>(imageFunc), neighborhood));
+		}
+	}
+
+	@Test
+	public void testIntegerMedian() {
+		// few values, so that there are many ties
+		Img<UnsignedByteType> img = makeInputImage(new UnsignedByteType(), 7);
+		Function<long[],UnsignedByteType> imageFunc =
+			new RealImageFunction<UnsignedByteType,UnsignedByteType>(img, new UnsignedByteType());
+		for (PointSet neighborhood : neighborhoods()) {
+			assertSameImage(
+				assign(new RealMedianFunction<UnsignedByteType>(imageFunc), neighborhood),
+				assign(new IntegerSlidingMedianFunction<UnsignedByteType>(imageFunc), neighborhood));
+		}
+	}
+
+	@Test
+	public void testMinMax() {
+		Img<DoubleType> img = makeInputImage(new DoubleType(), 10);
+		Function<long[],DoubleType> imageFunc =
+			new RealImageFunction<DoubleType,DoubleType>(img, new DoubleType());
+		for (PointSet neighborhood : neighborhoods()) {
+			assertSameImage(
+				assign(new RealMinFunction<DoubleType>(imageFunc), neighborhood),
+				assign(new RealSlidingMinFunction<DoubleType>(imageFunc), neighborhood));
+			assertSameImage(
+				assign(new RealMaxFunction<DoubleType>(imageFunc), neighborhood),
+				assign(new RealSlidingMaxFunction<DoubleType>(imageFunc), neighborhood));
+		}
+	}
+
+	@Test
+	public void testNonUniformSteps() {
+		// visit the points of a row out of order and jump between rows
+		Img<DoubleType> img = makeInputImage(new DoubleType(), 100);
+		Function<long[],DoubleType> imageFunc =
+			new RealImageFunction<DoubleType,DoubleType>(img, new DoubleType());
+		RealMedianFunction<DoubleType> median = new RealMedianFunction<DoubleType>(imageFunc);
+		RealSlidingMedianFunction<DoubleType> sliding = new RealSlidingMedianFunction<DoubleType>(imageFunc);
+		HyperVolumePointSet neighborhood =
+			new HyperVolumePointSet(new long[3], new long[]{2, 1, 1}, new long[]{2, 1, 1});
+		DoubleType expected = new DoubleType();
+		DoubleType actual = new DoubleType();
+		long[][] anchors = new long[][] {
+			{5, 5, 5}, {6, 5, 5}, {8, 5, 5}, {7, 5, 5}, {12, 5, 5}, {13, 5, 5}, {13, 6, 5}, {14, 6, 4}
+		};
+		for (long[] anchor : anchors) {
+			neighborhood.setAnchor(anchor);
+			median.compute(neighborhood, expected);
+			sliding.compute(neighborhood, actual);
+			assertEquals(expected.get(), actual.get(), 0);
+		}
+	}
+}
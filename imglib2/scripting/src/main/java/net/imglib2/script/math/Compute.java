@@ -25,6 +25,7 @@
 
 package net.imglib2.script.math;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -32,13 +33,14 @@ import java.util.Set;
 import net.imglib2.Cursor;
 import net.imglib2.IterableRealInterval;
 import net.imglib2.RealCursor;
+import net.imglib2.script.math.fn.FusedFunction;
 import net.imglib2.script.math.fn.IFunction;
 import net.imglib2.script.math.fn.ImageFunction;
 import net.imglib2.script.math.fn.Util;
 
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.multithreading.TaskExecutor;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.NumericType;
@@ -154,6 +156,13 @@ public class Compute {
 
 		public abstract void loop(final Cursor<R> resultCursor, final long loopSize, final IFunction fn);
 
+		/** Optionally compute the pixels from {@code start} to {@code start + loopSize}
+		 * in a faster way than by {@link #loop(Cursor, long, IFunction)}.
+		 * @return false if nothing was computed. */
+		public boolean loopFused(final Img<R> result, final long start, final long loopSize, final IFunction fn) {
+			return false;
+		}
+
 		/** Runs the operation on each voxel and ensures all cursors of {@code op}. */
 		private final Img<R> run() throws Exception {
 			if (images.size() > 0) {
@@ -178,7 +187,7 @@ public class Compute {
 				}
 
 				// Define intervals to operate on, at one per thread:
-				final Thread[] threads = new Thread[ numThreads ];
+				final ArrayList<Runnable> tasks = new ArrayList<Runnable>( numThreads );
 				final long numPixels = result.size();
 				final long[] start = new long[numThreads];
 				final long[] length = new long[numThreads];
@@ -189,11 +198,12 @@ public class Compute {
 				}
 				length[length.length-1] = numPixels - start[start.length-1];
 
-				// Run each thread
-				for (int ithread = 0; ithread < threads.length; ++ithread) {
+				// Run each task on the shared pool of threads
+				for (int ithread = 0; ithread < numThreads; ++ithread) {
 					final int ID = ithread;
-					threads[ithread] = new Thread(new Runnable()
+					tasks.add(new Runnable()
 					{
+						@Override
 						public void run()
 						{
 							final Cursor<R> resultCursor = result.cursor();
@@ -208,12 +218,14 @@ public class Compute {
 								c.jumpFwd( start[ID] );
 							}
 
-							loop(resultCursor, length[ID], fn);
+							if ( ! loopFused(result, start[ID], length[ID], fn) ) {
+								loop(resultCursor, length[ID], fn);
+							}
 						}
 					});
 				}
 
-				SimpleMultiThreading.startAndJoin( threads );
+				TaskExecutor.getInstance().run( tasks, numThreads );
 
 				return result;
 			} else {
@@ -230,6 +242,8 @@ public class Compute {
 	/** Execute the given {@link IFunction}, which runs for each pixel,
 	 * and store the results in an {@link Image} with the type defined by {@param output},
 	 * which has to be a subclass of {@link RealType}.
+	 * Unless {@param op} is an {@link IFunction} unknown to {@link FusedFunction},
+	 * it is compiled and evaluated in blocks of pixels rather than pixel by pixel.
 	 * 
 	 * @param op The {@link IFunction} to execute.
 	 * @param output An instance of the type of the result image returned by this method.
@@ -244,6 +258,13 @@ public class Compute {
 					resultCursor.get().setReal( fn.eval() );
 				}
 			}
+
+			public final boolean loopFused(final Img<R> result, final long start, final long loopSize, final IFunction fn) {
+				final FusedFunction fused = FusedFunction.compile(fn);
+				if (null == fused) return false;
+				fused.evaluate(result, start, loopSize);
+				return true;
+			}
 		};
 		return loop.run();
 	}
@@ -0,0 +1,468 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.script.math.fn;
+
+import java.util.Arrays;
+
+import net.imglib2.Cursor;
+import net.imglib2.RealInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.script.math.ACos;
+import net.imglib2.script.math.ASin;
+import net.imglib2.script.math.ATan;
+import net.imglib2.script.math.ATan2;
+import net.imglib2.script.math.Abs;
+import net.imglib2.script.math.Add;
+import net.imglib2.script.math.And;
+import net.imglib2.script.math.Average;
+import net.imglib2.script.math.Cbrt;
+import net.imglib2.script.math.Ceil;
+import net.imglib2.script.math.Cos;
+import net.imglib2.script.math.Cosh;
+import net.imglib2.script.math.Difference;
+import net.imglib2.script.math.Divide;
+import net.imglib2.script.math.Exp;
+import net.imglib2.script.math.Expm1;
+import net.imglib2.script.math.Floor;
+import net.imglib2.script.math.Hypot;
+import net.imglib2.script.math.IEEEremainder;
+import net.imglib2.script.math.Identity;
+import net.imglib2.script.math.Log;
+import net.imglib2.script.math.Log10;
+import net.imglib2.script.math.Log1p;
+import net.imglib2.script.math.Max;
+import net.imglib2.script.math.Min;
+import net.imglib2.script.math.Multiply;
+import net.imglib2.script.math.Or;
+import net.imglib2.script.math.Pow;
+import net.imglib2.script.math.Rint;
+import net.imglib2.script.math.Round;
+import net.imglib2.script.math.Signum;
+import net.imglib2.script.math.Sin;
+import net.imglib2.script.math.Sinh;
+import net.imglib2.script.math.Sqrt;
+import net.imglib2.script.math.Subtract;
+import net.imglib2.script.math.Tan;
+import net.imglib2.script.math.Tanh;
+import net.imglib2.script.math.ToDegrees;
+import net.imglib2.script.math.ToRadians;
+import net.imglib2.script.math.Xor;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/** An {@link IFunction} tree compiled into a fused evaluator that computes
+ *  blocks of consecutive pixels at a time, instead of calling {@link IFunction#eval()}
+ *  through the whole tree for every single pixel.
+ *  <p>
+ *  Each node of the tree owns a buffer of {@link #BLOCK} doubles. For every block,
+ *  the leaves fill their buffers and each operation runs one tight loop over
+ *  the buffers of its arguments, selected once per block by the operation's code.
+ *  Leaves that are {@link ImageFunction} instances over an {@link ArrayImg} or a
+ *  {@link PlanarImg} of a primitive {@link RealType} read the underlying primitive
+ *  arrays directly; {@link NumberFunction} and any subtree made only of numbers is
+ *  folded into a constant. All the operations in {@link net.imglib2.script.math}
+ *  with a plain arithmetic or {@link Math} counterpart are compiled; any other
+ *  {@link IFunction} is evaluated as is, pixel by pixel, into its buffer, so its
+ *  cursors must have been advanced to the first pixel of the evaluated range, just
+ *  like for the interpreted evaluation.
+ *  <p>
+ *  A {@link FusedFunction} holds its own buffers and reads the cursors of the
+ *  {@link IFunction} it was compiled from, so it must be used by one thread only:
+ *  compile a {@link IFunction#duplicate()} for every thread.
+ */
+public final class FusedFunction
+{
+	/** Number of pixels computed per pass through the tree. */
+	static public final int BLOCK = 4096;
+
+	private final Node root;
+
+	private FusedFunction(final Node root) {
+		this.root = root;
+	}
+
+	/** Compile {@param fn} into a {@link FusedFunction}.
+	 *  
+	 *  @return null if {@param fn} itself is not among the known operations,
+	 *  in which case compiling wouldn't be any faster than calling {@link IFunction#eval()}. */
+	static public final FusedFunction compile(final IFunction fn) {
+		final Node root = compileNode(fn);
+		if (root instanceof Interpreted) return null;
+		return new FusedFunction(root);
+	}
+
+	/** Evaluate {@param length} pixels, starting at the flat index {@param start},
+	 *  and store them into the same pixels of {@param result}, which is iterated in flat order. */
+	public final <R extends RealType<R>> void evaluate(final Img<R> result, final long start, final long length) {
+		final Object out = outputArray(result);
+		final Cursor<R> c = null == out ? result.cursor() : null;
+		if (null != c) c.jumpFwd(start);
+		final double[] buf = root.buf;
+		for (long index = start, end = start + length; index < end; index += BLOCK) {
+			final int n = (int) Math.min(BLOCK, end - index);
+			root.eval(index, n);
+			if (out instanceof float[]) {
+				final float[] f = (float[]) out;
+				final int offset = (int) index;
+				for (int i = 0; i < n; ++i) f[offset + i] = (float) buf[i];
+			} else if (out instanceof double[]) {
+				System.arraycopy(buf, 0, out, (int) index, n);
+			} else {
+				for (int i = 0; i < n; ++i) {
+					c.fwd();
+					c.get().setReal(buf[i]);
+				}
+			}
+		}
+	}
+
+	/** @return the float[] or double[] backing {@param result}, or null when it has to be written with a cursor. */
+	static private final Object outputArray(final Img<?> result) {
+		if (result instanceof ArrayImg) {
+			final Object type = result.firstElement();
+			final Object access = ((ArrayImg<?,?>) result).update(null);
+			if (access instanceof ArrayDataAccess) {
+				final Object data = ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+				if ((type.getClass() == FloatType.class && data instanceof float[])
+				 || (type.getClass() == DoubleType.class && data instanceof double[])) {
+					return data;
+				}
+			}
+		}
+		return null;
+	}
+
+	// -- compilation --
+
+	static private final Node compileNode(final IFunction fn) {
+		if (fn instanceof NumberFunction) {
+			return new Constant(fn.eval());
+		}
+		if (fn instanceof ImageFunction) {
+			final Node leaf = Leaf.create(((ImageFunction<?>) fn).source());
+			return null == leaf ? new Interpreted(fn) : leaf;
+		}
+		if (fn instanceof UnaryOperation) {
+			final int op = unaryCode(fn.getClass());
+			if (op >= 0) {
+				final Node a = compileNode(((UnaryOperation) fn).a());
+				// Without any images or cursors, the value is always the same
+				if (a instanceof Constant) return new Constant(fn.eval());
+				return new Unary(op, a);
+			}
+		}
+		if (fn instanceof BinaryOperation) {
+			final int op = binaryCode(fn.getClass());
+			if (op >= 0) {
+				final Node a = compileNode(((BinaryOperation) fn).a()),
+				           b = compileNode(((BinaryOperation) fn).b());
+				if (a instanceof Constant && b instanceof Constant) return new Constant(fn.eval());
+				return new Binary(op, a, b);
+			}
+		}
+		return new Interpreted(fn);
+	}
+
+	// Compare classes exactly: a subclass may override eval().
+
+	static private final Class<?>[] UNARY = new Class<?>[] {
+		Identity.class, Abs.class, ACos.class, ASin.class, ATan.class, Cbrt.class,
+		Ceil.class, Cos.class, Cosh.class, Exp.class, Expm1.class, Floor.class,
+		Log.class, Log10.class, Log1p.class, Rint.class, Round.class, Signum.class,
+		Sin.class, Sinh.class, Sqrt.class, Tan.class, Tanh.class, ToDegrees.class,
+		ToRadians.class
+	};
+
+	static private final Class<?>[] BINARY = new Class<?>[] {
+		Add.class, Subtract.class, Multiply.class, Divide.class, Min.class, Max.class,
+		Average.class, Difference.class, Pow.class, ATan2.class, Hypot.class,
+		IEEEremainder.class, And.class, Or.class, Xor.class
+	};
+
+	static private final int unaryCode(final Class<?> c) {
+		for (int i = 0; i < UNARY.length; ++i) if (UNARY[i] == c) return i;
+		return -1;
+	}
+
+	static private final int binaryCode(final Class<?> c) {
+		for (int i = 0; i < BINARY.length; ++i) if (BINARY[i] == c) return i;
+		return -1;
+	}
+
+	// -- nodes --
+
+	static private abstract class Node
+	{
+		protected final double[] buf = new double[BLOCK];
+
+		/** Fill {@link #buf} with the values of {@param n} pixels starting at flat index {@param index}. */
+		abstract void eval(long index, int n);
+	}
+
+	static private final class Constant extends Node
+	{
+		Constant(final double value) {
+			Arrays.fill(buf, value);
+		}
+
+		@Override
+		final void eval(final long index, final int n) {}
+	}
+
+	/** Evaluates an {@link IFunction} that could not be compiled, pixel by pixel. */
+	static private final class Interpreted extends Node
+	{
+		private final IFunction fn;
+
+		Interpreted(final IFunction fn) {
+			this.fn = fn;
+		}
+
+		@Override
+		final void eval(final long index, final int n) {
+			for (int i = 0; i < n; ++i) buf[i] = fn.eval();
+		}
+	}
+
+	/** Reads the primitive arrays of an {@link ArrayImg}, which is a single plane,
+	 *  or of a {@link PlanarImg}. */
+	static private final class Leaf extends Node
+	{
+		static private final int U8 = 0, I8 = 1, U16 = 2, I16 = 3, I32 = 4, U32 = 5, I64 = 6, F32 = 7, F64 = 8;
+
+		private final int type;
+		private final ArrayImg<?,?> array;
+		private final PlanarImg<?,?> planar;
+		private final long planeSize;
+
+		private Leaf(final int type, final ArrayImg<?,?> array, final PlanarImg<?,?> planar, final long planeSize) {
+			this.type = type;
+			this.array = array;
+			this.planar = planar;
+			this.planeSize = planeSize;
+		}
+
+		/** @return null if {@param img} is not a container with primitive arrays of a known type. */
+		static final Leaf create(final RealInterval img) {
+			if (img instanceof ArrayImg) {
+				final ArrayImg<?,?> a = (ArrayImg<?,?>) img;
+				final int type = typeCode(a.firstElement(), a.update(null));
+				return type < 0 ? null : new Leaf(type, a, null, Long.MAX_VALUE);
+			}
+			if (img instanceof PlanarImg) {
+				final PlanarImg<?,?> p = (PlanarImg<?,?>) img;
+				if (0 == p.numSlices()) return null;
+				final int type = typeCode(p.firstElement(), p.getPlane(0));
+				return type < 0 ? null : new Leaf(type, null, p, p.size() / p.numSlices());
+			}
+			return null;
+		}
+
+		static private final int typeCode(final Object t, final Object access) {
+			if (!(access instanceof ArrayDataAccess)) return -1;
+			final Object data = ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+			final Class<?> c = t.getClass();
+			if (data instanceof byte[]) {
+				if (c == UnsignedByteType.class) return U8;
+				if (c == ByteType.class) return I8;
+			} else if (data instanceof short[]) {
+				if (c == UnsignedShortType.class) return U16;
+				if (c == ShortType.class) return I16;
+			} else if (data instanceof int[]) {
+				if (c == IntType.class) return I32;
+				if (c == UnsignedIntType.class) return U32;
+			} else if (data instanceof long[]) {
+				if (c == LongType.class) return I64;
+			} else if (data instanceof float[]) {
+				if (c == FloatType.class) return F32;
+			} else if (data instanceof double[]) {
+				if (c == DoubleType.class) return F64;
+			}
+			return -1;
+		}
+
+		@Override
+		final void eval(final long index, final int n) {
+			if (null != array) {
+				read(((ArrayDataAccess<?>) array.update(null)).getCurrentStorageArray(), (int) index, 0, n);
+				return;
+			}
+			// The block may span more than one plane
+			int done = 0;
+			while (done < n) {
+				final long i = index + done;
+				final int plane = (int) (i / planeSize);
+				final int offset = (int) (i % planeSize);
+				final int count = (int) Math.min(n - done, planeSize - offset);
+				read(((ArrayDataAccess<?>) planar.getPlane(plane)).getCurrentStorageArray(), offset, done, count);
+				done += count;
+			}
+		}
+
+		private final void read(final Object data, final int offset, final int first, final int count) {
+			final double[] buf = this.buf;
+			final int end = first + count;
+			switch (type) {
+			case U8: {
+				final byte[] d = (byte[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k] & 0xff;
+				break;
+			}
+			case I8: {
+				final byte[] d = (byte[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k];
+				break;
+			}
+			case U16: {
+				final short[] d = (short[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k] & 0xffff;
+				break;
+			}
+			case I16: {
+				final short[] d = (short[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k];
+				break;
+			}
+			case I32: {
+				final int[] d = (int[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k];
+				break;
+			}
+			case U32: {
+				final int[] d = (int[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k] & 0xffffffffL;
+				break;
+			}
+			case I64: {
+				final long[] d = (long[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k];
+				break;
+			}
+			case F32: {
+				final float[] d = (float[]) data;
+				for (int i = first, k = offset; i < end; ++i, ++k) buf[i] = d[k];
+				break;
+			}
+			case F64:
+				System.arraycopy(data, offset, buf, first, count);
+				break;
+			}
+		}
+	}
+
+	static private final class Unary extends Node
+	{
+		private final int op;
+		private final Node a;
+
+		Unary(final int op, final Node a) {
+			this.op = op;
+			this.a = a;
+		}
+
+		@Override
+		final void eval(final long index, final int n) {
+			a.eval(index, n);
+			final double[] x = a.buf, r = buf;
+			int i = 0;
+			switch (op) {
+			case 0: System.arraycopy(x, 0, r, 0, n); break;
+			case 1: for (; i < n; ++i) r[i] = Math.abs(x[i]); break;
+			case 2: for (; i < n; ++i) r[i] = Math.acos(x[i]); break;
+			case 3: for (; i < n; ++i) r[i] = Math.asin(x[i]); break;
+			case 4: for (; i < n; ++i) r[i] = Math.atan(x[i]); break;
+			case 5: for (; i < n; ++i) r[i] = Math.cbrt(x[i]); break;
+			case 6: for (; i < n; ++i) r[i] = Math.ceil(x[i]); break;
+			case 7: for (; i < n; ++i) r[i] = Math.cos(x[i]); break;
+			case 8: for (; i < n; ++i) r[i] = Math.cosh(x[i]); break;
+			case 9: for (; i < n; ++i) r[i] = Math.exp(x[i]); break;
+			case 10: for (; i < n; ++i) r[i] = Math.expm1(x[i]); break;
+			case 11: for (; i < n; ++i) r[i] = Math.floor(x[i]); break;
+			case 12: for (; i < n; ++i) r[i] = Math.log(x[i]); break;
+			case 13: for (; i < n; ++i) r[i] = Math.log10(x[i]); break;
+			case 14: for (; i < n; ++i) r[i] = Math.log1p(x[i]); break;
+			case 15: for (; i < n; ++i) r[i] = Math.rint(x[i]); break;
+			case 16: for (; i < n; ++i) r[i] = Math.round(x[i]); break;
+			case 17: for (; i < n; ++i) r[i] = Math.signum(x[i]); break;
+			case 18: for (; i < n; ++i) r[i] = Math.sin(x[i]); break;
+			case 19: for (; i < n; ++i) r[i] = Math.sinh(x[i]); break;
+			case 20: for (; i < n; ++i) r[i] = Math.sqrt(x[i]); break;
+			case 21: for (; i < n; ++i) r[i] = Math.tan(x[i]); break;
+			case 22: for (; i < n; ++i) r[i] = Math.tanh(x[i]); break;
+			case 23: for (; i < n; ++i) r[i] = Math.toDegrees(x[i]); break;
+			case 24: for (; i < n; ++i) r[i] = Math.toRadians(x[i]); break;
+			}
+		}
+	}
+
+	static private final class Binary extends Node
+	{
+		private final int op;
+		private final Node a, b;
+
+		Binary(final int op, final Node a, final Node b) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		final void eval(final long index, final int n) {
+			a.eval(index, n);
+			b.eval(index, n);
+			final double[] x = a.buf, y = b.buf, r = buf;
+			int i = 0;
+			switch (op) {
+			case 0: for (; i < n; ++i) r[i] = x[i] + y[i]; break;
+			case 1: for (; i < n; ++i) r[i] = x[i] - y[i]; break;
+			case 2: for (; i < n; ++i) r[i] = x[i] * y[i]; break;
+			case 3: for (; i < n; ++i) r[i] = x[i] / y[i]; break;
+			case 4: for (; i < n; ++i) r[i] = Math.min(x[i], y[i]); break;
+			case 5: for (; i < n; ++i) r[i] = Math.max(x[i], y[i]); break;
+			case 6: for (; i < n; ++i) r[i] = x[i] * 0.5 + y[i] * 0.5; break;
+			case 7: for (; i < n; ++i) r[i] = Math.max(x[i], y[i]) - Math.min(x[i], y[i]); break;
+			case 8: for (; i < n; ++i) r[i] = Math.pow(x[i], y[i]); break;
+			case 9: for (; i < n; ++i) r[i] = Math.atan2(x[i], y[i]); break;
+			case 10: for (; i < n; ++i) r[i] = Math.hypot(x[i], y[i]); break;
+			case 11: for (; i < n; ++i) r[i] = Math.IEEEremainder(x[i], y[i]); break;
+			case 12: for (; i < n; ++i) r[i] = ((int) x[i]) & ((int) y[i]); break;
+			case 13: for (; i < n; ++i) r[i] = ((int) x[i]) | ((int) y[i]); break;
+			case 14: for (; i < n; ++i) r[i] = ((int) x[i]) ^ ((int) y[i]); break;
+			}
+		}
+	}
+}
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import net.imglib2.IterableRealInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealCursor;
+import net.imglib2.RealInterval;
 import net.imglib2.img.Img;
 import net.imglib2.type.numeric.RealType;
 
@@ -47,20 +48,37 @@ public final class ImageFunction<T extends RealType<T>> implements IFunction, It
 
 	private final IterableRealInterval<T> img;
 	private final RealCursor<T> c;
+	/** The image as given to the constructor, before wrapping it for flat iteration. */
+	private final RealInterval source;
 
 	public ImageFunction(final IterableRealInterval<T> img) {
 		this.img = Util.flatIterable(img);
 		this.c = img.cursor();
+		this.source = img;
 	}
 
 	public ImageFunction(final RandomAccessibleInterval<T> rai) {
 		this.img = Util.flatIterable(rai);
 		this.c = img.cursor();
+		this.source = rai;
 	}
 
 	public ImageFunction(final Img<T> img) {
 		this.img = Util.flatIterable(img);
 		this.c = img.cursor();
+		this.source = img;
+	}
+
+	private ImageFunction(final IterableRealInterval<T> img, final RealInterval source) {
+		this.img = img;
+		this.c = img.cursor();
+		this.source = source;
+	}
+
+	/** The image as given to the constructor, so that {@link FusedFunction}
+	 *  can read the underlying storage of known containers directly. */
+	final RealInterval source() {
+		return source;
 	}
 
 	@Override
@@ -84,7 +102,7 @@ public final class ImageFunction<T extends RealType<T>> implements IFunction, It
 	@Override
 	public ImageFunction<T> duplicate()
 	{
-		return new ImageFunction<T>(img);
+		return new ImageFunction<T>(img, source);
 	}
 
 	@Override
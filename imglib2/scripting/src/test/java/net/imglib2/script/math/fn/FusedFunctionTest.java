@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2012 Stephan Preibisch, Stephan Saalfeld, Tobias
+ * Pietzsch, Albert Cardona, Barry DeZonia, Curtis Rueden, Lee Kamentsky, Larry
+ * Lindsey, Johannes Schindelin, Christian Dietz, Grant Harris, Jean-Yves
+ * Tinevez, Steffen Jaensch, Mark Longair, Nick Perry, and Jan Funke.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.script.math.fn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.script.math.ATan2;
+import net.imglib2.script.math.Abs;
+import net.imglib2.script.math.Add;
+import net.imglib2.script.math.Average;
+import net.imglib2.script.math.Compute;
+import net.imglib2.script.math.Difference;
+import net.imglib2.script.math.Divide;
+import net.imglib2.script.math.Floor;
+import net.imglib2.script.math.Hypot;
+import net.imglib2.script.math.Log1p;
+import net.imglib2.script.math.Max;
+import net.imglib2.script.math.Min;
+import net.imglib2.script.math.Multiply;
+import net.imglib2.script.math.Pow;
+import net.imglib2.script.math.Round;
+import net.imglib2.script.math.Sqrt;
+import net.imglib2.script.math.Subtract;
+import net.imglib2.script.math.Xor;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link FusedFunction} computes exactly the same values as
+ * evaluating the {@link IFunction} pixel by pixel.
+ */
+public class FusedFunctionTest {
+
+	/** More than one block of {@link FusedFunction#BLOCK} pixels. */
+	static private final long[] arrayDims = new long[] { 61, 53, 3 };
+
+	/** Planes of 851 pixels, which is not a divisor of {@link FusedFunction#BLOCK},
+	 *  so that blocks start and end within planes. */
+	static private final long[] planarDims = new long[] { 37, 23, 11 };
+
+	/** Not compiled by {@link FusedFunction}, so evaluated pixel by pixel within a fused tree. */
+	static public final class Square extends UnaryOperation {
+		public Square(final IFunction fn) {
+			super(fn);
+		}
+
+		@Override
+		public final double eval() {
+			final double a = a().eval();
+			return a * a;
+		}
+	}
+
+	static private <T extends RealType<T> & NativeType<T>> Img<T> create(final ImgFactory<T> factory, final long[] dims, final T type, final long seed) {
+		final Img<T> img = factory.create(dims, type);
+		final Random random = new Random(seed);
+		final double min = type.getMinValue(), max = type.getMaxValue();
+		final double range = Math.min(max - min, 2000);
+		final double offset = Math.max(min, -1000);
+		for (final T t : img) {
+			t.setReal(Math.floor(offset + random.nextDouble() * range) + (t instanceof FloatType || t instanceof DoubleType ? random.nextDouble() : 0));
+		}
+		return img;
+	}
+
+	/** A tree of all kinds of compiled operations, with constant subtrees. */
+	static private IFunction expression(final Img<?> a, final Img<?> b) {
+		final ImageFunction<?> fa = imageFunction(a), fb = imageFunction(b);
+		return new Add(
+				new Multiply(new Divide(new Subtract(fa, fb), new Add(new Abs(fb), 1)), new Add(new Multiply(2, 3), 94)),
+				new Add(
+						new Sqrt(new Abs(new Subtract(new Pow(fa, 2), new Log1p(new Abs(fb))))),
+						new Add(
+								new Add(new Min(fa, fb), new Max(fa, new Floor(new Divide(fb, 3)))),
+								new Add(
+										new Add(new Average(fa, fb), new Difference(fa, fb)),
+										new Add(new ATan2(fa, fb), new Add(new Hypot(fa, fb), new Round(new Xor(fa, fb))))))));
+	}
+
+	/** A compiled tree with subtrees that have to be interpreted. */
+	static private IFunction mixedExpression(final Img<?> a, final Img<?> b) {
+		final ImageFunction<?> fa = imageFunction(a), fb = imageFunction(b);
+		return new Add(new Square(new Subtract(fa, fb)), new Divide(new Sqrt(new Abs(fb)), new Square(new Add(fa, 1))));
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static private ImageFunction<?> imageFunction(final Img<?> img) {
+		return new ImageFunction((Img) img);
+	}
+
+	/** Evaluate {@param fn} pixel by pixel, like {@link Compute} does without {@link FusedFunction}. */
+	static private <R extends RealType<R> & NativeType<R>> Img<R> interpreted(final IFunction fn, final long[] dims, final R type) throws Exception {
+		final Img<R> result = new ArrayImgFactory<R>().create(dims, type);
+		final IFunction f = fn.duplicate();
+		final Cursor<R> c = result.cursor();
+		while (c.hasNext()) {
+			c.next().setReal(f.eval());
+		}
+		return result;
+	}
+
+	static private <R extends RealType<R>> void assertSameValues(final Img<R> expected, final Img<R> actual) {
+		assertEquals(expected.size(), actual.size());
+		final Cursor<R> e = expected.cursor(), a = actual.cursor();
+		long i = 0;
+		while (e.hasNext()) {
+			assertEquals("pixel " + i, e.next().getRealDouble(), a.next().getRealDouble(), 0);
+			++i;
+		}
+	}
+
+	/** Compare Compute with fused evaluation, with several threads so that
+	 *  blocks start anywhere, to the interpreted evaluation, into float, double
+	 *  and unsigned short results; the latter are written with a cursor. */
+	static private void check(final IFunction fn, final long[] dims) throws Exception {
+		assertNotNull(FusedFunction.compile(fn));
+		for (final int numThreads : new int[] { 1, 3 }) {
+			assertSameValues(interpreted(fn, dims, new FloatType()), Compute.inFloats(numThreads, fn));
+			assertSameValues(interpreted(fn, dims, new DoubleType()), Compute.inDoubles(numThreads, fn));
+			assertSameValues(interpreted(fn, dims, new UnsignedShortType()), Compute.apply(fn, new UnsignedShortType(), numThreads));
+		}
+	}
+
+	static private <S extends RealType<S> & NativeType<S>, T extends RealType<T> & NativeType<T>> void checkTypes(final ImgFactory<S> fs, final S s, final ImgFactory<T> ft, final T t, final long[] dims) throws Exception {
+		final Img<S> a = create(fs, dims, s, 1);
+		final Img<T> b = create(ft, dims, t, 2);
+		check(expression(a, b), dims);
+		check(expression(b, a), dims);
+		check(mixedExpression(a, b), dims);
+	}
+
+	@Test
+	public void testArrayImg() throws Exception {
+		checkTypes(new ArrayImgFactory<UnsignedByteType>(), new UnsignedByteType(), new ArrayImgFactory<ShortType>(), new ShortType(), arrayDims);
+		checkTypes(new ArrayImgFactory<FloatType>(), new FloatType(), new ArrayImgFactory<DoubleType>(), new DoubleType(), arrayDims);
+		checkTypes(new ArrayImgFactory<UnsignedByteType>(), new UnsignedByteType(), new ArrayImgFactory<DoubleType>(), new DoubleType(), arrayDims);
+	}
+
+	@Test
+	public void testPlanarImg() throws Exception {
+		checkTypes(new PlanarImgFactory<UnsignedByteType>(), new UnsignedByteType(), new PlanarImgFactory<ShortType>(), new ShortType(), planarDims);
+		checkTypes(new PlanarImgFactory<FloatType>(), new FloatType(), new PlanarImgFactory<DoubleType>(), new DoubleType(), planarDims);
+		checkTypes(new PlanarImgFactory<ShortType>(), new ShortType(), new PlanarImgFactory<FloatType>(), new FloatType(), planarDims);
+	}
+
+	@Test
+	public void testArrayAndPlanarImg() throws Exception {
+		// both iterate in flat order, so Compute accepts them together
+		final long[] dims = new long[] { 37, 23, 11 };
+		checkTypes(new ArrayImgFactory<UnsignedByteType>(), new UnsignedByteType(), new PlanarImgFactory<FloatType>(), new FloatType(), dims);
+	}
+
+	@Test
+	public void testCursorOutput() throws Exception {
+		// evaluate into a PlanarImg, which is written with a cursor, in uneven pieces
+		final Img<ShortType> a = create(new PlanarImgFactory<ShortType>(), planarDims, new ShortType(), 3);
+		final Img<FloatType> b = create(new PlanarImgFactory<FloatType>(), planarDims, new FloatType(), 4);
+		final IFunction fn = expression(a, b);
+		final Img<FloatType> expected = interpreted(fn, planarDims, new FloatType());
+		final Img<FloatType> result = new PlanarImgFactory<FloatType>().create(planarDims, new FloatType());
+		final FusedFunction fused = FusedFunction.compile(fn.duplicate());
+		final long size = result.size(), split = 5000;
+		fused.evaluate(result, 0, split);
+		fused.evaluate(result, split, size - split);
+		assertSameValues(expected, result);
+	}
+
+	@Test
+	public void testUnknownRootIsNotCompiled() throws Exception {
+		final Img<FloatType> a = create(new ArrayImgFactory<FloatType>(), arrayDims, new FloatType(), 5);
+		assertNull(FusedFunction.compile(new Square(imageFunction(a))));
+	}
+}
@@ -39,6 +39,25 @@ public class CompositeXYProjectorBenchmark
 //		projector.setComposite( 0, false );
 //		projector.setComposite( 1, true );
 //		projector.setComposite( 2, false );
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+
+		projector.setNumThreads( 1 );
+		System.out.println( "1 thread:" );
+		final long singleThreaded = benchmark( projector );
+
+		projector.setNumThreads( numThreads );
+		System.out.println( numThreads + " threads:" );
+		final long multiThreaded = benchmark( projector );
+
+		System.out.println( "speedup: " + ( ( double ) singleThreaded / multiThreaded ) );
+	}
+
+	/**
+	 * @return the fastest of 10 iterations
+	 */
+	public long benchmark( final CompositeXYProjector< UnsignedByteType > projector )
+	{
+		long best = Long.MAX_VALUE;
 		for ( int iteration = 0; iteration < 10; ++iteration )
 		{
 			final long start = System.currentTimeMillis();
@@ -46,7 +65,9 @@ public class CompositeXYProjectorBenchmark
 				projector.map();
 			final long end = System.currentTimeMillis();
 			System.out.println( ( end - start ) + " ms (iteration " + iteration + ")" );
+			best = Math.min( best, end - start );
 		}
+		return Math.max( 1, best );
 	}
 
 	public static void main( final String[] args ) throws IncompatibleTypeException, ImgIOException
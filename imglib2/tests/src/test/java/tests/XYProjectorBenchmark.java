@@ -32,6 +32,25 @@ public class XYProjectorBenchmark
 	public void convert( final Img< UnsignedByteType > in,  final Img< ARGBType > out )
 	{
 		final XYProjector< UnsignedByteType, ARGBType > projector = new XYProjector< UnsignedByteType, ARGBType >( in, out, new RealARGBConverter< UnsignedByteType >(0, 1000) );
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+
+		projector.setNumThreads( 1 );
+		System.out.println( "1 thread:" );
+		final long singleThreaded = benchmark( projector );
+
+		projector.setNumThreads( numThreads );
+		System.out.println( numThreads + " threads:" );
+		final long multiThreaded = benchmark( projector );
+
+		System.out.println( "speedup: " + ( ( double ) singleThreaded / multiThreaded ) );
+	}
+
+	/**
+	 * @return the fastest of 10 iterations
+	 */
+	public long benchmark( final XYProjector< UnsignedByteType, ARGBType > projector )
+	{
+		long best = Long.MAX_VALUE;
 		for ( int iteration = 0; iteration < 10; ++iteration )
 		{
 			final long start = System.currentTimeMillis();
@@ -39,7 +58,9 @@ public class XYProjectorBenchmark
 				projector.map();
 			final long end = System.currentTimeMillis();
 			System.out.println( ( end - start ) + " ms (iteration " + iteration + ")" );
+			best = Math.min( best, end - start );
 		}
+		return Math.max( 1, best );
 	}
 
 	public static void main( final String[] args ) throws IncompatibleTypeException, ImgIOException